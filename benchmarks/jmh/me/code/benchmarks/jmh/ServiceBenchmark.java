@@ -0,0 +1,64 @@
+package me.code.benchmarks.jmh;
+
+import me.code.benchmarks.Operation;
+import me.code.benchmarks.RepositoryKind;
+import me.code.benchmarks.ServiceFixture;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samma mätningar som BenchmarkRunner, fast med JMH: varje operation (se
+ * Operation) genom DefaultTodoService, mot varje repository och datamängd.
+ *
+ * JMH sköter det som BenchmarkRunner gör för hand - uppvärmning, omgångar
+ * med fast tid och medelvärde med felmarginal - och kör dessutom varje
+ * mätning i en egen JVM (fork), så att JIT-kompilatorns beslut för en
+ * operation inte påverkar nästa.
+ *
+ *   gradle :benchmarks:jmh -Pjmh="ServiceBenchmark -p operation=findById,count"
+ *
+ * Som i BenchmarkRunner får varje mätning en ny fixture i en temporär mapp,
+ * så save växer bara inom sin egen mätning.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+public class ServiceBenchmark {
+
+    private static final long SEED = 42;
+
+    @Param({"file", "log", "mapped"})
+    public String repository;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    @Param({"save", "findById", "findAll", "searchTodos", "updateTodoStatusById", "count"})
+    public String operation;
+
+    private ServiceFixture fixture;
+    private Operation selected;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new ServiceFixture(RepositoryKind.fromDisplayName(repository), size, SEED);
+        selected = Operation.fromDisplayName(operation);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fixture.close();
+    }
+
+    /**
+     * Returvärdet tas om hand av JMH, så JIT-kompilatorn kan inte optimera bort anropet.
+     */
+    @Benchmark
+    public long run() throws Exception {
+        return selected.run(fixture);
+    }
+}
@@ -0,0 +1,41 @@
+package me.code.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Räknar hur många bytes den aktuella tråden har allokerat på heapen.
+ *
+ * HotSpot (den vanliga JVM:en) håller räkningen per tråd. Finns inte stödet
+ * returnerar vi -1, så att resultaten visar att värdet saknas istället för 0.
+ *
+ * Observera att bara den anropande tråden räknas - arbete som görs i andra
+ * trådar (t.ex. en parallell genomsökning i en ForkJoinPool) syns inte här.
+ */
+final class AllocationCounter {
+
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private AllocationCounter() {
+    }
+
+    static boolean isSupported() {
+        return THREADS != null;
+    }
+
+    /**
+     * Totalt antal allokerade bytes för den aktuella tråden, eller -1 om det inte stöds.
+     */
+    static long allocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemorySupported()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+            return threads;
+        }
+        return null;
+    }
+}
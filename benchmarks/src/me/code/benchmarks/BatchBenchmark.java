@@ -0,0 +1,120 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.repositories.Durability;
+import me.code.repositories.ITodoRepository;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Jämför gruppoperationerna (saveAll, updateStatusWhere, deleteAll) med att
+ * göra samma sak en todo i taget.
+ *
+ * För varje repository körs samma tre steg två gånger i en ny mapp - först en
+ * todo i taget, sedan som grupp:
+ *
+ * - save: spara alla todos
+ * - status: markera alla todos i hälften av kategorierna som COMPLETED
+ * - delete: radera alla todos
+ *
+ * Efter varje steg kontrolleras att repositoryt innehåller det det ska.
+ *
+ *   java me.code.benchmarks.BatchBenchmark [repositories] [antal todos] [durability]
+ *
+ * t.ex. "file,log,mapped 2000 FSYNC". Resultatet skrivs i CSV-format och
+ * programmet avslutas med felkod 1 om någon kontroll misslyckas.
+ */
+public class BatchBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        List<RepositoryKind> kinds = args.length > 0
+                ? Arrays.stream(args[0].split(",")).map(RepositoryKind::fromDisplayName).toList()
+                : RepositoryKind.available();
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        Durability durability = args.length > 2 ? Durability.valueOf(args[2].toUpperCase(Locale.ROOT)) : Durability.OS_BUFFERED;
+
+        boolean ok = true;
+        System.out.println("repository,durability,mode,todos,saveMillis,statusMillis,deleteMillis,changed,consistent");
+        for (RepositoryKind kind : kinds) {
+            ok &= run(kind, size, durability, false);
+            ok &= run(kind, size, durability, true);
+        }
+        if (!ok) {
+            System.err.println("Repository contents did not match after a batch operation");
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(RepositoryKind kind, int size, Durability durability, boolean batch) throws Exception {
+        List<Todo> todos = new ArrayList<>(size);
+        TodoGenerator generator = new TodoGenerator(42);
+        for (int i = 0; i < size; i++) {
+            todos.add(generator.next());
+        }
+        Set<String> categories = new TreeSet<>();
+        for (Todo todo : todos) {
+            categories.add(todo.getCategory());
+        }
+        Set<String> completed = new HashSet<>(new ArrayList<>(categories).subList(0, categories.size() / 2));
+
+        try (TempDirectory directory = new TempDirectory("todo-batch-");
+             ITodoRepository repository = kind.open(directory.getFile())) {
+            long start = System.nanoTime();
+            if (batch) {
+                repository.saveAll(todos, durability);
+            } else {
+                for (Todo todo : todos) {
+                    repository.save(todo, durability);
+                }
+            }
+            long saveNanos = System.nanoTime() - start;
+            boolean consistent = repository.count() == size;
+
+            start = System.nanoTime();
+            int changed;
+            if (batch) {
+                changed = repository.updateStatusWhere(todo -> completed.contains(todo.getCategory()),
+                        TodoStatus.COMPLETED).size();
+            } else {
+                changed = 0;
+                for (Todo todo : todos) {
+                    if (completed.contains(todo.getCategory()) && todo.getStatus() != TodoStatus.COMPLETED) {
+                        repository.updateStatus(todo.getId(), TodoStatus.COMPLETED);
+                        changed++;
+                    }
+                }
+            }
+            long statusNanos = System.nanoTime() - start;
+            consistent &= statusesMatch(repository, completed);
+
+            List<UUID> ids = todos.stream().map(Todo::getId).toList();
+            start = System.nanoTime();
+            if (batch) {
+                repository.deleteAll(ids, durability);
+            } else {
+                for (UUID id : ids) {
+                    repository.delete(id, durability);
+                }
+            }
+            long deleteNanos = System.nanoTime() - start;
+            consistent &= repository.count() == 0;
+
+            System.out.printf(Locale.ROOT, "%s,%s,%s,%d,%.1f,%.1f,%.1f,%d,%b%n", kind.getDisplayName(), durability,
+                    batch ? "batch" : "single", size, saveNanos / 1e6, statusNanos / 1e6, deleteNanos / 1e6,
+                    changed, consistent);
+            return consistent;
+        }
+    }
+
+    /**
+     * Kontrollerar att alla todos i de valda kategorierna är COMPLETED.
+     */
+    private static boolean statusesMatch(ITodoRepository repository, Set<String> completed) throws Exception {
+        try (Stream<Todo> todos = repository.streamAll()) {
+            return todos.allMatch(todo -> !completed.contains(todo.getCategory())
+                    || todo.getStatus() == TodoStatus.COMPLETED);
+        }
+    }
+}
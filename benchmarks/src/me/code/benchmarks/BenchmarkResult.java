@@ -0,0 +1,27 @@
+package me.code.benchmarks;
+
+/**
+ * Resultatet för en kombination av operation, repository och datamängd.
+ *
+ * @param operation Operationens namn, t.ex. "findById"
+ * @param repository Repositoryts namn, t.ex. "file"
+ * @param size Antal todos i repositoryt när mätningen började
+ * @param iterations Antal mätomgångar
+ * @param operations Totalt antal anrop under mätomgångarna
+ * @param meanNanos Medeltid per anrop i nanosekunder
+ * @param stdDevNanos Standardavvikelse mellan omgångarnas medeltider
+ * @param minNanos Snabbaste omgångens medeltid
+ * @param maxNanos Långsammaste omgångens medeltid
+ * @param allocatedBytes Allokerade bytes per anrop i den mätande tråden, eller -1 om det inte kan mätas
+ */
+public record BenchmarkResult(String operation, String repository, int size, int iterations, long operations,
+                              double meanNanos, double stdDevNanos, double minNanos, double maxNanos,
+                              double allocatedBytes) {
+
+    /**
+     * Antal anrop per sekund räknat på medeltiden.
+     */
+    public double opsPerSecond() {
+        return meanNanos == 0 ? 0 : 1_000_000_000.0 / meanNanos;
+    }
+}
@@ -0,0 +1,166 @@
+package me.code.benchmarks;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Kör benchmarks för repository och service och skriver ut resultaten.
+ *
+ * Varje kombination av operation, repository och datamängd mäts så här:
+ * 1. En ny fixture skapas i en temporär mapp och fylls med todos
+ * 2. Uppvärmning: operationen körs några omgångar utan att mätas, så att
+ *    JIT-kompilatorn hinner optimera koden och cachar fylls
+ * 3. Mätning: operationen körs om och om igen under en fast tid per omgång,
+ *    och vi räknar ut medeltiden per anrop för varje omgång, samt hur många
+ *    bytes som allokerades per anrop (se AllocationCounter)
+ *
+ * Exempel:
+ *   java me.code.benchmarks.BenchmarkRunner --sizes=1000,10000 --repositories=file,log
+ *        --operations=findById,count --format=csv --output=results.csv
+ *
+ * Utan argument mäts alla operationer mot alla repositories med 1 000 och
+ * 10 000 todos, och resultatet skrivs som JSON till standard output.
+ */
+public class BenchmarkRunner {
+
+    private static final long SEED = 42;
+
+    private int[] sizes = {1_000, 10_000};
+    private List<RepositoryKind> repositories = RepositoryKind.available();
+    private List<Operation> operations = List.of(Operation.values());
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMillis = 500;
+    private ResultWriter.Format format = ResultWriter.Format.JSON;
+    private String output;
+
+    // Summan av alla operationers returvärden, se Operation
+    private long sink;
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        try {
+            runner.parseArguments(args);
+        } catch (IllegalArgumentException exception) {
+            System.err.println(exception.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        List<BenchmarkResult> results = runner.runAll();
+
+        if (runner.output == null) {
+            Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+            ResultWriter.write(writer, runner.format, results);
+        } else {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(runner.output), StandardCharsets.UTF_8))) {
+                ResultWriter.write(writer, runner.format, results);
+            }
+            System.err.println("Results written to " + runner.output);
+        }
+    }
+
+    private void parseArguments(String[] args) {
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value but got: " + arg);
+            }
+
+            String name = arg.substring(2, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "sizes" -> sizes = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                case "repositories" -> repositories = Arrays.stream(value.split(","))
+                        .map(RepositoryKind::fromDisplayName).toList();
+                case "operations" -> operations = Arrays.stream(value.split(","))
+                        .map(Operation::fromDisplayName).toList();
+                case "warmup" -> warmupIterations = Integer.parseInt(value);
+                case "iterations" -> measurementIterations = Integer.parseInt(value);
+                case "time" -> iterationMillis = Long.parseLong(value);
+                case "format" -> format = ResultWriter.Format.valueOf(value.toUpperCase(Locale.ROOT));
+                case "output" -> output = value;
+                default -> throw new IllegalArgumentException("Unknown option: --" + name);
+            }
+        }
+
+        if (Arrays.stream(sizes).anyMatch(size -> size <= 0)) {
+            throw new IllegalArgumentException("Sizes must be positive");
+        }
+        if (measurementIterations <= 0 || warmupIterations < 0 || iterationMillis <= 0) {
+            throw new IllegalArgumentException("Iterations and time must be positive");
+        }
+    }
+
+    private List<BenchmarkResult> runAll() throws Exception {
+        List<BenchmarkResult> results = new ArrayList<>();
+        for (RepositoryKind repository : repositories) {
+            for (int size : sizes) {
+                for (Operation operation : operations) {
+                    System.err.printf("%-22s %-8s %,10d todos ... ", operation.getDisplayName(),
+                            repository.getDisplayName(), size);
+                    BenchmarkResult result = run(operation, repository, size);
+                    System.err.printf(Locale.ROOT, "%,.0f ns/op, %,.0f B/op%n", result.meanNanos(),
+                            result.allocatedBytes());
+                    results.add(result);
+                }
+            }
+        }
+
+        // Skrivs ut så att summan (och därmed alla anrop) faktiskt används
+        System.err.println("Checksum: " + sink);
+        return results;
+    }
+
+    private BenchmarkResult run(Operation operation, RepositoryKind repository, int size) throws Exception {
+        try (ServiceFixture fixture = new ServiceFixture(repository, size, SEED)) {
+            for (int i = 0; i < warmupIterations; i++) {
+                runIteration(operation, fixture);
+            }
+
+            double[] nanosPerOperation = new double[measurementIterations];
+            long totalOperations = 0;
+            long allocatedBefore = AllocationCounter.allocatedBytes();
+            for (int i = 0; i < measurementIterations; i++) {
+                long[] iteration = runIteration(operation, fixture);
+                nanosPerOperation[i] = (double) iteration[1] / iteration[0];
+                totalOperations += iteration[0];
+            }
+            double allocatedPerOperation = AllocationCounter.isSupported()
+                    ? (double) (AllocationCounter.allocatedBytes() - allocatedBefore) / totalOperations
+                    : -1;
+
+            double mean = Arrays.stream(nanosPerOperation).average().orElse(0);
+            double variance = Arrays.stream(nanosPerOperation).map(value -> (value - mean) * (value - mean))
+                    .sum() / Math.max(1, nanosPerOperation.length - 1);
+            return new BenchmarkResult(operation.getDisplayName(), repository.getDisplayName(), size,
+                    measurementIterations, totalOperations, mean, Math.sqrt(variance),
+                    Arrays.stream(nanosPerOperation).min().orElse(0),
+                    Arrays.stream(nanosPerOperation).max().orElse(0),
+                    allocatedPerOperation);
+        }
+    }
+
+    /**
+     * Kör operationen tills omgångens tid har gått.
+     *
+     * @return {antal anrop, förbrukad tid i nanosekunder}
+     */
+    private long[] runIteration(Operation operation, ServiceFixture fixture) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+        long count = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            sink += operation.run(fixture);
+            count++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return new long[]{count, now - start};
+    }
+}
@@ -0,0 +1,162 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.services.ITodoService;
+import me.code.services.TodoQuery;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stresstest för DefaultTodoService med flera trådar samtidigt.
+ *
+ * För varje repository och antal trådar körs två delar:
+ *
+ * - throughput: alla trådar ändrar status på slumpade todos. Eftersom olika
+ *   todos har olika lås bör antalet operationer per sekund öka med antalet
+ *   trådar (så länge det finns processorer och disken hänger med).
+ * - lost updates: alla trådar räknar upp prioriteten på samma fåtal todos med
+ *   updateTodoById. Går ingen ändring förlorad är summan efteråt exakt
+ *   trådar * ändringar per tråd.
+ *
+ * Efter varje körning jämförs också indexen med repositoryt, så att en todo
+ * aldrig hittas under en annan status än den som faktiskt är sparad.
+ *
+ *   java me.code.benchmarks.ConcurrencyBenchmark [repositories] [antal todos] [operationer per tråd]
+ *
+ * t.ex. "file,log,mapped 1000 500". Resultatet skrivs i CSV-format och
+ * programmet avslutas med felkod 1 om någon kontroll misslyckas.
+ */
+public class ConcurrencyBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+    private static final int SHARED_TODOS = 4;
+
+    public static void main(String[] args) throws Exception {
+        List<RepositoryKind> kinds = args.length > 0
+                ? Arrays.stream(args[0].split(",")).map(RepositoryKind::fromDisplayName).toList()
+                : RepositoryKind.available();
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        boolean ok = true;
+        System.out.println("repository,threads,operations,opsPerSecond,expectedIncrements,actualIncrements,indexConsistent");
+        for (RepositoryKind kind : kinds) {
+            for (int threads : THREAD_COUNTS) {
+                ok &= run(kind, threads, size, operations);
+            }
+        }
+        if (!ok) {
+            System.err.println("Lost updates or inconsistent indexes detected");
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(RepositoryKind kind, int threads, int size, int operations) throws Exception {
+        try (ServiceFixture fixture = new ServiceFixture(kind, size, 42)) {
+            ITodoService service = fixture.getService();
+            List<UUID> ids = allIds(service);
+            service.findTodos(new TodoQuery()).close();  // Bygg indexen innan mätningen
+
+            double opsPerSecond = measureThroughput(service, ids, threads, operations);
+
+            List<UUID> shared = ids.subList(0, SHARED_TODOS);
+            long before = sumPriorities(service, shared);
+            runThreads(threads, random -> {
+                for (int i = 0; i < operations; i++) {
+                    UUID id = shared.get(random.nextInt(shared.size()));
+                    service.updateTodoById(id, todo -> todo.setPriority(todo.getPriority() + 1));
+                }
+            });
+            long increments = sumPriorities(service, shared) - before;
+            long expected = (long) threads * operations;
+
+            boolean indexConsistent = indexMatchesRepository(service);
+            System.out.printf(Locale.ROOT, "%s,%d,%d,%.1f,%d,%d,%b%n", kind.getDisplayName(), threads,
+                    (long) threads * operations, opsPerSecond, expected, increments, indexConsistent);
+            return increments == expected && indexConsistent;
+        }
+    }
+
+    private static double measureThroughput(ITodoService service, List<UUID> ids, int threads, int operations)
+            throws Exception {
+        TodoStatus[] statuses = TodoStatus.values();
+        long start = System.nanoTime();
+        runThreads(threads, random -> {
+            for (int i = 0; i < operations; i++) {
+                UUID id = ids.get(random.nextInt(ids.size()));
+                service.updateTodoStatusById(id, statuses[random.nextInt(statuses.length)]);
+            }
+        });
+        long elapsed = System.nanoTime() - start;
+        return (double) threads * operations * 1_000_000_000L / elapsed;
+    }
+
+    /**
+     * Startar trådarna samtidigt och väntar tills alla är klara.
+     * Kastar det första felet som någon tråd fick.
+     */
+    private static void runThreads(int threads, Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long seed = t;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    worker.run(new Random(seed));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException exception) {
+                    throw exception.getCause() instanceof Exception cause ? cause : exception;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<UUID> allIds(ITodoService service) throws Exception {
+        try (Stream<Todo> todos = service.getTodos()) {
+            return todos.map(Todo::getId).collect(Collectors.toList());
+        }
+    }
+
+    private static long sumPriorities(ITodoService service, List<UUID> ids) throws Exception {
+        long sum = 0;
+        for (UUID id : ids) {
+            sum += service.getTodoById(id).getPriority();
+        }
+        return sum;
+    }
+
+    /**
+     * Kontrollerar att varje todo finns under rätt status i indexet.
+     */
+    private static boolean indexMatchesRepository(ITodoService service) throws Exception {
+        Map<UUID, TodoStatus> indexed = new HashMap<>();
+        for (TodoStatus status : TodoStatus.values()) {
+            try (Stream<Todo> todos = service.findTodos(new TodoQuery().withStatus(status))) {
+                todos.forEach(todo -> indexed.put(todo.getId(), status));
+            }
+        }
+
+        try (Stream<Todo> todos = service.getTodos()) {
+            Map<UUID, TodoStatus> stored = todos.collect(Collectors.toMap(Todo::getId, Todo::getStatus));
+            return stored.equals(indexed);
+        }
+    }
+
+    private interface Worker {
+        void run(Random random) throws Exception;
+    }
+}
@@ -0,0 +1,159 @@
+package me.code.benchmarks;
+
+import me.code.commands.CountTodosCommand;
+import me.code.commands.CreateTodoCommand;
+import me.code.commands.FilterTodosCommand;
+import me.code.repositories.ITodoRepository;
+import me.code.services.CommandProtocol;
+import me.code.services.DefaultTodoService;
+import me.code.services.ITodoService;
+import me.code.services.SocketCommandService;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Mäter hur snabbt SocketCommandService svarar när flera klienter skickar
+ * kommandon samtidigt, dvs. kostnaden per kommando när JVM:en redan är varm.
+ *
+ * Varje klient har en egen anslutning och skickar omväxlande "create-todo"
+ * och "filter-todos". Efteråt kontrolleras att "count" svarar med exakt så
+ * många todos som skapades.
+ *
+ *   java me.code.benchmarks.DaemonBenchmark [repositories] [klienter] [kommandon per klient]
+ *
+ * Resultatet skrivs i CSV-format och programmet avslutas med felkod 1 om
+ * något kommando misslyckades eller antalet inte stämmer.
+ */
+public class DaemonBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        List<RepositoryKind> kinds = args.length > 0
+                ? Arrays.stream(args[0].split(",")).map(RepositoryKind::fromDisplayName).toList()
+                : RepositoryKind.available();
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int requests = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+
+        boolean ok = true;
+        System.out.println("repository,clients,requests,seconds,requestsPerSecond,avgMicros,p99Micros,consistent");
+        for (RepositoryKind kind : kinds) {
+            ok &= run(kind, clients, requests);
+        }
+        if (!ok) {
+            System.err.println("A command failed or the todo count did not match");
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(RepositoryKind kind, int clients, int requests) throws Exception {
+        try (TempDirectory directory = new TempDirectory("todo-daemon-");
+             ITodoRepository repository = kind.open(Files.createDirectory(directory.getFile().toPath().resolve("todos")).toFile())) {
+            ITodoService service = new DefaultTodoService(repository);
+            Path socket = directory.getFile().toPath().resolve("todos.sock");
+
+            SocketCommandService daemon = new SocketCommandService(socket);
+            daemon.registerCommand(new CreateTodoCommand(service));
+            daemon.registerCommand(new FilterTodosCommand(service));
+            daemon.registerCommand(new CountTodosCommand(service));
+            ExecutorService executor = Executors.newFixedThreadPool(clients + 1);
+            try {
+                Future<?> server = executor.submit(() -> {
+                    daemon.serve();
+                    return null;
+                });
+                waitForSocket(socket, server);
+
+                List<Future<long[]>> results = new ArrayList<>();
+                long start = System.nanoTime();
+                for (int c = 0; c < clients; c++) {
+                    int client = c;
+                    results.add(executor.submit(() -> runClient(socket, client, requests)));
+                }
+                long[] latencies = new long[clients * requests];
+                boolean consistent = true;
+                for (int c = 0; c < clients; c++) {
+                    long[] clientLatencies = results.get(c).get();
+                    consistent &= clientLatencies != null;
+                    if (clientLatencies != null) {
+                        System.arraycopy(clientLatencies, 0, latencies, c * requests, requests);
+                    }
+                }
+                long elapsed = System.nanoTime() - start;
+
+                int created = clients * ((requests + 1) / 2);
+                try (Connection connection = new Connection(socket)) {
+                    CommandProtocol.Response count = connection.send(List.of("count"));
+                    consistent &= count.ok() && count.output().trim().equals("Todos: " + created);
+                }
+
+                Arrays.sort(latencies);
+                long total = Arrays.stream(latencies).sum();
+                System.out.printf(Locale.ROOT, "%s,%d,%d,%.2f,%.0f,%.1f,%.1f,%b%n", kind.getDisplayName(), clients,
+                        latencies.length, elapsed / 1e9, latencies.length * 1e9 / elapsed,
+                        total / 1e3 / latencies.length, latencies[(int) (latencies.length * 0.99)] / 1e3, consistent);
+                return consistent;
+            } finally {
+                daemon.close();
+                executor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * @return Tiden för varje kommando i nanosekunder, eller null om något kommando misslyckades
+     */
+    private static long[] runClient(Path socket, int client, int requests) throws Exception {
+        TodoGenerator generator = new TodoGenerator(client);
+        long[] latencies = new long[requests];
+        boolean ok = true;
+        try (Connection connection = new Connection(socket)) {
+            for (int i = 0; i < requests; i++) {
+                List<String> words = i % 2 == 0
+                        ? List.of("create-todo", generator.word(), "category-" + generator.nextInt(10),
+                                Integer.toString(generator.nextInt(5)), "2030-01-01")
+                        : List.of("filter-todos", "pending", "category-" + generator.nextInt(10), "");
+                long start = System.nanoTime();
+                ok &= connection.send(words).ok();
+                latencies[i] = System.nanoTime() - start;
+            }
+        }
+        return ok ? latencies : null;
+    }
+
+    private static void waitForSocket(Path socket, Future<?> server) throws Exception {
+        while (!Files.exists(socket)) {
+            if (server.isDone()) {
+                server.get();  // Kastar felet som stoppade servern
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static class Connection implements AutoCloseable {
+        private final SocketChannel channel;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Connection(Path socket) throws IOException {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+            in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        }
+
+        private CommandProtocol.Response send(List<String> words) throws IOException {
+            CommandProtocol.writeRequest(out, words);
+            return CommandProtocol.readResponse(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package me.code.benchmarks;
+
+import me.code.metrics.MetricsRegistry;
+import me.code.metrics.OperationMetrics;
+import me.code.metrics.RepositoryCallEvent;
+import me.code.models.Todo;
+import me.code.repositories.CachingTodoRepository;
+import me.code.repositories.FileTodoRepository;
+import me.code.repositories.ITodoRepository;
+import me.code.repositories.InstrumentedTodoRepository;
+import me.code.repositories.cache.LruEvictionPolicy;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Mäter vad InstrumentedTodoRepository kostar, genom att göra samma anrop
+ * med och utan mätning mot samma FileTodoRepository:
+ *
+ * - count: svaras från minnet, så nästan hela skillnaden är mätningen
+ * - findById: läser en fil, det vanliga fallet
+ *
+ * Kolumnen recordingNanos är samma mätta anrop medan en JFR-inspelning pågår,
+ * med händelsernas vanliga inställningar (se RepositoryCallEvent).
+ *
+ * Kontrollerar också att mätningen räknat rätt antal anrop, att findById
+ * läst lika många bytes som todo-filerna är stora och att JFR-händelserna
+ * visar cachemissen och cacheträffen när samma todo hämtas två gånger.
+ *
+ *   java me.code.benchmarks.MetricsBenchmark [antal todos] [antal varv]
+ *
+ * Resultatet skrivs i CSV-format och programmet avslutas med felkod 1 om
+ * någon kontroll misslyckas.
+ */
+public class MetricsBenchmark {
+
+    private static final int DEFAULT_SIZE = 2_000;
+    private static final int DEFAULT_ROUNDS = 10;
+
+    private long sink;
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+        if (!new MetricsBenchmark().run(size, rounds)) {
+            System.err.println("Recorded metrics did not match");
+            System.exit(1);
+        }
+    }
+
+    private boolean run(int size, int rounds) throws Exception {
+        TodoGenerator generator = new TodoGenerator(42);
+        List<Todo> todos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            todos.add(generator.next());
+        }
+
+        try (TempDirectory directory = new TempDirectory("todo-metrics-")) {
+            FileTodoRepository plain = new FileTodoRepository(directory.getFile());
+            MetricsRegistry registry = new MetricsRegistry();
+            ITodoRepository instrumented = new InstrumentedTodoRepository(plain, registry, "storage");
+            try {
+                plain.saveAll(todos);
+                long fileBytes = Arrays.stream(Objects.requireNonNull(directory.getFile().listFiles()))
+                        .filter(file -> file.getName().endsWith(".todo"))
+                        .mapToLong(File::length)
+                        .sum();
+
+                System.out.println("operation,calls,plainNanos,instrumentedNanos,overheadNanos,recordingNanos");
+                int calls = rounds * size;
+                measure("count", calls, i -> plain.count(), i -> instrumented.count());
+                measure("findById", calls, i -> plain.findById(todos.get(i % size).getId()).getPriority(),
+                        i -> instrumented.findById(todos.get(i % size).getId()).getPriority());
+
+                // Uppvärmningen, mätningen och inspelningen gick alla genom instrumented
+                OperationMetrics count = registry.operation("storage.count");
+                OperationMetrics findById = registry.operation("storage.findById");
+                long expectedBytes = fileBytes * rounds * 4;
+                boolean ok = count.getCount() == calls * 4L && findById.getCount() == calls * 4L
+                        && findById.getBytesRead() == expectedBytes && findById.getErrors() == 0;
+                System.out.printf(Locale.ROOT, "%nfindById bytes read: %d, expected %d, p99 %.1f us%n",
+                        findById.getBytesRead(), expectedBytes,
+                        findById.getLatency().getPercentileNanos(99) / 1e3);
+                List<String> cache = recordCacheLookups(plain, todos.get(0));
+                System.out.println("Cache in recorded events: " + cache);
+                System.err.println("Checksum: " + sink);
+                return ok && cache.equals(List.of("miss", "hit"));
+            } finally {
+                instrumented.close();
+            }
+        }
+    }
+
+    private void measure(String name, int calls, Call plain, Call instrumented) throws Exception {
+        // Ett varv av varje för att värma upp JIT-kompilatorn, sedan mäts de växelvis
+        repeat(calls, plain);
+        repeat(calls, instrumented);
+        long plainNanos = repeat(calls, plain);
+        long instrumentedNanos = repeat(calls, instrumented);
+        long recordingNanos;
+        try (Recording recording = new Recording()) {
+            recording.enable(RepositoryCallEvent.class);
+            recording.start();
+            repeat(calls, instrumented);  // JIT-kompilatorn får börja om när händelserna slås på
+            recordingNanos = repeat(calls, instrumented);
+        }
+
+        System.out.printf(Locale.ROOT, "%s,%d,%.1f,%.1f,%.1f,%.1f%n", name, calls, (double) plainNanos / calls,
+                (double) instrumentedNanos / calls, (double) (instrumentedNanos - plainNanos) / calls,
+                (double) recordingNanos / calls);
+    }
+
+    /**
+     * Hämtar samma todo två gånger genom en cache, med en inspelning som tar
+     * med alla RepositoryCallEvent, och returnerar händelsernas cache-fält.
+     */
+    private static List<String> recordCacheLookups(ITodoRepository storage, Todo todo) throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        ITodoRepository repository = new InstrumentedTodoRepository(
+                new CachingTodoRepository(storage, new LruEvictionPolicy(), 10), registry, "repository");
+        Path file = Files.createTempFile("todo-metrics-", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(RepositoryCallEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            repository.findById(todo.getId());
+            repository.findById(todo.getId());
+            recording.stop();
+            recording.dump(file);
+
+            List<String> cache = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                cache.add(event.getString("cache"));
+            }
+            return cache;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private long repeat(int calls, Call call) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < calls; i++) {
+            sink += call.run(i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private interface Call {
+        long run(int index) throws Exception;
+    }
+}
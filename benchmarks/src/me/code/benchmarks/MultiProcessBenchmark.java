@@ -0,0 +1,126 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.repositories.CachingTodoRepository;
+import me.code.repositories.FileTodoRepository;
+import me.code.repositories.ITodoRepository;
+import me.code.repositories.WriteBehindTodoRepository;
+import me.code.repositories.cache.TinyLfuEvictionPolicy;
+import me.code.services.DefaultTodoService;
+import me.code.services.ITodoService;
+
+import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Stresstest för flera processer som delar samma mapp med FileTodoRepository.
+ *
+ * Huvudprocessen skapar några todos och startar sedan flera JVM:er som alla
+ * räknar upp prioriteten på samma todos med updateTodoById. Processerna ser
+ * inte varandras lås i minnet, så det är versionerna (saveIfVersionMatches)
+ * och fillåsen som ska se till att ingen uppräkning går förlorad.
+ *
+ * Stacken väljer vad varje process kör mot:
+ *
+ * - production: samma lager som Main öppnar för "file", alltså cache ovanpå
+ *   write-behind ovanpå FileTodoRepository (standard)
+ * - plain: bara FileTodoRepository
+ *
+ *   java me.code.benchmarks.MultiProcessBenchmark [processer] [ändringar per process] [antal todos] [stack]
+ *
+ * Programmet avslutas med felkod 1 om summan inte stämmer.
+ */
+public class MultiProcessBenchmark {
+
+    private static final String WORKER = "--worker";
+    private static final int CACHE_SIZE = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(WORKER)) {
+            runWorker(new File(args[1]), args[2], Integer.parseInt(args[3]), Long.parseLong(args[4]),
+                    List.of(args).subList(5, args.length));
+            return;
+        }
+
+        int processes = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int size = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        String stack = args.length > 3 ? args[3] : "production";
+
+        try (TempDirectory directory = new TempDirectory("todo-processes-")) {
+            List<String> ids = new ArrayList<>();
+            long before = 0;
+            try (ITodoRepository repository = new FileTodoRepository(directory.getFile())) {
+                TodoGenerator generator = new TodoGenerator(42);
+                for (int i = 0; i < size; i++) {
+                    Todo todo = generator.next();
+                    repository.save(todo);
+                    ids.add(todo.getId().toString());
+                    before += todo.getPriority();
+                }
+            }
+
+            long start = System.nanoTime();
+            List<Process> workers = new ArrayList<>();
+            for (int p = 0; p < processes; p++) {
+                List<String> command = new ArrayList<>(List.of(
+                        Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                        "-cp", System.getProperty("java.class.path"),
+                        MultiProcessBenchmark.class.getName(), WORKER,
+                        directory.getFile().getAbsolutePath(), stack, Integer.toString(updates), Long.toString(p)));
+                command.addAll(ids);
+                workers.add(new ProcessBuilder(command).inheritIO().start());
+            }
+            for (Process worker : workers) {
+                if (worker.waitFor() != 0) {
+                    throw new IllegalStateException("Worker process failed with exit code " + worker.exitValue());
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+
+            long after = 0;
+            try (ITodoRepository repository = new FileTodoRepository(directory.getFile())) {
+                for (String id : ids) {
+                    after += repository.findById(UUID.fromString(id)).getPriority();
+                }
+            }
+
+            long expected = (long) processes * updates;
+            System.out.println("stack,processes,updates,expectedIncrements,actualIncrements,updatesPerSecond");
+            System.out.printf(Locale.ROOT, "%s,%d,%d,%d,%d,%.1f%n", stack, processes, expected, expected, after - before,
+                    expected * 1_000_000_000.0 / elapsed);
+            if (after - before != expected) {
+                System.err.println("Lost updates detected");
+                System.exit(1);
+            }
+        }
+    }
+
+    private static void runWorker(File directory, String stack, int updates, long seed, List<String> ids)
+            throws Exception {
+        Random random = new Random(seed);
+        try (ITodoRepository repository = openRepository(directory, stack)) {
+            ITodoService service = new DefaultTodoService(repository);
+            for (int i = 0; i < updates; i++) {
+                UUID id = UUID.fromString(ids.get(random.nextInt(ids.size())));
+                service.updateTodoById(id, todo -> todo.setPriority(todo.getPriority() + 1));
+            }
+        }
+    }
+
+    private static ITodoRepository openRepository(File directory, String stack) throws Exception {
+        return switch (stack) {
+            case "plain" -> new FileTodoRepository(directory);
+            case "production" -> new CachingTodoRepository(
+                    new WriteBehindTodoRepository(new FileTodoRepository(directory)),
+                    new TinyLfuEvictionPolicy(CACHE_SIZE), CACHE_SIZE);
+            default -> throw new IllegalArgumentException("Unknown stack '" + stack
+                    + "', expected production or plain");
+        };
+    }
+}
@@ -0,0 +1,81 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+
+import java.util.stream.Stream;
+
+/**
+ * Operationerna vi mäter - de vanligaste vägarna genom service och repository.
+ *
+ * Varje operation returnerar ett tal som räknas ihop av BenchmarkRunner.
+ * Annars skulle JIT-kompilatorn i värsta fall kunna se att resultatet aldrig
+ * används och optimera bort hela anropet.
+ */
+public enum Operation {
+    SAVE("save"),
+    FIND_BY_ID("findById"),
+    FIND_ALL("findAll"),
+    SEARCH("searchTodos"),
+    UPDATE_STATUS("updateTodoStatusById"),
+    COUNT("count");
+
+    // Antal träffar per sida när vi söker, samma som SearchTodosCommand
+    private static final int SEARCH_PAGE_SIZE = 10;
+
+    private final String displayName;
+
+    Operation(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Kör operationen en gång mot fixturen.
+     *
+     * @return Ett tal som beror på resultatet
+     */
+    public long run(ServiceFixture fixture) throws Exception {
+        switch (this) {
+            case SAVE -> {
+                Todo todo = fixture.getGenerator().next();
+                fixture.getService().createTodo(todo);
+                return todo.getPriority();
+            }
+            case FIND_BY_ID -> {
+                return fixture.getService().getTodoById(fixture.randomId()).getPriority();
+            }
+            case FIND_ALL -> {
+                try (Stream<Todo> todos = fixture.getService().getTodos()) {
+                    return todos.mapToLong(Todo::getPriority).sum();
+                }
+            }
+            case SEARCH -> {
+                String query = fixture.getGenerator().word();
+                try (Stream<Todo> todos = fixture.getService().searchTodos(query, 0, SEARCH_PAGE_SIZE)) {
+                    return todos.count();
+                }
+            }
+            case UPDATE_STATUS -> {
+                TodoStatus status = TodoStatus.values()[fixture.getGenerator().nextInt(TodoStatus.values().length)];
+                return fixture.getService().updateTodoStatusById(fixture.randomId(), status).getPriority();
+            }
+            case COUNT -> {
+                return fixture.getService().countTodos();
+            }
+        }
+        throw new IllegalStateException("Unknown operation: " + this);
+    }
+
+    public static Operation fromDisplayName(String name) {
+        for (Operation operation : values()) {
+            if (operation.displayName.equalsIgnoreCase(name)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation: " + name);
+    }
+}
@@ -0,0 +1,145 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.repositories.FileTodoRepository;
+import me.code.repositories.TodoCodec;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Jämför hur mycket minne (och tid) det kostar att läsa en todo-fil med
+ * de olika läsvägarna som FileTodoRepository har haft:
+ *
+ * - text-reader: det ursprungliga textformatet med FileReader + BufferedReader
+ *   och parseInt/parseLong/valueOf på varje rad
+ * - binary-bytes: binärformatet, där hela filen läses till en ny byte-array
+ * - binary-channel: binärformatet via repositoryts findById, som läser med en
+ *   FileChannel till en återanvänd buffert per tråd
+ *
+ * Resultatet är allokerade bytes och nanosekunder per läst todo, i CSV-format:
+ *
+ *   java me.code.benchmarks.ReadPathBenchmark [antal todos] [antal varv]
+ */
+public class ReadPathBenchmark {
+
+    private static final int DEFAULT_SIZE = 1_000;
+    private static final int DEFAULT_ROUNDS = 20;
+
+    private long sink;
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+        if (!AllocationCounter.isSupported()) {
+            System.err.println("This JVM cannot count allocated bytes per thread, allocation columns will be -1");
+        }
+        new ReadPathBenchmark().run(size, rounds);
+    }
+
+    private void run(int size, int rounds) throws Exception {
+        TodoGenerator generator = new TodoGenerator(42);
+        List<Todo> todos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            todos.add(generator.next());
+        }
+
+        try (TempDirectory textDirectory = new TempDirectory("todo-read-text-");
+             TempDirectory binaryDirectory = new TempDirectory("todo-read-binary-")) {
+            List<File> textFiles = new ArrayList<>(size);
+            List<File> binaryFiles = new ArrayList<>(size);
+            for (Todo todo : todos) {
+                textFiles.add(writeTextFile(textDirectory.getFile(), todo));
+                binaryFiles.add(writeBinaryFile(binaryDirectory.getFile(), todo));
+            }
+
+            FileTodoRepository repository = new FileTodoRepository(binaryDirectory.getFile());
+            try {
+                System.out.println("path,records,bytesPerRecord,allocatedBytesPerRecord,nanosPerRecord");
+                long textBytes = totalLength(textFiles) / size;
+                long binaryBytes = totalLength(binaryFiles) / size;
+                // Alla vägar bygger filnamnet från ID:t vid varje läsning, precis som repositoryt gör
+                File textPath = textDirectory.getFile();
+                File binaryPath = binaryDirectory.getFile();
+                measure("text-reader", textBytes, todos, rounds,
+                        i -> readTextFile(todos.get(i).getId(), new File(textPath, todos.get(i).getId() + ".txt")));
+                measure("binary-bytes", binaryBytes, todos, rounds, i -> TodoCodec.decode(
+                        Files.readAllBytes(new File(binaryPath, todos.get(i).getId() + ".todo").toPath())));
+                measure("binary-channel", binaryBytes, todos, rounds,
+                        i -> repository.findById(todos.get(i).getId()));
+            } finally {
+                repository.close();
+            }
+
+            System.err.println("Checksum: " + sink);
+        }
+    }
+
+    private void measure(String name, long bytesPerRecord, List<Todo> todos, int rounds, Reader reader)
+            throws Exception {
+        // Första halvan av varven värmer upp JIT-kompilatorn, andra halvan mäts
+        int warmupRounds = rounds / 2;
+        for (int round = 0; round < warmupRounds; round++) {
+            readAll(todos.size(), reader);
+        }
+
+        int measuredRounds = Math.max(1, rounds - warmupRounds);
+        long allocatedBefore = AllocationCounter.allocatedBytes();
+        long start = System.nanoTime();
+        for (int round = 0; round < measuredRounds; round++) {
+            readAll(todos.size(), reader);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = AllocationCounter.allocatedBytes() - allocatedBefore;
+
+        long records = (long) measuredRounds * todos.size();
+        System.out.printf(Locale.ROOT, "%s,%d,%d,%d,%d%n", name, records, bytesPerRecord,
+                AllocationCounter.isSupported() ? allocated / records : -1, elapsed / records);
+    }
+
+    private void readAll(int size, Reader reader) throws Exception {
+        for (int i = 0; i < size; i++) {
+            sink += reader.read(i).getPriority();
+        }
+    }
+
+    private static long totalLength(List<File> files) {
+        return files.stream().mapToLong(File::length).sum();
+    }
+
+    private static File writeTextFile(File directory, Todo todo) throws IOException {
+        File file = new File(directory, todo.getId() + ".txt");
+        String text = todo.getId() + "\n" + todo.getTitle() + "\n" + todo.getCategory() + "\n"
+                + todo.getStatus().name() + "\n" + todo.getPriority() + "\n" + todo.getDeadline().getTime();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static File writeBinaryFile(File directory, Todo todo) throws IOException {
+        File file = new File(directory, todo.getId() + ".todo");
+        Files.write(file.toPath(), TodoCodec.encode(todo));
+        return file;
+    }
+
+    /**
+     * Den ursprungliga läsvägen från FileTodoRepository, innan binärformatet.
+     */
+    private static Todo readTextFile(UUID todoId, File file) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            reader.readLine();
+            String title = reader.readLine();
+            String category = reader.readLine();
+            TodoStatus status = TodoStatus.valueOf(reader.readLine());
+            int priority = Integer.parseInt(reader.readLine());
+            Date deadline = new Date(Long.parseLong(reader.readLine()));
+            return new Todo(todoId, title, deadline, category, priority, status);
+        }
+    }
+
+    private interface Reader {
+        Todo read(int index) throws Exception;
+    }
+}
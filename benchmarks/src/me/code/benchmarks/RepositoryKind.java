@@ -0,0 +1,87 @@
+package me.code.benchmarks;
+
+import me.code.repositories.FileTodoRepository;
+import me.code.repositories.ITodoRepository;
+import me.code.repositories.JdbcTodoRepository;
+import me.code.repositories.LogTodoRepository;
+import me.code.repositories.MappedTodoRepository;
+
+import java.io.File;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * De repository-implementationer som kan benchmarkas.
+ *
+ * JDBC använder databasen som anges med -Dtodo.jdbc.url, där "{dir}" byts mot
+ * benchmarkens mapp (standard "jdbc:h2:{dir}/todos"). Drivrutinen måste finnas
+ * på classpath, annars hoppas JDBC över när inga repositoryn anges.
+ */
+public enum RepositoryKind {
+    FILE("file"),
+    LOG("log"),
+    MAPPED("mapped"),
+    JDBC("jdbc");
+
+    private static final String DEFAULT_JDBC_URL = "jdbc:h2:{dir}/todos";
+
+    private final String displayName;
+
+    RepositoryKind(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    /**
+     * Öppnar ett repository av denna sort i den givna mappen.
+     */
+    public ITodoRepository open(File directory) throws Exception {
+        return switch (this) {
+            case FILE -> new FileTodoRepository(directory);
+            case LOG -> new LogTodoRepository(directory);
+            case MAPPED -> new MappedTodoRepository(directory);
+            case JDBC -> new JdbcTodoRepository(jdbcUrl(directory));
+        };
+    }
+
+    /**
+     * Om repositoryt kan öppnas här, dvs. för JDBC om det finns en drivrutin för URL:en.
+     */
+    public boolean isAvailable() {
+        if (this != JDBC) {
+            return true;
+        }
+        try {
+            DriverManager.getDriver(jdbcUrl(new File(".")));
+            return true;
+        } catch (SQLException noDriver) {
+            return false;
+        }
+    }
+
+    /**
+     * Alla repositoryn som kan öppnas här, se isAvailable.
+     */
+    public static List<RepositoryKind> available() {
+        return Arrays.stream(values()).filter(RepositoryKind::isAvailable).toList();
+    }
+
+    private static String jdbcUrl(File directory) {
+        return System.getProperty("todo.jdbc.url", DEFAULT_JDBC_URL)
+                .replace("{dir}", directory.getAbsolutePath());
+    }
+
+    public static RepositoryKind fromDisplayName(String name) {
+        for (RepositoryKind kind : values()) {
+            if (kind.displayName.equalsIgnoreCase(name)) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("Unknown repository: " + name);
+    }
+}
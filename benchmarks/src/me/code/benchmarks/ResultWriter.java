@@ -0,0 +1,102 @@
+package me.code.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Skriver benchmark-resultat i ett format som går att läsa in av andra program,
+ * så att man kan jämföra resultaten mellan versioner.
+ *
+ * JSON-formatet innehåller också information om miljön (Java-version, OS och
+ * antal processorer), eftersom siffrorna bara går att jämföra på samma maskin.
+ */
+public class ResultWriter {
+
+    public enum Format {
+        JSON, CSV
+    }
+
+    private static final String CSV_HEADER =
+            "operation,repository,size,iterations,operations,meanNanos,stdDevNanos,minNanos,maxNanos,opsPerSecond,allocatedBytes";
+
+    private ResultWriter() {
+    }
+
+    public static void write(Writer writer, Format format, List<BenchmarkResult> results) throws IOException {
+        switch (format) {
+            case JSON -> writeJson(writer, results);
+            case CSV -> writeCsv(writer, results);
+        }
+        writer.flush();
+    }
+
+    private static void writeCsv(Writer writer, List<BenchmarkResult> results) throws IOException {
+        writer.write(CSV_HEADER + "\n");
+        for (BenchmarkResult result : results) {
+            writer.write(String.join(",",
+                    result.operation(),
+                    result.repository(),
+                    Integer.toString(result.size()),
+                    Integer.toString(result.iterations()),
+                    Long.toString(result.operations()),
+                    number(result.meanNanos()),
+                    number(result.stdDevNanos()),
+                    number(result.minNanos()),
+                    number(result.maxNanos()),
+                    number(result.opsPerSecond()),
+                    number(result.allocatedBytes())) + "\n");
+        }
+    }
+
+    private static void writeJson(Writer writer, List<BenchmarkResult> results) throws IOException {
+        writer.write("{\n");
+        writer.write("  \"timestamp\": " + quote(Instant.now().toString()) + ",\n");
+        writer.write("  \"javaVersion\": " + quote(System.getProperty("java.version")) + ",\n");
+        writer.write("  \"os\": " + quote(System.getProperty("os.name") + " " + System.getProperty("os.arch")) + ",\n");
+        writer.write("  \"availableProcessors\": " + Runtime.getRuntime().availableProcessors() + ",\n");
+        writer.write("  \"results\": [");
+        for (int i = 0; i < results.size(); i++) {
+            BenchmarkResult result = results.get(i);
+            writer.write(i == 0 ? "\n" : ",\n");
+            writer.write("    {\"operation\": " + quote(result.operation())
+                    + ", \"repository\": " + quote(result.repository())
+                    + ", \"size\": " + result.size()
+                    + ", \"iterations\": " + result.iterations()
+                    + ", \"operations\": " + result.operations()
+                    + ", \"meanNanos\": " + number(result.meanNanos())
+                    + ", \"stdDevNanos\": " + number(result.stdDevNanos())
+                    + ", \"minNanos\": " + number(result.minNanos())
+                    + ", \"maxNanos\": " + number(result.maxNanos())
+                    + ", \"opsPerSecond\": " + number(result.opsPerSecond())
+                    + ", \"allocatedBytes\": " + number(result.allocatedBytes()) + "}");
+        }
+        writer.write("\n  ]\n}\n");
+    }
+
+    // Locale.ROOT så att det alltid blir punkt och inte komma som decimaltecken
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static String quote(String value) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> builder.append("\\\"");
+                case '\\' -> builder.append("\\\\");
+                case '\n' -> builder.append("\\n");
+                default -> {
+                    if (c < 0x20) {
+                        builder.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        builder.append(c);
+                    }
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,120 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.repositories.FileTodoRepository;
+import me.code.repositories.TodoCodec;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Mäter hur lång tid FileTodoRepository tar på sig att gå igenom mappen första
+ * gången den används, med och utan parallell genomsökning:
+ *
+ * - serial: en fil i taget (ingen trådpool)
+ * - common: JVM:ens gemensamma ForkJoinPool, som standardkonstruktorn använder
+ * - pool-N: en egen ForkJoinPool med N trådar, för diskar där man mest väntar
+ *
+ * Varje läge mäts på två sätt (kolumnen manifest):
+ *
+ * - none: utan manifest, så varje fil öppnas och läses (som vid första starten)
+ * - present: med ett sparat manifest, så varje fil bara jämförs med manifestet
+ *
+ * Filerna skrivs en gång per storlek och lägena körs växelvis, så att inget
+ * läge ensamt får en varm eller kall sidcache. Medianen av varven skrivs ut.
+ *
+ *   java me.code.benchmarks.ScanBenchmark [antal filer,...] [trådar i pool-N] [antal varv]
+ *
+ * t.ex. "10000,100000,1000000 8 3". En miljon filer tar ungefär 4 GB disk
+ * (ett block per fil) och manifestet behöver runt en halv GB heap.
+ */
+public class ScanBenchmark {
+
+    private static final String MANIFEST_FILE = ".todos.manifest";
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = args.length > 0
+                ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[] {10_000, 100_000};
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        System.err.println("Processors: " + Runtime.getRuntime().availableProcessors()
+                + ", common pool parallelism: " + ForkJoinPool.getCommonPoolParallelism());
+        System.out.println("files,mode,threads,manifest,medianMillis,minMillis,maxMillis");
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (int size : sizes) {
+                run(size, pool, rounds);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void run(int size, ForkJoinPool pool, int rounds) throws Exception {
+        try (TempDirectory directory = new TempDirectory("todo-scan-")) {
+            TodoGenerator generator = new TodoGenerator(42);
+            for (int i = 0; i < size; i++) {
+                Todo todo = generator.next();
+                Files.write(new File(directory.getFile(), todo.getId() + ".todo").toPath(), TodoCodec.encode(todo));
+            }
+
+            List<Mode> modes = List.of(
+                    new Mode("serial", 1, null),
+                    new Mode("common", ForkJoinPool.getCommonPoolParallelism(), ForkJoinPool.commonPool()),
+                    new Mode("pool-" + pool.getParallelism(), pool.getParallelism(), pool));
+            for (boolean withManifest : new boolean[] {false, true}) {
+                Map<Mode, long[]> millis = new LinkedHashMap<>();
+                for (Mode mode : modes) {
+                    millis.put(mode, new long[rounds]);
+                }
+                for (int round = 0; round < rounds; round++) {
+                    for (Mode mode : modes) {
+                        millis.get(mode)[round] = scan(directory.getFile(), mode.pool(), withManifest, size);
+                    }
+                }
+
+                for (Map.Entry<Mode, long[]> entry : millis.entrySet()) {
+                    long[] times = entry.getValue();
+                    Arrays.sort(times);
+                    System.out.printf(Locale.ROOT, "%d,%s,%d,%s,%d,%d,%d%n", size, entry.getKey().name(),
+                            entry.getKey().threads(), withManifest ? "present" : "none",
+                            times[times.length / 2], times[0], times[times.length - 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Öppnar ett nytt repository och låter count läsa in mappen.
+     */
+    private static long scan(File directory, ForkJoinPool pool, boolean withManifest, int size) throws Exception {
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (withManifest) {
+            if (!manifest.isFile()) {
+                try (FileTodoRepository repository = new FileTodoRepository(directory, null, false)) {
+                    repository.count();
+                }
+            }
+        } else {
+            Files.deleteIfExists(manifest.toPath());
+        }
+
+        long start = System.nanoTime();
+        long count;
+        try (FileTodoRepository repository = new FileTodoRepository(directory, pool, false)) {
+            count = repository.count();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (count != size) {
+            throw new IllegalStateException("Expected " + size + " todos, found " + count);
+        }
+        return elapsed / 1_000_000;
+    }
+
+    private record Mode(String name, int threads, ForkJoinPool pool) {
+    }
+}
@@ -0,0 +1,72 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.repositories.ITodoRepository;
+import me.code.services.DefaultTodoService;
+import me.code.services.ITodoService;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Uppsättningen som ett benchmark körs mot: en temporär mapp, ett repository
+ * i mappen och en service ovanpå, fyllda med ett givet antal todos.
+ *
+ * Varje benchmark får en ny fixture så att t.ex. save inte påverkar hur
+ * många todos nästa benchmark arbetar med.
+ */
+public class ServiceFixture implements AutoCloseable {
+
+    private final TempDirectory directory;
+    private final ITodoRepository repository;
+    private final ITodoService service;
+    private final TodoGenerator generator;
+    private final UUID[] ids;
+
+    public ServiceFixture(RepositoryKind kind, int size, long seed) throws Exception {
+        this.directory = new TempDirectory("todo-bench-" + kind.getDisplayName() + "-");
+        this.generator = new TodoGenerator(seed);
+        this.ids = new UUID[size];
+
+        try {
+            // Fyll på direkt i repositoryt och öppna det sedan på nytt, så att
+            // mätningen börjar från ett "kallt" repository som vid en vanlig start
+            try (ITodoRepository loader = kind.open(directory.getFile())) {
+                for (int i = 0; i < size; i++) {
+                    Todo todo = generator.next();
+                    loader.save(todo);
+                    ids[i] = todo.getId();
+                }
+            }
+            this.repository = kind.open(directory.getFile());
+        } catch (Exception exception) {
+            directory.close();
+            throw exception;
+        }
+        this.service = new DefaultTodoService(repository);
+    }
+
+    public ITodoService getService() {
+        return service;
+    }
+
+    public TodoGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Ett slumpat ID bland de todos som lades in från början.
+     */
+    public UUID randomId() {
+        return ids[generator.nextInt(ids.length)];
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            repository.close();
+        } finally {
+            directory.close();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.repositories.FileTodoRepository;
+import me.code.repositories.ITodoRepository;
+import me.code.repositories.ShardedTodoRepository;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mäter ShardedTodoRepository med en FileTodoRepository per shard, och
+ * kontrollerar att en omfördelning ("resharding") inte tappar några todos.
+ *
+ * Första delen sparar samma todos med olika antal shards och mäter:
+ *
+ * - save: saveAll av alla todos (skrivs i alla shards samtidigt)
+ * - findById: slumpade uppslagningar
+ * - findAll: läs alla todos (alla shards samtidigt)
+ *
+ * Andra delen ökar antalet shards medan några trådar skapar, ändrar och raderar
+ * todos samtidigt. Efteråt ska repositoryt innehålla exakt de todos som borde
+ * finnas, var och en en gång och i rätt shard.
+ *
+ *   java me.code.benchmarks.ShardingBenchmark [antal todos] [shards före,shards efter]
+ *
+ * t.ex. "20000 4,6". Resultatet skrivs i CSV-format och programmet avslutas
+ * med felkod 1 om någon kontroll misslyckas.
+ */
+public class ShardingBenchmark {
+
+    private static final int[] SHARD_COUNTS = {1, 4, 16};
+    private static final int LOOKUPS = 2_000;
+    private static final int WRITERS = 4;
+
+    public static void main(String[] args) throws Exception {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        String[] reshard = (args.length > 1 ? args[1] : "4,6").split(",");
+
+        boolean ok = true;
+        System.out.println("shards,todos,saveMillis,findByIdMicros,findAllMillis,consistent");
+        for (int shards : SHARD_COUNTS) {
+            ok &= measure(shards, size);
+        }
+
+        System.out.println();
+        System.out.println("from,to,todos,reshardMillis,concurrentWrites,consistent");
+        ok &= reshard(Integer.parseInt(reshard[0]), Integer.parseInt(reshard[1]), size);
+        if (!ok) {
+            System.err.println("Repository contents did not match");
+            System.exit(1);
+        }
+    }
+
+    private static boolean measure(int shardCount, int size) throws Exception {
+        List<Todo> todos = generate(size);
+        try (TempDirectory directory = new TempDirectory("todo-shards-");
+             ShardedTodoRepository repository = new ShardedTodoRepository(
+                     openShards(directory.getFile(), shardCount), shardCount)) {
+            long start = System.nanoTime();
+            repository.saveAll(todos);
+            long saveNanos = System.nanoTime() - start;
+
+            Random random = new Random(7);
+            boolean consistent = true;
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                Todo expected = todos.get(random.nextInt(todos.size()));
+                consistent &= repository.findById(expected.getId()).getTitle().equals(expected.getTitle());
+            }
+            long lookupNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            consistent &= repository.findAll().size() == size;
+            long findAllNanos = System.nanoTime() - start;
+
+            System.out.printf(Locale.ROOT, "%d,%d,%.1f,%.1f,%.1f,%b%n", shardCount, size, saveNanos / 1e6,
+                    lookupNanos / 1e3 / LOOKUPS, findAllNanos / 1e6, consistent);
+            return consistent;
+        }
+    }
+
+    private static boolean reshard(int from, int to, int size) throws Exception {
+        List<Todo> todos = generate(size);
+        try (TempDirectory directory = new TempDirectory("todo-reshard-")) {
+            List<ITodoRepository> all = openShards(directory.getFile(), Math.max(from, to));
+            ShardedTodoRepository repository = new ShardedTodoRepository(all.subList(0, from), Math.max(from, to));
+            try {
+                repository.saveAll(todos);
+
+                // Vad repositoryt ska innehålla efteråt, uppdateras av skrivtrådarna
+                Map<UUID, TodoStatus> expected = new ConcurrentHashMap<>();
+                for (Todo todo : todos) {
+                    expected.put(todo.getId(), todo.getStatus());
+                }
+
+                AtomicBoolean running = new AtomicBoolean(true);
+                ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+                List<Future<Integer>> writers = new ArrayList<>();
+                for (int w = 0; w < WRITERS; w++) {
+                    int writer = w;
+                    writers.add(executor.submit(() -> write(repository, todos, expected, writer, running)));
+                }
+
+                long start = System.nanoTime();
+                repository.reshard(all.subList(0, to));
+                long reshardNanos = System.nanoTime() - start;
+                running.set(false);
+                int writes = 0;
+                for (Future<Integer> future : writers) {
+                    writes += future.get();
+                }
+                executor.shutdown();
+
+                boolean consistent = verify(repository, all.subList(0, to), expected);
+                System.out.printf(Locale.ROOT, "%d,%d,%d,%.1f,%d,%b%n", from, to, size,
+                        reshardNanos / 1e6, writes, consistent);
+                return consistent;
+            } finally {
+                repository.close();
+                for (ITodoRepository shard : all) {
+                    shard.close();  // Shards som aldrig användes stängs inte av repositoryt
+                }
+            }
+        }
+    }
+
+    /**
+     * Skapar, ändrar och raderar todos tills running blir false. Varje tråd rör
+     * bara "sina" todos, så expected stämmer utan att trådarna behöver samarbeta.
+     */
+    private static int write(ShardedTodoRepository repository, List<Todo> todos, Map<UUID, TodoStatus> expected,
+                             int writer, AtomicBoolean running) throws Exception {
+        TodoGenerator generator = new TodoGenerator(100 + writer);
+        Random random = new Random(writer);
+        int writes = 0;
+        while (running.get()) {
+            int action = random.nextInt(3);
+            if (action == 0) {
+                Todo todo = generator.next();
+                repository.save(todo);
+                expected.put(todo.getId(), todo.getStatus());
+            } else {
+                int index = random.nextInt(todos.size() / WRITERS) * WRITERS + writer;
+                UUID todoId = todos.get(index).getId();
+                if (!expected.containsKey(todoId)) {
+                    continue;
+                }
+                if (action == 1) {
+                    repository.updateStatus(todoId, TodoStatus.COMPLETED);
+                    expected.put(todoId, TodoStatus.COMPLETED);
+                } else {
+                    repository.delete(todoId);
+                    expected.remove(todoId);
+                }
+            }
+            writes++;
+        }
+        return writes;
+    }
+
+    private static boolean verify(ShardedTodoRepository repository, List<ITodoRepository> shards,
+                                  Map<UUID, TodoStatus> expected) throws Exception {
+        Map<UUID, TodoStatus> actual = new HashMap<>();
+        boolean consistent = true;
+        for (ITodoRepository shard : shards) {
+            for (Todo todo : shard.findAll()) {
+                // Varje todo ska finnas en gång, och findById hittar den bara i rätt shard
+                consistent &= actual.put(todo.getId(), todo.getStatus()) == null;
+                consistent &= repository.findById(todo.getId()).getStatus() == todo.getStatus();
+            }
+        }
+        return consistent && actual.equals(expected) && repository.count() == expected.size();
+    }
+
+    private static List<ITodoRepository> openShards(File directory, int count) {
+        List<ITodoRepository> shards = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            shards.add(new FileTodoRepository(new File(directory, "shard-" + i)));
+        }
+        return shards;
+    }
+
+    private static List<Todo> generate(int size) {
+        TodoGenerator generator = new TodoGenerator(42);
+        List<Todo> todos = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            todos.add(generator.next());
+        }
+        return todos;
+    }
+}
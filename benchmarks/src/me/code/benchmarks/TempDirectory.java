@@ -0,0 +1,37 @@
+package me.code.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * En temporär mapp som raderas (med allt innehåll) när den stängs.
+ *
+ * Används med try-with-resources så att benchmarks aldrig lämnar
+ * tusentals todo-filer efter sig.
+ */
+public class TempDirectory implements AutoCloseable {
+
+    private final Path path;
+
+    public TempDirectory(String prefix) throws IOException {
+        this.path = Files.createTempDirectory(prefix);
+    }
+
+    public File getFile() {
+        return path.toFile();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Radera de djupaste filerna först så att mapparna är tomma när de tas bort
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
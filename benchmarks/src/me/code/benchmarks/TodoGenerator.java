@@ -0,0 +1,63 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Skapar påhittade todos till benchmarks.
+ *
+ * Generatorn har ett fast frö (seed) så att samma körning alltid ger samma
+ * todos - annars skulle resultaten från två körningar inte gå att jämföra.
+ * Titlarna byggs av ett litet ordförråd (med å, ä och ö) så att sökningar
+ * faktiskt hittar något.
+ */
+public class TodoGenerator {
+
+    static final String[] WORDS = {
+            "handla", "mjölk", "träna", "löpning", "städa", "köket", "ringa", "mamma",
+            "betala", "räkningar", "läsa", "bok", "skriva", "rapport", "fixa", "cykeln",
+            "boka", "tandläkare", "planera", "resa", "tvätta", "kläder", "laga", "middag"
+    };
+
+    private static final String[] CATEGORIES = {"Hem", "Jobb", "Skola", "Hälsa", "Ekonomi", "Fritid"};
+
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Random random;
+    private final long now = System.currentTimeMillis();
+
+    public TodoGenerator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Skapar en ny todo med slumpade fält och ett nytt ID.
+     */
+    public Todo next() {
+        UUID id = new UUID(random.nextLong(), random.nextLong());
+        String title = word() + " " + word() + " " + word();
+        Date deadline = new Date(now + random.nextInt(365) * DAY_MILLIS);
+        String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+        int priority = 1 + random.nextInt(5);
+        TodoStatus status = TodoStatus.values()[random.nextInt(TodoStatus.values().length)];
+        return new Todo(id, title, deadline, category, priority, status);
+    }
+
+    /**
+     * Ett slumpat ord ur ordförrådet, t.ex. för att använda som sökterm.
+     */
+    public String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    /**
+     * Ett slumpat tal mellan 0 (inklusive) och bound (exklusive).
+     */
+    public int nextInt(int bound) {
+        return random.nextInt(bound);
+    }
+}
@@ -0,0 +1,154 @@
+package me.code.benchmarks;
+
+import me.code.models.Todo;
+import me.code.repositories.ITodoRepository;
+import me.code.services.DefaultTodoService;
+import me.code.services.ITodoService;
+import me.code.services.transfer.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Mäter import och export med TodoImporter och TodoExporter.
+ *
+ * För varje repository:
+ *
+ * 1. Skriv en CSV-fil med påhittade todos, och med några trasiga rader inblandade
+ * 2. Importera CSV-filen till ett tomt repository
+ * 3. Exportera allt till JSON Lines
+ * 4. Importera JSON Lines-filen till ett nytt tomt repository
+ *
+ * Efteråt kontrolleras att de trasiga raderna rapporterades och att båda
+ * repositoryna innehåller exakt de todos som skrevs i steg 1.
+ *
+ *   java me.code.benchmarks.TransferBenchmark [repositories] [antal todos]
+ *
+ * Resultatet skrivs i CSV-format och programmet avslutas med felkod 1 om
+ * någon kontroll misslyckas.
+ */
+public class TransferBenchmark {
+
+    // En trasig rad per så här många todos
+    private static final int INVALID_EVERY = 1000;
+
+    public static void main(String[] args) throws Exception {
+        List<RepositoryKind> kinds = args.length > 0
+                ? Arrays.stream(args[0].split(",")).map(RepositoryKind::fromDisplayName).toList()
+                : RepositoryKind.available();
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        boolean ok = true;
+        System.out.println("repository,step,records,failed,seconds,recordsPerMinute,consistent");
+        for (RepositoryKind kind : kinds) {
+            ok &= run(kind, size);
+        }
+        if (!ok) {
+            System.err.println("Imported todos did not match the source file");
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(RepositoryKind kind, int size) throws Exception {
+        try (TempDirectory directory = new TempDirectory("todo-transfer-")) {
+            Path csv = directory.getFile().toPath().resolve("todos.csv");
+            Path jsonl = directory.getFile().toPath().resolve("todos.jsonl");
+            Map<UUID, Todo> expected = writeCsv(csv, size);
+            long invalid = size / INVALID_EVERY;
+
+            boolean ok = true;
+            try (ITodoRepository repository = kind.open(subdirectory(directory, "first"))) {
+                ITodoService service = new DefaultTodoService(repository);
+                TransferResult imported = new TodoImporter(service).importFrom(csv, ITransferListener.NONE);
+                boolean consistent = imported.failed() == invalid && matches(service, expected);
+                print(kind, "import-csv", imported, consistent);
+                ok &= consistent;
+
+                TransferResult exported = new TodoExporter(service).exportTo(jsonl, ITransferListener.NONE);
+                consistent = exported.succeeded() == size;
+                print(kind, "export-jsonl", exported, consistent);
+                ok &= consistent;
+            }
+
+            try (ITodoRepository repository = kind.open(subdirectory(directory, "second"))) {
+                ITodoService service = new DefaultTodoService(repository);
+                TransferResult imported = new TodoImporter(service).importFrom(jsonl, ITransferListener.NONE);
+                boolean consistent = imported.failed() == 0 && matches(service, expected);
+                print(kind, "import-jsonl", imported, consistent);
+                ok &= consistent;
+            }
+            return ok;
+        }
+    }
+
+    private static File subdirectory(TempDirectory directory, String name) throws Exception {
+        return Files.createDirectory(directory.getFile().toPath().resolve(name)).toFile();
+    }
+
+    /**
+     * Skriver todos till en CSV-fil, med en trasig rad då och då.
+     *
+     * @return Todos som skrevs, med ID som nyckel
+     */
+    private static Map<UUID, Todo> writeCsv(Path file, int size) throws Exception {
+        ITodoFormat format = new CsvTodoFormat();
+        TodoGenerator generator = new TodoGenerator(42);
+        Map<UUID, Todo> todos = new HashMap<>();
+
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            StringBuilder text = new StringBuilder();
+            format.appendHeader(text);
+            for (int i = 0; i < size; i++) {
+                Todo todo = generator.next();
+                if (i % 7 == 0) {
+                    todo.setTitle("\"Citat\", med kommatecken");  // Värden som måste stå inom citattecken
+                }
+                todos.put(todo.getId(), todo);
+                format.append(text, todo);
+                if (i % INVALID_EVERY == INVALID_EVERY - 1) {
+                    text.append(UUID.randomUUID()).append(",Trasig,Hem,inte-ett-tal,2025-01-01,pending\n");
+                }
+                if (text.length() > 64 * 1024) {
+                    writer.write(text.toString());
+                    text.setLength(0);
+                }
+            }
+            writer.write(text.toString());
+        }
+        return todos;
+    }
+
+    /**
+     * Kontrollerar att servicen innehåller exakt de förväntade todos.
+     */
+    private static boolean matches(ITodoService service, Map<UUID, Todo> expected) throws Exception {
+        Map<UUID, Todo> stored;
+        try (Stream<Todo> todos = service.getTodos()) {
+            stored = todos.collect(Collectors.toMap(Todo::getId, todo -> todo));
+        }
+        if (!stored.keySet().equals(expected.keySet())) {
+            return false;
+        }
+
+        for (Todo todo : expected.values()) {
+            Todo other = stored.get(todo.getId());
+            if (!todo.getTitle().equals(other.getTitle()) || !todo.getCategory().equals(other.getCategory())
+                    || todo.getPriority() != other.getPriority() || todo.getStatus() != other.getStatus()
+                    || !TodoRecord.formatDeadline(todo.getDeadline()).equals(TodoRecord.formatDeadline(other.getDeadline()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void print(RepositoryKind kind, String step, TransferResult result, boolean consistent) {
+        System.out.printf(Locale.ROOT, "%s,%s,%d,%d,%.2f,%.0f,%b%n", kind.getDisplayName(), step, result.processed(),
+                result.failed(), result.elapsedNanos() / 1e9, result.recordsPerSecond() * 60, consistent);
+    }
+}
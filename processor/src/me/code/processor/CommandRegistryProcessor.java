@@ -0,0 +1,186 @@
+package me.code.processor;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Annotation processor som skapar klassen me.code.commands.CommandRegistry
+ * när projektet kompileras.
+ *
+ * Tidigare letade Main upp kommandona när programmet startade: den gick
+ * igenom alla .class-filer i mappen för me.code.commands, laddade dem med
+ * Class.forName, sorterade dem efter @CommandInfo och skapade dem med
+ * reflection. Det tar tid vid varje start och fungerar inte alls i en jar-fil,
+ * där det inte finns någon mapp att gå igenom.
+ *
+ * Istället hittar kompilatorn alla klasser med @CommandInfo åt oss, och den här
+ * klassen skriver ut vanlig Java-kod som skapar dem i rätt ordning:
+ *
+ *   public static List<Command> createCommands(ITodoService todoService) {
+ *       return List.of(
+ *               new me.code.commands.CreateTodoCommand(todoService),
+ *               new me.code.commands.ListTodosCommand(todoService),
+ *               ...
+ *   }
+ *
+ * Processorn kompileras först och skickas sedan med när resten kompileras:
+ *
+ *   javac -d out/processor processor/src/me/code/processor/CommandRegistryProcessor.java
+ *   javac -processorpath out/processor -processor me.code.processor.CommandRegistryProcessor \
+ *         -d out/production $(find src -name '*.java')
+ *
+ * (IntelliJ gör samma sak med modulen "processor" och profilen i .idea/compiler.xml.)
+ *
+ * Ett kommando med @CommandInfo måste ärva från Command och ha en publik
+ * konstruktor som tar en ITodoService, annars blir det ett kompileringsfel.
+ */
+@SupportedAnnotationTypes(CommandRegistryProcessor.COMMAND_INFO)
+public class CommandRegistryProcessor extends AbstractProcessor {
+
+    static final String COMMAND_INFO = "me.code.commands.CommandInfo";
+
+    private static final String COMMAND = "me.code.commands.Command";
+    private static final String TODO_SERVICE = "me.code.services.ITodoService";
+    private static final String REGISTRY_PACKAGE = "me.code.commands";
+    private static final String REGISTRY_NAME = "CommandRegistry";
+
+    private boolean generated;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement commandInfo = processingEnv.getElementUtils().getTypeElement(COMMAND_INFO);
+        if (commandInfo == null || roundEnv.processingOver()) {
+            return false;
+        }
+
+        Set<? extends Element> annotated = roundEnv.getElementsAnnotatedWith(commandInfo);
+        if (annotated.isEmpty()) {
+            return false;
+        }
+        if (generated) {
+            // Kommandon som skapas av andra processorer i senare omgångar kommer inte med
+            error(annotated.iterator().next(), "Commands must not be generated by other annotation processors");
+            return false;
+        }
+
+        List<CommandEntry> commands = new ArrayList<>();
+        for (TypeElement type : ElementFilter.typesIn(annotated)) {
+            if (isValidCommand(type)) {
+                commands.add(new CommandEntry(type.getQualifiedName().toString(), getOrder(type, commandInfo), type));
+            }
+        }
+        // Samma ordning som förut: efter order, och efter namn om två har samma order
+        commands.sort(Comparator.comparingInt(CommandEntry::order).thenComparing(CommandEntry::className));
+
+        writeRegistry(commands);
+        generated = true;
+        return true;
+    }
+
+    private boolean isValidCommand(TypeElement type) {
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)
+                || !type.getModifiers().contains(Modifier.PUBLIC)) {
+            error(type, "@CommandInfo can only be used on public, non-abstract classes");
+            return false;
+        }
+
+        TypeElement command = processingEnv.getElementUtils().getTypeElement(COMMAND);
+        if (command == null || !processingEnv.getTypeUtils().isSubtype(type.asType(), command.asType())) {
+            error(type, "A class with @CommandInfo must extend " + COMMAND);
+            return false;
+        }
+
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            List<? extends VariableElement> parameters = constructor.getParameters();
+            if (constructor.getModifiers().contains(Modifier.PUBLIC) && parameters.size() == 1
+                    && isTodoService(parameters.get(0).asType())) {
+                return true;
+            }
+        }
+        error(type, "A class with @CommandInfo must have a public constructor with a single "
+                + TODO_SERVICE + " parameter");
+        return false;
+    }
+
+    private boolean isTodoService(TypeMirror type) {
+        TypeElement service = processingEnv.getElementUtils().getTypeElement(TODO_SERVICE);
+        return service != null && processingEnv.getTypeUtils().isSameType(type, service.asType());
+    }
+
+    /**
+     * Läser värdet av order i @CommandInfo på klassen.
+     */
+    private int getOrder(TypeElement type, TypeElement commandInfo) {
+        for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+            if (!annotation.getAnnotationType().asElement().equals(commandInfo)) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value
+                    : annotation.getElementValues().entrySet()) {
+                if (value.getKey().getSimpleName().contentEquals("order")) {
+                    return (Integer) value.getValue().getValue();
+                }
+            }
+        }
+        return 0;
+    }
+
+    private void writeRegistry(List<CommandEntry> commands) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(REGISTRY_PACKAGE).append(";\n\n")
+                .append("import java.util.List;\n\n")
+                .append("/**\n")
+                .append(" * Alla kommandon med @CommandInfo, sorterade efter order.\n")
+                .append(" *\n")
+                .append(" * Skapad av ").append(CommandRegistryProcessor.class.getName())
+                .append(" när projektet kompilerades, ändra inte för hand.\n")
+                .append(" */\n")
+                .append("@javax.annotation.processing.Generated(\"")
+                .append(CommandRegistryProcessor.class.getName()).append("\")\n")
+                .append("public final class ").append(REGISTRY_NAME).append(" {\n\n")
+                .append("    private ").append(REGISTRY_NAME).append("() {\n")
+                .append("    }\n\n")
+                .append("    public static List<Command> createCommands(").append(TODO_SERVICE)
+                .append(" todoService) {\n")
+                .append("        return List.of(");
+        for (int i = 0; i < commands.size(); i++) {
+            source.append(i == 0 ? "\n" : ",\n")
+                    .append("                new ").append(commands.get(i).className()).append("(todoService)");
+        }
+        source.append("\n        );\n")
+                .append("    }\n")
+                .append("}\n");
+
+        Element[] origins = commands.stream().map(CommandEntry::element).toArray(Element[]::new);
+        try {
+            JavaFileObject file = processingEnv.getFiler()
+                    .createSourceFile(REGISTRY_PACKAGE + "." + REGISTRY_NAME, origins);
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (IOException exception) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not write " + REGISTRY_NAME + ": " + exception.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private record CommandEntry(String className, int order, TypeElement element) {
+    }
+}
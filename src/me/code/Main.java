@@ -3,25 +3,56 @@ package me.code;
 import com.sun.jdi.event.ExceptionEvent;
 import me.code.commands.*;
 import me.code.models.Todo;
-import me.code.repositories.FileTodoRepository;
+import me.code.config.TodoConfig;
+import me.code.metrics.MetricsFormat;
+import me.code.metrics.MetricsRegistry;
+import me.code.metrics.MetricsReporter;
+import me.code.metrics.TodoEvents;
+import me.code.repositories.CachingTodoRepository;
+import me.code.repositories.ITodoRepository;
+import me.code.repositories.ITodoRepositoryProvider;
+import me.code.repositories.InstrumentedTodoRepository;
+import me.code.repositories.WriteBehindTodoRepository;
+import me.code.repositories.cache.IEvictionPolicy;
+import me.code.repositories.cache.LruEvictionPolicy;
+import me.code.repositories.cache.TinyLfuEvictionPolicy;
 import me.code.services.ICommandService;
 import me.code.services.ITodoService;
+import me.code.services.InstrumentedTodoService;
+import me.code.services.SocketCommandService;
 import me.code.services.TerminalCommandService;
 import me.code.services.DefaultTodoService;
 
-import java.io.File;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Enumeration;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.List;
-import java.util.stream.Collectors;
 
 public class Main {
 
+    // Inställningar som väljer och ställer in lagringen, se openRepository
+    private static final String REPOSITORY_KEY = "todo.repository";
+    private static final String CACHE_SIZE_KEY = "todo.cache.size";
+    private static final String CACHE_POLICY_KEY = "todo.cache.policy";
+    private static final String WRITE_BEHIND_KEY = "todo.writebehind.enabled";
+    private static final String WRITE_BEHIND_MAX_DIRTY_KEY = "todo.writebehind.max.dirty";
+    private static final String WRITE_BEHIND_MAX_LATENCY_KEY = "todo.writebehind.max.latency.ms";
+    private static final String DAEMON_SOCKET_KEY = "todo.daemon.socket";
+
+    // Inställningar för mätvärdena, se startMetrics
+    private static final String METRICS_ENABLED_KEY = "todo.metrics.enabled";
+    private static final String METRICS_FILE_KEY = "todo.metrics.file";
+    private static final String METRICS_FORMAT_KEY = "todo.metrics.format";
+    private static final String METRICS_INTERVAL_KEY = "todo.metrics.interval.ms";
+    private static final long DEFAULT_METRICS_INTERVAL_MILLIS = 60_000;
+    private static final String JFR_ENABLED_KEY = "todo.jfr.enabled";
+
+    // Hur många todos som får ligga i läscachen
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
+
     /*
 
     1. Skapa todos (som sparas)
@@ -36,100 +67,190 @@ public class Main {
      */
 
     public static void main(String[] args) {
-        ICommandService commandService = new TerminalCommandService();
-        ITodoService todoService = new DefaultTodoService(
-                new FileTodoRepository()
-        );
+        TodoConfig config;
+        try {
+            config = TodoConfig.load(args);
+        } catch (IOException exception) {
+            System.out.println("Could not read the configuration file, message: " + exception.getMessage());
+            System.exit(1);
+            return;
+        }
+        List<String> arguments = config.getArguments();
 
+        // "--daemon [socket]" kör kommandon åt TodoClient istället för att fråga i terminalen
+        boolean daemon = !arguments.isEmpty() && arguments.get(0).equals("--daemon");
+        ICommandService commandService = daemon
+                ? new SocketCommandService(Path.of(arguments.size() > 1 ? arguments.get(1)
+                        : config.getString(DAEMON_SOCKET_KEY, SocketCommandService.DEFAULT_SOCKET)))
+                : new TerminalCommandService();
+        MetricsReporter metricsReporter;
         try {
-            List<Command> commands = getApplicationCommands(todoService);
-            for (Command command : commands) {
-                commandService.registerCommand(command);
-            }
+            metricsReporter = startMetrics(config);
+        } catch (IllegalArgumentException exception) {
+            System.out.println("Invalid metrics configuration, message: " + exception.getMessage());
+            System.exit(1);
+            return;
+        }
+        ITodoRepository todoRepository;
+        try {
+            todoRepository = openRepository(config);
         } catch (Exception exception) {
-            exception.printStackTrace();
-            System.out.println("Something went wrong! Contact an administrator.");
+            System.out.println("Could not open the todo storage, message: " + exception.getMessage());
+            System.exit(1);
             return;
         }
+        ITodoService todoService = isInstrumented()
+                ? new InstrumentedTodoService(new DefaultTodoService(todoRepository), MetricsRegistry.getDefault())
+                : new DefaultTodoService(todoRepository);
+
+        // Se till att väntande ändringar skrivs till disk när programmet avslutas,
+        // även om det avbryts (t.ex. med Ctrl+C)
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                // Sluta ta emot kommandon innan repositoryt stängs
+                if (commandService instanceof AutoCloseable closeable) {
+                    closeable.close();
+                }
+                todoRepository.close();
+                // Sist, så att filen får med allt som hände innan avslut
+                if (metricsReporter != null) {
+                    metricsReporter.close();
+                }
+            } catch (Exception exception) {
+                exception.printStackTrace();
+            }
+        }, "todo-shutdown"));
+
+        // CommandRegistry skapas av CommandRegistryProcessor när projektet kompileras,
+        // så vi behöver inte leta efter kommandona med reflection när programmet startar
+        for (Command command : CommandRegistry.createCommands(todoService)) {
+            commandService.registerCommand(command);
+        }
 
         if (commandService instanceof TerminalCommandService service) {
+            // "--batch fil" kör kommandona i filen, "--batch" eller "--batch -" läser dem från System.in
+            if (!arguments.isEmpty() && arguments.get(0).equals("--batch")) {
+                String script = arguments.size() > 1 ? arguments.get(1) : "-";
+                System.exit(runBatch(service, script) ? 0 : 1);
+            }
             service.start();
+        } else if (commandService instanceof SocketCommandService service) {
+            try {
+                service.serve();
+            } catch (Exception exception) {
+                System.out.println("Could not start the daemon, message: " + exception.getMessage());
+                System.exit(1);
+            }
         }
     }
 
-    private static List<Command> getApplicationCommands(ITodoService todoService) throws IOException, ClassNotFoundException, NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException {
-        List<Class<?>> commandClasses = Arrays.stream(getClasses("me.code.commands"))
-                .filter(clazz -> clazz.getSuperclass() == Command.class)
-                .sorted((classA, classB) -> {
-                    boolean aHasAnnotation = classA.isAnnotationPresent(CommandInfo.class);
-                    boolean bHasAnnotation = classB.isAnnotationPresent(CommandInfo.class);
-                    if (!aHasAnnotation && !bHasAnnotation) {
-                        return 0;
-                    } else if (aHasAnnotation && !bHasAnnotation) {
-                        return 1;
-                    } else if (!aHasAnnotation && bHasAnnotation) {
-                        return -1;
-                    }
-
-                    CommandInfo infoA = classA.getAnnotation(CommandInfo.class);
-                    CommandInfo infoB = classB.getAnnotation(CommandInfo.class);
-
-                    return Integer.compare(infoA.order(), infoB.order());
-                }).toList();
-
-        List<Command> commands = new ArrayList<>();
-        for (Class<?> clazz : commandClasses) {
-            Constructor<?> constructor = clazz.getConstructor(ITodoService.class);
-            Command command = (Command) constructor.newInstance(todoService);
-            commands.add(command);
+    /**
+     * Öppnar lagringen som valts med inställningen "todo.repository" (se TodoConfig
+     * för var inställningarna kan stå):
+     *
+     *   file    (standard) en fil per todo, se FileTodoRepositoryProvider
+     *   log     en append-only logg, se LogTodoRepositoryProvider
+     *   mapped  en minnesmappad fil, se MappedTodoRepositoryProvider
+     *   jdbc    en inbäddad SQL-databas, se JdbcTodoRepositoryProvider
+     *   sharded todos uppdelade på flera mappar, se ShardedTodoRepositoryProvider
+     *
+     * Vilka som finns avgörs av ServiceLoader, så fler kan läggas till utan att
+     * Main ändras. Alla läser mappen från "todo.data.dir" (standard ".").
+     *
+     * Sedan läggs två lager utanpå:
+     *
+     *   todo.writebehind.enabled         Skriv i bakgrunden med WriteBehindTodoRepository.
+     *                                    Standard är på för file och av för resten.
+     *   todo.writebehind.max.dirty       Max antal väntande ändringar
+     *   todo.writebehind.max.latency.ms  Max tid en ändring får vänta
+     *   todo.cache.size                  Antal todos i läscachen, 0 stänger av den
+     *   todo.cache.policy                tinylfu (standard) eller lru
+     *
+     * Är mätvärdena eller JFR-händelserna på (se startMetrics) mäts anropen både
+     * direkt mot lagringen ("storage.*") och utanför cachen ("repository.*").
+     */
+    private static ITodoRepository openRepository(TodoConfig config) throws Exception {
+        ITodoRepositoryProvider provider = ITodoRepositoryProvider.find(config.getString(REPOSITORY_KEY, "file"));
+        ITodoRepository repository = provider.open(config);
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        if (isInstrumented()) {
+            repository = new InstrumentedTodoRepository(repository, metrics, "storage");
+        }
+
+        if (config.getBoolean(WRITE_BEHIND_KEY, provider.isWriteBehindRecommended())) {
+            repository = new WriteBehindTodoRepository(repository,
+                    config.getInt(WRITE_BEHIND_MAX_DIRTY_KEY, WriteBehindTodoRepository.DEFAULT_MAX_DIRTY_COUNT),
+                    config.getLong(WRITE_BEHIND_MAX_LATENCY_KEY, WriteBehindTodoRepository.DEFAULT_MAX_LATENCY_MILLIS));
         }
 
-        return commands;
+        int cacheSize = config.getInt(CACHE_SIZE_KEY, DEFAULT_CACHE_SIZE);
+        if (cacheSize > 0) {
+            repository = new CachingTodoRepository(repository, createEvictionPolicy(config, cacheSize), cacheSize);
+        }
+        return isInstrumented() ? new InstrumentedTodoRepository(repository, metrics, "repository") : repository;
     }
 
-    private static Class<?>[] getClasses(String packageName)
-            throws ClassNotFoundException, IOException {
-        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
-        assert classLoader != null;
-        String path = packageName.replace('.', '/');
-        Enumeration<URL> resources = classLoader.getResources(path);
-        List<File> dirs = new ArrayList<>();
-        while (resources.hasMoreElements()) {
-            URL resource = resources.nextElement();
-            dirs.add(new File(resource.getFile()));
-        }
-        ArrayList<Class<?>> classes = new ArrayList<>();
-        for (File directory : dirs) {
-            classes.addAll(findClasses(directory, packageName));
-        }
-        return classes.toArray(new Class[classes.size()]);
+    private static IEvictionPolicy createEvictionPolicy(TodoConfig config, int cacheSize) {
+        String policy = config.getString(CACHE_POLICY_KEY, "tinylfu");
+        return switch (policy) {
+            case "tinylfu" -> new TinyLfuEvictionPolicy(cacheSize);
+            case "lru" -> new LruEvictionPolicy();
+            default -> throw new IllegalArgumentException("Unknown cache policy '" + policy
+                    + "', expected tinylfu or lru");
+        };
     }
 
     /**
-     * Recursive method used to find all classes in a given directory and subdirs.
+     * Slår på eller av mätvärdena (se MetricsRegistry och kommandot "stats"):
      *
-     * @param directory   The base directory
-     * @param packageName The package name for classes found inside the base directory
-     * @return The classes
+     *   todo.metrics.enabled      Mät kommandon, service- och repository-anrop (standard true)
+     *   todo.metrics.file         Skriv mätvärdena till den här filen med jämna mellanrum
+     *   todo.metrics.format       prometheus (standard) eller json
+     *   todo.metrics.interval.ms  Tid mellan skrivningarna (standard 60000)
+     *   todo.jfr.enabled          Skapa JFR-händelser när en inspelning pågår (standard true),
+     *                             se TodoEvents
+     *
+     * @return Den som skriver filen, eller null om ingen fil angetts
      */
-    private static List<Class<?>> findClasses(File directory, String packageName) throws ClassNotFoundException {
-        List<Class<?>> classes = new ArrayList<>();
-        if (!directory.exists()) {
-            return classes;
+    private static MetricsReporter startMetrics(TodoConfig config) {
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        metrics.setEnabled(config.getBoolean(METRICS_ENABLED_KEY, true));
+        if (!config.getBoolean(JFR_ENABLED_KEY, true)) {
+            TodoEvents.unregister();
         }
-        File[] files = directory.listFiles();
-        if (files == null) {
-            return classes;
+        String file = config.getString(METRICS_FILE_KEY, null);
+        if (!metrics.isEnabled() || file == null) {
+            return null;
         }
 
-        for (File file : files) {
-            if (file.isDirectory()) {
-                assert !file.getName().contains(".");
-                classes.addAll(findClasses(file, packageName + "." + file.getName()));
-            } else if (file.getName().endsWith(".class")) {
-                classes.add(Class.forName(packageName + '.' + file.getName().substring(0, file.getName().length() - 6)));
-            }
+        MetricsFormat format = MetricsFormat.fromName(config.getString(METRICS_FORMAT_KEY, "prometheus"));
+        long interval = config.getLong(METRICS_INTERVAL_KEY, DEFAULT_METRICS_INTERVAL_MILLIS);
+        if (interval <= 0) {
+            throw new IllegalArgumentException(METRICS_INTERVAL_KEY + " must be positive");
+        }
+        return new MetricsReporter(metrics, Path.of(file), format, interval);
+    }
+
+    /**
+     * Decoratorerna behövs bara om något av mätvärdena och JFR-händelserna är på.
+     */
+    private static boolean isInstrumented() {
+        return MetricsRegistry.getDefault().isEnabled() || TodoEvents.isRegistered();
+    }
+
+    /**
+     * Kör ett skript med kommandon, se TerminalCommandService.runBatch.
+     *
+     * @return true om alla kommandon lyckades
+     */
+    private static boolean runBatch(TerminalCommandService service, String script) {
+        try (BufferedReader reader = script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(script), StandardCharsets.UTF_8)) {
+            return service.runBatch(reader) == 0;
+        } catch (IOException exception) {
+            System.out.println("Could not read the script, message: " + exception.getMessage());
+            return false;
         }
-        return classes;
     }
 }
@@ -0,0 +1,76 @@
+package me.code;
+
+import me.code.services.CommandProtocol;
+import me.code.services.SocketCommandService;
+import me.code.utility.CommandHelper;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Liten klient som kör kommandon i en daemon (se SocketCommandService).
+ *
+ *   java me.code.TodoClient [--socket fil] <kommando> [argument...]
+ *   java me.code.TodoClient [--socket fil] -
+ *
+ * Den första formen kör ett kommando, t.ex. "complete-todo <id>". Skalet har
+ * redan delat upp argumenten, så text med mellanslag skrivs inom citattecken
+ * som vanligt. Den andra formen läser ett kommando per rad från System.in,
+ * som TerminalCommandService.runBatch, och skickar alla över samma anslutning.
+ *
+ * Klienten läser inga todos och laddar nästan inga klasser, så den startar
+ * snabbt. Kommandots utskrifter skrivs till System.out. Programmet avslutas
+ * med felkod 1 om något kommando misslyckades och 2 om daemonen inte svarar.
+ */
+public class TodoClient {
+
+    public static void main(String[] args) {
+        Path socket = Path.of(SocketCommandService.DEFAULT_SOCKET);
+        List<String> words = Arrays.asList(args);
+        if (words.size() >= 2 && words.get(0).equals("--socket")) {
+            socket = Path.of(words.get(1));
+            words = words.subList(2, words.size());
+        }
+        if (words.isEmpty()) {
+            System.err.println("Usage: TodoClient [--socket file] <command> [arguments...] | -");
+            System.exit(2);
+        }
+
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            boolean ok = true;
+            if (words.equals(List.of("-"))) {
+                BufferedReader script = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                String line;
+                while ((line = script.readLine()) != null) {
+                    String trimmed = line.trim();
+                    if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                        ok &= send(in, out, CommandHelper.splitArguments(line));
+                    }
+                }
+            } else {
+                ok = send(in, out, words);
+            }
+            System.exit(ok ? 0 : 1);
+        } catch (IOException exception) {
+            System.err.println("Could not reach the daemon at " + socket.toAbsolutePath()
+                    + ", start it with --daemon. Message: " + exception.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private static boolean send(DataInputStream in, DataOutputStream out, List<String> words) throws IOException {
+        CommandProtocol.writeRequest(out, words);
+        CommandProtocol.Response response = CommandProtocol.readResponse(in);
+        System.out.print(response.output());
+        System.out.flush();
+        return response.ok();
+    }
+}
@@ -1,5 +1,9 @@
 package me.code.commands;
 
+import me.code.metrics.CommandEvent;
+import me.code.metrics.IoCounters;
+import me.code.metrics.MetricsRegistry;
+import me.code.metrics.OperationMetrics;
 import me.code.services.ITodoService;
 
 /**
@@ -20,6 +24,9 @@ public abstract class Command {
     protected final String description;    // Beskrivning av vad kommandot gör
     protected final ITodoService todoService;  // Service för att hantera todos
 
+    // Mätvärdena för kommandot, slås upp första gången det körs
+    private OperationMetrics metrics;
+
     /**
      * Konstruktor som alla subklasser måste använda.
      *
@@ -43,8 +50,60 @@ public abstract class Command {
      * Här lägger du logiken för vad kommandot ska göra när det körs.
      * Varje kommando (CreateTodoCommand, DeleteTodoCommand, etc.) har sin egen
      * implementation av denna metod.
+     *
+     * Värden läses med context.prompt (från argumenten eller terminalen), och
+     * fel rapporteras med context.fail så att ett skript vet att något gick fel.
+     *
+     * @param context Argumenten och terminalen, se CommandContext
      */
-    public abstract void execute();
+    public abstract void execute(CommandContext context);
+
+    /**
+     * Kör kommandot och mäter hur lång tid det tog, under namnet "command.<namn>"
+     * i MetricsRegistry. Ett kommando som anropar context.fail räknas som misslyckat.
+     *
+     * Pågår en JFR-inspelning blir körningen också en CommandEvent.
+     *
+     * Tjänsterna (TerminalCommandService, SocketCommandService) anropar run
+     * istället för execute, så att alla kommandon mäts på samma ställe.
+     *
+     * @param context Argumenten och terminalen, se CommandContext
+     */
+    public final void run(CommandContext context) {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        CommandEvent event = new CommandEvent();
+        boolean measured = registry.isEnabled();
+        if (!measured && !event.isEnabled()) {
+            execute(context);
+            return;
+        }
+
+        if (metrics == null) {
+            metrics = registry.operation("command." + name);
+        }
+        long[] io = IoCounters.forCurrentThread();
+        long read = io[0];
+        long written = io[1];
+        event.begin();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            execute(context);
+            failed = context.hasFailed();
+        } finally {
+            if (measured) {
+                metrics.record(System.nanoTime() - start, failed);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.command = name;
+                event.bytesRead = io[0] - read;
+                event.bytesWritten = io[1] - written;
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
 
     /**
      * Hämtar kommandots namn.
@@ -0,0 +1,134 @@
+package me.code.commands;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * Det ett kommando läser sina värden från när det körs.
+ *
+ * Värdena kan skrivas direkt efter kommandots namn, t.ex.
+ *
+ *   complete-todo 123e4567-e89b-12d3-a456-426614174000
+ *   create-todo "Handla mat" Hem 3 2025-01-31
+ *
+ * (text med mellanslag skrivs inom citattecken, och "" är ett tomt värde).
+ * prompt tar då nästa argument istället för att fråga. När argumenten är
+ * slut frågar vi användaren - om det finns någon att fråga. I batchläge
+ * (input == null) finns ingen, och då misslyckas kommandot istället för att
+ * vänta på svar som aldrig kommer.
+ *
+ * Alla kommandon i samma session delar samma Scanner, så att inget som
+ * användaren skrivit fastnar i bufferten hos en Scanner som inte används längre.
+ *
+ * Kommandon skriver sina utskrifter till getOut() istället för direkt till
+ * System.out. Då kan t.ex. SocketCommandService skicka utskrifterna till
+ * klienten som körde kommandot.
+ */
+public class CommandContext {
+
+    private final List<String> arguments;
+    private final Scanner input;
+    private final PrintStream out;
+    private int nextArgument;
+    private boolean failed;
+
+    /**
+     * @param arguments Argumenten som skrevs efter kommandots namn
+     * @param input Terminalen att fråga när argumenten är slut, eller null i batchläge
+     */
+    public CommandContext(List<String> arguments, Scanner input) {
+        this(arguments, input, System.out);
+    }
+
+    /**
+     * @param arguments Argumenten som skrevs efter kommandots namn
+     * @param input Terminalen att fråga när argumenten är slut, eller null i batchläge
+     * @param out Dit kommandots utskrifter ska skrivas
+     */
+    public CommandContext(List<String> arguments, Scanner input, PrintStream out) {
+        this.arguments = arguments;
+        this.input = input;
+        this.out = out;
+    }
+
+    /**
+     * Läser nästa värde: nästa argument om det finns, annars frågar vi användaren.
+     *
+     * @param prompt Frågan som visas för användaren, t.ex. "Enter a title: "
+     * @throws IllegalArgumentException Om argumenten är slut i batchläge
+     */
+    public String prompt(String prompt) {
+        if (nextArgument < arguments.size()) {
+            return arguments.get(nextArgument++);
+        }
+        if (input == null) {
+            throw new IllegalArgumentException("Missing argument for \"" + prompt.replaceAll("[:\\s]+$", "") + "\"");
+        }
+
+        out.print(prompt);
+        return input.nextLine();
+    }
+
+    /**
+     * Som prompt, men i batchläge används defaultValue när argumenten är slut.
+     * För frågor som ett skript inte behöver svara på, t.ex. "Show more results?".
+     */
+    public String prompt(String prompt, String defaultValue) {
+        if (nextArgument >= arguments.size() && input == null) {
+            return defaultValue;
+        }
+        return prompt(prompt);
+    }
+
+    /**
+     * Berättar att ett värde var ogiltigt. Interaktivt skrivs meddelandet ut
+     * och användaren kan försöka igen, i batchläge finns ingen som kan svara
+     * om - då avbryts kommandot.
+     *
+     * @throws IllegalArgumentException I batchläge
+     */
+    public void invalidInput(String message) {
+        if (input == null) {
+            throw new IllegalArgumentException(message);
+        }
+        out.println(message);
+    }
+
+    /**
+     * Skriver ut ett felmeddelande och markerar att kommandot misslyckades,
+     * så att ett skript kan avslutas med en felkod.
+     */
+    public void fail(String message) {
+        failed = true;
+        out.println(message);
+    }
+
+    /**
+     * Dit kommandot ska skriva sina utskrifter.
+     */
+    public PrintStream getOut() {
+        return out;
+    }
+
+    /**
+     * Om kommandot har misslyckats, se fail.
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    /**
+     * Argument som kommandot aldrig läste - i ett skript är det oftast ett stavfel.
+     */
+    public List<String> getUnusedArguments() {
+        return arguments.subList(nextArgument, arguments.size());
+    }
+
+    /**
+     * Om det finns en användare att fråga, dvs. om vi inte kör i batchläge.
+     */
+    public boolean isInteractive() {
+        return input != null;
+    }
+}
@@ -16,8 +16,8 @@ public class CompleteTodoCommand extends Command {
     }
 
     @Override
-    public void execute() {
-        UUID todoId = CommandHelper.queryTodoId();
+    public void execute(CommandContext context) {
+        UUID todoId = CommandHelper.queryTodoId(context);
         if (todoId == null) {
             return;
         }
@@ -26,14 +26,14 @@ public class CompleteTodoCommand extends Command {
         try {
             todo = todoService.updateTodoStatusById(todoId, TodoStatus.COMPLETED);
         } catch (Exception exception) {
-            System.out.println("An error occurred, message: " + exception.getMessage());
+            context.fail("An error occurred, message: " + exception.getMessage());
             return;
         }
 
         if (todo != null) {
-            System.out.println("Todo '" + todo.getTitle() + "' is now completed.");
+            context.getOut().println("Todo '" + todo.getTitle() + "' is now completed.");
         } else {
-            System.out.println("No such todo was found.");
+            context.fail("No such todo was found.");
         }
     }
 }
@@ -0,0 +1,36 @@
+package me.code.commands;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.services.ITodoService;
+import me.code.services.TodoQuery;
+import me.code.utility.CommandHelper;
+
+import java.util.List;
+
+@CommandInfo(order = 9)
+public class CompleteTodosCommand extends Command {
+
+    public CompleteTodosCommand(ITodoService todoService) {
+        super("complete-todos", "Mark all todos matching a filter as completed", todoService);
+    }
+
+    @Override
+    public void execute(CommandContext context) {
+        context.getOut().println("Choose which todos to update, leave a field empty to match everything.");
+        TodoQuery query = CommandHelper.queryTodoFilter(context);
+
+        List<Todo> todos;
+        try {
+            todos = todoService.updateTodoStatusWhere(query::matches, TodoStatus.COMPLETED);
+        } catch (Exception exception) {
+            context.fail("An error occurred, message: " + exception.getMessage());
+            return;
+        }
+
+        todos.forEach(todo -> {
+            context.getOut().println(" - " + todo.toString());
+        });
+        context.getOut().println(todos.size() + " todo(s) are now completed.");
+    }
+}
@@ -10,12 +10,12 @@ public class CountTodosCommand extends Command {
     }
 
     @Override
-    public void execute() {
+    public void execute(CommandContext context) {
         try {
-            long count = todoService.getTodos().count();
-            System.out.println("Todos: " + count);
+            long count = todoService.countTodos();
+            context.getOut().println("Todos: " + count);
         } catch (Exception exception) {
-            System.out.println("Something went wrong, try again later!");
+            context.fail("Something went wrong, try again later!");
             exception.printStackTrace();
         }
     }
@@ -4,10 +4,8 @@ import me.code.models.Todo;
 import me.code.services.DefaultTodoService;
 import me.code.services.ITodoService;
 
-import java.text.ParseException;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
-import java.util.InputMismatchException;
-import java.util.Scanner;
 
 @CommandInfo(order = 1)
 public class CreateTodoCommand extends Command {
@@ -17,18 +15,15 @@ public class CreateTodoCommand extends Command {
     }
 
     @Override
-    public void execute() {
-        Scanner scanner = new Scanner(System.in);
-        System.out.println("Create a todo.");
-        System.out.print("Enter a title: ");
-        String title = scanner.nextLine();
+    public void execute(CommandContext context) {
+        context.getOut().println("Create a todo.");
+        String title = context.prompt("Enter a title: ");
 
         String category = "";
         while (true) {
-            System.out.print("Enter a category: ");
-            category = scanner.nextLine();
+            category = context.prompt("Enter a category: ");
             if (category.isBlank()) {
-                System.out.println("Category may not be empty or blank.");
+                context.invalidInput("Category may not be empty or blank.");
             } else {
                 break;
             }
@@ -36,35 +31,32 @@ public class CreateTodoCommand extends Command {
 
         int priority = 0;
         while (true) {
-            System.out.print("Enter a priority (higher number is higher priority): ");
             try {
-                priority = scanner.nextInt();
-                scanner.nextLine();
+                priority = Integer.parseInt(context.prompt("Enter a priority (higher number is higher priority): ").trim());
                 break;
-            } catch (InputMismatchException ignored) {
-                System.out.println("You must provide a valid number.");
+            } catch (NumberFormatException ignored) {
+                context.invalidInput("You must provide a valid number.");
             }
         }
 
         Date deadline;
         while (true) {
-            System.out.print("Enter a deadline date (year-month-day): ");
-            String deadlineDateString = scanner.nextLine();
+            String deadlineDateString = context.prompt("Enter a deadline date (year-month-day): ");
 
             try {
-                deadline = Todo.DATE_FORMAT.parse(deadlineDateString);
+                deadline = Todo.parseDate(deadlineDateString);
                 break;
-            } catch (ParseException ignored) {
-                System.out.println("Invalid date format, try again.");
+            } catch (DateTimeParseException ignored) {
+                context.invalidInput("Invalid date format, try again.");
             }
         }
 
         Todo todo = new Todo(title, deadline, category, priority);
         try {
             todoService.createTodo(todo);
-            System.out.println("Todo '" + title + "' has been created!");
+            context.getOut().println("Todo '" + title + "' has been created!");
         } catch (Exception exception) {
-            System.out.println("An error occurred, message: " + exception.getMessage());
+            context.fail("An error occurred, message: " + exception.getMessage());
         }
     }
 }
@@ -15,8 +15,8 @@ public class DeleteTodoCommand extends Command {
     }
 
     @Override
-    public void execute() {
-        UUID todoId = CommandHelper.queryTodoId();
+    public void execute(CommandContext context) {
+        UUID todoId = CommandHelper.queryTodoId(context);
         if (todoId == null) {
             return;
         }
@@ -25,14 +25,14 @@ public class DeleteTodoCommand extends Command {
         try {
             todo = todoService.deleteTodoById(todoId);
         } catch (Exception exception) {
-            System.out.println("An error occurred, message: " + exception.getMessage());
+            context.fail("An error occurred, message: " + exception.getMessage());
             return;
         }
 
         if (todo == null) {
-            System.out.println("No such todo was found.");
+            context.fail("No such todo was found.");
         } else {
-            System.out.println("Deleted todo with title '" + todo.getTitle() + "'");
+            context.getOut().println("Deleted todo with title '" + todo.getTitle() + "'");
         }
     }
 }
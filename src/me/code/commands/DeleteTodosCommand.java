@@ -0,0 +1,56 @@
+package me.code.commands;
+
+import me.code.models.Todo;
+import me.code.services.ITodoService;
+import me.code.services.TodoQuery;
+import me.code.utility.CommandHelper;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+@CommandInfo(order = 11)
+public class DeleteTodosCommand extends Command {
+
+    public DeleteTodosCommand(ITodoService todoService) {
+        super("delete-todos", "Remove all todos matching a filter", todoService);
+    }
+
+    @Override
+    public void execute(CommandContext context) {
+        context.getOut().println("Choose which todos to delete, leave a field empty to match everything.");
+        TodoQuery query = CommandHelper.queryTodoFilter(context);
+
+        List<UUID> todoIds;
+        try (Stream<Todo> todos = todoService.findTodos(query)) {
+            todoIds = todos.map(Todo::getId).toList();
+        } catch (Exception exception) {
+            context.fail("An error occurred, message: " + exception.getMessage());
+            return;
+        }
+
+        if (todoIds.isEmpty()) {
+            context.getOut().println("No matching todos were found.");
+            return;
+        }
+
+        // I ett skript måste "y" skrivas ut som argument, vi gissar aldrig ja
+        if (!context.prompt("Delete " + todoIds.size() + " todo(s)? (y/n): ").trim().equalsIgnoreCase("y")) {
+            context.getOut().println("Nothing was deleted.");
+            return;
+        }
+
+        List<Todo> deleted;
+        try {
+            deleted = todoService.deleteTodosById(todoIds);
+        } catch (Exception exception) {
+            context.fail("An error occurred, message: " + exception.getMessage());
+            return;
+        }
+
+        deleted.forEach(todo -> {
+            context.getOut().println(" - " + todo.getTitle());
+        });
+        context.getOut().println("Deleted " + deleted.size() + " todo(s).");
+    }
+}
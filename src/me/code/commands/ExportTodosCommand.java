@@ -0,0 +1,40 @@
+package me.code.commands;
+
+import me.code.services.ITodoService;
+import me.code.services.transfer.ITransferListener;
+import me.code.services.transfer.TodoExporter;
+import me.code.services.transfer.TransferResult;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+@CommandInfo(order = 13)
+public class ExportTodosCommand extends Command {
+
+    public ExportTodosCommand(ITodoService todoService) {
+        super("export-todos", "Export all todos to a .csv or .jsonl file", todoService);
+    }
+
+    @Override
+    public void execute(CommandContext context) {
+        Path file = Path.of(context.prompt("Enter the file to export to (.csv or .jsonl): ").trim());
+
+        TransferResult result;
+        try {
+            result = new TodoExporter(todoService).exportTo(file, new ITransferListener() {
+                @Override
+                public void onProgress(long processed, long failed) {
+                    context.getOut().print("\rWrote " + processed + " todos...");
+                }
+            });
+        } catch (Exception exception) {
+            context.getOut().println();
+            context.fail("An error occurred, message: " + exception.getMessage());
+            return;
+        }
+
+        context.getOut().println();
+        context.getOut().printf(Locale.ROOT, "Exported %d todo(s) to %s in %.1f seconds.%n",
+                result.succeeded(), file, result.elapsedNanos() / 1e9);
+    }
+}
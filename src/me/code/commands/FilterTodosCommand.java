@@ -0,0 +1,36 @@
+package me.code.commands;
+
+import me.code.models.Todo;
+import me.code.services.ITodoService;
+import me.code.services.TodoQuery;
+import me.code.utility.CommandHelper;
+
+import java.util.stream.Stream;
+
+@CommandInfo(order = 8)
+public class FilterTodosCommand extends Command {
+
+    public FilterTodosCommand(ITodoService todoService) {
+        super("filter-todos", "Filter todos by status, category and deadline", todoService);
+    }
+
+    @Override
+    public void execute(CommandContext context) {
+        context.getOut().println("Filter todos, leave a field empty to match everything.");
+        TodoQuery query = CommandHelper.queryTodoFilter(context).orderBy(TodoQuery.Order.PRIORITY);
+
+        Stream<Todo> todos;
+        try {
+            todos = todoService.findTodos(query);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            context.fail("Something went wrong!");
+            return;
+        }
+
+        context.getOut().println("Matching todos (highest priority first):");
+        todos.forEach(todo -> {
+            context.getOut().println(" - " + todo.toString());
+        });
+    }
+}
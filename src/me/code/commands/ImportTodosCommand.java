@@ -0,0 +1,58 @@
+package me.code.commands;
+
+import me.code.services.ITodoService;
+import me.code.services.transfer.ITransferListener;
+import me.code.services.transfer.TodoImporter;
+import me.code.services.transfer.TransferError;
+import me.code.services.transfer.TransferResult;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+@CommandInfo(order = 12)
+public class ImportTodosCommand extends Command {
+
+    // Så många fel skrivs ut medan importen pågår, resten räknas bara
+    private static final int PRINTED_ERRORS = 10;
+
+    public ImportTodosCommand(ITodoService todoService) {
+        super("import-todos", "Import todos from a .csv or .jsonl file", todoService);
+    }
+
+    @Override
+    public void execute(CommandContext context) {
+        Path file = Path.of(context.prompt("Enter the file to import from (.csv or .jsonl): ").trim());
+        if (!Files.isRegularFile(file)) {
+            context.fail("No such file was found.");
+            return;
+        }
+
+        TransferResult result;
+        try {
+            result = new TodoImporter(todoService).importFrom(file, new ITransferListener() {
+                private long printedErrors;
+
+                @Override
+                public void onProgress(long processed, long failed) {
+                    context.getOut().print("\rRead " + processed + " records...");
+                }
+
+                @Override
+                public void onError(TransferError error) {
+                    if (printedErrors++ < PRINTED_ERRORS) {
+                        context.getOut().println("\r" + error);
+                    }
+                }
+            });
+        } catch (Exception exception) {
+            context.getOut().println();
+            context.fail("An error occurred, message: " + exception.getMessage());
+            return;
+        }
+
+        context.getOut().println();
+        context.getOut().printf(Locale.ROOT, "Imported %d todo(s), skipped %d invalid record(s) in %.1f seconds.%n",
+                result.succeeded(), result.failed(), result.elapsedNanos() / 1e9);
+    }
+}
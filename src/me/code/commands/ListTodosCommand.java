@@ -14,19 +14,26 @@ public class ListTodosCommand extends Command {
     }
 
     @Override
-    public void execute() {
+    public void execute(CommandContext context) {
         Stream<Todo> todos;
         try {
             todos = todoService.getTodos();
         } catch (Exception exception) {
             exception.printStackTrace();
-            System.out.println("Something went wrong!");
+            context.fail("Something went wrong!");
             return;
         }
 
-        System.out.println("Created todos:");
-        todos.forEach(todo -> {
-            System.out.println(" - " + todo.toString());
-        });
+        // try-with-resources stänger streamen (och eventuella öppna filer) när vi är klara
+        try (todos) {
+            context.getOut().println("Created todos:");
+            todos.forEach(todo -> {
+                context.getOut().println(" - " + todo.toString());
+            });
+        } catch (RuntimeException exception) {
+            // Todos läses medan vi skriver ut dem, så fel kan uppstå även här
+            exception.printStackTrace();
+            context.fail("Something went wrong!");
+        }
     }
 }
@@ -4,34 +4,47 @@ import me.code.models.Todo;
 import me.code.services.DefaultTodoService;
 import me.code.services.ITodoService;
 
-import java.util.Scanner;
-import java.util.stream.Stream;
+import java.util.List;
 
 @CommandInfo(order = 3)
 public class SearchTodosCommand extends Command {
 
+    // Antal träffar som visas per sida
+    private static final int PAGE_SIZE = 10;
+
     public SearchTodosCommand(ITodoService todoService) {
         super("search-todos", "Search for todos", todoService);
     }
 
     @Override
-    public void execute() {
-        Scanner scanner = new Scanner(System.in);
-        System.out.println("Search for todos.");
-        System.out.print("Enter a search query: ");
-        String query = scanner.nextLine();
-
-        Stream<Todo> stream;
-        try {
-            stream = todoService.searchTodos(query);
-        } catch (Exception exception) {
-            exception.printStackTrace();
-            System.out.println("Something went wrong!");
-            return;
-        }
+    public void execute(CommandContext context) {
+        context.getOut().println("Search for todos.");
+        String query = context.prompt("Enter a search query: ");
+
+        // Visa bästa träffarna en sida i taget
+        int offset = 0;
+        while (true) {
+            List<Todo> page;
+            try {
+                page = todoService.searchTodos(query, offset, PAGE_SIZE).toList();
+            } catch (Exception exception) {
+                exception.printStackTrace();
+                context.fail("Something went wrong!");
+                return;
+            }
 
-        stream.forEach(todo -> {
-            System.out.println(" - " + todo.toString());
-        });
+            page.forEach(todo -> {
+                context.getOut().println(" - " + todo.toString());
+            });
+
+            if (page.size() < PAGE_SIZE) {
+                return;
+            }
+
+            if (!context.prompt("Show more results? (y/n): ", "n").trim().equalsIgnoreCase("y")) {
+                return;
+            }
+            offset += PAGE_SIZE;
+        }
     }
 }
@@ -0,0 +1,51 @@
+package me.code.commands;
+
+import me.code.metrics.IoCounters;
+import me.code.metrics.LatencyHistogram;
+import me.code.metrics.MetricsRegistry;
+import me.code.metrics.OperationMetrics;
+import me.code.services.ITodoService;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Visar mätvärdena som samlats sedan programmet startade: hur många gånger
+ * varje kommando, service-metod och repository-metod har anropats, hur lång
+ * tid anropen tog (median, 99:e percentilen osv.) och hur mycket data de läste
+ * och skrev. Körs programmet som daemon visas värdena för alla klienter.
+ */
+@CommandInfo(order = 14)
+public class StatsCommand extends Command {
+
+    public StatsCommand(ITodoService todoService) {
+        super("stats", "Show timings for commands and storage calls", todoService);
+    }
+
+    @Override
+    public void execute(CommandContext context) {
+        MetricsRegistry registry = MetricsRegistry.getDefault();
+        PrintStream out = context.getOut();
+        if (!registry.isEnabled()) {
+            out.println("Metrics are turned off (todo.metrics.enabled=false).");
+            return;
+        }
+
+        out.printf(Locale.ROOT, "%-34s %8s %6s %9s %9s %9s %9s %9s %10s %10s%n", "operation", "count", "errors",
+                "mean ms", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "read kB", "written kB");
+        for (OperationMetrics operation : registry.getOperations()) {
+            LatencyHistogram.Snapshot latency = operation.getLatency();
+            if (latency.getCount() == 0) {
+                continue;
+            }
+            out.printf(Locale.ROOT, "%-34s %8d %6d %9.3f %9.3f %9.3f %9.3f %9.3f %10.1f %10.1f%n",
+                    operation.getName(), latency.getCount(), operation.getErrors(),
+                    latency.getMeanNanos() / 1e6, latency.getPercentileNanos(50) / 1e6,
+                    latency.getPercentileNanos(99) / 1e6, latency.getPercentileNanos(99.9) / 1e6,
+                    latency.getMaxNanos() / 1e6, operation.getBytesRead() / 1024.0,
+                    operation.getBytesWritten() / 1024.0);
+        }
+        out.printf(Locale.ROOT, "Storage in all threads: %.1f kB read, %.1f kB written.%n",
+                IoCounters.getTotalRead() / 1024.0, IoCounters.getTotalWritten() / 1024.0);
+    }
+}
@@ -0,0 +1,197 @@
+package me.code.config;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Inställningar för programmet, t.ex. vilken lagring som ska användas och hur
+ * stor cachen är.
+ *
+ * Varje inställning har en nyckel som "todo.cache.size", och värdet letas upp
+ * på fyra ställen. Det första som har ett värde vinner:
+ *
+ *   1. Flaggor på kommandoraden:   --cache-size=50000  (eller --todo.cache.size=50000)
+ *   2. Systemegenskaper:           -Dtodo.cache.size=50000
+ *   3. Miljövariabler:             TODO_CACHE_SIZE=50000
+ *   4. En properties-fil:          todo.cache.size=50000
+ *
+ * Finns värdet ingenstans används standardvärdet som anges i koden.
+ *
+ * Properties-filen anges med --config=fil (eller todo.config på något av de
+ * andra ställena). Annars läses "todo.properties" i mappen där programmet
+ * körs, om den finns. På så sätt kan samma program ställas in olika på olika
+ * datorer utan att kompileras om.
+ *
+ * Argument som inte börjar med "--" och inte har formen --nyckel=värde (t.ex.
+ * "--batch fil") lämnas kvar och kan hämtas med getArguments.
+ */
+public class TodoConfig {
+
+    public static final String CONFIG_KEY = "todo.config";
+    public static final String DEFAULT_CONFIG_FILE = "todo.properties";
+
+    private static final String KEY_PREFIX = "todo.";
+
+    private final Map<String, String> flags;
+    private final Map<String, String> environment;
+    private final Properties systemProperties;
+    private final Properties file;
+    private final List<String> arguments;
+
+    /**
+     * Skapar inställningar från givna källor, bra för benchmarks som vill välja själva.
+     *
+     * @param flags Värden som gäller före allt annat, nyckel -> värde
+     * @param environment Miljövariabler, t.ex. System.getenv()
+     * @param systemProperties Systemegenskaper, t.ex. System.getProperties()
+     * @param file Värden från properties-filen
+     * @param arguments Övriga argument från kommandoraden
+     */
+    public TodoConfig(Map<String, String> flags, Map<String, String> environment,
+                      Properties systemProperties, Properties file, List<String> arguments) {
+        this.flags = Map.copyOf(flags);
+        this.environment = environment;
+        this.systemProperties = systemProperties;
+        this.file = file;
+        this.arguments = List.copyOf(arguments);
+    }
+
+    /**
+     * Läser inställningarna för programmet från kommandoraden, systemegenskaperna,
+     * miljövariablerna och properties-filen.
+     *
+     * @param args Argumenten till main
+     * @throws IOException Om properties-filen inte kan läsas
+     */
+    public static TodoConfig load(String[] args) throws IOException {
+        Map<String, String> flags = new HashMap<>();
+        List<String> arguments = new ArrayList<>();
+        for (String argument : args) {
+            int equals = argument.indexOf('=');
+            if (argument.startsWith("--") && equals > 2) {
+                flags.put(toKey(argument.substring(2, equals)), argument.substring(equals + 1));
+            } else {
+                arguments.add(argument);
+            }
+        }
+
+        TodoConfig withoutFile = new TodoConfig(flags, System.getenv(), System.getProperties(),
+                new Properties(), arguments);
+        String configFile = withoutFile.getString(CONFIG_KEY, null);
+        Properties file = new Properties();
+        if (configFile != null) {
+            // En fil som angetts uttryckligen måste finnas
+            readProperties(Path.of(configFile), file);
+        } else if (Files.isRegularFile(Path.of(DEFAULT_CONFIG_FILE))) {
+            readProperties(Path.of(DEFAULT_CONFIG_FILE), file);
+        }
+        return new TodoConfig(flags, System.getenv(), System.getProperties(), file, arguments);
+    }
+
+    /**
+     * En kopia där key har värdet value, före alla andra källor. Används t.ex. för
+     * att ge varje shard en egen "todo.data.dir".
+     */
+    public TodoConfig with(String key, String value) {
+        Map<String, String> overridden = new HashMap<>(flags);
+        overridden.put(key, value);
+        return new TodoConfig(overridden, environment, systemProperties, file, arguments);
+    }
+
+    /**
+     * Argumenten från kommandoraden som inte var inställningar, i samma ordning.
+     */
+    public List<String> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * @return Värdet för nyckeln, eller defaultValue om det inte finns någonstans
+     */
+    public String getString(String key, String defaultValue) {
+        String value = flags.get(key);
+        if (value == null) {
+            value = systemProperties.getProperty(key);
+        }
+        if (value == null) {
+            value = environment.get(toEnvironmentName(key));
+        }
+        if (value == null) {
+            value = file.getProperty(key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    public long getLong(String key, long defaultValue) {
+        return getLong(key, defaultValue, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @throws IllegalArgumentException Om värdet inte är "true" eller "false"
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        // Boolean.parseBoolean säger false om allt som inte är "true", även stavfel
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Expected true or false for " + key + ", got '" + value + "'");
+    }
+
+    public File getFile(String key, File defaultValue) {
+        String value = getString(key, null);
+        return value != null ? new File(value) : defaultValue;
+    }
+
+    private long getLong(String key, long defaultValue, long min, long max) {
+        String value = getString(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long number = Long.parseLong(value.replace("_", ""));
+            if (number < min || number > max) {
+                throw new NumberFormatException();
+            }
+            return number;
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Expected a number for " + key + ", got '" + value + "'");
+        }
+    }
+
+    /**
+     * Gör om en flagga till en nyckel: "cache-size" och "todo.cache.size" blir båda "todo.cache.size".
+     */
+    private static String toKey(String flag) {
+        String key = flag.replace('-', '.');
+        return key.startsWith(KEY_PREFIX) ? key : KEY_PREFIX + key;
+    }
+
+    /**
+     * Miljövariabler får inte innehålla punkter: "todo.cache.size" blir "TODO_CACHE_SIZE".
+     */
+    private static String toEnvironmentName(String key) {
+        return key.replace('.', '_').toUpperCase(Locale.ROOT);
+    }
+
+    private static void readProperties(Path path, Properties properties) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+    }
+}
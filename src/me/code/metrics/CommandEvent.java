@@ -0,0 +1,32 @@
+package me.code.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * JFR-händelse för ett kommando, skapas av Command.run. Kommandon körs sällan
+ * jämfört med repository-anropen, så alla spelas in oavsett hur snabba de är.
+ *
+ * Bytes räknas i tråden som körde kommandot (se IoCounters), så det som
+ * WriteBehindTodoRepository skriver i bakgrunden kommer inte med här.
+ */
+@Name("me.code.todo.Command")
+@Label("Command")
+@Category("Todo")
+@Description("A command run from the terminal, a script or a daemon client")
+@StackTrace(false)
+public class CommandEvent extends Event {
+
+    @Label("Command")
+    public String command;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -0,0 +1,67 @@
+package me.code.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Räknar hur många bytes todo-data som lästs och skrivits.
+ *
+ * Lagringen anropar recordRead och recordWritten där todos avkodas och kodas
+ * (TodoCodec), så det räknas för alla repositoryn som använder codecen -
+ * men inte t.ex. JdbcTodoRepository, där databasen sköter det.
+ *
+ * Räknarna finns både totalt och per tråd. Genom att läsa trådens räknare före
+ * och efter ett anrop kan InstrumentedTodoRepository se hur mycket just det
+ * anropet läste och skrev. Det som görs i andra trådar (t.ex. av
+ * WriteBehindTodoRepository i bakgrunden) syns bara i totalen.
+ *
+ * CachingTodoRepository räknar på samma sätt sina träffar och missar per tråd,
+ * så att JFR-händelserna (se RepositoryCallEvent) kan visa om ett anrop
+ * svarades från cachen.
+ */
+public final class IoCounters {
+
+    private static final LongAdder TOTAL_READ = new LongAdder();
+    private static final LongAdder TOTAL_WRITTEN = new LongAdder();
+
+    // [0] = lästa bytes, [1] = skrivna bytes, [2] = cacheträffar, [3] = cachemissar,
+    // för den aktuella tråden
+    private static final ThreadLocal<long[]> THREAD = ThreadLocal.withInitial(() -> new long[4]);
+
+    private IoCounters() {
+    }
+
+    public static void recordRead(long bytes) {
+        THREAD.get()[0] += bytes;
+        TOTAL_READ.add(bytes);
+    }
+
+    public static void recordWritten(long bytes) {
+        THREAD.get()[1] += bytes;
+        TOTAL_WRITTEN.add(bytes);
+    }
+
+    public static void recordCacheHit() {
+        THREAD.get()[2]++;
+    }
+
+    public static void recordCacheMiss() {
+        THREAD.get()[3]++;
+    }
+
+    /**
+     * Den aktuella trådens räknare, [0] = lästa och [1] = skrivna bytes, [2] =
+     * cacheträffar och [3] = cachemissar. Arrayen
+     * uppdateras på plats, så spara värdena innan anropet och jämför efteråt.
+     */
+    public static long[] forCurrentThread() {
+        return THREAD.get();
+    }
+
+    public static long getTotalRead() {
+        return TOTAL_READ.sum();
+    }
+
+    public static long getTotalWritten() {
+        return TOTAL_WRITTEN.sum();
+    }
+}
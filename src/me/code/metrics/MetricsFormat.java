@@ -0,0 +1,105 @@
+package me.code.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.function.ToLongFunction;
+
+/**
+ * Format som mätvärdena kan skrivas i, se MetricsReporter.
+ *
+ * PROMETHEUS är Prometheus textformat, som t.ex. node_exporters "textfile
+ * collector" kan läsa direkt från en fil. JSON är lättare att läsa med egna skript.
+ */
+public enum MetricsFormat {
+
+    PROMETHEUS {
+        @Override
+        public void write(MetricsRegistry registry, Writer out) throws IOException {
+            out.write("# HELP todo_operation_duration_seconds Time spent in each operation\n");
+            out.write("# TYPE todo_operation_duration_seconds summary\n");
+            for (OperationMetrics operation : registry.getOperations()) {
+                LatencyHistogram.Snapshot latency = operation.getLatency();
+                String label = "operation=\"" + escape(operation.getName()) + "\"";
+                for (double quantile : QUANTILES) {
+                    out.write(String.format(Locale.ROOT, "todo_operation_duration_seconds{%s,quantile=\"%s\"} %.9f%n",
+                            label, quantile, latency.getPercentileNanos(quantile * 100) / 1e9));
+                }
+                out.write(String.format(Locale.ROOT, "todo_operation_duration_seconds_sum{%s} %.9f%n",
+                        label, latency.getSumNanos() / 1e9));
+                out.write(String.format(Locale.ROOT, "todo_operation_duration_seconds_count{%s} %d%n",
+                        label, latency.getCount()));
+            }
+            writeCounter(out, registry, "todo_operation_errors_total", "Operations that failed", OperationMetrics::getErrors);
+            writeCounter(out, registry, "todo_operation_read_bytes_total", "Bytes of todo data read", OperationMetrics::getBytesRead);
+            writeCounter(out, registry, "todo_operation_written_bytes_total", "Bytes of todo data written", OperationMetrics::getBytesWritten);
+
+            out.write("# HELP todo_storage_read_bytes_total Bytes of todo data read by all threads\n");
+            out.write("# TYPE todo_storage_read_bytes_total counter\n");
+            out.write("todo_storage_read_bytes_total " + IoCounters.getTotalRead() + "\n");
+            out.write("# HELP todo_storage_written_bytes_total Bytes of todo data written by all threads\n");
+            out.write("# TYPE todo_storage_written_bytes_total counter\n");
+            out.write("todo_storage_written_bytes_total " + IoCounters.getTotalWritten() + "\n");
+        }
+
+        private void writeCounter(Writer out, MetricsRegistry registry, String name, String help,
+                                  ToLongFunction<OperationMetrics> value) throws IOException {
+            out.write("# HELP " + name + " " + help + "\n");
+            out.write("# TYPE " + name + " counter\n");
+            for (OperationMetrics operation : registry.getOperations()) {
+                out.write(name + "{operation=\"" + escape(operation.getName()) + "\"} "
+                        + value.applyAsLong(operation) + "\n");
+            }
+        }
+    },
+
+    JSON {
+        @Override
+        public void write(MetricsRegistry registry, Writer out) throws IOException {
+            out.write("{\"startMillis\":" + registry.getStartMillis()
+                    + ",\"timestampMillis\":" + System.currentTimeMillis()
+                    + ",\"storageBytesRead\":" + IoCounters.getTotalRead()
+                    + ",\"storageBytesWritten\":" + IoCounters.getTotalWritten()
+                    + ",\"operations\":[");
+            boolean first = true;
+            for (OperationMetrics operation : registry.getOperations()) {
+                LatencyHistogram.Snapshot latency = operation.getLatency();
+                out.write(first ? "\n" : ",\n");
+                first = false;
+                out.write(String.format(Locale.ROOT,
+                        "{\"name\":\"%s\",\"count\":%d,\"errors\":%d,\"meanMicros\":%.1f,\"p50Micros\":%.1f,"
+                                + "\"p90Micros\":%.1f,\"p99Micros\":%.1f,\"p999Micros\":%.1f,\"maxMicros\":%.1f,"
+                                + "\"bytesRead\":%d,\"bytesWritten\":%d}",
+                        escape(operation.getName()), latency.getCount(), operation.getErrors(),
+                        latency.getMeanNanos() / 1e3, latency.getPercentileNanos(50) / 1e3,
+                        latency.getPercentileNanos(90) / 1e3, latency.getPercentileNanos(99) / 1e3,
+                        latency.getPercentileNanos(99.9) / 1e3, latency.getMaxNanos() / 1e3,
+                        operation.getBytesRead(), operation.getBytesWritten()));
+            }
+            out.write("\n]}\n");
+        }
+    };
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /**
+     * Skriver alla mätvärden i registryn.
+     */
+    public abstract void write(MetricsRegistry registry, Writer out) throws IOException;
+
+    /**
+     * Båda formaten skriver namn inom citattecken med samma regler för \ och ".
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    public static MetricsFormat fromName(String name) {
+        for (MetricsFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown metrics format '" + name + "', expected prometheus or json");
+    }
+}
@@ -0,0 +1,60 @@
+package me.code.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Samling av alla OperationMetrics, en per namn.
+ *
+ * Programmet har en gemensam registry (getDefault) som decoratorerna,
+ * Command.run, kommandot "stats" och MetricsReporter använder. Annars hade
+ * varje kommando behövt få registryn i konstruktorn, och kommandona skapas av
+ * CommandRegistry med bara en ITodoService.
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    private final ConcurrentHashMap<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+    private final long startMillis = System.currentTimeMillis();
+    private volatile boolean enabled = true;
+
+    public static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Mätvärdena för en operation, skapas första gången namnet används.
+     * Spara gärna objektet istället för att slå upp det vid varje anrop.
+     */
+    public OperationMetrics operation(String name) {
+        OperationMetrics metrics = operations.get(name);  // Snabbare än computeIfAbsent när den redan finns
+        return metrics != null ? metrics : operations.computeIfAbsent(name, OperationMetrics::new);
+    }
+
+    /**
+     * Alla operationer, sorterade efter namn.
+     */
+    public List<OperationMetrics> getOperations() {
+        List<OperationMetrics> all = new ArrayList<>(operations.values());
+        all.sort(Comparator.comparing(OperationMetrics::getName));
+        return all;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Om mätningarna är på. Avstängda mätningar kostar bara kontrollen av flaggan.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+}
@@ -0,0 +1,77 @@
+package me.code.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Skriver mätvärdena till en fil med jämna mellanrum, så att de kan läsas av
+ * t.ex. Prometheus utan att programmet behöver lyssna på en port.
+ *
+ * Filen skrivs först till en temporär fil som sedan byter namn, så den som
+ * läser ser aldrig en halvskriven fil. Den skrivs en sista gång när close anropas.
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    private final MetricsRegistry registry;
+    private final Path file;
+    private final MetricsFormat format;
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param registry Mätvärdena som ska skrivas
+     * @param file Filen som skrivs över varje gång
+     * @param format Formatet i filen
+     * @param intervalMillis Tid mellan skrivningarna
+     */
+    public MetricsReporter(MetricsRegistry registry, Path file, MetricsFormat format, long intervalMillis) {
+        this.registry = registry;
+        this.file = file;
+        this.format = format;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "todo-metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::reportInBackground, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Skriver filen direkt.
+     */
+    public void report() throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Files.createDirectories(absolute.getParent());
+        Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            format.write(registry, writer);
+        }
+        Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        report();
+    }
+
+    private void reportInBackground() {
+        try {
+            report();
+        } catch (IOException exception) {
+            // Försök igen nästa gång, mätvärdena är inte värda att stoppa programmet för
+            System.err.println("Could not write metrics to " + file + ": " + exception.getMessage());
+        }
+    }
+}
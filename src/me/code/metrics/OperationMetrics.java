@@ -0,0 +1,70 @@
+package me.code.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mätvärden för en sorts operation, t.ex. "repository.findById": hur lång tid
+ * anropen tog, hur många som misslyckades och hur mycket data de läste och skrev.
+ */
+public class OperationMetrics {
+
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+
+    OperationMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Registrerar ett anrop.
+     *
+     * @param nanos Hur lång tid anropet tog
+     * @param failed true om anropet kastade ett exception eller misslyckades på annat sätt
+     */
+    public void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Registrerar ett anrop som läste och skrev data, se IoCounters.
+     */
+    public void record(long nanos, boolean failed, long read, long written) {
+        record(nanos, failed);
+        if (read > 0) {
+            bytesRead.add(read);
+        }
+        if (written > 0) {
+            bytesWritten.add(written);
+        }
+    }
+
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+}
@@ -0,0 +1,51 @@
+package me.code.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * JFR-händelse för ett anrop till ett ITodoRepository, skapas av
+ * InstrumentedTodoRepository. Syns i en inspelning (t.ex. i JDK Mission
+ * Control) under "Todo" som "Repository Call".
+ *
+ * Bara anrop som tar minst en millisekund spelas in, så att en inspelning i
+ * produktion inte fylls av de tusentals snabba uppslagningarna som cachen
+ * svarar på. Gränsen kan ändras utan att bygga om programmet, t.ex.
+ *
+ *   -XX:StartFlightRecording:me.code.todo.RepositoryCall#threshold=0ms
+ *
+ * Fälten är publika eftersom JFR läser dem direkt, se TodoEvents.
+ */
+@Name("me.code.todo.RepositoryCall")
+@Label("Repository Call")
+@Category("Todo")
+@Description("A call to a todo repository, either the storage itself or the cached repository outside it")
+@StackTrace(false)
+@Threshold("1 ms")
+public class RepositoryCallEvent extends Event {
+
+    @Label("Operation")
+    @Description("Layer and method, e.g. storage.findById")
+    public String operation;
+
+    @Label("Todo Id")
+    public String todoId;
+
+    @Label("Todos")
+    @Description("Todos read, returned or written by the call")
+    public int todos;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytesWritten;
+
+    @Label("Cache")
+    @Description("hit or miss when the call looked in the read cache, otherwise empty")
+    public String cache;
+
+    @Label("Failed")
+    public boolean failed;
+}
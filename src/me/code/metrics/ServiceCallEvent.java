@@ -0,0 +1,41 @@
+package me.code.metrics;
+
+import jdk.jfr.*;
+
+/**
+ * JFR-händelse för ett anrop till ett ITodoService, skapas av
+ * InstrumentedTodoService. Som RepositoryCallEvent spelas bara anrop på minst
+ * en millisekund in.
+ *
+ * För metoderna som returnerar en Stream mäts bara tiden det tar att skapa
+ * den, och todos är då 0 eftersom ingen ännu har läst från streamen.
+ */
+@Name("me.code.todo.ServiceCall")
+@Label("Service Call")
+@Category("Todo")
+@Description("A call to the todo service, e.g. a search or a status update")
+@StackTrace(false)
+@Threshold("1 ms")
+public class ServiceCallEvent extends Event {
+
+    @Label("Operation")
+    @Description("Service method, e.g. service.searchTodos")
+    public String operation;
+
+    @Label("Todo Id")
+    public String todoId;
+
+    @Label("Query")
+    public String query;
+
+    @Label("Status")
+    @Description("The new status for status updates")
+    public String status;
+
+    @Label("Todos")
+    @Description("Todos created, changed, deleted or returned by the call")
+    public int todos;
+
+    @Label("Failed")
+    public boolean failed;
+}
@@ -0,0 +1,44 @@
+package me.code.metrics;
+
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+
+import java.util.List;
+
+/**
+ * Håller ordning på programmets egna JFR-händelser (Java Flight Recorder).
+ *
+ * Händelserna är på från början: startas en inspelning, med
+ * -XX:StartFlightRecording eller "jcmd <pid> JFR.start", kommer de med utan
+ * att något mer behöver ställas in. Utan inspelning kostar de bara en
+ * kontroll av Event.isEnabled per anrop.
+ *
+ * todo.jfr.enabled=false avregistrerar dem, så att de aldrig spelas in.
+ */
+public final class TodoEvents {
+
+    private static final List<Class<? extends Event>> EVENTS =
+            List.of(RepositoryCallEvent.class, ServiceCallEvent.class, CommandEvent.class);
+
+    private static volatile boolean registered = true;
+
+    private TodoEvents() {
+    }
+
+    /**
+     * true om händelserna kan spelas in, dvs. om unregister inte har anropats.
+     */
+    public static boolean isRegistered() {
+        return registered;
+    }
+
+    /**
+     * Tar bort händelserna från JFR, de spelas sedan aldrig in.
+     */
+    public static void unregister() {
+        registered = false;
+        for (Class<? extends Event> event : EVENTS) {
+            FlightRecorder.unregister(event);
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package me.code.models;
 
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.UUID;
 
@@ -14,8 +17,9 @@ import java.util.UUID;
  */
 public class Todo {
 
-    // Vi skapar ett gemensamt datumformat som alla todos använder (år-månad-dag)
-    public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
+    // Vi skapar ett gemensamt datumformat som alla todos använder (år-månad-dag).
+    // DateTimeFormatter kan, till skillnad från SimpleDateFormat, användas från flera trådar samtidigt.
+    public static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
 
     // Unikt ID för varje todo - använder UUID som garanterar unikhet
     // 'final' betyder att ID:t aldrig kan ändras efter det skapats
@@ -36,6 +40,9 @@ public class Todo {
     // Prioritet där högre nummer = viktigare todo
     private int priority;
 
+    // Vilken version av todon vi har, se getVersion
+    private long version;
+
     /**
      * Konstruktor för att skapa en helt ny todo.
      *
@@ -78,6 +85,21 @@ public class Todo {
         this.status = status;
     }
 
+    /**
+     * Kopieringskonstruktor som skapar en ny todo med samma värden som en befintlig.
+     *
+     * Används t.ex. av cachar som vill spara en egen kopia, så att ändringar
+     * på originalet inte av misstag ändrar det som ligger i cachen.
+     *
+     * @param other Todon som ska kopieras
+     */
+    public Todo(Todo other) {
+        // Date är muterbar, därför kopierar vi även den
+        this(other.id, other.title, other.deadline == null ? null : new Date(other.deadline.getTime()),
+                other.category, other.priority, other.status);
+        this.version = other.version;
+    }
+
     /**
      * Översätter todon till en snygg textrepresentation.
      *
@@ -93,10 +115,28 @@ public class Todo {
                 "Id: " + this.id + "\n    " +
                 "Status: " + this.status.getDisplayName() + "\n    " +
                 "Category: " + this.category + "\n    " +
-                "Deadline: " + DATE_FORMAT.format(this.deadline) + "\n    " +
+                "Deadline: " + formatDate(this.deadline) + "\n    " +
                 "Priority: " + this.priority;
     }
 
+    /**
+     * Formaterar ett datum som år-månad-dag, i datorns tidszon.
+     */
+    public static String formatDate(Date date) {
+        return DATE_FORMAT.format(date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate());
+    }
+
+    /**
+     * Läser ett datum skrivet som år-månad-dag. Datumet blir midnatt i
+     * datorns tidszon.
+     *
+     * @throws DateTimeParseException Om texten inte är ett giltigt datum
+     */
+    public static Date parseDate(String date) {
+        LocalDate parsed = LocalDate.parse(date.trim(), DATE_FORMAT);
+        return Date.from(parsed.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
     // === GETTERS & SETTERS ===
     // Dessa metoder ger oss kontrollerad åtkomst till klassens privata fält.
     // Vi använder private fält + public getters/setters för att skydda datan (inkapsling).
@@ -171,6 +211,25 @@ public class Todo {
         this.priority = priority;
     }
 
+    /**
+     * Hämtar todoens version.
+     *
+     * Versionen räknas upp av repositoryt varje gång todon sparas, och är 0 för
+     * en todo som aldrig har sparats. Den används för "optimistisk låsning":
+     * den som vill spara en ändring kan kräva att todon fortfarande har samma
+     * version som när den lästes, se ITodoRepository.saveIfVersionMatches.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sätter todoens version. Anropas av repositoryn när todon läses eller sparas.
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Hämtar todoens unika ID.
      * Observera: Vi har ingen setter här eftersom ID:t är 'final' och aldrig får ändras!
@@ -33,4 +33,19 @@ public enum TodoStatus {
     public String getDisplayName() {
         return displayName;
     }
+
+    /**
+     * Hittar statusen med ett visst användarvänligt namn (case-insensitive).
+     * Exempel: TodoStatus.fromDisplayName("in-progress") returnerar IN_PROGRESS
+     *
+     * @return Statusen, eller null om inget namn matchar
+     */
+    public static TodoStatus fromDisplayName(String displayName) {
+        for (TodoStatus status : values()) {
+            if (status.displayName.equalsIgnoreCase(displayName)) {
+                return status;
+            }
+        }
+        return null;
+    }
 }
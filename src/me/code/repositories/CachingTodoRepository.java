@@ -0,0 +1,347 @@
+package me.code.repositories;
+
+import me.code.metrics.IoCounters;
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.repositories.cache.CacheStats;
+import me.code.repositories.cache.IEvictionPolicy;
+import me.code.services.TodoQuery;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Ett repository som cachar resultatet av findById i minnet (read-through cache).
+ *
+ * Precis som WriteBehindTodoRepository är detta en decorator: den omsluter ett
+ * annat repository och implementerar samma interface. Första gången en todo
+ * efterfrågas läser vi den från det underliggande repositoryt och sparar en kopia,
+ * nästa gång kan vi svara direkt från minnet.
+ *
+ * Cachen har en maxstorlek, antingen i antal poster eller i uppskattat antal bytes
+ * (se estimateHeapBytes). När den är full frågar vi en IEvictionPolicy vilken post
+ * som ska kastas ut. save och delete tar bort todon ur cachen så att vi aldrig
+ * returnerar gammal data.
+ */
+public class CachingTodoRepository implements ITodoRepository {
+
+    private final ITodoRepository delegate;
+    private final IEvictionPolicy evictionPolicy;
+    private final long maxWeight;
+    private final ToLongFunction<Todo> weigher;
+    private final CacheStats stats = new CacheStats();
+
+    private final Map<UUID, CacheEntry> entries = new HashMap<>();
+    private long totalWeight;
+
+    // Ökar vid varje ändring, så att en långsam läsning inte cachar data som hunnit bli gammal
+    private long modificationCount;
+
+    /**
+     * Skapar en cache som rymmer ett visst antal todos.
+     *
+     * @param delegate Repositoryt som cachen läser från
+     * @param evictionPolicy Strategi för vad som ska kastas ut
+     * @param maxEntries Max antal todos i cachen
+     */
+    public CachingTodoRepository(ITodoRepository delegate, IEvictionPolicy evictionPolicy, int maxEntries) {
+        this(delegate, evictionPolicy, maxEntries, todo -> 1);
+    }
+
+    /**
+     * Skapar en cache där varje todo har en "vikt", t.ex. dess uppskattade storlek i bytes.
+     *
+     * @param delegate Repositoryt som cachen läser från
+     * @param evictionPolicy Strategi för vad som ska kastas ut
+     * @param maxWeight Max total vikt för alla todos i cachen
+     * @param weigher Funktion som räknar ut vikten för en todo
+     */
+    public CachingTodoRepository(ITodoRepository delegate, IEvictionPolicy evictionPolicy,
+                                 long maxWeight, ToLongFunction<Todo> weigher) {
+        this.delegate = delegate;
+        this.evictionPolicy = evictionPolicy;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Ungefär hur många bytes en todo tar i minnet när den ligger i cachen.
+     *
+     * Vi räknar med fasta storlekar för objekten (Todo, UUID, Date, map-posten)
+     * och två bytes per tecken i titel och kategori.
+     *
+     * @param todo Todon som ska vägas
+     * @return Uppskattat antal bytes
+     */
+    public static long estimateHeapBytes(Todo todo) {
+        long strings = 2L * (todo.getTitle().length() + todo.getCategory().length()) + 2 * 40;
+        return 160 + strings;
+    }
+
+    /**
+     * Hämtar todon från cachen, eller från det underliggande repositoryt vid en miss.
+     */
+    @Override
+    public Todo findById(UUID todoId) throws Exception {
+        long expectedModificationCount;
+        synchronized (this) {
+            evictionPolicy.recordLookup(todoId);
+            CacheEntry entry = entries.get(todoId);
+            if (entry != null) {
+                evictionPolicy.recordHit(todoId);
+                stats.recordHit();
+                IoCounters.recordCacheHit();
+                return new Todo(entry.todo());
+            }
+            stats.recordMiss();
+            IoCounters.recordCacheMiss();
+            expectedModificationCount = modificationCount;
+        }
+
+        Todo todo = delegate.findById(todoId);
+        if (todo != null) {
+            synchronized (this) {
+                if (modificationCount == expectedModificationCount) {
+                    insert(new Todo(todo));
+                }
+            }
+        }
+        return todo;
+    }
+
+    @Override
+    public List<Todo> findAll() throws Exception {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Stream<Todo> streamAll() throws Exception {
+        return delegate.streamAll();
+    }
+
+    @Override
+    public long count() throws Exception {
+        return delegate.count();
+    }
+
+    @Override
+    public boolean supportsQueries() {
+        return delegate.supportsQueries();
+    }
+
+    @Override
+    public List<Todo> findMatching(TodoQuery query) throws Exception {
+        return delegate.findMatching(query);
+    }
+
+    @Override
+    public void save(Todo todo) throws Exception {
+        try {
+            delegate.save(todo);
+        } finally {
+            invalidate(todo.getId());
+        }
+    }
+
+    @Override
+    public void save(Todo todo, Durability durability) throws Exception {
+        try {
+            delegate.save(todo, durability);
+        } finally {
+            invalidate(todo.getId());
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<Todo> todos) throws Exception {
+        try {
+            delegate.saveAll(todos);
+        } finally {
+            invalidate(todos.stream().map(Todo::getId).toList());
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<Todo> todos, Durability durability) throws Exception {
+        try {
+            delegate.saveAll(todos, durability);
+        } finally {
+            invalidate(todos.stream().map(Todo::getId).toList());
+        }
+    }
+
+    @Override
+    public void saveIfVersionMatches(Todo todo) throws Exception {
+        try {
+            delegate.saveIfVersionMatches(todo);
+        } finally {
+            invalidate(todo.getId());
+        }
+    }
+
+    @Override
+    public void delete(UUID todoId) throws Exception {
+        try {
+            delegate.delete(todoId);
+        } finally {
+            invalidate(todoId);
+        }
+    }
+
+    @Override
+    public void delete(UUID todoId, Durability durability) throws Exception {
+        try {
+            delegate.delete(todoId, durability);
+        } finally {
+            invalidate(todoId);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> todoIds) throws Exception {
+        try {
+            delegate.deleteAll(todoIds);
+        } finally {
+            invalidate(todoIds);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> todoIds, Durability durability) throws Exception {
+        try {
+            delegate.deleteAll(todoIds, durability);
+        } finally {
+            invalidate(todoIds);
+        }
+    }
+
+    /**
+     * Låter det underliggande repositoryt uppdatera statusen (kanske på plats)
+     * och tar bort todon ur cachen.
+     */
+    @Override
+    public Todo updateStatus(UUID todoId, TodoStatus status) throws Exception {
+        try {
+            return delegate.updateStatus(todoId, status);
+        } finally {
+            invalidate(todoId);
+        }
+    }
+
+    /**
+     * Tar bort de ändrade todos ur cachen. Misslyckas ändringen vet vi inte
+     * vilka todos som hann ändras, så då töms hela cachen.
+     */
+    @Override
+    public List<Todo> updateStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        List<Todo> changed;
+        try {
+            changed = delegate.updateStatusWhere(predicate, status);
+        } catch (Exception exception) {
+            invalidateAll();
+            throw exception;
+        }
+
+        List<UUID> changedIds = new ArrayList<>(changed.size());
+        for (Todo todo : changed) {
+            changedIds.add(todo.getId());
+        }
+        invalidate(changedIds);
+        return changed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        invalidateAll();
+        delegate.close();
+    }
+
+    /**
+     * Hämtar räknare för träffar, missar och utkastningar.
+     */
+    public CacheStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Antal todos som just nu ligger i cachen.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Lägger in en todo och kastar ut andra tills den får plats.
+     * Om policyn tycker att offret är viktigare än den nya todon cachas den inte.
+     */
+    private void insert(Todo todo) {
+        remove(todo.getId());  // Två trådar kan ha missat samtidigt
+
+        long weight = weigher.applyAsLong(todo);
+        if (weight > maxWeight) {
+            stats.recordRejection();
+            return;
+        }
+
+        UUID victim = evictionPolicy.selectVictim();
+        if (totalWeight + weight > maxWeight && victim != null && !evictionPolicy.admit(todo.getId(), victim)) {
+            stats.recordRejection();
+            return;
+        }
+
+        while (totalWeight + weight > maxWeight && victim != null) {
+            remove(victim);
+            stats.recordEviction();
+            victim = evictionPolicy.selectVictim();
+        }
+
+        entries.put(todo.getId(), new CacheEntry(todo, weight));
+        totalWeight += weight;
+        evictionPolicy.recordInsert(todo.getId());
+    }
+
+    private synchronized void invalidate(UUID todoId) {
+        modificationCount++;
+        remove(todoId);
+    }
+
+    private synchronized void invalidate(Collection<UUID> todoIds) {
+        modificationCount++;
+        for (UUID todoId : todoIds) {
+            remove(todoId);
+        }
+    }
+
+    /**
+     * Tömmer cachen med ett enda varv över posterna. Att ta bort den första
+     * nyckeln om och om igen går igenom HashMapens tomma fack varje gång,
+     * vilket blir kvadratiskt för en stor cache.
+     */
+    private synchronized void invalidateAll() {
+        modificationCount++;
+        for (UUID todoId : entries.keySet()) {
+            evictionPolicy.recordRemoval(todoId);
+        }
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    private void remove(UUID todoId) {
+        CacheEntry entry = entries.remove(todoId);
+        if (entry != null) {
+            totalWeight -= entry.weight();
+            evictionPolicy.recordRemoval(todoId);
+        }
+    }
+
+    private record CacheEntry(Todo todo, long weight) {
+    }
+}
@@ -0,0 +1,29 @@
+package me.code.repositories;
+
+/**
+ * Hur säker en skrivning ska vara innan save eller delete returnerar.
+ *
+ * Ju säkrare, desto långsammare - att vänta på att disken verkligen har skrivit
+ * (fsync) tar ofta flera millisekunder. Vid t.ex. en stor import kan man välja
+ * NONE och ta risken, medan en vanlig ändring från användaren bör vara säker.
+ */
+public enum Durability {
+
+    /**
+     * Ingen journal. Filen byts ut atomiskt, men ändringen kan försvinna om
+     * programmet kraschar innan operativsystemet har skrivit den till disk.
+     */
+    NONE,
+
+    /**
+     * Ändringen skrivs till journalen innan den publiceras, men vi väntar inte
+     * på disken. Klarar att programmet kraschar, men inte att datorn gör det.
+     */
+    OS_BUFFERED,
+
+    /**
+     * Ändringen skrivs till journalen och vi väntar tills disken har bekräftat
+     * den (fsync). Klarar även strömavbrott.
+     */
+    FSYNC
+}
@@ -1,38 +1,202 @@
 package me.code.repositories;
 
+import me.code.metrics.IoCounters;
 import me.code.models.Todo;
 import me.code.models.TodoStatus;
+import me.code.repositories.journal.WriteAheadJournal;
+import me.code.utility.StripedLock;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.UUID;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
- * Implementation av ITodoRepository som lagrar todos i textfiler.
+ * Implementation av ITodoRepository som lagrar todos i filer.
  *
- * Varje todo sparas i sin egen fil med filnamn = UUID.txt
- * Detta är en enkel lösning för persistent lagring utan databas!
+ * Varje todo sparas i sin egen fil med filnamn = UUID.todo, i det binära
+ * formatet från TodoCodec. Detta är en enkel lösning för persistent lagring
+ * utan databas!
+ *
+ * Tidigare sparades todos som text (UUID.txt, en rad per fält). Sådana filer
+ * kan fortfarande läsas, och de skrivs om till det binära formatet första
+ * gången de läses (lazy migrering) - man behöver alltså inte konvertera allt
+ * på en gång.
  *
  * Fördel: Inga externa dependencies (ingen databas behövs)
  * Nackdel: Inte optimalt för stora mängder data
  *
+ * För att slippa öppna varje fil vid findAll håller vi ett "manifest" - en
+ * binär fil (.todos.manifest) med en kopia av alla todos plus varje fils
+ * ändringstid och storlek. Vid start jämför vi manifestet med mappen och
+ * läser bara om de filer som faktiskt har ändrats sedan sist. Samma sak görs
+ * när en annan process har sparat eller raderat en todo, vilket vi ser på
+ * ändringsräknarna i låsfilen (se markChanged) utan att behöva lista mappen.
+ *
+ * Ändringar skrivs först till en journal (.todos.journal, se WriteAheadJournal)
+ * och publiceras sedan genom att en temporär fil byter namn till todo-filen.
+ * Kraschar programmet mitt i en skrivning gör vi om journalens poster vid nästa
+ * start. Hur säker varje skrivning ska vara väljs med Durability.
+ * saveAll, deleteAll och updateStatusWhere skriver hela gruppen till journalen
+ * på en gång och väntar som mest på en fsync, istället för en per todo.
+ *
+ * Flera processer (t.ex. två terminaler och ett batchjobb) kan dela samma mapp.
+ * Varje todo-fil har en version som räknas upp vid varje skrivning, och en
+ * skrivning sker under ett fillås (.todos.lock) för todons "rand", så att
+ * versionen kan jämföras och filen bytas ut utan att någon annan hinner emellan.
+ * Varje process har sin egen journal, och en kraschad process journal görs om
+ * av nästa process som startar - men bara poster som är nyare än filen.
+ *
  * Observera att denna klass implementerar ITodoRepository, vilket betyder att
  * vi följer kontraktet som interfaces definierar.
  */
 public class FileTodoRepository implements ITodoRepository {
 
-    // Alla todo-filer slutar med .txt
-    private static final String EXTENSION = ".txt";
+    // Alla todo-filer slutar med .todo
+    private static final String EXTENSION = ".todo";
+
+    // Filer i det gamla textformatet, som skrivs om när de läses
+    private static final String LEGACY_EXTENSION = ".txt";
+
+    // Manifestet ligger bredvid todo-filerna
+    private static final String MANIFEST_FILE = ".todos.manifest";
+    private static final int MANIFEST_MAGIC = 0x54444D46;  // "TDMF"
+    private static final int MANIFEST_VERSION = 2;
+
+    // Manifestet i minnet, laddas första gången det behövs (null = inte laddat än)
+    private Map<UUID, ManifestEntry> manifest;
+
+    // Sant om manifestet i minnet har ändringar som inte sparats till disk
+    private boolean manifestDirty;
+
+    // Antal filer per bit när katalogen gås igenom parallellt
+    private static final int SCAN_CHUNK_SIZE = 256;
+
+    // Trådpool för att gå igenom filerna parallellt (null = en i taget)
+    private final ForkJoinPool scanPool;
+
+    // Om filerna ska gås igenom i filnamnsordning, så att findAll alltid ger samma ordning
+    private final boolean orderedScan;
+
+    // Mappen där todo-filerna och manifestet ligger
+    private final File directory;
+    private final Path directoryPath;
+
+    // En läsbuffert per tråd som återanvänds för varje fil, så att en läsning inte skapar skräp
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final ThreadLocal<ByteBuffer> READ_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE));
+
+    // Journalen och hur stor den får bli innan vi gör en checkpoint och tömmer den.
+    // Används journalen redan av en annan process får vi .todos.journal.1, .2 osv.
+    private static final String JOURNAL_FILE = ".todos.journal";
+    private static final long CHECKPOINT_BYTES = 1024 * 1024;
 
     /**
-     * Läser en todo från fil baserat på dess ID.
+     * Hur säkra save(todo) och delete(todoId) är när man inte anger något:
+     * de klarar att programmet kraschar, men väntar inte på disken.
+     */
+    public static final Durability DEFAULT_DURABILITY = Durability.OS_BUFFERED;
+
+    // Öppnas (och återställs) första gången den behövs, null = inte öppnad än
+    private volatile WriteAheadJournal journal;
+
+    // Lås per todo: skrivningar av samma todo sker i tur och ordning, medan
+    // olika todos kan skrivas till disk samtidigt. Repositoryts eget lås
+    // (synchronized) skyddar bara manifestet och journalen, och tas alltid
+    // efter todons lås och fillås - aldrig tvärtom - så att två trådar inte kan
+    // låsa varandra (undantaget är replay, se där).
+    private static final int LOCK_STRIPES = 64;
+    private final StripedLock todoLocks = new StripedLock(LOCK_STRIPES);
+
+    // Antal skrivningar som har börjat men inte publicerats än - då får journalen inte tömmas
+    private int writesInProgress;
+
+    // Sant när close har anropats: nya skrivningar nekas, och close väntar in de som pågår
+    private boolean closed;
+
+    // Sant när journalen har passerat CHECKPOINT_BYTES. Nya skrivningar väntar då
+    // tills de pågående är klara och journalen har tömts - annars kan det under
+    // jämn last alltid finnas en pågående skrivning, och journalen växer för evigt.
+    private boolean checkpointPending;
+
+    // Fillåsen som delas med andra processer: en byte per rand i todoLocks.
+    // Öppnas tillsammans med journalen, null = inte öppnad än.
+    private static final String LOCK_FILE = ".todos.lock";
+    private FileChannel lockChannel;
+
+    // Efter låsbytena har låsfilen en ändringsräknare (long) per rand, se markChanged.
+    // seenChangeCount är räknarnas summa när manifestet senast stämdes av mot mappen,
+    // plus våra egna ändringar sedan dess - skiljer sig summan har någon annan skrivit.
+    private static final long CHANGE_COUNTERS_OFFSET = LOCK_STRIPES;
+    private final ByteBuffer changeCounters = ByteBuffer.allocate(LOCK_STRIPES * Long.BYTES);
+    private long seenChangeCount;
+
+    // Temporära filer får processens id i namnet, så att två processer aldrig
+    // skriver till samma temporära fil och så att bara döda processers filer städas bort
+    private static final long PROCESS_ID = ProcessHandle.current().pid();
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    // Todos som publicerats sedan senaste checkpoint, och som måste synkas innan journalen töms
+    private final Set<UUID> unsyncedTodos = new HashSet<>();
+
+    // Färdiga argument till FileChannel.open, annars skapas en ny mängd och array vid varje anrop
+    private static final Set<OpenOption> READ_OPTIONS = Set.of(StandardOpenOption.READ);
+    private static final FileAttribute<?>[] NO_ATTRIBUTES = new FileAttribute<?>[0];
+
+    /**
+     * Skapar ett repository som sparar filerna i den aktuella mappen.
+     */
+    public FileTodoRepository() {
+        this(new File("./"));
+    }
+
+    /**
+     * Skapar ett repository som sparar filerna i en given mapp och går igenom
+     * dem parallellt med JVM:ens gemensamma ForkJoinPool.
+     *
+     * @param directory Mappen där todo-filerna ska ligga
+     */
+    public FileTodoRepository(File directory) {
+        this(directory, ForkJoinPool.commonPool(), false);
+    }
+
+    /**
+     * Skapar ett repository med en egen trådpool för genomsökningen av mappen.
+     *
+     * Att läsa många små filer går mest ut på att vänta på disken (särskilt på
+     * nätverksdiskar), så en pool med fler trådar än processorkärnor kan löna sig.
      *
-     * Vi använder try-with-resources (try med parenteser) som automatiskt
-     * stänger filen åt oss - mycket smidigare än att använda finally!
+     * @param directory Mappen där todo-filerna ska ligga
+     * @param scanPool Trådpool för genomsökningen, eller null för att läsa en fil i taget
+     * @param orderedScan true om todos ska komma i filnamnsordning
+     */
+    public FileTodoRepository(File directory, ForkJoinPool scanPool, boolean orderedScan) {
+        this.directory = directory;
+        this.directoryPath = directory.toPath();
+        this.scanPool = scanPool;
+        this.orderedScan = orderedScan;
+    }
+
+    /**
+     * Läser en todo från fil baserat på dess ID.
      *
-     * Filformatet är enkelt: en rad per fält (id, title, category, status, priority, deadline)
+     * Finns bara en gammal textfil läser vi den och skriver om den i det
+     * binära formatet, så att nästa läsning går snabbare.
      *
      * @param todoId ID för todon vi vill läsa
      * @return Todo-objektet som lästes från filen
@@ -40,141 +204,1044 @@ public class FileTodoRepository implements ITodoRepository {
      */
     @Override
     public Todo findById(UUID todoId) throws Exception {
-        String fileName = getFileName(todoId);
-
-        // try-with-resources: stänger automatiskt reader när vi är klara
-        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
-            reader.readLine(); // Hoppa över första raden (ID, vi har det redan)
-            String title = reader.readLine();
-            String category = reader.readLine();
-            String statusString = reader.readLine();
-            String priorityString = reader.readLine();
-            String deadlineString = reader.readLine();
-
-            // Konvertera strängarna till rätt datatyper
-            TodoStatus status = TodoStatus.valueOf(statusString);  // String -> Enum
-            int priority = Integer.parseInt(priorityString);       // String -> int
-            long deadlineTime = Long.parseLong(deadlineString);    // String -> long
-            Date deadline = new Date(deadlineTime);                 // long -> Date
+        if (journal == null) {
+            synchronized (this) {
+                getJournal();  // Återställ eventuella ändringar från en krasch innan vi läser
+            }
+        }
 
-            // Skapa och returnera todo-objektet med befintligt ID
-            return new Todo(todoId, title, deadline, category, priority, status);
+        try {
+            // Path direkt från mappens Path, så slipper vi skapa och normalisera ett File-objekt
+            return TodoCodec.decode(readFile(directoryPath.resolve(getFileName(todoId))));
+        } catch (NoSuchFileException exception) {
+            // Ingen binär fil - kanske finns todon kvar i det gamla textformatet
+            return todoLocks.call(todoId, () -> readOrMigrate(todoId));
         }
     }
 
     /**
-     * Hittar alla todos genom att skanna igenom alla .txt-filer i projektmappen.
-     *
-     * Vi kollar varje fil och om filnamnet är ett giltigt UUID och slutar på .txt
-     * så läser vi in den som en todo!
+     * Läser en todo som kanske bara finns som gammal textfil, och migrerar den i så fall:
+     * den skrivs om till en binär fil, och textfilen tas bort först när den nya filen finns.
+     * Anropas med todons lås.
      *
-     * @return Lista med alla todos som hittades
-     * @throws Exception Om något går fel vid läsning
+     * Migreringen görs under todons fillås. Har en annan process hunnit skriva
+     * den binära filen använder vi den istället, annars skulle vi skriva över
+     * en nyare version med textfilens innehåll. Repositoryts lås tas först när
+     * fillåset redan är taget, precis som i publish.
      */
-    @Override
-    public List<Todo> findAll() throws Exception {
-        ArrayList<Todo> todos = new ArrayList<>();
-
-        // Hämta alla filer i nuvarande mapp (./)
-        File directory = new File("./");
-        File[] todoFiles = directory.listFiles();
-        if (todoFiles == null) {
-            return todos;  // Returnera tom lista om mappen inte finns
+    private Todo readOrMigrate(UUID todoId) throws IOException {
+        File file = getFile(todoId);
+        File legacyFile = getLegacyFile(todoId);
+        if (file.isFile() || !legacyFile.isFile()) {
+            return TodoCodec.decode(readFile(file.toPath()));  // Migrerad under tiden, eller finns inte alls
         }
 
-        // Gå igenom varje fil
-        for (File todoFile : todoFiles) {
-            String name = todoFile.getName();
+        FileLock fileLock = lockTodo(todoId);
+        try {
+            if (file.isFile()) {
+                return TodoCodec.decode(readFile(file.toPath()));
+            }
 
-            // Hoppa över filer som inte slutar med .txt
-            if (!name.endsWith(EXTENSION)) {
-                continue;
+            Todo todo = TodoCodec.decodeAny(todoId, readFile(legacyFile.toPath()));
+            writeTodo(file, todo);
+            Files.deleteIfExists(legacyFile.toPath());
+            synchronized (this) {
+                markChanged(todoLocks.indexOf(todoId));
+                if (manifest != null) {
+                    manifest.put(todoId, new ManifestEntry(file.lastModified(), file.length(), todo));
+                    manifestDirty = true;
+                }
             }
+            return todo;
+        } finally {
+            fileLock.release();
+        }
+    }
 
-            // Ta bort .txt från filnamnet för att få UUID:t
-            String fileName = name.substring(0, name.length() - EXTENSION.length());
+    /**
+     * Läser hela filen till trådens läsbuffert med en FileChannel.
+     *
+     * Bufferten är "direkt", dvs. ligger utanför Java-heapen, så operativsystemet
+     * kan läsa rakt in i den utan en extra kopia. Den returnerade bufferten
+     * återanvänds vid nästa läsning i samma tråd, så den måste avkodas direkt.
+     */
+    private static ByteBuffer readFile(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ_OPTIONS, NO_ATTRIBUTES)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Todo file is too large: " + file);
+            }
 
-            // Försök konvertera filnamnet till ett UUID
-            UUID todoId;
-            try {
-                todoId = UUID.fromString(fileName);
-            } catch (IllegalArgumentException ignored) {
-                // Om filnamnet inte är ett giltigt UUID, hoppa över filen
-                continue;
+            ByteBuffer buffer = READ_BUFFER.get();
+            if (buffer.capacity() < size) {
+                buffer = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, Long.highestOneBit(size - 1) << 1));
+                READ_BUFFER.set(buffer);
             }
 
-            // Läs in todon och lägg till i listan
-            Todo todo = findById(todoId);
-            todos.add(todo);
+            buffer.clear().limit((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Läs tills bufferten är full eller filen tar slut
+            }
+            IoCounters.recordRead(buffer.position());
+            return buffer.flip();
         }
+    }
+
+    /**
+     * Skriver todon till en temporär fil och byter sedan namn på den, så att
+     * ett avbrott aldrig lämnar en halvskriven todo-fil efter sig.
+     */
+    private static void writeTodo(File file, Todo todo) throws IOException {
+        File temporary = new File(file.getParentFile(), file.getName() + "." + PROCESS_ID + TEMPORARY_EXTENSION);
+        byte[] encoded = TodoCodec.encode(todo);
+        Files.write(temporary.toPath(), encoded);
+        IoCounters.recordWritten(encoded.length);
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
+    /**
+     * Hämtar alla todos direkt från manifestet i minnet.
+     *
+     * Vi behöver alltså inte öppna en enda todo-fil här! Manifestet laddas
+     * och stäms av mot mappen första gången det används.
+     *
+     * @return Lista med alla todos som hittades
+     * @throws Exception Om något går fel vid läsning
+     */
+    @Override
+    public synchronized List<Todo> findAll() throws Exception {
+        Map<UUID, ManifestEntry> entries = getManifest();
+
+        ArrayList<Todo> todos = new ArrayList<>(entries.size());
+        for (ManifestEntry entry : entries.values()) {
+            todos.add(entry.toTodo());  // Ny Todo varje gång så att ingen kan ändra manifestet
+        }
         return todos;
     }
 
     /**
-     * Sparar en todo till fil.
+     * Skapar Todo-objekten från manifestet först när streamen konsumeras.
+     *
+     * Manifestet finns redan i minnet, så vi behöver inte öppna några filer.
+     */
+    @Override
+    public Stream<Todo> streamAll() throws Exception {
+        List<ManifestEntry> entries;
+        synchronized (this) {
+            entries = new ArrayList<>(getManifest().values());
+        }
+        return entries.stream().map(ManifestEntry::toTodo);
+    }
+
+    /**
+     * Räknar alla todos utan att skapa några Todo-objekt.
+     */
+    @Override
+    public synchronized long count() throws Exception {
+        return getManifest().size();
+    }
+
+    /**
+     * Sparar en todo till fil i det binära formatet, med DEFAULT_DURABILITY.
      *
      * Om filen redan finns skrivs den över (vilket uppdaterar todon).
      * Om filen inte finns skapas en ny fil.
      *
-     * Vi konverterar allt till strängar och skriver en rad per fält!
-     *
      * @param todo Todon som ska sparas
      * @throws Exception Om något går fel vid skrivning
      */
     @Override
     public void save(Todo todo) throws Exception {
-        String fileName = getFileName(todo.getId());
+        save(todo, DEFAULT_DURABILITY);
+    }
 
-        // try-with-resources för att automatiskt stänga filen
-        try (BufferedWriter stream = new BufferedWriter(new FileWriter(fileName))) {
-            // Konvertera datum och prioritet till strängar
-            String priority = todo.getPriority() + "";        // int -> String
-            String deadline = todo.getDeadline().getTime() + "";  // Date -> long -> String
+    /**
+     * Sparar en todo med vald säkerhet, se Durability.
+     */
+    @Override
+    public void save(Todo todo, Durability durability) throws Exception {
+        Todo copy = new Todo(todo);
+        write(List.of(todo.getId()), durability, (todoId, current) -> copy);
+        todo.setVersion(copy.getVersion());
+    }
 
-            // Skriv all data rad för rad
-            stream
-                    .append(todo.getId().toString())
-                    .append("\n")
-                    .append(todo.getTitle())
-                    .append("\n")
-                    .append(todo.getCategory())
-                    .append("\n")
-                    .append(todo.getStatus().toString())
-                    .append("\n")
-                    .append(priority)
-                    .append("\n")
-                    .append(deadline);
+    /**
+     * Sparar alla todos i en enda skrivning, med DEFAULT_DURABILITY.
+     */
+    @Override
+    public void saveAll(Collection<Todo> todos) throws Exception {
+        saveAll(todos, DEFAULT_DURABILITY);
+    }
+
+    /**
+     * Sparar alla todos i en enda skrivning: en journalpost per todo men bara
+     * ett anrop till journalfilen och som mest en fsync, och manifestet
+     * uppdateras en gång. Förekommer samma todo flera gånger gäller den sista.
+     */
+    @Override
+    public void saveAll(Collection<Todo> todos, Durability durability) throws Exception {
+        Map<UUID, Todo> copies = new LinkedHashMap<>();
+        for (Todo todo : todos) {
+            copies.put(todo.getId(), new Todo(todo));
+        }
+
+        write(copies.keySet(), durability, (todoId, current) -> copies.get(todoId));
+        for (Todo todo : todos) {
+            todo.setVersion(copies.get(todo.getId()).getVersion());
         }
     }
 
     /**
-     * Raderar en todo genom att ta bort dess fil.
+     * Sparar todon om filens version fortfarande är todo.getVersion(). Jämförelsen
+     * görs under todons fillås, så det fungerar även mellan flera processer.
+     */
+    @Override
+    public void saveIfVersionMatches(Todo todo) throws Exception {
+        Todo copy = new Todo(todo);
+        write(List.of(todo.getId()), DEFAULT_DURABILITY, (todoId, current) -> {
+            long version = current == null ? 0 : current.getVersion();
+            if (version != copy.getVersion()) {
+                throw new TodoVersionConflictException(todoId, copy.getVersion(), version);
+            }
+            return copy;
+        });
+        todo.setVersion(copy.getVersion());
+    }
+
+    /**
+     * Raderar en todo genom att ta bort dess fil, med DEFAULT_DURABILITY.
      *
      * @param todoId ID för todon som ska raderas
      * @throws Exception Om något går fel (men inte om filen inte fanns)
      */
     @Override
     public void delete(UUID todoId) throws Exception {
-        String fileName = getFileName(todoId);
+        delete(todoId, DEFAULT_DURABILITY);
+    }
+
+    /**
+     * Raderar en todo med vald säkerhet, se Durability.
+     */
+    @Override
+    public void delete(UUID todoId, Durability durability) throws Exception {
+        write(List.of(todoId), durability, (id, current) -> null);
+    }
+
+    /**
+     * Raderar alla todos i en enda skrivning, med DEFAULT_DURABILITY.
+     */
+    @Override
+    public void deleteAll(Collection<UUID> todoIds) throws Exception {
+        deleteAll(todoIds, DEFAULT_DURABILITY);
+    }
+
+    /**
+     * Raderar alla todos i en enda skrivning, se saveAll.
+     */
+    @Override
+    public void deleteAll(Collection<UUID> todoIds, Durability durability) throws Exception {
+        write(todoIds, durability, (id, current) -> null);
+    }
+
+    /**
+     * Sparar manifestet till disk om det har ändrats och tömmer journalen.
+     *
+     * Nya skrivningar nekas direkt, men de som redan har börjat (t.ex. från
+     * daemonens klienttrådar) får skriva klart först - annars skulle de
+     * stängda filerna ge fel mitt i en skrivning. Ett andra anrop gör inget.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            while (writesInProgress > 0) {
+                wait();  // Väcks av write när den sista pågående skrivningen är klar
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for writes to finish");
+        }
+
+        if (manifest != null && manifestDirty) {
+            writeManifest(manifest);
+            manifestDirty = false;
+        }
+
+        if (journal != null) {
+            try {
+                checkpoint();
+            } finally {
+                journal.close();
+                journal = null;
+                lockChannel.close();  // Släpper även alla fillås
+                lockChannel = null;
+            }
+        }
+    }
 
-        File file = new File(fileName);
-        boolean ignored = file.delete();  // true om filen raderades, false om den inte fanns
+    /**
+     * Ändrar status under todons lås, så att två samtidiga ändringar av samma
+     * todo i den här processen inte kan läsa samma gamla version. En ändring
+     * från en annan process under tiden ger TodoVersionConflictException.
+     */
+    @Override
+    public Todo updateStatus(UUID todoId, TodoStatus status) throws Exception {
+        return todoLocks.call(todoId, () -> ITodoRepository.super.updateStatus(todoId, status));
+    }
+
+    /**
+     * Väljer ut kandidaterna från manifestet och ändrar dem sedan i en enda
+     * skrivning. Under låsen testas predicate på nytt mot filernas innehåll,
+     * så en todo som en annan process har ändrat under tiden ändras bara om
+     * den fortfarande matchar - och då utgår vi från den nya versionen.
+     */
+    @Override
+    public List<Todo> updateStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        List<UUID> candidates = new ArrayList<>();
+        try (Stream<Todo> todos = streamAll()) {
+            todos.filter(todo -> todo.getStatus() != status && predicate.test(todo))
+                    .forEach(todo -> candidates.add(todo.getId()));
+        }
+
+        List<Todo> changed = new ArrayList<>();
+        for (WriteAheadJournal.Entry entry : write(candidates, DEFAULT_DURABILITY, (todoId, current) -> {
+            if (current == null || current.getStatus() == status || !predicate.test(current)) {
+                return current;
+            }
+            Todo todo = new Todo(current);
+            todo.setStatus(status);
+            return todo;
+        })) {
+            changed.add(new Todo(entry.todo()));
+        }
+        return changed;
+    }
+
+    /**
+     * Gemensam väg för alla ändringar. change får varje todo som den ser ut
+     * på disk och bestämmer vad som ska hända med den (se Change).
+     *
+     * 1. Läs todos från disk och räkna ut ändringarna. En sparad todo får
+     *    nästa version efter den som fanns
+     * 2. Skriv alla ändringar till journalen på en gång (inte för Durability.NONE)
+     * 3. Vänta på fsync av journalen (bara för Durability.FSYNC)
+     * 4. Publicera: byt ut todo-filerna och uppdatera manifestet
+     *
+     * Allt görs under låsen för todos ränder, och steg 1-4 dessutom under
+     * randernas fillås så att ingen annan process kan skriva dem emellan.
+     * Låsen tas i stigande ordning, så två gruppskrivningar kan inte låsa
+     * varandra. Repositoryts lås hålls bara en kort stund i början och slutet,
+     * så att andra todos kan skrivas (och deras fsyncs slås ihop) under tiden.
+     *
+     * Har journalen blivit större än CHECKPOINT_BYTES väntar nya skrivningar i
+     * början tills de pågående är klara. Den sista som blir klar gör checkpointen.
+     *
+     * @return Ändringarna som gjordes, som journalposter
+     */
+    private List<WriteAheadJournal.Entry> write(Collection<UUID> todoIds, Durability durability, Change change)
+            throws Exception {
+        Set<UUID> distinctIds = new LinkedHashSet<>(todoIds);
+        int[] stripes = todoLocks.indexesOf(distinctIds);
+        return todoLocks.call(stripes, () -> {
+            WriteAheadJournal openJournal;
+            synchronized (this) {
+                while (checkpointPending && !closed) {
+                    wait();  // En kort stund, tills de pågående skrivningarna är klara
+                }
+                if (closed) {
+                    throw new IllegalStateException("The repository has been closed");
+                }
+                getManifest();  // Läser in (och återställer, migrerar) mappen innan vi skriver
+                openJournal = getJournal();
+                writesInProgress++;
+            }
+
+            boolean published = false;
+            List<FileLock> fileLocks = new ArrayList<>(stripes.length);
+            try {
+                for (int stripe : stripes) {
+                    fileLocks.add(lockStripe(stripe));
+                }
+
+                List<WriteAheadJournal.Entry> entries = new ArrayList<>();
+                for (UUID todoId : distinctIds) {
+                    Todo current = readCurrent(todoId);
+                    Todo next = change.apply(todoId, current);
+                    if (next == current) {
+                        continue;  // Ingen ändring (eller en radering av en todo som inte finns)
+                    }
+
+                    long version = current == null ? 0 : current.getVersion();
+                    if (next == null) {
+                        entries.add(new WriteAheadJournal.Entry(todoId, null, version));
+                    } else {
+                        next.setVersion(Math.max(version, next.getVersion()) + 1);
+                        entries.add(new WriteAheadJournal.Entry(todoId, next, next.getVersion()));
+                    }
+                }
+
+                if (!entries.isEmpty() && durability != Durability.NONE) {
+                    long sequence = openJournal.appendAll(entries);
+                    if (durability == Durability.FSYNC) {
+                        openJournal.sync(sequence);
+                    }
+                }
+                publish(entries, durability);
+                published = true;
+                return entries;
+            } finally {
+                release(fileLocks);
+                synchronized (this) {
+                    writesInProgress--;
+                    if (published && !closed && journal.size() >= CHECKPOINT_BYTES) {
+                        checkpointPending = true;
+                    }
+                    if (writesInProgress == 0) {
+                        // Tömmer inte journalen om skrivningen misslyckades, då kan posterna behövas
+                        // vid nästa start. Stängs repositoryt gör close det istället.
+                        boolean checkpointNow = checkpointPending && published && !closed;
+                        checkpointPending = false;
+                        try {
+                            if (checkpointNow) {
+                                checkpoint();
+                            }
+                        } finally {
+                            notifyAll();  // Väcker skrivningar som väntar på checkpointen, och close
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Todon som den ser ut på disk just nu, eller null om den inte finns.
+     * En gammal textfil läses men migreras inte här - den skrivs ändå om av
+     * ändringen. Anropas med todons fillås.
+     */
+    private Todo readCurrent(UUID todoId) throws IOException {
+        try {
+            return TodoCodec.decode(readFile(directoryPath.resolve(getFileName(todoId))));
+        } catch (NoSuchFileException exception) {
+            File legacyFile = getLegacyFile(todoId);
+            return legacyFile.isFile() ? TodoCodec.decodeAny(todoId, readFile(legacyFile.toPath())) : null;
+        }
+    }
+
+    /**
+     * Versionen på todons fil, utan att avkoda resten av filen.
+     * 0 om todon inte finns, och 1 om den bara finns som gammal textfil.
+     */
+    private long readVersion(UUID todoId) throws IOException {
+        try {
+            return TodoCodec.decodeVersion(readFile(directoryPath.resolve(getFileName(todoId))));
+        } catch (NoSuchFileException exception) {
+            return getLegacyFile(todoId).isFile() ? 1 : 0;
+        }
+    }
+
+    /**
+     * Tar fillåset för todons rand, så att ingen annan process kan skriva todon
+     * förrän låset släpps (med close, t.ex. i try-with-resources).
+     *
+     * Låset gäller hela JVM:en. Vill en annan tråd i samma JVM ha samma lås
+     * (vilket bara kan hända om två repositoryn delar mapp) kastar Java ett
+     * exception istället för att vänta, så då väntar vi själva en stund.
+     */
+    private FileLock lockTodo(UUID todoId) throws IOException {
+        return lockStripe(todoLocks.indexOf(todoId));
+    }
+
+    /**
+     * Tar fillåset för en rand i todoLocks, se lockTodo.
+     */
+    private FileLock lockStripe(int stripe) throws IOException {
+        while (true) {
+            try {
+                return lockChannel.lock(stripe, 1, false);
+            } catch (OverlappingFileLockException exception) {
+                LockSupport.parkNanos(100_000);
+            }
+        }
+    }
+
+    /**
+     * Släpper fillåsen i omvänd ordning. Alla försöker släppas även om ett
+     * av dem ger ett fel, och det första felet kastas efteråt.
+     */
+    private static void release(List<FileLock> fileLocks) throws IOException {
+        IOException failure = null;
+        for (int i = fileLocks.size() - 1; i >= 0; i--) {
+            try {
+                fileLocks.get(i).release();
+            } catch (IOException exception) {
+                failure = failure == null ? exception : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Byter ut (eller raderar) todo-filerna och uppdaterar manifestet en gång
+     * för alla ändringar. Anropas med todos lås, så filerna kan skrivas utan
+     * repositoryts lås. Till sist räknas de ändrade randernas räknare upp,
+     * medan vi fortfarande har deras fillås.
+     */
+    private void publish(List<WriteAheadJournal.Entry> entries, Durability durability) throws IOException {
+        List<ManifestEntry> written = new ArrayList<>(entries.size());
+        for (WriteAheadJournal.Entry entry : entries) {
+            if (entry.todo() == null) {
+                deleteFiles(entry.todoId());
+                written.add(null);
+            } else {
+                File file = getFile(entry.todoId());
+                writeTodo(file, entry.todo());
+                written.add(new ManifestEntry(file.lastModified(), file.length(), entry.todo()));
+            }
+        }
+
+        BitSet changedStripes = new BitSet(LOCK_STRIPES);
+        synchronized (this) {
+            for (int i = 0; i < entries.size(); i++) {
+                UUID todoId = entries.get(i).todoId();
+                changedStripes.set(todoLocks.indexOf(todoId));
+                if (written.get(i) == null) {
+                    manifestDirty |= manifest.remove(todoId) != null;
+                } else {
+                    // Håll manifestet uppdaterat så att nästa findAll inte behöver läsa filen
+                    manifest.put(todoId, written.get(i));
+                    manifestDirty = true;
+                }
+
+                if (durability != Durability.NONE) {
+                    unsyncedTodos.add(todoId);
+                }
+            }
+
+            for (int stripe = changedStripes.nextSetBit(0); stripe >= 0; stripe = changedStripes.nextSetBit(stripe + 1)) {
+                markChanged(stripe);
+            }
+        }
+    }
+
+    /**
+     * Räknar upp randens ändringsräknare i låsfilen, så att andra processer ser
+     * att något har ändrats och stämmer av sina manifest (se getManifest).
+     *
+     * Anropas med randens fillås, så ingen annan process kan räkna upp samma
+     * räknare samtidigt. Ändringen är vår egen och finns redan i manifestet,
+     * så den räknas in i seenChangeCount direkt.
+     */
+    private synchronized void markChanged(int stripe) throws IOException {
+        ByteBuffer counter = ByteBuffer.allocate(Long.BYTES);
+        long position = CHANGE_COUNTERS_OFFSET + (long) stripe * Long.BYTES;
+        while (counter.hasRemaining() && lockChannel.read(counter, position + counter.position()) >= 0) {
+            // Läs tills räknaren är hel eller filen tar slut
+        }
+        long count = counter.hasRemaining() ? 0 : counter.getLong(0);  // Inte skriven än
+
+        counter.clear().putLong(0, count + 1);
+        while (counter.hasRemaining()) {
+            lockChannel.write(counter, position + counter.position());
+        }
+        seenChangeCount++;
+    }
+
+    /**
+     * Summan av alla randers ändringsräknare, läst med ett enda anrop.
+     */
+    private long readChangeCount() throws IOException {
+        changeCounters.clear();
+        while (changeCounters.hasRemaining()
+                && lockChannel.read(changeCounters, CHANGE_COUNTERS_OFFSET + changeCounters.position()) >= 0) {
+            // Läs tills alla räknare är lästa eller filen tar slut
+        }
+        while (changeCounters.hasRemaining()) {
+            changeCounters.put((byte) 0);  // Räknare som ingen har skrivit än
+        }
+
+        long sum = 0;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            sum += changeCounters.getLong(i * Long.BYTES);
+        }
+        return sum;
+    }
+
+    private void deleteFiles(UUID todoId) {
+        boolean ignored = getFile(todoId).delete();  // true om filen raderades, false om den inte fanns
         // Vi bryr oss inte om returvärdet just nu, därav namnet 'ignored'
+        ignored = getLegacyFile(todoId).delete();
+    }
+
+    /**
+     * Hämtar journalen och öppnar den första gången.
+     *
+     * När journalen öppnas gör vi om alla hela poster som finns i den - de kan
+     * komma från en körning som kraschade innan ändringarna hann publiceras.
+     * Detsamma gäller journaler från andra processer som har kraschat (de som
+     * inte är låsta). En post görs bara om ifall filen inte redan har en nyare
+     * version, så att vi aldrig skriver över en ändring som gjorts efter kraschen.
+     * Halvskrivna temporära filer från döda processer tas bort.
+     */
+    private WriteAheadJournal getJournal() throws IOException {
+        if (journal != null) {
+            return journal;
+        }
+        if (closed) {
+            // Annars skulle journalen och fillåsen öppnas igen och aldrig stängas
+            throw new IllegalStateException("The repository has been closed");
+        }
+
+        if (lockChannel == null) {
+            // Mappen kan komma från inställningarna och behöver inte finnas än
+            Files.createDirectories(directoryPath);
+            lockChannel = FileChannel.open(new File(directory, LOCK_FILE).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        WriteAheadJournal opened = null;
+        List<WriteAheadJournal> recovered = new ArrayList<>();
+        try {
+            File[] journalFiles = directory.listFiles((ignored, name) -> name.startsWith(JOURNAL_FILE));
+            journalFiles = journalFiles == null ? new File[0] : journalFiles;
+            Arrays.sort(journalFiles);
+            for (File journalFile : journalFiles) {
+                WriteAheadJournal candidate = WriteAheadJournal.tryOpen(journalFile);
+                if (candidate == null) {
+                    continue;  // En annan process använder den
+                }
+                if (opened == null) {
+                    opened = candidate;
+                } else {
+                    recovered.add(candidate);
+                }
+                replay(candidate);
+            }
+
+            // Ingen journal fanns, eller så används alla av andra processer - skapa en ny
+            for (int number = 0; opened == null; number++) {
+                opened = WriteAheadJournal.tryOpen(new File(directory, number == 0 ? JOURNAL_FILE : JOURNAL_FILE + "." + number));
+                if (opened != null) {
+                    replay(opened);
+                }
+            }
+
+            deleteAbandonedTemporaryFiles();
+            journal = opened;
+            if (!unsyncedTodos.isEmpty()) {
+                checkpoint();
+            }
+
+            // Först nu ligger de omgjorda ändringarna säkert på disk. Journalerna
+            // töms men får ligga kvar, så kan nästa process som startar använda dem.
+            for (WriteAheadJournal other : recovered) {
+                other.reset();
+            }
+        } catch (IOException | RuntimeException exception) {
+            journal = null;
+            if (opened != null) {
+                opened.close();
+            }
+            throw exception;
+        } finally {
+            for (WriteAheadJournal other : recovered) {
+                other.close();
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Gör om en journals poster, utom de som filerna redan har en nyare version av.
+     * Samma version görs om, så att en post som kanske bara hann skrivas till
+     * hälften blir hel.
+     *
+     * Här tas fillåsen med repositoryts lås, vilket annars aldrig görs. Det går
+     * bra eftersom journalen öppnas innan någon skrivning eller migrering i det
+     * här repositoryt kan ta ett fillås - ingen tråd kan alltså ha ett fillås
+     * och samtidigt vänta på repositoryts lås.
+     */
+    private void replay(WriteAheadJournal recovered) throws IOException {
+        for (WriteAheadJournal.Entry entry : recovered.getRecoveredEntries()) {
+            FileLock fileLock = lockTodo(entry.todoId());
+            try {
+                if (readVersion(entry.todoId()) > entry.version()) {
+                    continue;
+                }
+                if (entry.todo() == null) {
+                    deleteFiles(entry.todoId());
+                } else {
+                    writeTodo(getFile(entry.todoId()), entry.todo());
+                }
+                markChanged(todoLocks.indexOf(entry.todoId()));
+            } finally {
+                fileLock.release();
+            }
+            unsyncedTodos.add(entry.todoId());
+        }
+    }
+
+    /**
+     * Tar bort temporära filer som en död process lämnat efter sig. Filer från
+     * levande processer (även vår egen) kan vara mitt i en skrivning och får vara kvar.
+     */
+    private void deleteAbandonedTemporaryFiles() throws IOException {
+        File[] temporaryFiles = directory.listFiles((ignored, name) -> name.endsWith(TEMPORARY_EXTENSION));
+        for (File temporaryFile : temporaryFiles == null ? new File[0] : temporaryFiles) {
+            String name = temporaryFile.getName();
+            String owner = name.substring(0, name.length() - TEMPORARY_EXTENSION.length());
+            owner = owner.substring(owner.lastIndexOf('.') + 1);
+            try {
+                if (ProcessHandle.of(Long.parseLong(owner)).isPresent()) {
+                    continue;
+                }
+            } catch (NumberFormatException ignored) {
+                // En fil från innan namnen hade process-id, ingen skriver till den längre
+            }
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+    }
+
+    /**
+     * Ser till att alla publicerade todo-filer ligger säkert på disk och tömmer
+     * sedan journalen, så att den inte växer för evigt.
+     */
+    private void checkpoint() throws IOException {
+        for (UUID todoId : unsyncedTodos) {
+            try (FileChannel channel = FileChannel.open(getFile(todoId).toPath(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (NoSuchFileException ignored) {
+                // Todon är raderad, det finns inget att synka
+            }
+        }
+        syncDirectory();
+
+        journal.reset();
+        unsyncedTodos.clear();
+    }
+
+    /**
+     * Synkar själva mappen, så att namnbytena (och raderingarna) också är
+     * säkra på disk. Alla operativsystem kan inte öppna en mapp på det här
+     * sättet (t.ex. Windows), och då får vi nöja oss med filerna.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directoryPath, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            // Stöds inte på det här operativsystemet
+        }
+    }
+
+    /**
+     * Hämtar manifestet och laddar det första gången.
+     *
+     * Vid laddning går vi igenom alla todo-filer i mappen, se scanDirectory.
+     * Därefter läser vi bara ändringsräknarna i låsfilen. Har summan ändrats
+     * sedan sist, utöver våra egna ändringar, har en annan process skapat,
+     * bytt ut eller raderat en fil, och då stämmer vi av manifestet i minnet
+     * mot mappen igen. Våra egna skrivningar ger alltså ingen genomsökning.
+     *
+     * Summan läses innan mappen listas, så att en ändring under genomsökningen
+     * syns nästa gång.
+     */
+    private Map<UUID, ManifestEntry> getManifest() throws IOException {
+        if (manifest != null) {
+            if (lockChannel == null) {
+                return manifest;  // Stängt, ingen kan ha skrivit via oss och vi kan inte läsa räknarna
+            }
+            long changeCount = readChangeCount();
+            if (changeCount != seenChangeCount) {
+                seenChangeCount = changeCount;
+                if (scanDirectory(manifest)) {
+                    manifestDirty = true;
+                }
+            }
+            return manifest;
+        }
+
+        getJournal();  // Återställ eventuella ändringar från en krasch innan vi läser mappen
+        seenChangeCount = readChangeCount();
+        if (scanDirectory(readManifest(new File(directory, MANIFEST_FILE)))) {
+            writeManifest(manifest);
+        }
+        return manifest;
+    }
+
+    /**
+     * Går igenom alla todo-filer i mappen och ersätter manifestet i minnet.
+     *
+     * Om en fil har samma ändringstid och storlek som i known använder vi den
+     * kopian, annars läser vi filen på nytt. Gamla textfiler läses men migreras
+     * inte här, eftersom det kräver fillås och vi har repositoryts lås - de
+     * migreras istället när todon läses med findById eller skrivs.
+     * Filer som försvunnit tas bort.
+     *
+     * Har vi en trådpool delas fillistan upp i bitar som kontrolleras parallellt
+     * (se ScanTask), annars går vi igenom filerna en i taget.
+     *
+     * @param known Det vi vet om filerna sedan tidigare
+     * @return true om manifestet skiljer sig från known
+     */
+    private boolean scanDirectory(Map<UUID, ManifestEntry> known) throws IOException {
+        Map<UUID, ManifestEntry> stored = known;
+
+        File[] todoFiles = directory.listFiles((ignored, name) -> getTodoId(name) != null);
+        if (todoFiles == null) {
+            todoFiles = new File[0];
+        }
+
+        // Har en textfil redan skrivits om (men inte hunnit tas bort) gäller den binära filen
+        Set<String> names = new HashSet<>();
+        for (File todoFile : todoFiles) {
+            names.add(todoFile.getName());
+        }
+        todoFiles = Arrays.stream(todoFiles)
+                .filter(todoFile -> !todoFile.getName().endsWith(LEGACY_EXTENSION)
+                        || !names.contains(getFileName(getTodoId(todoFile.getName()))))
+                .toArray(File[]::new);
+        if (orderedScan) {
+            Arrays.sort(todoFiles, Comparator.comparing(File::getName));
+        }
+
+        List<ScanResult> results;
+        if (scanPool == null || todoFiles.length <= SCAN_CHUNK_SIZE) {
+            results = scan(todoFiles, 0, todoFiles.length, stored);
+        } else {
+            try {
+                results = scanPool.invoke(new ScanTask(todoFiles, 0, todoFiles.length, stored));
+            } catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+        }
+
+        Map<UUID, ManifestEntry> verified = new LinkedHashMap<>();
+        boolean changed = results.size() != stored.size();
+        for (ScanResult result : results) {
+            verified.put(result.entry().id(), result.entry());
+            changed |= result.changed();
+        }
+
+        manifest = verified;
+        return changed;
+    }
+
+    /**
+     * Kontrollerar filerna todoFiles[from..to) mot det sparade manifestet och
+     * läser om de filer som har ändrats.
+     */
+    private List<ScanResult> scan(File[] todoFiles, int from, int to, Map<UUID, ManifestEntry> stored)
+            throws IOException {
+        List<ScanResult> results = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            File todoFile = todoFiles[i];
+            UUID todoId = getTodoId(todoFile.getName());
+
+            long lastModified = todoFile.lastModified();
+            long length = todoFile.length();
+            ManifestEntry entry = stored.get(todoId);
+            if (entry != null && entry.lastModified() == lastModified && entry.length() == length) {
+                results.add(new ScanResult(entry, false));
+            } else {
+                Todo todo;
+                try {
+                    todo = TodoCodec.decodeAny(todoId, readFile(todoFile.toPath()));
+                } catch (NoSuchFileException deleted) {
+                    continue;  // Raderad (eller migrerad) av någon annan sedan mappen listades
+                }
+                // Ändringstiden från innan vi läste: byts filen ut under tiden läses den om nästa gång
+                results.add(new ScanResult(new ManifestEntry(lastModified, length, todo), true));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Läser det binära manifestet. Saknas filen eller är den trasig
+     * returnerar vi ett tomt manifest, så byggs det upp från filerna igen.
+     */
+    private static Map<UUID, ManifestEntry> readManifest(File file) {
+        Map<UUID, ManifestEntry> entries = new HashMap<>();
+        if (!file.isFile()) {
+            return entries;
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != MANIFEST_MAGIC || input.readInt() != MANIFEST_VERSION) {
+                return entries;
+            }
+
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                long lastModified = input.readLong();
+                long length = input.readLong();
+                byte[] encoded = new byte[input.readInt()];
+                input.readFully(encoded);
+                IoCounters.recordRead(encoded.length);
+                ManifestEntry entry = new ManifestEntry(lastModified, length, TodoCodec.decode(encoded));
+                entries.put(entry.id(), entry);
+            }
+            return entries;
+        } catch (IOException | RuntimeException exception) {
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Skriver manifestet till en temporär fil och byter sedan namn på den,
+     * så att ett avbrott aldrig lämnar ett halvskrivet manifest efter sig.
+     */
+    private void writeManifest(Map<UUID, ManifestEntry> entries) throws IOException {
+        File file = new File(directory, MANIFEST_FILE);
+        File temporary = new File(directory, MANIFEST_FILE + "." + PROCESS_ID + TEMPORARY_EXTENSION);
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+            output.writeInt(MANIFEST_MAGIC);
+            output.writeInt(MANIFEST_VERSION);
+            output.writeInt(entries.size());
+            for (ManifestEntry entry : entries.values()) {
+                byte[] encoded = TodoCodec.encode(entry.toTodo());
+                output.writeLong(entry.lastModified());
+                output.writeLong(entry.length());
+                output.writeInt(encoded.length);
+                output.write(encoded);
+                IoCounters.recordWritten(encoded.length);
+            }
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Översätter ett filnamn till ett UUID, eller null om det inte är en todo-fil.
+     */
+    private static UUID getTodoId(String name) {
+        // Hoppa över filer som varken slutar med .todo eller .txt
+        String extension = name.endsWith(EXTENSION) ? EXTENSION : name.endsWith(LEGACY_EXTENSION) ? LEGACY_EXTENSION : null;
+        if (extension == null) {
+            return null;
+        }
+
+        // Försök konvertera filnamnet (utan ändelse) till ett UUID
+        try {
+            return UUID.fromString(name.substring(0, name.length() - extension.length()));
+        } catch (IllegalArgumentException ignored) {
+            // Om filnamnet inte är ett giltigt UUID, hoppa över filen
+            return null;
+        }
     }
 
     /**
      * Hjälpmetod som konverterar ett UUID till ett filnamn.
      *
-     * Exempel: UUID "123e4567-..." blir "123e4567-....txt"
+     * Exempel: UUID "123e4567-..." blir "123e4567-....todo"
      *
      * Vi gör detta 'private static' eftersom det bara är en intern hjälpmetod
      * som inte behöver tillgång till klassens fält.
      *
      * @param todoId UUID att konvertera
-     * @return Filnamn med .txt-ändelse
+     * @return Filnamn med .todo-ändelse
      */
     private static String getFileName(UUID todoId) {
         return todoId.toString() + EXTENSION;
     }
+
+    /**
+     * Filen för en todo i repositoryts mapp.
+     */
+    private File getFile(UUID todoId) {
+        return new File(directory, getFileName(todoId));
+    }
+
+    /**
+     * Den gamla textfilen för en todo, som kanske inte har migrerats än.
+     */
+    private File getLegacyFile(UUID todoId) {
+        return new File(directory, todoId + LEGACY_EXTENSION);
+    }
+
+    /**
+     * Kontrollerar en del av fillistan. Är delen för stor delas den på mitten och
+     * halvorna körs parallellt (fork/join). Varje del bygger sin egen lista, och
+     * listorna slås ihop i samma ordning som filerna - så inget gemensamt lås behövs.
+     */
+    private final class ScanTask extends RecursiveTask<List<ScanResult>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File[] todoFiles;
+        private final int from;
+        private final int to;
+        private final Map<UUID, ManifestEntry> stored;
+
+        private ScanTask(File[] todoFiles, int from, int to, Map<UUID, ManifestEntry> stored) {
+            this.todoFiles = todoFiles;
+            this.from = from;
+            this.to = to;
+            this.stored = stored;
+        }
+
+        @Override
+        protected List<ScanResult> compute() {
+            if (to - from <= SCAN_CHUNK_SIZE) {
+                try {
+                    return scan(todoFiles, from, to, stored);
+                } catch (IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            }
+
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(todoFiles, from, middle, stored);
+            ScanTask right = new ScanTask(todoFiles, middle, to, stored);
+            left.fork();
+            List<ScanResult> results = right.compute();
+            List<ScanResult> merged = left.join();
+            merged.addAll(results);
+            return merged;
+        }
+    }
+
+    /**
+     * Vad en skrivning ska göra med en todo, se write.
+     */
+    private interface Change {
+
+        /**
+         * @param current Todon som den ser ut på disk, eller null om den inte finns
+         * @return Todon som ska sparas, null för att radera den, eller current
+         *         (samma objekt) för att lämna den orörd
+         * @throws Exception T.ex. TodoVersionConflictException, då skrivs ingenting
+         */
+        Todo apply(UUID todoId, Todo current) throws Exception;
+    }
+
+    /**
+     * Resultatet för en fil: manifestraden och om den var tvungen att läsas om.
+     */
+    private record ScanResult(ManifestEntry entry, boolean changed) {
+    }
+
+    /**
+     * En rad i manifestet: filens ändringstid och storlek plus todons fält.
+     */
+    private record ManifestEntry(long lastModified, long length, UUID id, String title, String category,
+                                 TodoStatus status, int priority, long deadline, long version) {
+
+        private ManifestEntry(long lastModified, long length, Todo todo) {
+            this(lastModified, length, todo.getId(), todo.getTitle(), todo.getCategory(),
+                    todo.getStatus(), todo.getPriority(), todo.getDeadline().getTime(), todo.getVersion());
+        }
+
+        private Todo toTodo() {
+            Todo todo = new Todo(id, title, new Date(deadline), category, priority, status);
+            todo.setVersion(version);
+            return todo;
+        }
+    }
 }
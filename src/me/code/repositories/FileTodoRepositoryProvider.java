@@ -0,0 +1,44 @@
+package me.code.repositories;
+
+import me.code.config.TodoConfig;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Provider för FileTodoRepository, "todo.repository=file".
+ *
+ *   todo.data.dir           Mappen med todo-filerna (standard ".")
+ *   todo.file.scan.threads  Trådar som läser filerna vid genomsökning. Standard är
+ *                           JVM:ens gemensamma ForkJoinPool, 1 läser en fil i taget.
+ *   todo.file.scan.ordered  true om todos ska komma i filnamnsordning (standard false)
+ */
+public class FileTodoRepositoryProvider implements ITodoRepositoryProvider {
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public ITodoRepository open(TodoConfig config) throws Exception {
+        File directory = config.getFile("todo.data.dir", new File("."));
+        int threads = config.getInt("todo.file.scan.threads", 0);
+        if (threads < 0) {
+            throw new IllegalArgumentException("todo.file.scan.threads must not be negative");
+        }
+        // Trådarna i en ForkJoinPool är daemon-trådar, så poolen behöver inte stängas
+        ForkJoinPool scanPool = threads == 0 ? ForkJoinPool.commonPool()
+                : threads == 1 ? null
+                : new ForkJoinPool(threads);
+        return new FileTodoRepository(directory, scanPool, config.getBoolean("todo.file.scan.ordered", false));
+    }
+
+    /**
+     * Varje skrivning är en egen fil som synkas till disk, så det lönar sig att samla ihop dem.
+     */
+    @Override
+    public boolean isWriteBehindRecommended() {
+        return true;
+    }
+}
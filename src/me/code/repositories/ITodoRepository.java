@@ -1,9 +1,17 @@
 package me.code.repositories;
 
 import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.services.TodoQuery;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Interface som definierar kontraktet för hur vi hanterar todo-data.
@@ -16,7 +24,7 @@ import java.util.UUID;
  * Repository-mönstret används för att separera databaslogik från affärslogik.
  * Tänk på ett repository som ett lager mellan applikationen och där datan finns.
  */
-public interface ITodoRepository {
+public interface ITodoRepository extends AutoCloseable {
 
     /**
      * Hittar en todo baserat på dess ID.
@@ -35,16 +43,141 @@ public interface ITodoRepository {
      */
     List<Todo> findAll() throws Exception;
 
+    /**
+     * Hämtar alla todos som en Stream som läses in allt eftersom den konsumeras.
+     *
+     * Till skillnad från findAll behöver vi inte ha alla todos i minnet samtidigt.
+     * Streamen kan hålla filer öppna, så den ska stängas när man är klar -
+     * enklast med try-with-resources: try (Stream<Todo> todos = repository.streamAll()) { ... }
+     *
+     * Standardimplementationen hämtar listan från findAll och gör om den till en Stream.
+     *
+     * @return En Stream med alla todos
+     * @throws Exception Om något går fel vid läsning
+     */
+    default Stream<Todo> streamAll() throws Exception {
+        return findAll().stream();
+    }
+
+    /**
+     * Om repositoryt kan besvara en TodoQuery snabbt själv med findMatching,
+     * t.ex. för att det är en databas med egna index. Då behöver servicen inte
+     * bygga upp sina index i minnet för att filtrera.
+     *
+     * Standardimplementationen svarar false.
+     */
+    default boolean supportsQueries() {
+        return false;
+    }
+
+    /**
+     * Hittar alla todos som matchar query, i den ordning och med den limit som
+     * query anger.
+     *
+     * Standardimplementationen går igenom alla todos med streamAll och sorterar
+     * träffarna i minnet. Repositoryn som kan göra bättre (se supportsQueries)
+     * överlagrar metoden.
+     *
+     * @param query Villkor, ordning och limit
+     * @return De matchande todos
+     * @throws Exception Om något går fel vid läsning
+     */
+    default List<Todo> findMatching(TodoQuery query) throws Exception {
+        try (Stream<Todo> todos = streamAll()) {
+            Stream<Todo> matches = todos.filter(query::matches);
+            Comparator<Todo> comparator = query.getComparator();
+            if (comparator != null) {
+                matches = matches.sorted(comparator);
+            }
+            return matches.limit(query.getLimit()).collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Räknar hur många todos som finns sparade.
+     *
+     * Standardimplementationen hämtar alla todos och räknar dem. Repositoryn
+     * som vet antalet ändå (t.ex. från ett index) kan överlagra metoden.
+     *
+     * @return Antalet todos
+     * @throws Exception Om något går fel vid läsning
+     */
+    default long count() throws Exception {
+        return findAll().size();
+    }
+
     /**
      * Sparar en todo (både nya och uppdaterade).
      *
      * Om todon är ny skapas den, om den redan finns uppdateras den.
+     * Todons version räknas upp och sätts även på objektet som skickades in,
+     * så att det kan sparas villkorligt nästa gång (se saveIfVersionMatches).
      *
      * @param todo Todon som ska sparas
      * @throws Exception Om något går fel vid sparning
      */
     void save(Todo todo) throws Exception;
 
+    /**
+     * Sparar en todo och väljer hur säker skrivningen ska vara, se Durability.
+     *
+     * Standardimplementationen ignorerar valet och anropar save(todo) - repositoryn
+     * som har en journal eller liknande kan överlagra metoden.
+     *
+     * @param todo Todon som ska sparas
+     * @param durability Hur säker skrivningen ska vara
+     * @throws Exception Om något går fel vid sparning
+     */
+    default void save(Todo todo, Durability durability) throws Exception {
+        save(todo);
+    }
+
+    /**
+     * Sparar flera todos på en gång. Versionen sätts på varje objekt, precis som för save.
+     *
+     * Standardimplementationen anropar save för en todo i taget. Repositoryn där
+     * varje skrivning har en fast kostnad (en journalpost, en fsync, ett lås)
+     * kan överlagra metoden och betala den kostnaden en gång för hela gruppen.
+     *
+     * @param todos Todos som ska sparas
+     * @throws Exception Om något går fel vid sparning
+     */
+    default void saveAll(Collection<Todo> todos) throws Exception {
+        for (Todo todo : todos) {
+            save(todo);
+        }
+    }
+
+    /**
+     * Sparar flera todos på en gång med vald säkerhet, se Durability.
+     *
+     * Standardimplementationen anropar save(todo, durability) för en todo i taget.
+     *
+     * @param todos Todos som ska sparas
+     * @param durability Hur säker skrivningen ska vara
+     * @throws Exception Om något går fel vid sparning
+     */
+    default void saveAll(Collection<Todo> todos, Durability durability) throws Exception {
+        for (Todo todo : todos) {
+            save(todo, durability);
+        }
+    }
+
+    /**
+     * Sparar todon bara om den sparade versionen fortfarande är todo.getVersion(),
+     * dvs. om ingen annan har sparat todon sedan den lästes ("compare-and-set").
+     * En todo med version 0 sparas bara om den inte redan finns.
+     *
+     * Jämförelsen och skrivningen sker som en enhet, så två anropare som läst
+     * samma version kan aldrig båda lyckas - den ena får ett exception och kan
+     * försöka igen med färsk data. Ingen behöver låsa todon under tiden den ändras.
+     *
+     * @param todo Todon som ska sparas, med versionen den hade när den lästes
+     * @throws TodoVersionConflictException Om todon har en annan version än förväntat
+     * @throws Exception Om något annat går fel vid sparning
+     */
+    void saveIfVersionMatches(Todo todo) throws Exception;
+
     /**
      * Raderar en todo permanent.
      *
@@ -52,4 +185,117 @@ public interface ITodoRepository {
      * @throws Exception Om något går fel vid radering
      */
     void delete(UUID todoId) throws Exception;
+
+    /**
+     * Raderar en todo och väljer hur säker raderingen ska vara, se Durability.
+     *
+     * Standardimplementationen ignorerar valet och anropar delete(todoId).
+     *
+     * @param todoId ID för todon som ska raderas
+     * @param durability Hur säker raderingen ska vara
+     * @throws Exception Om något går fel vid radering
+     */
+    default void delete(UUID todoId, Durability durability) throws Exception {
+        delete(todoId);
+    }
+
+    /**
+     * Raderar flera todos på en gång. ID:n som inte finns hoppas över.
+     *
+     * Standardimplementationen anropar delete för en todo i taget.
+     *
+     * @param todoIds ID för todos som ska raderas
+     * @throws Exception Om något går fel vid radering
+     */
+    default void deleteAll(Collection<UUID> todoIds) throws Exception {
+        for (UUID todoId : todoIds) {
+            delete(todoId);
+        }
+    }
+
+    /**
+     * Raderar flera todos på en gång med vald säkerhet, se Durability.
+     *
+     * Standardimplementationen anropar delete(todoId, durability) för en todo i taget.
+     *
+     * @param todoIds ID för todos som ska raderas
+     * @param durability Hur säker raderingen ska vara
+     * @throws Exception Om något går fel vid radering
+     */
+    default void deleteAll(Collection<UUID> todoIds, Durability durability) throws Exception {
+        for (UUID todoId : todoIds) {
+            delete(todoId, durability);
+        }
+    }
+
+    /**
+     * Uppdaterar bara statusen på en befintlig todo.
+     *
+     * Standardimplementationen läser todon, ändrar statusen och sparar hela todon igen
+     * med saveIfVersionMatches, så att en samtidig ändring inte skrivs över.
+     * Repositoryn som kan ändra statusen direkt på plats (utan att skriva om allt)
+     * kan överlagra metoden för att slippa det.
+     *
+     * @param todoId ID för todon som ska uppdateras
+     * @param status Ny status
+     * @return Den uppdaterade todon, eller null om den inte hittades
+     * @throws TodoVersionConflictException Om någon annan hann ändra todon under tiden
+     * @throws Exception Om något går fel vid läsning eller sparning
+     */
+    default Todo updateStatus(UUID todoId, TodoStatus status) throws Exception {
+        Todo todo = findById(todoId);
+        if (todo == null) {
+            return null;
+        }
+
+        todo.setStatus(status);
+        saveIfVersionMatches(todo);
+        return todo;
+    }
+
+    /**
+     * Ger alla todos som matchar predicate en ny status, t.ex. "markera allt i
+     * kategorin sport som klart". Todos som redan har statusen lämnas orörda.
+     *
+     * Standardimplementationen går igenom alla todos och sparar de ändrade med
+     * saveAll. Den låser ingenting, så en todo som ändras av någon annan mellan
+     * läsningen och skrivningen kan skrivas över - repositoryn som kan göra hela
+     * ändringen under ett lås bör överlagra metoden.
+     *
+     * @param predicate Vilka todos som ska ändras
+     * @param status Ny status
+     * @return De todos som ändrades, med ny status och version
+     * @throws Exception Om något går fel vid läsning eller sparning
+     */
+    default List<Todo> updateStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        List<Todo> changed;
+        try (Stream<Todo> todos = streamAll()) {
+            changed = todos.filter(todo -> todo.getStatus() != status && predicate.test(todo))
+                    .collect(Collectors.toList());
+        }
+
+        for (Todo todo : changed) {
+            todo.setStatus(status);
+        }
+        saveAll(changed);
+        return changed;
+    }
+
+    /**
+     * Stänger repositoryt och släpper alla resurser (öppna filer, bakgrundstrådar etc).
+     *
+     * Standardimplementationen gör ingenting - ett repository som inte håller
+     * några resurser öppna behöver inte överlagra metoden.
+     *
+     * Till skillnad från AutoCloseable.close får bara IOException kastas. Då kan
+     * ett repository användas i try-with-resources utan att anroparen måste
+     * hantera t.ex. InterruptedException. Avbryts stängningen medan den väntar
+     * (på en tråd eller en pågående skrivning) sätts avbrottsflaggan tillbaka
+     * och InterruptedIOException kastas.
+     *
+     * @throws IOException Om något går fel vid stängning
+     */
+    @Override
+    default void close() throws IOException {
+    }
 }
@@ -0,0 +1,63 @@
+package me.code.repositories;
+
+import me.code.config.TodoConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Skapar en sorts ITodoRepository utifrån inställningarna i TodoConfig.
+ *
+ * Main vet inte vilka repositoryn som finns, den frågar ServiceLoader efter alla
+ * klasser som implementerar det här interfacet och väljer den vars namn står i
+ * inställningen "todo.repository". En ny sorts lagring läggs alltså till genom
+ * att skriva en provider och lägga dess klassnamn i filen
+ *
+ *   META-INF/services/me.code.repositories.ITodoRepositoryProvider
+ *
+ * (i den här modulen eller i en egen jar på classpath) - Main behöver inte ändras.
+ *
+ * En provider måste ha en publik konstruktor utan parametrar.
+ */
+public interface ITodoRepositoryProvider {
+
+    /**
+     * Namnet som väljer den här providern, t.ex. "file".
+     */
+    String getName();
+
+    /**
+     * Öppnar ett repository. Cachen och skrivningen i bakgrunden läggs till av
+     * Main, så providern ska bara skapa själva lagringen.
+     *
+     * @param config Inställningarna, t.ex. "todo.data.dir"
+     * @throws Exception Om lagringen inte kan öppnas
+     */
+    ITodoRepository open(TodoConfig config) throws Exception;
+
+    /**
+     * Om skrivningar ska samlas ihop med WriteBehindTodoRepository när inställningen
+     * "todo.writebehind.enabled" inte är satt. Lönar sig när varje skrivning är dyr.
+     */
+    default boolean isWriteBehindRecommended() {
+        return false;
+    }
+
+    /**
+     * Letar upp providern med det givna namnet bland dem som ServiceLoader hittar.
+     *
+     * @throws IllegalArgumentException Om det inte finns någon provider med namnet
+     */
+    static ITodoRepositoryProvider find(String name) {
+        List<String> names = new ArrayList<>();
+        for (ITodoRepositoryProvider provider : ServiceLoader.load(ITodoRepositoryProvider.class)) {
+            if (provider.getName().equalsIgnoreCase(name)) {
+                return provider;
+            }
+            names.add(provider.getName());
+        }
+        throw new IllegalArgumentException("Unknown repository '" + name + "', available: "
+                + String.join(", ", names));
+    }
+}
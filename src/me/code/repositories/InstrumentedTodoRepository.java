@@ -0,0 +1,285 @@
+package me.code.repositories;
+
+import me.code.metrics.IoCounters;
+import me.code.metrics.MetricsRegistry;
+import me.code.metrics.OperationMetrics;
+import me.code.metrics.RepositoryCallEvent;
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.services.TodoQuery;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Decorator som mäter varje anrop till ett annat repository: hur lång tid det
+ * tog, om det misslyckades och hur många bytes todo-data det läste och skrev
+ * (se IoCounters). Mätvärdena hamnar i en MetricsRegistry under namn som
+ * "repository.findById".
+ *
+ * Main lägger två lager: "storage" direkt runt lagringen och "repository"
+ * ytterst, utanför cachen. Skillnaden mellan dem visar vad cachen och
+ * skrivningen i bakgrunden sparar in.
+ *
+ * En mätning kostar två anrop till System.nanoTime och några atomiska
+ * additioner, vilket är försumbart jämfört med att läsa en fil.
+ *
+ * streamAll mäts från att streamen skapas tills den stängs, eftersom det är
+ * när den konsumeras som todos läses.
+ *
+ * Samma mätning blir också en RepositoryCallEvent när en JFR-inspelning
+ * pågår. Händelsen får dessutom todo-ID, antal todos och om cachen träffade.
+ * Är både mätvärdena och JFR avstängda anropas repositoryt direkt.
+ */
+public class InstrumentedTodoRepository implements ITodoRepository {
+
+    private final ITodoRepository delegate;
+    private final MetricsRegistry registry;
+
+    // Slås upp en gång här istället för vid varje anrop
+    private final OperationMetrics findById;
+    private final OperationMetrics findAll;
+    private final OperationMetrics streamAll;
+    private final OperationMetrics findMatching;
+    private final OperationMetrics count;
+    private final OperationMetrics save;
+    private final OperationMetrics saveAll;
+    private final OperationMetrics saveIfVersionMatches;
+    private final OperationMetrics delete;
+    private final OperationMetrics deleteAll;
+    private final OperationMetrics updateStatus;
+    private final OperationMetrics updateStatusWhere;
+
+    /**
+     * @param delegate Repositoryt som ska mätas
+     * @param registry Var mätvärdena ska hamna
+     * @param prefix Början på namnen, t.ex. "repository" ger "repository.findById"
+     */
+    public InstrumentedTodoRepository(ITodoRepository delegate, MetricsRegistry registry, String prefix) {
+        this.delegate = delegate;
+        this.registry = registry;
+        this.findById = registry.operation(prefix + ".findById");
+        this.findAll = registry.operation(prefix + ".findAll");
+        this.streamAll = registry.operation(prefix + ".streamAll");
+        this.findMatching = registry.operation(prefix + ".findMatching");
+        this.count = registry.operation(prefix + ".count");
+        this.save = registry.operation(prefix + ".save");
+        this.saveAll = registry.operation(prefix + ".saveAll");
+        this.saveIfVersionMatches = registry.operation(prefix + ".saveIfVersionMatches");
+        this.delete = registry.operation(prefix + ".delete");
+        this.deleteAll = registry.operation(prefix + ".deleteAll");
+        this.updateStatus = registry.operation(prefix + ".updateStatus");
+        this.updateStatusWhere = registry.operation(prefix + ".updateStatusWhere");
+    }
+
+    @Override
+    public Todo findById(UUID todoId) throws Exception {
+        return measure(findById, todoId, () -> delegate.findById(todoId), todo -> todo != null ? 1 : 0);
+    }
+
+    @Override
+    public List<Todo> findAll() throws Exception {
+        return measure(findAll, null, delegate::findAll, List::size);
+    }
+
+    @Override
+    public Stream<Todo> streamAll() throws Exception {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        boolean measured = registry.isEnabled();
+        if (!measured && !event.isEnabled()) {
+            return delegate.streamAll();
+        }
+
+        long[] io = IoCounters.forCurrentThread();
+        long read = io[0];
+        long written = io[1];
+        event.begin();
+        long start = System.nanoTime();
+        Stream<Todo> todos;
+        try {
+            todos = delegate.streamAll();
+        } catch (Exception exception) {
+            finish(streamAll, event, measured, start, true, io[0] - read, io[1] - written, null, null, 0);
+            throw exception;
+        }
+        AtomicInteger consumed = new AtomicInteger();
+        // Räknarna läses i tråden som stänger streamen, oftast samma som skapade den
+        return todos.peek(todo -> consumed.incrementAndGet()).onClose(() -> {
+            boolean sameThread = IoCounters.forCurrentThread() == io;
+            finish(streamAll, event, measured, start, false, sameThread ? io[0] - read : 0,
+                    sameThread ? io[1] - written : 0, null, null, consumed.get());
+        });
+    }
+
+    @Override
+    public boolean supportsQueries() {
+        return delegate.supportsQueries();
+    }
+
+    @Override
+    public List<Todo> findMatching(TodoQuery query) throws Exception {
+        return measure(findMatching, null, () -> delegate.findMatching(query), List::size);
+    }
+
+    @Override
+    public long count() throws Exception {
+        return measure(count, null, delegate::count, result -> 0);
+    }
+
+    @Override
+    public void save(Todo todo) throws Exception {
+        measure(save, todo.getId(), () -> {
+            delegate.save(todo);
+            return null;
+        }, result -> 1);
+    }
+
+    @Override
+    public void save(Todo todo, Durability durability) throws Exception {
+        measure(save, todo.getId(), () -> {
+            delegate.save(todo, durability);
+            return null;
+        }, result -> 1);
+    }
+
+    @Override
+    public void saveAll(Collection<Todo> todos) throws Exception {
+        measure(saveAll, null, () -> {
+            delegate.saveAll(todos);
+            return null;
+        }, result -> todos.size());
+    }
+
+    @Override
+    public void saveAll(Collection<Todo> todos, Durability durability) throws Exception {
+        measure(saveAll, null, () -> {
+            delegate.saveAll(todos, durability);
+            return null;
+        }, result -> todos.size());
+    }
+
+    @Override
+    public void saveIfVersionMatches(Todo todo) throws Exception {
+        measure(saveIfVersionMatches, todo.getId(), () -> {
+            delegate.saveIfVersionMatches(todo);
+            return null;
+        }, result -> 1);
+    }
+
+    @Override
+    public void delete(UUID todoId) throws Exception {
+        measure(delete, todoId, () -> {
+            delegate.delete(todoId);
+            return null;
+        }, result -> 1);
+    }
+
+    @Override
+    public void delete(UUID todoId, Durability durability) throws Exception {
+        measure(delete, todoId, () -> {
+            delegate.delete(todoId, durability);
+            return null;
+        }, result -> 1);
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> todoIds) throws Exception {
+        measure(deleteAll, null, () -> {
+            delegate.deleteAll(todoIds);
+            return null;
+        }, result -> todoIds.size());
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> todoIds, Durability durability) throws Exception {
+        measure(deleteAll, null, () -> {
+            delegate.deleteAll(todoIds, durability);
+            return null;
+        }, result -> todoIds.size());
+    }
+
+    @Override
+    public Todo updateStatus(UUID todoId, TodoStatus status) throws Exception {
+        return measure(updateStatus, todoId, () -> delegate.updateStatus(todoId, status),
+                todo -> todo != null ? 1 : 0);
+    }
+
+    @Override
+    public List<Todo> updateStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        return measure(updateStatusWhere, null, () -> delegate.updateStatusWhere(predicate, status), List::size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * Anropar call och registrerar anropet, se finish.
+     *
+     * @param todoId Todon som anropet gäller, eller null
+     * @param todos Räknar ut hur många todos anropet rörde från resultatet,
+     *              används bara om händelsen ska sparas
+     */
+    private <T> T measure(OperationMetrics operation, UUID todoId, Callable<T> call,
+                          ToIntFunction<? super T> todos) throws Exception {
+        RepositoryCallEvent event = new RepositoryCallEvent();
+        boolean measured = registry.isEnabled();
+        if (!measured && !event.isEnabled()) {
+            return call.call();
+        }
+
+        long[] io = IoCounters.forCurrentThread();
+        long read = io[0];
+        long written = io[1];
+        long hits = io[2];
+        long misses = io[3];
+        event.begin();
+        long start = System.nanoTime();
+        T result = null;
+        boolean failed = true;
+        try {
+            result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            String cache = io[2] > hits ? "hit" : io[3] > misses ? "miss" : null;
+            finish(operation, event, measured, start, failed, io[0] - read, io[1] - written, cache, todoId,
+                    failed ? 0 : todos.applyAsInt(result));
+        }
+    }
+
+    /**
+     * Registrerar ett avslutat anrop i mätvärdena och, om det är långsamt nog
+     * för inspelningen, som en RepositoryCallEvent.
+     *
+     * @param read Bytes som lästs under anropet, se IoCounters
+     * @param written Bytes som skrivits under anropet
+     * @param cache "hit" eller "miss" om anropet tittade i cachen, annars null
+     */
+    private static void finish(OperationMetrics operation, RepositoryCallEvent event, boolean measured, long start,
+                               boolean failed, long read, long written, String cache, UUID todoId, int todos) {
+        if (measured) {
+            operation.record(System.nanoTime() - start, failed, read, written);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation.getName();
+            event.todoId = todoId != null ? todoId.toString() : null;
+            event.todos = todos;
+            event.bytesRead = read;
+            event.bytesWritten = written;
+            event.cache = cache;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,574 @@
+package me.code.repositories;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.services.TodoQuery;
+
+import java.io.IOException;
+import java.sql.*;
+import java.util.Date;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Implementation av ITodoRepository som lagrar todos i en inbäddad SQL-databas
+ * via JDBC, t.ex. H2 ("jdbc:h2:./todos") eller SQLite ("jdbc:sqlite:todos.db").
+ *
+ * Databasen körs i samma process som programmet, så det behövs ingen server -
+ * bara databasens JDBC-drivrutin på classpath. Vilken databas som används
+ * bestäms helt av URL:en; SQL:en här fungerar i båda.
+ *
+ * Till skillnad från FileTodoRepository (en fil per todo) klarar en databas
+ * stora mängder todos bra, och den har egna index. Tabellen har index på status,
+ * kategori och deadline, så findMatching kan låta databasen filtrera och
+ * sortera (se supportsQueries) istället för att servicen går igenom allt i minnet.
+ *
+ * Vi använder en enda anslutning och ett lås för hela repositoryt, precis som
+ * MappedTodoRepository. Varje SQL-sats förbereds (PreparedStatement) en gång och
+ * återanvänds sedan, så databasen behöver inte tolka samma SQL om och om igen.
+ * saveAll och deleteAll skickar alla rader som en JDBC-batch i en enda
+ * transaktion, istället för en rundresa och en commit per todo.
+ *
+ * Durability ignoreras: det är databasen som bestämmer hur säker en commit är.
+ */
+public class JdbcTodoRepository implements ITodoRepository {
+
+    // Hur många ID:n som frågas efter i varje "WHERE id IN (...)", se readVersions
+    private static final int IN_CHUNK_SIZE = 100;
+
+    // Hur många rader som skickas till databasen i varje executeBatch
+    private static final int BATCH_SIZE = 1000;
+
+    // Hur många todos streamAll hämtar åt gången
+    private static final int PAGE_SIZE = 1000;
+
+    private static final String COLUMNS = "id, title, category, category_key, deadline, priority, status, version";
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS todos ("
+                    + "id VARCHAR(36) NOT NULL PRIMARY KEY, "
+                    + "title VARCHAR NOT NULL, "
+                    + "category VARCHAR NOT NULL, "
+                    + "category_key VARCHAR NOT NULL, "  // Kategorin med gemener, se TodoQuery.withCategory
+                    + "deadline BIGINT, "                // Epoch-millis
+                    + "priority INTEGER NOT NULL, "
+                    + "status VARCHAR(16) NOT NULL, "
+                    + "version BIGINT NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS todos_status ON todos (status)",
+            "CREATE INDEX IF NOT EXISTS todos_category ON todos (category_key)",
+            "CREATE INDEX IF NOT EXISTS todos_deadline ON todos (deadline)"
+    };
+
+    private static final String SELECT_BY_ID = "SELECT " + COLUMNS + " FROM todos WHERE id = ?";
+    private static final String SELECT_PAGE = "SELECT " + COLUMNS + " FROM todos WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String SELECT_ALL = "SELECT " + COLUMNS + " FROM todos";
+    private static final String SELECT_VERSIONS = "SELECT id, version FROM todos WHERE id IN ("
+            + String.join(", ", Collections.nCopies(IN_CHUNK_SIZE, "?")) + ")";
+    private static final String COUNT = "SELECT COUNT(*) FROM todos";
+    private static final String INSERT = "INSERT INTO todos (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE = "UPDATE todos SET title = ?, category = ?, category_key = ?, deadline = ?, "
+            + "priority = ?, status = ?, version = ? WHERE id = ?";
+    private static final String UPDATE_IF_VERSION = UPDATE + " AND version = ?";
+    private static final String UPDATE_STATUS = "UPDATE todos SET status = ?, version = version + 1 WHERE id = ?";
+    private static final String UPDATE_STATUS_IF_VERSION = "UPDATE todos SET status = ?, version = ? "
+            + "WHERE id = ? AND version = ?";
+    private static final String DELETE = "DELETE FROM todos WHERE id = ?";
+
+    private final Connection connection;
+
+    // SQL -> förberedd sats, så att varje sats bara förbereds en gång
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    /**
+     * Ansluter till databasen och skapar tabellen och indexen om de inte finns.
+     *
+     * @param url JDBC-URL, t.ex. "jdbc:h2:./todos"
+     * @throws SQLException Om databasen inte kan öppnas, t.ex. för att drivrutinen saknas
+     */
+    public JdbcTodoRepository(String url) throws SQLException {
+        this.connection = DriverManager.getConnection(url);
+        try {
+            try (Statement statement = connection.createStatement()) {
+                for (String sql : SCHEMA) {
+                    statement.execute(sql);
+                }
+            }
+            connection.setAutoCommit(false);
+        } catch (SQLException exception) {
+            connection.close();
+            throw exception;
+        }
+    }
+
+    @Override
+    public synchronized Todo findById(UUID todoId) throws Exception {
+        PreparedStatement select = prepare(SELECT_BY_ID);
+        select.setString(1, todoId.toString());
+        try (ResultSet rows = select.executeQuery()) {
+            if (!rows.next()) {
+                throw new NoSuchElementException("Todo with id " + todoId + " does not exist");
+            }
+            return readTodo(rows);
+        } finally {
+            connection.commit();  // Avsluta läsningens transaktion så att den inte håller lås
+        }
+    }
+
+    @Override
+    public synchronized List<Todo> findAll() throws Exception {
+        List<Todo> todos = new ArrayList<>();
+        query(SELECT_ALL, List.of(), todos::add);
+        return todos;
+    }
+
+    /**
+     * Hämtar todos en sida i taget, sorterade på ID ("keyset pagination"):
+     * varje sida börjar efter det sista ID:t på förra sidan. Bara en sida i
+     * taget ligger i minnet, och låset hålls bara medan en sida hämtas.
+     */
+    @Override
+    public Stream<Todo> streamAll() throws Exception {
+        Iterator<Todo> pages = new Iterator<>() {
+            private List<Todo> page = List.of();
+            private int position;
+            private String lastId = "";
+            private boolean lastPage;
+
+            @Override
+            public boolean hasNext() {
+                if (position < page.size()) {
+                    return true;
+                }
+                if (lastPage) {
+                    return false;
+                }
+                try {
+                    page = readPage(lastId);
+                } catch (SQLException exception) {
+                    throw new IllegalStateException("Could not read todos", exception);
+                }
+                position = 0;
+                lastPage = page.size() < PAGE_SIZE;
+                if (!page.isEmpty()) {
+                    lastId = page.get(page.size() - 1).getId().toString();
+                }
+                return !page.isEmpty();
+            }
+
+            @Override
+            public Todo next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.get(position++);
+            }
+        };
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private synchronized List<Todo> readPage(String afterId) throws SQLException {
+        List<Todo> page = new ArrayList<>(PAGE_SIZE);
+        query(SELECT_PAGE, List.of(afterId, PAGE_SIZE), page::add);
+        return page;
+    }
+
+    @Override
+    public synchronized long count() throws Exception {
+        try (ResultSet rows = prepare(COUNT).executeQuery()) {
+            rows.next();
+            return rows.getLong(1);
+        } finally {
+            connection.commit();
+        }
+    }
+
+    @Override
+    public boolean supportsQueries() {
+        return true;
+    }
+
+    /**
+     * Gör om frågan till SQL, så att databasen kan använda sina index för
+     * villkoren och sorteringen och bara skickar tillbaka de todos som efterfrågas.
+     */
+    @Override
+    public synchronized List<Todo> findMatching(TodoQuery query) throws Exception {
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM todos");
+        List<Object> parameters = new ArrayList<>();
+        List<String> conditions = new ArrayList<>();
+        if (query.getStatus() != null) {
+            conditions.add("status = ?");
+            parameters.add(query.getStatus().name());
+        }
+        if (query.getCategory() != null) {
+            conditions.add("category_key = ?");
+            parameters.add(categoryKey(query.getCategory()));
+        }
+        if (query.getDueBefore() != null) {
+            conditions.add("deadline < ?");
+            parameters.add(query.getDueBefore().getTime());
+        }
+        if (query.getMinPriority() != null) {
+            conditions.add("priority >= ?");
+            parameters.add(query.getMinPriority());
+        }
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+
+        // Samma ordning som TodoQuery.getComparator
+        switch (query.getOrder()) {
+            case PRIORITY -> sql.append(" ORDER BY priority DESC, deadline");
+            case DEADLINE -> sql.append(" ORDER BY deadline, priority DESC");
+            case NONE -> {
+            }
+        }
+        if (query.getLimit() != Integer.MAX_VALUE) {
+            sql.append(" LIMIT ?");
+            parameters.add(query.getLimit());
+        }
+
+        // Det finns bara ett fåtal varianter av SQL:en, så även de här förbereds en gång
+        List<Todo> todos = new ArrayList<>();
+        query(sql.toString(), parameters, todos::add);
+        return todos;
+    }
+
+    @Override
+    public void save(Todo todo) throws Exception {
+        saveAll(List.of(todo));
+    }
+
+    @Override
+    public void saveAll(Collection<Todo> todos, Durability durability) throws Exception {
+        saveAll(todos);
+    }
+
+    /**
+     * Sparar alla todos i en transaktion. Vi läser först de nuvarande versionerna
+     * för att veta vilka todos som redan finns, och skickar sedan alla UPDATE
+     * och INSERT som var sin JDBC-batch.
+     */
+    @Override
+    public synchronized void saveAll(Collection<Todo> todos) throws Exception {
+        // Samma todo två gånger i gruppen: den sista vinner, precis som med save i tur och ordning
+        Map<UUID, Todo> unique = new LinkedHashMap<>();
+        for (Todo todo : todos) {
+            unique.put(todo.getId(), todo);
+        }
+
+        Map<UUID, Long> newVersions = inTransaction(() -> {
+            Map<UUID, Long> current = readVersions(unique.keySet());
+            Map<UUID, Long> versions = new HashMap<>();
+            Batch updates = new Batch(prepare(UPDATE));
+            Batch inserts = new Batch(prepare(INSERT));
+            for (Todo todo : unique.values()) {
+                Long existing = current.get(todo.getId());
+                long version = Math.max(existing == null ? 0 : existing, todo.getVersion()) + 1;
+                versions.put(todo.getId(), version);
+                if (existing != null) {
+                    bindUpdate(updates.statement, todo, version);
+                    updates.add();
+                } else {
+                    bindInsert(inserts.statement, todo, version);
+                    inserts.add();
+                }
+            }
+            updates.execute();
+            inserts.execute();
+            return versions;
+        });
+
+        // Versionen sätts på objekten först när transaktionen har gått igenom
+        for (Todo todo : todos) {
+            todo.setVersion(newVersions.get(todo.getId()));
+        }
+    }
+
+    /**
+     * En todo med version 0 sparas med INSERT, som misslyckas om todon redan
+     * finns (ID:t är primärnyckel). Andra sparas med "UPDATE ... WHERE version = ?",
+     * som inte ändrar någon rad om versionen inte stämmer.
+     */
+    @Override
+    public synchronized void saveIfVersionMatches(Todo todo) throws Exception {
+        long expected = todo.getVersion();
+        try {
+            inTransaction(() -> {
+                int changed;
+                if (expected == 0) {
+                    PreparedStatement insert = prepare(INSERT);
+                    bindInsert(insert, todo, 1);
+                    changed = insert.executeUpdate();
+                } else {
+                    PreparedStatement update = prepare(UPDATE_IF_VERSION);
+                    bindUpdate(update, todo, expected + 1);
+                    update.setLong(9, expected);
+                    changed = update.executeUpdate();
+                }
+                if (changed == 0) {
+                    throw new TodoVersionConflictException(todo.getId(), expected, readVersion(todo.getId()));
+                }
+                return null;
+            });
+        } catch (SQLException exception) {
+            // INSERT misslyckades - finns todon redan är det en konflikt, annars något annat fel
+            long current = readVersion(todo.getId());
+            if (expected == 0 && current != 0) {
+                throw new TodoVersionConflictException(todo.getId(), expected, current);
+            }
+            throw exception;
+        }
+        todo.setVersion(expected + 1);
+    }
+
+    @Override
+    public void delete(UUID todoId) throws Exception {
+        deleteAll(List.of(todoId));
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> todoIds, Durability durability) throws Exception {
+        deleteAll(todoIds);
+    }
+
+    @Override
+    public synchronized void deleteAll(Collection<UUID> todoIds) throws Exception {
+        inTransaction(() -> {
+            Batch deletes = new Batch(prepare(DELETE));
+            for (UUID todoId : todoIds) {
+                deletes.statement.setString(1, todoId.toString());
+                deletes.add();
+            }
+            deletes.execute();
+            return null;
+        });
+    }
+
+    /**
+     * Ändrar bara status-kolumnen, utan att läsa eller skriva om resten av raden.
+     */
+    @Override
+    public synchronized Todo updateStatus(UUID todoId, TodoStatus status) throws Exception {
+        int changed = inTransaction(() -> {
+            PreparedStatement update = prepare(UPDATE_STATUS);
+            update.setString(1, status.name());
+            update.setString(2, todoId.toString());
+            return update.executeUpdate();
+        });
+        return changed == 0 ? null : findById(todoId);
+    }
+
+    /**
+     * Predicate kan inte göras om till SQL, så vi går igenom alla todos och
+     * uppdaterar de matchande som en batch. Allt sker under repositoryts lås och
+     * varje rad uppdateras bara om versionen är den vi läste.
+     */
+    @Override
+    public synchronized List<Todo> updateStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        List<Todo> changed = new ArrayList<>();
+        for (Todo todo : findAll()) {
+            if (todo.getStatus() != status && predicate.test(todo)) {
+                changed.add(todo);
+            }
+        }
+
+        inTransaction(() -> {
+            Batch updates = new Batch(prepare(UPDATE_STATUS_IF_VERSION));
+            for (Todo todo : changed) {
+                updates.statement.setString(1, status.name());
+                updates.statement.setLong(2, todo.getVersion() + 1);
+                updates.statement.setString(3, todo.getId().toString());
+                updates.statement.setLong(4, todo.getVersion());
+                updates.add();
+            }
+            if (updates.execute() != changed.size()) {
+                // Någon annan (t.ex. en annan process mot samma SQLite-fil) hann före
+                for (Todo todo : changed) {
+                    long current = readVersion(todo.getId());
+                    if (current != todo.getVersion() + 1) {
+                        throw new TodoVersionConflictException(todo.getId(), todo.getVersion(), current);
+                    }
+                }
+            }
+            return null;
+        });
+
+        for (Todo todo : changed) {
+            todo.setStatus(status);
+            todo.setVersion(todo.getVersion() + 1);
+        }
+        return changed;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            for (PreparedStatement statement : statements.values()) {
+                statement.close();
+            }
+            statements.clear();
+            connection.close();
+        } catch (SQLException exception) {
+            throw new IOException("Closing the database connection failed: " + exception.getMessage(), exception);
+        }
+    }
+
+    /**
+     * Kör action i en transaktion: commit om den lyckas, annars rollback.
+     */
+    private <T> T inTransaction(Callable<T> action) throws Exception {
+        try {
+            T result = action.call();
+            connection.commit();
+            return result;
+        } catch (Exception exception) {
+            connection.rollback();
+            throw exception;
+        }
+    }
+
+    /**
+     * Den förberedda satsen för sql, som skapas första gången den behövs.
+     */
+    private PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Kör en SELECT med parametrarna och skickar varje todo till consumer.
+     */
+    private void query(String sql, List<Object> parameters, Consumer<Todo> consumer) throws SQLException {
+        PreparedStatement select = prepare(sql);
+        for (int i = 0; i < parameters.size(); i++) {
+            select.setObject(i + 1, parameters.get(i));
+        }
+        try (ResultSet rows = select.executeQuery()) {
+            while (rows.next()) {
+                consumer.accept(readTodo(rows));
+            }
+        } finally {
+            connection.commit();
+        }
+    }
+
+    /**
+     * Läser de nuvarande versionerna för en grupp ID:n. ID:n som inte finns kommer inte med.
+     *
+     * Vi frågar efter IN_CHUNK_SIZE ID:n åt gången med samma förberedda sats,
+     * och fyller ut den sista omgången med upprepningar av samma ID.
+     */
+    private Map<UUID, Long> readVersions(Collection<UUID> todoIds) throws SQLException {
+        Map<UUID, Long> versions = new HashMap<>();
+        PreparedStatement select = prepare(SELECT_VERSIONS);
+        List<UUID> ids = new ArrayList<>(todoIds);
+        for (int start = 0; start < ids.size(); start += IN_CHUNK_SIZE) {
+            for (int i = 0; i < IN_CHUNK_SIZE; i++) {
+                select.setString(i + 1, ids.get(Math.min(start + i, ids.size() - 1)).toString());
+            }
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    versions.put(UUID.fromString(rows.getString(1)), rows.getLong(2));
+                }
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Den sparade versionen av en todo, eller 0 om den inte finns.
+     */
+    private long readVersion(UUID todoId) throws SQLException {
+        return readVersions(List.of(todoId)).getOrDefault(todoId, 0L);
+    }
+
+    private static void bindInsert(PreparedStatement insert, Todo todo, long version) throws SQLException {
+        insert.setString(1, todo.getId().toString());
+        insert.setString(2, todo.getTitle());
+        insert.setString(3, todo.getCategory());
+        insert.setString(4, categoryKey(todo.getCategory()));
+        setDeadline(insert, 5, todo.getDeadline());
+        insert.setInt(6, todo.getPriority());
+        insert.setString(7, todo.getStatus().name());
+        insert.setLong(8, version);
+    }
+
+    private static void bindUpdate(PreparedStatement update, Todo todo, long version) throws SQLException {
+        update.setString(1, todo.getTitle());
+        update.setString(2, todo.getCategory());
+        update.setString(3, categoryKey(todo.getCategory()));
+        setDeadline(update, 4, todo.getDeadline());
+        update.setInt(5, todo.getPriority());
+        update.setString(6, todo.getStatus().name());
+        update.setLong(7, version);
+        update.setString(8, todo.getId().toString());
+    }
+
+    private static void setDeadline(PreparedStatement statement, int index, Date deadline) throws SQLException {
+        if (deadline == null) {
+            statement.setNull(index, Types.BIGINT);
+        } else {
+            statement.setLong(index, deadline.getTime());
+        }
+    }
+
+    private static Todo readTodo(ResultSet row) throws SQLException {
+        long deadline = row.getLong(5);
+        Todo todo = new Todo(UUID.fromString(row.getString(1)), row.getString(2),
+                row.wasNull() ? null : new Date(deadline), row.getString(3), row.getInt(6),
+                TodoStatus.valueOf(row.getString(7)));
+        todo.setVersion(row.getLong(8));
+        return todo;
+    }
+
+    private static String categoryKey(String category) {
+        return category.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Samlar rader till en förberedd sats och skickar dem till databasen
+     * BATCH_SIZE åt gången.
+     */
+    private static class Batch {
+        private final PreparedStatement statement;
+        private int pending;
+        private int changed;
+
+        private Batch(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private void add() throws SQLException {
+            statement.addBatch();
+            if (++pending >= BATCH_SIZE) {
+                execute();
+            }
+        }
+
+        /**
+         * Skickar väntande rader.
+         *
+         * @return Antal ändrade rader hittills i hela batchen
+         */
+        private int execute() throws SQLException {
+            if (pending > 0) {
+                for (int count : statement.executeBatch()) {
+                    // SUCCESS_NO_INFO betyder att raden ändrades men databasen inte räknade
+                    changed += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+                }
+                pending = 0;
+            }
+            return changed;
+        }
+    }
+}
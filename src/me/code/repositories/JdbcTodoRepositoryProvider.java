@@ -0,0 +1,26 @@
+package me.code.repositories;
+
+import me.code.config.TodoConfig;
+
+import java.io.File;
+
+/**
+ * Provider för JdbcTodoRepository, "todo.repository=jdbc".
+ *
+ *   todo.jdbc.url  Databasen, standard en H2-databas "todos" i todo.data.dir.
+ *                  Databasens drivrutin måste finnas på classpath.
+ */
+public class JdbcTodoRepositoryProvider implements ITodoRepositoryProvider {
+
+    @Override
+    public String getName() {
+        return "jdbc";
+    }
+
+    @Override
+    public ITodoRepository open(TodoConfig config) throws Exception {
+        File directory = config.getFile("todo.data.dir", new File("."));
+        return new JdbcTodoRepository(config.getString("todo.jdbc.url",
+                "jdbc:h2:" + new File(directory, "todos").getAbsolutePath()));
+    }
+}
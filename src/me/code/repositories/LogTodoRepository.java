@@ -0,0 +1,825 @@
+package me.code.repositories;
+
+import me.code.metrics.IoCounters;
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Implementation av ITodoRepository som lagrar todos i en append-only logg.
+ *
+ * Istället för en fil per todo (som FileTodoRepository) skriver vi varje ändring
+ * som en post i slutet av en stor loggfil, ett så kallat "segment". När segmentet
+ * blir för stort börjar vi skriva i ett nytt segment (rollover).
+ *
+ * Varje post ser ut så här på disk:
+ *   [längd (int)] [CRC32 (int)] [data (längd bytes)]
+ *
+ * Längden gör att vi kan hoppa mellan poster och CRC-summan gör att vi upptäcker
+ * poster som blivit halvskrivna vid en krasch. En radering skrivs som en
+ * "tombstone"-post som säger att todon inte längre finns.
+ *
+ * Eftersom gamla versioner av todos ligger kvar i loggen kör vi en kompaktering
+ * i bakgrunden som skriver om de stängda segmenten till ett enda segment med
+ * bara de levande posterna.
+ *
+ * Fördel: En full genomsökning läser några få stora filer sekventiellt
+ * Nackdel: Hela indexet (UUID -> position) hålls i minnet
+ */
+public class LogTodoRepository implements ITodoRepository {
+
+    // Standardstorlek innan vi byter till ett nytt segment (64 MB)
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+
+    // Hur ofta bakgrundskompakteringen kollar om det finns något att göra
+    public static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 60_000;
+
+    // Andel skräp (överskrivna/raderade poster) i stängda segment som triggar kompaktering
+    private static final double COMPACTION_GARBAGE_RATIO = 0.5;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_EXTENSION = ".log";
+    private static final String COMPACTION_EXTENSION = ".compact";
+
+    // Segmentets header: magiskt tal ("TDLG"), formatversion och flaggor
+    private static final int SEGMENT_MAGIC = 0x54444C47;
+    private static final byte SEGMENT_VERSION = 1;
+    private static final byte FLAG_COMPACTED = 1;
+    private static final int SEGMENT_HEADER_SIZE = 6;
+
+    // Varje post börjar med längd + CRC32
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    // OPERATION_PUT skrevs innan todos hade versioner, nya poster skrivs som OPERATION_PUT_VERSIONED
+    private static final byte OPERATION_PUT = 1;
+    private static final byte OPERATION_DELETE = 2;
+    private static final byte OPERATION_PUT_VERSIONED = 3;
+
+    private final File directory;
+    private final long maxSegmentBytes;
+
+    // Alla segment sorterade på id, det sista är det aktiva segmentet vi skriver till
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+    // Var den senaste versionen av varje todo ligger
+    private final Map<UUID, RecordPointer> index = new HashMap<>();
+
+    // Kompakteringen får bara köras i en tråd åt gången
+    private final Object compactionLock = new Object();
+
+    private final ScheduledExecutorService compactor;
+    private Segment activeSegment;
+
+    // Antal öppna streamar från streamAll, kompakteringen väntar tills de är stängda
+    private int activeScans;
+
+    /**
+     * Skapar ett logg-repository i angiven mapp med standardinställningar.
+     *
+     * @param directory Mappen där segmentfilerna ska ligga
+     * @throws IOException Om mappen inte kan skapas eller loggen är korrupt
+     */
+    public LogTodoRepository(File directory) throws IOException {
+        this(directory, DEFAULT_MAX_SEGMENT_BYTES, DEFAULT_COMPACTION_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Skapar ett logg-repository och läser in befintliga segment.
+     *
+     * @param directory Mappen där segmentfilerna ska ligga
+     * @param maxSegmentBytes Maxstorlek på ett segment innan rollover
+     * @param compactionIntervalMillis Intervall för bakgrundskompaktering, 0 stänger av den
+     * @throws IOException Om mappen inte kan skapas eller loggen är korrupt
+     */
+    public LogTodoRepository(File directory, long maxSegmentBytes, long compactionIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.maxSegmentBytes = maxSegmentBytes;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create log directory " + directory);
+        }
+
+        recover();
+
+        if (compactionIntervalMillis > 0) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "todo-log-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.compactor.scheduleWithFixedDelay(this::compactInBackground,
+                    compactionIntervalMillis, compactionIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.compactor = null;
+        }
+    }
+
+    /**
+     * Hittar en todo genom att slå upp dess position i indexet och läsa
+     * exakt den posten från rätt segment.
+     */
+    @Override
+    public synchronized Todo findById(UUID todoId) throws Exception {
+        RecordPointer pointer = index.get(todoId);
+        if (pointer == null) {
+            throw new NoSuchElementException("Todo with id " + todoId + " does not exist");
+        }
+
+        Segment segment = segments.get(pointer.segmentId());
+        ByteBuffer buffer = ByteBuffer.allocate(pointer.length());
+        readFully(segment.channel, buffer, pointer.offset());
+        buffer.flip();
+
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        if (checksum(payload) != checksum) {
+            throw new IOException("Corrupt record for todo " + todoId + " in " + segment.file);
+        }
+
+        return decodeTodo(payload);
+    }
+
+    /**
+     * Hämtar alla todos genom att läsa segmenten sekventiellt från början till slut.
+     */
+    @Override
+    public List<Todo> findAll() throws Exception {
+        try (Stream<Todo> todos = streamAll()) {
+            return todos.collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
+
+    /**
+     * Läser segmenten sekventiellt, en post i taget, allt eftersom streamen konsumeras.
+     *
+     * Vi behåller bara de poster som indexet pekar på, alla andra är gamla
+     * versioner eller raderade todos. Poster som skrivs efter att streamen
+     * skapats kommer inte med. Så länge streamen är öppen pausas kompakteringen,
+     * annars skulle samma todo kunna dyka upp både i ett gammalt och i det
+     * kompakterade segmentet.
+     */
+    @Override
+    public Stream<Todo> streamAll() throws Exception {
+        List<ScanTarget> targets = new ArrayList<>();
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                targets.add(new ScanTarget(segment.id, segment.file, segment.size));
+            }
+            activeScans++;
+        }
+
+        SegmentScanner scanner = new SegmentScanner(targets);
+        return StreamSupport.stream(scanner, false).onClose(scanner::close);
+    }
+
+    /**
+     * Räknar todos direkt från indexet i minnet.
+     */
+    @Override
+    public synchronized long count() {
+        return index.size();
+    }
+
+    /**
+     * Sparar en todo genom att lägga till en ny post i slutet av det aktiva segmentet.
+     */
+    @Override
+    public synchronized void save(Todo todo) throws Exception {
+        RecordPointer current = index.get(todo.getId());
+        long version = Math.max(current == null ? 0 : current.version(), todo.getVersion()) + 1;
+        RecordPointer pointer = append(encodeTodo(todo, version), version);
+        replace(todo.getId(), pointer);
+        todo.setVersion(version);
+    }
+
+    /**
+     * Sparar todon om versionen stämmer. Versionen finns i indexet, så
+     * jämförelsen kräver ingen läsning från disk.
+     */
+    @Override
+    public synchronized void saveIfVersionMatches(Todo todo) throws Exception {
+        RecordPointer current = index.get(todo.getId());
+        long version = current == null ? 0 : current.version();
+        if (version != todo.getVersion()) {
+            throw new TodoVersionConflictException(todo.getId(), todo.getVersion(), version);
+        }
+        save(todo);
+    }
+
+    /**
+     * Raderar en todo genom att skriva en tombstone-post.
+     *
+     * Själva datan försvinner först när segmentet kompakteras.
+     */
+    @Override
+    public synchronized void delete(UUID todoId) throws Exception {
+        if (!index.containsKey(todoId)) {
+            return;
+        }
+
+        // Tombstonen räknas aldrig som levande data, den behövs bara tills kompakteringen
+        append(encodeTombstone(todoId), 0);
+        replace(todoId, null);
+    }
+
+    /**
+     * Ändrar status under repositoryts lås, så att ingen annan tråd hinner
+     * spara samma todo mellan läsningen och skrivningen.
+     */
+    @Override
+    public synchronized Todo updateStatus(UUID todoId, TodoStatus status) throws Exception {
+        return ITodoRepository.super.updateStatus(todoId, status);
+    }
+
+    /**
+     * Ändrar status under repositoryts lås, så att ingen todo hinner sparas
+     * av någon annan mellan genomgången och skrivningen.
+     */
+    @Override
+    public synchronized List<Todo> updateStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        return ITodoRepository.super.updateStatusWhere(predicate, status);
+    }
+
+    /**
+     * Kompakterar alla stängda segment till ett enda segment.
+     *
+     * Själva kopieringen sker utan att låsa repositoryt så att läsningar och
+     * skrivningar kan fortsätta under tiden. Bara det sista bytet av filer
+     * och uppdateringen av indexet görs under låset.
+     *
+     * Är en stream från streamAll öppen när kompakteringen börjar, eller har
+     * en startat innan filerna ska bytas, avbryts kompakteringen och görs om
+     * senare (se activeScans).
+     *
+     * @throws IOException Om något går fel vid kompakteringen
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            List<Segment> sealed;
+            Map<UUID, RecordPointer> livePointers = new HashMap<>();
+            synchronized (this) {
+                if (activeScans > 0) {
+                    return;  // Någon läser segmenten just nu, vi försöker igen senare
+                }
+                sealed = new ArrayList<>(segments.headMap(activeSegment.id).values());
+                if (sealed.isEmpty()) {
+                    return;
+                }
+                Set<Long> sealedIds = new HashSet<>();
+                for (Segment segment : sealed) {
+                    sealedIds.add(segment.id);
+                }
+                for (Map.Entry<UUID, RecordPointer> entry : index.entrySet()) {
+                    if (sealedIds.contains(entry.getValue().segmentId())) {
+                        livePointers.put(entry.getKey(), entry.getValue());
+                    }
+                }
+            }
+
+            // Det kompakterade segmentet ersätter det nyaste stängda segmentet
+            Segment target = sealed.get(sealed.size() - 1);
+            File compactedFile = new File(directory, getSegmentFileName(target.id) + COMPACTION_EXTENSION);
+            Map<UUID, RecordPointer> movedPointers = new HashMap<>();
+            long compactedSize;
+
+            try (FileChannel output = FileChannel.open(compactedFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(output, segmentHeader(FLAG_COMPACTED), 0);
+                long position = SEGMENT_HEADER_SIZE;
+
+                for (Segment segment : sealed) {
+                    try (DataInputStream input = openForScan(segment)) {
+                        long offset = SEGMENT_HEADER_SIZE;
+                        while (offset < segment.size) {
+                            byte[] payload = readPayload(input, segment.file);
+                            UUID todoId = decodeId(payload);
+                            RecordPointer pointer = livePointers.get(todoId);
+                            if (pointer != null && pointer.segmentId() == segment.id && pointer.offset() == offset) {
+                                ByteBuffer record = encodeRecord(payload);
+                                int length = record.remaining();
+                                writeFully(output, record, position);
+                                movedPointers.put(todoId, new RecordPointer(target.id, position, length, pointer.version()));
+                                position += length;
+                            }
+                            offset += RECORD_HEADER_SIZE + payload.length;
+                        }
+                    }
+                }
+
+                output.force(true);
+                compactedSize = position;
+            }
+
+            synchronized (this) {
+                if (activeScans > 0) {
+                    // En stream startade under kopieringen och läser de gamla segmentfilerna,
+                    // så de får inte bytas ut eller raderas. Nästa kompaktering gör om jobbet.
+                    Files.deleteIfExists(compactedFile.toPath());
+                    return;
+                }
+
+                for (Segment segment : sealed) {
+                    segment.channel.close();
+                    segments.remove(segment.id);
+                }
+
+                Files.move(compactedFile.toPath(), target.file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                Segment compacted = new Segment(target.id, target.file, openChannel(target.file), compactedSize);
+                segments.put(compacted.id, compacted);
+
+                // Todos som ändrats under kopieringen pekar redan på det aktiva segmentet
+                for (Map.Entry<UUID, RecordPointer> entry : movedPointers.entrySet()) {
+                    RecordPointer current = index.get(entry.getKey());
+                    if (current != null && current.equals(livePointers.get(entry.getKey()))) {
+                        index.put(entry.getKey(), entry.getValue());
+                        compacted.liveBytes += entry.getValue().length();
+                    }
+                }
+
+                // Äldre segment täcks nu av det kompakterade segmentet
+                for (Segment segment : sealed) {
+                    if (segment != target) {
+                        Files.deleteIfExists(segment.file.toPath());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Stänger bakgrundskompakteringen och alla öppna segmentfiler.
+     */
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for compaction to finish");
+            }
+        }
+
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                segment.channel.force(true);
+                segment.channel.close();
+            }
+            segments.clear();
+            index.clear();
+        }
+    }
+
+    /**
+     * Körs av bakgrundstråden - kompakterar bara om det finns tillräckligt med skräp.
+     */
+    private void compactInBackground() {
+        try {
+            long totalBytes = 0;
+            long liveBytes = 0;
+            synchronized (this) {
+                for (Segment segment : segments.headMap(activeSegment.id).values()) {
+                    totalBytes += segment.size - SEGMENT_HEADER_SIZE;
+                    liveBytes += segment.liveBytes;
+                }
+            }
+
+            if (totalBytes > 0 && (totalBytes - liveBytes) >= totalBytes * COMPACTION_GARBAGE_RATIO) {
+                compact();
+            }
+        } catch (IOException exception) {
+            // Kompakteringen försöker igen vid nästa intervall
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * Läser in alla befintliga segment och bygger upp indexet.
+     *
+     * Om det sista segmentet slutar med en halvskriven post (t.ex. efter en krasch)
+     * klipper vi bort den. Segment som ligger före ett kompakterat segment är
+     * rester från en avbruten kompaktering och tas bort.
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Could not list log directory " + directory);
+        }
+
+        TreeMap<Long, File> segmentFiles = new TreeMap<>();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(COMPACTION_EXTENSION)) {
+                Files.deleteIfExists(file.toPath());
+            } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_EXTENSION)) {
+                String idString = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_EXTENSION.length());
+                try {
+                    segmentFiles.put(Long.parseLong(idString), file);
+                } catch (NumberFormatException ignored) {
+                    // Inte ett av våra segment
+                }
+            }
+        }
+
+        long latestCompacted = -1;
+        for (Map.Entry<Long, File> entry : segmentFiles.entrySet()) {
+            if (isCompacted(entry.getValue())) {
+                latestCompacted = entry.getKey();
+            }
+        }
+
+        for (Map.Entry<Long, File> entry : segmentFiles.entrySet()) {
+            long id = entry.getKey();
+            File file = entry.getValue();
+            if (id < latestCompacted) {
+                Files.deleteIfExists(file.toPath());
+                continue;
+            }
+
+            boolean last = id == segmentFiles.lastKey();
+            Segment segment = new Segment(id, file, openChannel(file), 0);
+            segments.put(id, segment);
+            replay(segment, last);
+        }
+
+        if (segments.isEmpty()) {
+            activeSegment = createSegment(1);
+        } else {
+            activeSegment = segments.lastEntry().getValue();
+        }
+    }
+
+    /**
+     * Spelar upp alla poster i ett segment och uppdaterar indexet.
+     */
+    private void replay(Segment segment, boolean last) throws IOException {
+        long fileSize = segment.channel.size();
+        if (fileSize < SEGMENT_HEADER_SIZE) {
+            if (!last) {
+                throw new IOException("Corrupt segment header in " + segment.file);
+            }
+            // Segmentet skapades men hann aldrig få en header
+            segment.channel.truncate(0);
+            writeFully(segment.channel, segmentHeader((byte) 0), 0);
+            segment.size = SEGMENT_HEADER_SIZE;
+            return;
+        }
+
+        long offset = SEGMENT_HEADER_SIZE;
+        try (DataInputStream input = openForScan(segment.file)) {
+            while (offset < fileSize) {
+                byte[] payload;
+                try {
+                    payload = readPayload(input, segment.file);
+                } catch (IOException exception) {
+                    if (!last) {
+                        throw exception;
+                    }
+                    // Halvskriven post i slutet av loggen, klipp bort den
+                    segment.channel.truncate(offset);
+                    break;
+                }
+
+                UUID todoId = decodeId(payload);
+                int length = RECORD_HEADER_SIZE + payload.length;
+                if (payload[0] == OPERATION_PUT || payload[0] == OPERATION_PUT_VERSIONED) {
+                    replace(todoId, new RecordPointer(segment.id, offset, length, decodeVersion(payload)));
+                } else {
+                    replace(todoId, null);
+                }
+                offset += length;
+            }
+        }
+        segment.size = offset;
+    }
+
+    /**
+     * Uppdaterar indexet och håller reda på hur mycket levande data varje segment har.
+     */
+    private void replace(UUID todoId, RecordPointer pointer) {
+        RecordPointer previous = pointer == null ? index.remove(todoId) : index.put(todoId, pointer);
+        if (previous != null) {
+            Segment segment = segments.get(previous.segmentId());
+            if (segment != null) {
+                segment.liveBytes -= previous.length();
+            }
+        }
+        if (pointer != null) {
+            segments.get(pointer.segmentId()).liveBytes += pointer.length();
+        }
+    }
+
+    /**
+     * Lägger till en post i slutet av det aktiva segmentet, med rollover vid behov.
+     */
+    private RecordPointer append(byte[] payload, long version) throws IOException {
+        ByteBuffer record = encodeRecord(payload);
+        int length = record.remaining();
+
+        if (activeSegment.size + length > maxSegmentBytes && activeSegment.size > SEGMENT_HEADER_SIZE) {
+            activeSegment = createSegment(activeSegment.id + 1);
+        }
+
+        long offset = activeSegment.size;
+        writeFully(activeSegment.channel, record, offset);
+        activeSegment.size += length;
+        return new RecordPointer(activeSegment.id, offset, length, version);
+    }
+
+    private Segment createSegment(long id) throws IOException {
+        File file = new File(directory, getSegmentFileName(id));
+        FileChannel channel = openChannel(file);
+        channel.truncate(0);
+        writeFully(channel, segmentHeader((byte) 0), 0);
+
+        Segment segment = new Segment(id, file, channel, SEGMENT_HEADER_SIZE);
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static boolean isCompacted(File file) throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(file))) {
+            if (file.length() < SEGMENT_HEADER_SIZE || input.readInt() != SEGMENT_MAGIC) {
+                return false;
+            }
+            input.readByte(); // version
+            return (input.readByte() & FLAG_COMPACTED) != 0;
+        }
+    }
+
+    private static DataInputStream openForScan(Segment segment) throws IOException {
+        return openForScan(segment.file);
+    }
+
+    /**
+     * Öppnar ett segment för sekventiell läsning med en stor buffert
+     * och hoppar förbi headern.
+     */
+    private static DataInputStream openForScan(File file) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        if (input.readInt() != SEGMENT_MAGIC) {
+            input.close();
+            throw new IOException("Not a todo log segment: " + file);
+        }
+        byte version = input.readByte();
+        if (version != SEGMENT_VERSION) {
+            input.close();
+            throw new IOException("Unsupported segment version " + version + " in " + file);
+        }
+        input.readByte(); // flaggor
+        return input;
+    }
+
+    /**
+     * Läser nästa post från en ström och kontrollerar längd och CRC.
+     */
+    private static byte[] readPayload(DataInputStream input, File file) throws IOException {
+        int length = input.readInt();
+        int checksum = input.readInt();
+        if (length <= 0 || length > MAX_RECORD_SIZE) {
+            throw new IOException("Invalid record length " + length + " in " + file);
+        }
+
+        byte[] payload = new byte[length];
+        input.readFully(payload);
+        IoCounters.recordRead(RECORD_HEADER_SIZE + length);
+        if (checksum(payload) != checksum) {
+            throw new IOException("Checksum mismatch in " + file);
+        }
+        return payload;
+    }
+
+    private static ByteBuffer encodeRecord(byte[] payload) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length);
+        record.putInt(checksum(payload));
+        record.put(payload);
+        record.flip();
+        return record;
+    }
+
+    private static byte[] encodeTodo(Todo todo, long version) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(OPERATION_PUT_VERSIONED);
+            output.writeLong(todo.getId().getMostSignificantBits());
+            output.writeLong(todo.getId().getLeastSignificantBits());
+            output.writeLong(version);
+            output.writeUTF(todo.getTitle());
+            output.writeUTF(todo.getCategory());
+            output.writeByte(todo.getStatus().ordinal());
+            output.writeInt(todo.getPriority());
+            output.writeLong(todo.getDeadline().getTime());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeTombstone(UUID todoId) {
+        return ByteBuffer.allocate(17)
+                .put(OPERATION_DELETE)
+                .putLong(todoId.getMostSignificantBits())
+                .putLong(todoId.getLeastSignificantBits())
+                .array();
+    }
+
+    private static UUID decodeId(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload, 1, 16);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Versionen står direkt efter UUID:t. Poster från innan versionerna fanns räknas som version 1.
+     */
+    private static long decodeVersion(byte[] payload) {
+        return payload[0] == OPERATION_PUT_VERSIONED ? ByteBuffer.wrap(payload, 17, 8).getLong() : 1;
+    }
+
+    private static Todo decodeTodo(byte[] payload) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte operation = input.readByte();
+            UUID id = new UUID(input.readLong(), input.readLong());
+            long version = operation == OPERATION_PUT_VERSIONED ? input.readLong() : 1;
+            String title = input.readUTF();
+            String category = input.readUTF();
+            TodoStatus status = TodoStatus.values()[input.readByte()];
+            int priority = input.readInt();
+            Date deadline = new Date(input.readLong());
+            Todo todo = new Todo(id, title, deadline, category, priority, status);
+            todo.setVersion(version);
+            return todo;
+        }
+    }
+
+    private static ByteBuffer segmentHeader(byte flags) {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC).put(SEGMENT_VERSION).put(flags);
+        header.flip();
+        return header;
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static FileChannel openChannel(File file) throws IOException {
+        return FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of segment");
+            }
+        }
+        IoCounters.recordRead(buffer.position());
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        IoCounters.recordWritten(written);
+    }
+
+    private static String getSegmentFileName(long id) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_EXTENSION);
+    }
+
+    /**
+     * Läser posterna i en lista med segment, en i taget, åt streamAll.
+     */
+    private final class SegmentScanner extends Spliterators.AbstractSpliterator<Todo> {
+
+        private final List<ScanTarget> targets;
+        private int targetIndex;
+        private DataInputStream input;
+        private long offset;
+        private boolean closed;
+
+        private SegmentScanner(List<ScanTarget> targets) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.targets = targets;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Todo> action) {
+            try {
+                while (!closed) {
+                    if (input == null) {
+                        if (targetIndex >= targets.size()) {
+                            close();
+                            return false;
+                        }
+                        input = openForScan(targets.get(targetIndex).file());
+                        offset = SEGMENT_HEADER_SIZE;
+                    }
+
+                    ScanTarget target = targets.get(targetIndex);
+                    if (offset >= target.size()) {
+                        input.close();
+                        input = null;
+                        targetIndex++;
+                        continue;
+                    }
+
+                    byte[] payload = readPayload(input, target.file());
+                    long recordOffset = offset;
+                    offset += RECORD_HEADER_SIZE + payload.length;
+
+                    if (isLive(decodeId(payload), target.id(), recordOffset)) {
+                        action.accept(decodeTodo(payload));
+                        return true;
+                    }
+                }
+                return false;
+            } catch (IOException exception) {
+                close();
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        private boolean isLive(UUID todoId, long segmentId, long recordOffset) {
+            synchronized (LogTodoRepository.this) {
+                RecordPointer pointer = index.get(todoId);
+                return pointer != null && pointer.segmentId() == segmentId && pointer.offset() == recordOffset;
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                if (input != null) {
+                    input.close();
+                }
+            } catch (IOException ignored) {
+                // Vi har redan läst klart, inget att göra
+            }
+
+            synchronized (LogTodoRepository.this) {
+                activeScans--;
+            }
+        }
+    }
+
+    /**
+     * Ett segment som det såg ut när en stream skapades.
+     */
+    private record ScanTarget(long id, File file, long size) {
+    }
+
+    /**
+     * Pekar ut var en post ligger: vilket segment, på vilken position och hur lång den är.
+     * Todons version sparas också här, så att saveIfVersionMatches inte behöver läsa posten.
+     */
+    private record RecordPointer(long segmentId, long offset, int length, long version) {
+    }
+
+    /**
+     * Ett segment är en loggfil tillsammans med dess öppna kanal och storlek.
+     */
+    private static final class Segment {
+        private final long id;
+        private final File file;
+        private final FileChannel channel;
+        private long size;
+        private long liveBytes;
+
+        private Segment(long id, File file, FileChannel channel, long size) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package me.code.repositories;
+
+import me.code.config.TodoConfig;
+
+import java.io.File;
+
+/**
+ * Provider för LogTodoRepository, "todo.repository=log".
+ *
+ *   todo.data.dir                    Mappen med segmentfilerna (standard ".")
+ *   todo.log.segment.bytes           Maxstorlek på ett segment (standard 64 MB)
+ *   todo.log.compaction.interval.ms  Tid mellan kompakteringarna, 0 stänger av dem
+ */
+public class LogTodoRepositoryProvider implements ITodoRepositoryProvider {
+
+    @Override
+    public String getName() {
+        return "log";
+    }
+
+    @Override
+    public ITodoRepository open(TodoConfig config) throws Exception {
+        return new LogTodoRepository(
+                config.getFile("todo.data.dir", new File(".")),
+                config.getLong("todo.log.segment.bytes", LogTodoRepository.DEFAULT_MAX_SEGMENT_BYTES),
+                config.getLong("todo.log.compaction.interval.ms", LogTodoRepository.DEFAULT_COMPACTION_INTERVAL_MILLIS)
+        );
+    }
+}
@@ -0,0 +1,423 @@
+package me.code.repositories;
+
+import me.code.metrics.IoCounters;
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Implementation av ITodoRepository som lagrar todos i minnesmappade filer.
+ *
+ * Alla todos ligger i en "slot-fil" där varje todo tar exakt lika mycket plats
+ * (SLOT_SIZE bytes). Eftersom alla slots är lika stora kan vi räkna ut var en
+ * todo ligger direkt: position = header + slot * SLOT_SIZE.
+ *
+ * Titel och kategori har olika längd och får därför inte plats i en slot.
+ * De ligger istället i en separat "heap-fil" och sloten sparar bara
+ * position och längd till strängarna.
+ *
+ * Filerna mappas in i minnet med MappedByteBuffer, vilket betyder att
+ * operativsystemet sköter läsning och skrivning till disk åt oss - vi
+ * läser och skriver bara bytes i en buffert!
+ *
+ * Slot-layout (64 bytes):
+ *   0  UUID (16 bytes)
+ *   16 flaggor (1 byte), 17 status (1 byte), 18-19 reserverat
+ *   20 prioritet (int), 24 deadline i epoch-millis (long)
+ *   32 titelns position (long), 40 titelns längd (int), 44 kategorins längd (int)
+ *   48 kategorins position (long), 56 todons version (long)
+ *
+ * Fördel: findById är en uppslagning i minnet utan någon textparsning
+ * Nackdel: Gamla strängar i heap-filen återanvänds inte när en todo ändras
+ */
+public class MappedTodoRepository implements ITodoRepository {
+
+    private static final String SLOTS_FILE = "todos.slots";
+    private static final String HEAP_FILE = "todos.heap";
+
+    // Filernas header: magiskt tal, formatversion och en räknare (antal slots / heapens slut)
+    private static final int SLOTS_MAGIC = 0x54444D53;  // "TDMS"
+    private static final int HEAP_MAGIC = 0x54444D48;   // "TDMH"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int HEADER_COUNTER = 8;
+
+    private static final int SLOT_SIZE = 64;
+    private static final int SLOT_FLAGS = 16;
+    private static final int SLOT_STATUS = 17;
+    private static final int SLOT_PRIORITY = 20;
+    private static final int SLOT_DEADLINE = 24;
+    private static final int SLOT_TITLE_OFFSET = 32;
+    private static final int SLOT_TITLE_LENGTH = 40;
+    private static final int SLOT_CATEGORY_LENGTH = 44;
+    private static final int SLOT_CATEGORY_OFFSET = 48;
+    private static final int SLOT_VERSION = 56;
+
+    private static final byte FLAG_USED = 1;
+
+    // Hur stora filerna är från början, de dubbleras när de blir fulla
+    private static final int INITIAL_SLOTS_CAPACITY = HEADER_SIZE + 1024 * SLOT_SIZE;
+    private static final int INITIAL_HEAP_CAPACITY = HEADER_SIZE + 64 * 1024;
+
+    private final FileChannel slotsChannel;
+    private final FileChannel heapChannel;
+    private MappedByteBuffer slots;
+    private MappedByteBuffer heap;
+
+    // Antal slots som någon gång använts och var nästa sträng ska skrivas i heapen
+    private int slotCount;
+    private long heapEnd;
+
+    // UUID -> slotnummer, gör findById till en enkel uppslagning
+    private final Map<UUID, Integer> index = new HashMap<>();
+
+    // Slots som blivit lediga efter radering och kan återanvändas
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+
+    /**
+     * Öppnar (eller skapar) slot- och heap-filerna i angiven mapp och
+     * bygger upp indexet från slot-filen.
+     *
+     * @param directory Mappen där filerna ska ligga
+     * @throws IOException Om filerna inte kan öppnas eller har fel format
+     */
+    public MappedTodoRepository(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+
+        this.slotsChannel = openChannel(new File(directory, SLOTS_FILE));
+        this.heapChannel = openChannel(new File(directory, HEAP_FILE));
+
+        this.slots = map(slotsChannel, Math.max(slotsChannel.size(), INITIAL_SLOTS_CAPACITY));
+        this.heap = map(heapChannel, Math.max(heapChannel.size(), INITIAL_HEAP_CAPACITY));
+
+        this.slotCount = (int) readHeader(slots, SLOTS_MAGIC, 0);
+        this.heapEnd = readHeader(heap, HEAP_MAGIC, HEADER_SIZE);
+
+        for (int slot = 0; slot < slotCount; slot++) {
+            int position = slotPosition(slot);
+            if ((slots.get(position + SLOT_FLAGS) & FLAG_USED) != 0) {
+                index.put(new UUID(slots.getLong(position), slots.getLong(position + 8)), slot);
+            } else {
+                freeSlots.add(slot);
+            }
+        }
+    }
+
+    /**
+     * Hittar en todo genom att slå upp dess slot och läsa fälten direkt ur bufferten.
+     */
+    @Override
+    public synchronized Todo findById(UUID todoId) throws Exception {
+        Integer slot = index.get(todoId);
+        if (slot == null) {
+            throw new NoSuchElementException("Todo with id " + todoId + " does not exist");
+        }
+        return readSlot(slot);
+    }
+
+    /**
+     * Hämtar alla todos genom att gå igenom slot-filen från början till slut.
+     */
+    @Override
+    public synchronized List<Todo> findAll() throws Exception {
+        List<Todo> todos = new ArrayList<>(index.size());
+        for (int slot = 0; slot < slotCount; slot++) {
+            if ((slots.get(slotPosition(slot) + SLOT_FLAGS) & FLAG_USED) != 0) {
+                todos.add(readSlot(slot));
+            }
+        }
+        return todos;
+    }
+
+    /**
+     * Läser en slot i taget allt eftersom streamen konsumeras.
+     * Todos som sparas i nya slots efter att streamen skapats kommer inte med.
+     */
+    @Override
+    public Stream<Todo> streamAll() {
+        int limit;
+        synchronized (this) {
+            limit = slotCount;
+        }
+        return IntStream.range(0, limit)
+                .mapToObj(this::readSlotIfUsed)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Räknar todos direkt från indexet i minnet.
+     */
+    @Override
+    public synchronized long count() {
+        return index.size();
+    }
+
+    /**
+     * Sparar en todo i dess befintliga slot, eller i en ny/ledig slot om den är ny.
+     *
+     * Titel och kategori skrivs bara till heapen om de faktiskt har ändrats.
+     */
+    @Override
+    public synchronized void save(Todo todo) throws Exception {
+        Integer existing = index.get(todo.getId());
+        long version = Math.max(existing == null ? 0 : readVersion(existing), todo.getVersion()) + 1;
+        int slot;
+        if (existing != null) {
+            slot = existing;
+        } else if (!freeSlots.isEmpty()) {
+            slot = freeSlots.poll();
+        } else {
+            slot = slotCount;
+            ensureSlotsCapacity(slotPosition(slot + 1));
+            slotCount++;
+            slots.putLong(HEADER_COUNTER, slotCount);
+        }
+
+        int position = slotPosition(slot);
+        byte[] title = todo.getTitle().getBytes(StandardCharsets.UTF_8);
+        byte[] category = todo.getCategory().getBytes(StandardCharsets.UTF_8);
+
+        long titleOffset;
+        long categoryOffset;
+        if (existing != null && heapEquals(position + SLOT_TITLE_OFFSET, position + SLOT_TITLE_LENGTH, title)) {
+            titleOffset = slots.getLong(position + SLOT_TITLE_OFFSET);
+        } else {
+            titleOffset = appendToHeap(title);
+        }
+        if (existing != null && heapEquals(position + SLOT_CATEGORY_OFFSET, position + SLOT_CATEGORY_LENGTH, category)) {
+            categoryOffset = slots.getLong(position + SLOT_CATEGORY_OFFSET);
+        } else {
+            categoryOffset = appendToHeap(category);
+        }
+
+        slots.putLong(position, todo.getId().getMostSignificantBits());
+        slots.putLong(position + 8, todo.getId().getLeastSignificantBits());
+        slots.put(position + SLOT_STATUS, (byte) todo.getStatus().ordinal());
+        slots.putInt(position + SLOT_PRIORITY, todo.getPriority());
+        slots.putLong(position + SLOT_DEADLINE, todo.getDeadline().getTime());
+        slots.putLong(position + SLOT_TITLE_OFFSET, titleOffset);
+        slots.putInt(position + SLOT_TITLE_LENGTH, title.length);
+        slots.putLong(position + SLOT_CATEGORY_OFFSET, categoryOffset);
+        slots.putInt(position + SLOT_CATEGORY_LENGTH, category.length);
+        slots.putLong(position + SLOT_VERSION, version);
+
+        // Flaggan sätts sist så att en halvskriven slot aldrig räknas som använd
+        slots.put(position + SLOT_FLAGS, FLAG_USED);
+        IoCounters.recordWritten(SLOT_SIZE);  // Strängarna räknas i appendToHeap
+        index.put(todo.getId(), slot);
+        todo.setVersion(version);
+    }
+
+    /**
+     * Sparar todon om versionen stämmer. Allt sker under repositoryts lås,
+     * så ingen annan kan spara mellan jämförelsen och skrivningen.
+     */
+    @Override
+    public synchronized void saveIfVersionMatches(Todo todo) throws Exception {
+        Integer slot = index.get(todo.getId());
+        long current = slot == null ? 0 : readVersion(slot);
+        if (current != todo.getVersion()) {
+            throw new TodoVersionConflictException(todo.getId(), todo.getVersion(), current);
+        }
+        save(todo);
+    }
+
+    /**
+     * Raderar en todo genom att markera dess slot som ledig.
+     */
+    @Override
+    public synchronized void delete(UUID todoId) throws Exception {
+        Integer slot = index.remove(todoId);
+        if (slot == null) {
+            return;
+        }
+
+        slots.put(slotPosition(slot) + SLOT_FLAGS, (byte) 0);
+        freeSlots.add(slot);
+    }
+
+    /**
+     * Uppdaterar statusen genom att skriva om en enda byte i todons slot
+     * (och räkna upp versionen).
+     */
+    @Override
+    public synchronized Todo updateStatus(UUID todoId, TodoStatus status) throws Exception {
+        Integer slot = index.get(todoId);
+        if (slot == null) {
+            return null;
+        }
+
+        int position = slotPosition(slot);
+        slots.put(position + SLOT_STATUS, (byte) status.ordinal());
+        slots.putLong(position + SLOT_VERSION, readVersion(slot) + 1);
+        return readSlot(slot);
+    }
+
+    /**
+     * Ändrar statusen på plats i varje matchande slot, på samma sätt som
+     * updateStatus. Hela ändringen görs under repositoryts lås.
+     */
+    @Override
+    public synchronized List<Todo> updateStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        List<Todo> changed = new ArrayList<>();
+        for (int slot : index.values()) {
+            Todo todo = readSlot(slot);
+            if (todo.getStatus() != status && predicate.test(todo)) {
+                int position = slotPosition(slot);
+                slots.put(position + SLOT_STATUS, (byte) status.ordinal());
+                slots.putLong(position + SLOT_VERSION, readVersion(slot) + 1);
+                changed.add(readSlot(slot));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Skriver ner alla ändringar till disk och stänger filerna.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        slots.force();
+        heap.force();
+        slotsChannel.close();
+        heapChannel.close();
+    }
+
+    private synchronized Todo readSlotIfUsed(int slot) {
+        if ((slots.get(slotPosition(slot) + SLOT_FLAGS) & FLAG_USED) == 0) {
+            return null;
+        }
+        return readSlot(slot);
+    }
+
+    private Todo readSlot(int slot) {
+        int position = slotPosition(slot);
+        UUID id = new UUID(slots.getLong(position), slots.getLong(position + 8));
+        TodoStatus status = TodoStatus.values()[slots.get(position + SLOT_STATUS)];
+        int priority = slots.getInt(position + SLOT_PRIORITY);
+        Date deadline = new Date(slots.getLong(position + SLOT_DEADLINE));
+        String title = readString(slots.getLong(position + SLOT_TITLE_OFFSET), slots.getInt(position + SLOT_TITLE_LENGTH));
+        String category = readString(slots.getLong(position + SLOT_CATEGORY_OFFSET), slots.getInt(position + SLOT_CATEGORY_LENGTH));
+        Todo todo = new Todo(id, title, deadline, category, priority, status);
+        todo.setVersion(readVersion(slot));
+        IoCounters.recordRead(SLOT_SIZE);  // Strängarna räknas i readString
+        return todo;
+    }
+
+    /**
+     * Todons version. Slots från innan versionen fanns har 0 där och räknas som version 1.
+     */
+    private long readVersion(int slot) {
+        return Math.max(1, slots.getLong(slotPosition(slot) + SLOT_VERSION));
+    }
+
+    private String readString(long offset, int length) {
+        byte[] bytes = new byte[length];
+        heap.get((int) offset, bytes);
+        IoCounters.recordRead(length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Kollar om strängen som sloten redan pekar på är samma som den nya,
+     * så att vi slipper skriva den till heapen igen.
+     */
+    private boolean heapEquals(int offsetPosition, int lengthPosition, byte[] value) {
+        if (slots.getInt(lengthPosition) != value.length) {
+            return false;
+        }
+
+        int offset = (int) slots.getLong(offsetPosition);
+        for (int i = 0; i < value.length; i++) {
+            if (heap.get(offset + i) != value[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long appendToHeap(byte[] value) throws IOException {
+        long offset = heapEnd;
+        ensureHeapCapacity(offset + value.length);
+        heap.put((int) offset, value);
+        IoCounters.recordWritten(value.length);
+        heapEnd += value.length;
+        heap.putLong(HEADER_COUNTER, heapEnd);
+        return offset;
+    }
+
+    private void ensureSlotsCapacity(long required) throws IOException {
+        if (required > slots.capacity()) {
+            slots = map(slotsChannel, grow(slots.capacity(), required));
+        }
+    }
+
+    private void ensureHeapCapacity(long required) throws IOException {
+        if (required > heap.capacity()) {
+            heap = map(heapChannel, grow(heap.capacity(), required));
+        }
+    }
+
+    /**
+     * Dubblar storleken tills den räcker. En MappedByteBuffer kan som mest vara 2 GB.
+     */
+    private static long grow(long capacity, long required) throws IOException {
+        long newCapacity = capacity;
+        while (newCapacity < required) {
+            newCapacity *= 2;
+        }
+        newCapacity = Math.min(newCapacity, Integer.MAX_VALUE);
+        if (newCapacity < required) {
+            throw new IOException("Mapped todo store is full (max " + Integer.MAX_VALUE + " bytes per file)");
+        }
+        return newCapacity;
+    }
+
+    /**
+     * Läser filens header, eller skriver en ny header om filen är helt ny.
+     *
+     * @return Räknaren som är sparad i headern
+     */
+    private static long readHeader(MappedByteBuffer buffer, int magic, long initialCounter) throws IOException {
+        int storedMagic = buffer.getInt(0);
+        if (storedMagic == 0) {
+            buffer.putInt(0, magic);
+            buffer.putInt(4, FORMAT_VERSION);
+            buffer.putLong(HEADER_COUNTER, initialCounter);
+            return initialCounter;
+        }
+
+        if (storedMagic != magic) {
+            throw new IOException("Not a mapped todo file");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported mapped todo file version " + buffer.getInt(4));
+        }
+        return buffer.getLong(HEADER_COUNTER);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static FileChannel openChannel(File file) throws IOException {
+        return FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+}
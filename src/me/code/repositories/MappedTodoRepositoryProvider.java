@@ -0,0 +1,23 @@
+package me.code.repositories;
+
+import me.code.config.TodoConfig;
+
+import java.io.File;
+
+/**
+ * Provider för MappedTodoRepository, "todo.repository=mapped".
+ *
+ *   todo.data.dir  Mappen med datafilen (standard ".")
+ */
+public class MappedTodoRepositoryProvider implements ITodoRepositoryProvider {
+
+    @Override
+    public String getName() {
+        return "mapped";
+    }
+
+    @Override
+    public ITodoRepository open(TodoConfig config) throws Exception {
+        return new MappedTodoRepository(config.getFile("todo.data.dir", new File(".")));
+    }
+}
@@ -0,0 +1,610 @@
+package me.code.repositories;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.services.TodoQuery;
+import me.code.utility.StripedLock;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Ett repository som delar upp todos på flera andra repositoryn ("shards"),
+ * t.ex. ett FileTodoRepository per mapp.
+ *
+ * Med miljontals filer i samma mapp blir både uppslagningar och genomsökningar
+ * långsamma i filsystemet (ext4, xfs). Med 16 shards blir varje mapp 16 gånger
+ * mindre, och mapparna kan ligga på olika diskar så att de läses samtidigt.
+ *
+ * Vilken shard en todo hamnar i bestäms av dess UUID med "jump consistent hash"
+ * (Lamping och Veach). Den sprider todos jämnt, behöver ingen tabell, och när
+ * antalet shards ökar från N till N+1 flyttas bara 1/(N+1) av todos - alla till
+ * den nya sharden. Med en vanlig hash % N skulle nästan alla todos flyttas.
+ *
+ * Operationer på en todo går direkt till dess shard. findAll, count, findMatching
+ * och updateStatusWhere skickas till alla shards samtidigt i en egen trådpool
+ * och resultaten slås ihop. saveAll och deleteAll delas upp per shard och körs
+ * också samtidigt.
+ *
+ * Antalet shards kan ändras medan repositoryt används ("online resharding"):
+ * beginResharding byter till den nya uppdelningen direkt och finishResharding
+ * flyttar sedan todos i omgångar. Under tiden gäller:
+ *
+ * - En todo som ännu inte flyttats läses och skrivs där den ligger.
+ *   Nya todos hamnar direkt i sin nya shard.
+ * - En omgång flyttas under ett skrivlås, så ingen annan ser en todo på två
+ *   ställen eller inte alls. Omgångarna är små, så andra anrop väntar bara kort.
+ * - Om programmet avbryts mitt i kan omfördelningen göras om från början. En todo
+ *   som hann kopieras men inte raderas räknas bara en gång, och kopian på det
+ *   gamla stället gäller tills den flyttas igen.
+ *
+ * En flyttad todo får en ny version, så den som läst todon innan flytten får
+ * en TodoVersionConflictException och behöver läsa den igen.
+ *
+ * Todos kan inte delas upp efter kategori: findById och delete får bara ett ID
+ * och skulle då behöva fråga alla shards.
+ */
+public class ShardedTodoRepository implements ITodoRepository {
+
+    // Så många todos flyttas under samma skrivlås
+    private static final int MIGRATION_BATCH_SIZE = 500;
+
+    private final ExecutorService fanOutPool;
+
+    // Läslås för alla vanliga anrop, skrivlås när uppdelningen ändras eller en omgång flyttas
+    private final ReentrantReadWriteLock layoutLock = new ReentrantReadWriteLock();
+
+    // Lås per todo under omfördelningen, så att "var ligger todon" och skrivningen sker som en enhet
+    private final StripedLock todoLocks = new StripedLock(64);
+
+    private volatile List<ITodoRepository> shards;
+
+    // Uppdelningen som todos flyttas till, null när ingen omfördelning pågår
+    private volatile List<ITodoRepository> targetShards;
+
+    private volatile boolean closed;
+
+    /**
+     * @param shards Repositoryn som todos delas upp på. Ordningen spelar roll: samma
+     *               todo måste alltid hamna på samma plats i listan.
+     * @param threads Antal trådar som anropar shards samtidigt
+     */
+    public ShardedTodoRepository(List<ITodoRepository> shards, int threads) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.fanOutPool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "todo-shard");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public boolean isResharding() {
+        return targetShards != null;
+    }
+
+    @Override
+    public Todo findById(UUID todoId) throws Exception {
+        return read(() -> {
+            ITodoRepository current = shardFor(shards, todoId);
+            List<ITodoRepository> target = targetShards;
+            if (target != null && shardFor(target, todoId) != current) {
+                Todo todo = findOrNull(current, todoId);
+                return todo != null ? todo : shardFor(target, todoId).findById(todoId);
+            }
+            return current.findById(todoId);
+        });
+    }
+
+    @Override
+    public List<Todo> findAll() throws Exception {
+        return read(() -> {
+            List<ITodoRepository> all = allShards();
+            return merge(all, fanOut(all, ITodoRepository::findAll));
+        });
+    }
+
+    /**
+     * Öppnar alla shards streams under läslåset, så att de hör till samma
+     * uppdelning, och läser sedan shardarna efter varandra. Varje shard
+     * bestämmer själv när den läser, t.ex. har FileTodoRepository redan allt i
+     * minnet medan LogTodoRepository läser sina segment allt eftersom. En stream
+     * som fortfarande läses när finishResharding stänger dess shard misslyckas.
+     *
+     * Under en omfördelning läses allt med findAll istället, annars kunde en todo
+     * flyttas från en shard som inte lästs än till en som redan lästs.
+     */
+    @Override
+    public Stream<Todo> streamAll() throws Exception {
+        return read(() -> {
+            if (targetShards != null) {
+                List<ITodoRepository> all = allShards();
+                return merge(all, fanOut(all, ITodoRepository::findAll)).stream();
+            }
+
+            Stream<Todo> todos = Stream.empty();
+            try {
+                for (ITodoRepository shard : shards) {
+                    todos = Stream.concat(todos, shard.streamAll());
+                }
+            } catch (Exception exception) {
+                todos.close();
+                throw exception;
+            }
+            return todos;
+        });
+    }
+
+    @Override
+    public boolean supportsQueries() {
+        return allShards().stream().allMatch(ITodoRepository::supportsQueries);
+    }
+
+    /**
+     * Varje shard hittar sina bästa träffar (högst limit stycken), sedan sorteras
+     * de ihop och de första limit behålls.
+     */
+    @Override
+    public List<Todo> findMatching(TodoQuery query) throws Exception {
+        List<Todo> matches = read(() -> {
+            List<ITodoRepository> all = allShards();
+            return merge(all, fanOut(all, shard -> shard.findMatching(query)));
+        });
+
+        Comparator<Todo> comparator = query.getComparator();
+        if (comparator != null) {
+            matches.sort(comparator);
+        }
+        return matches.size() > query.getLimit() ? new ArrayList<>(matches.subList(0, query.getLimit())) : matches;
+    }
+
+    /**
+     * Under en omfördelning räknas todos som hann kopieras men inte raderas bara
+     * en gång, därför hämtas då alla todos istället.
+     */
+    @Override
+    public long count() throws Exception {
+        return read(() -> {
+            if (targetShards != null) {
+                return (long) findAll().size();
+            }
+            long count = 0;
+            for (long shardCount : fanOut(shards, ITodoRepository::count)) {
+                count += shardCount;
+            }
+            return count;
+        });
+    }
+
+    @Override
+    public void save(Todo todo) throws Exception {
+        write(todo.getId(), shard -> {
+            shard.save(todo);
+            return null;
+        });
+    }
+
+    @Override
+    public void save(Todo todo, Durability durability) throws Exception {
+        write(todo.getId(), shard -> {
+            shard.save(todo, durability);
+            return null;
+        });
+    }
+
+    @Override
+    public void saveAll(Collection<Todo> todos) throws Exception {
+        writeGroups(todos, Todo::getId, ITodoRepository::saveAll);
+    }
+
+    @Override
+    public void saveAll(Collection<Todo> todos, Durability durability) throws Exception {
+        writeGroups(todos, Todo::getId, (shard, group) -> shard.saveAll(group, durability));
+    }
+
+    @Override
+    public void saveIfVersionMatches(Todo todo) throws Exception {
+        write(todo.getId(), shard -> {
+            shard.saveIfVersionMatches(todo);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(UUID todoId) throws Exception {
+        write(todoId, shard -> {
+            shard.delete(todoId);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(UUID todoId, Durability durability) throws Exception {
+        write(todoId, shard -> {
+            shard.delete(todoId, durability);
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> todoIds) throws Exception {
+        writeGroups(todoIds, todoId -> todoId, ITodoRepository::deleteAll);
+    }
+
+    @Override
+    public void deleteAll(Collection<UUID> todoIds, Durability durability) throws Exception {
+        writeGroups(todoIds, todoId -> todoId, (shard, group) -> shard.deleteAll(group, durability));
+    }
+
+    @Override
+    public Todo updateStatus(UUID todoId, TodoStatus status) throws Exception {
+        return write(todoId, shard -> shard.updateStatus(todoId, status));
+    }
+
+    @Override
+    public List<Todo> updateStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        return read(() -> {
+            List<ITodoRepository> all = allShards();
+            return merge(all, fanOut(all, shard -> shard.updateStatusWhere(predicate, status)));
+        });
+    }
+
+    /**
+     * Börjar flytta todos till en ny uppdelning. Returnerar direkt - todos flyttas
+     * först när finishResharding anropas, men alla anrop använder redan den nya
+     * uppdelningen för nya todos.
+     *
+     * Samma repository-objekt får finnas i båda listorna, t.ex. när antalet shards
+     * ökar från 4 till 8 och de fyra första är samma mappar.
+     *
+     * @throws IllegalStateException Om en omfördelning redan pågår
+     */
+    public void beginResharding(List<ITodoRepository> newShards) {
+        if (newShards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        layoutLock.writeLock().lock();
+        try {
+            checkNotClosed();
+            if (targetShards != null) {
+                throw new IllegalStateException("Resharding is already in progress");
+            }
+            targetShards = List.copyOf(newShards);
+        } finally {
+            layoutLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Flyttar alla todos som ligger i fel shard och byter sedan till den nya
+     * uppdelningen. Blockerar tills allt är flyttat; andra trådar kan använda
+     * repositoryt under tiden. Shards som inte finns i den nya uppdelningen stängs.
+     *
+     * @throws IllegalStateException Om repositoryt stängs innan allt är flyttat
+     */
+    public void finishResharding() throws Exception {
+        List<ITodoRepository> source = shards;
+        List<ITodoRepository> target = targetShards;
+        if (target == null) {
+            return;
+        }
+
+        for (ITodoRepository shard : distinct(source)) {
+            // Nya todos hamnar aldrig här, så listan kan hämtas en gång utan lås
+            List<UUID> moving;
+            try (Stream<Todo> todos = shard.streamAll()) {
+                moving = todos.map(Todo::getId)
+                        .filter(todoId -> shardFor(target, todoId) != shard)
+                        .collect(Collectors.toList());
+            }
+            for (int from = 0; from < moving.size(); from += MIGRATION_BATCH_SIZE) {
+                moveBatch(shard, moving.subList(from, Math.min(from + MIGRATION_BATCH_SIZE, moving.size())), target);
+            }
+        }
+
+        List<ITodoRepository> removed = new ArrayList<>();
+        layoutLock.writeLock().lock();
+        try {
+            checkNotClosed();
+            shards = target;
+            targetShards = null;
+            for (ITodoRepository shard : distinct(source)) {
+                if (!target.contains(shard)) {
+                    removed.add(shard);
+                }
+            }
+        } finally {
+            layoutLock.writeLock().unlock();
+        }
+        for (ITodoRepository shard : removed) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Byter till en ny uppdelning och flyttar alla todos dit, se beginResharding
+     * och finishResharding.
+     */
+    public void reshard(List<ITodoRepository> newShards) throws Exception {
+        beginResharding(newShards);
+        finishResharding();
+    }
+
+    /**
+     * Stänger alla shards. En pågående omfördelning avbryts efter den omgång som
+     * flyttas just nu och kan göras om nästa gång.
+     */
+    @Override
+    public void close() throws IOException {
+        List<ITodoRepository> all;
+        layoutLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            all = allShards();
+        } finally {
+            layoutLock.writeLock().unlock();
+        }
+
+        fanOutPool.shutdown();
+        IOException failure = null;
+        for (ITodoRepository shard : all) {
+            try {
+                shard.close();
+            } catch (IOException exception) {
+                if (failure == null) {
+                    failure = exception;
+                } else {
+                    failure.addSuppressed(exception);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Flyttar en omgång todos från en shard till deras nya shards: först kopieras
+     * de, sedan raderas de. Ingen annan kan läsa eller skriva under tiden.
+     */
+    private void moveBatch(ITodoRepository from, List<UUID> todoIds, List<ITodoRepository> target) throws Exception {
+        layoutLock.writeLock().lock();
+        try {
+            checkNotClosed();
+            Map<ITodoRepository, List<Todo>> groups = new LinkedHashMap<>();
+            List<UUID> moved = new ArrayList<>();
+            for (UUID todoId : todoIds) {
+                Todo todo = findOrNull(from, todoId);  // Kan ha raderats sedan listan hämtades
+                if (todo != null) {
+                    groups.computeIfAbsent(shardFor(target, todoId), shard -> new ArrayList<>()).add(todo);
+                    moved.add(todoId);
+                }
+            }
+
+            List<ITodoRepository> destinations = new ArrayList<>(groups.keySet());
+            fanOut(destinations, shard -> {
+                shard.saveAll(groups.get(shard), Durability.FSYNC);
+                return null;
+            });
+            from.deleteAll(moved, Durability.FSYNC);
+        } finally {
+            layoutLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Kör en skrivning på sharden där todon ligger. Under en omfördelning hålls
+     * todons lås, så att ingen annan hinner flytta eller skapa den under tiden.
+     */
+    private <T> T write(UUID todoId, ShardCall<T> call) throws Exception {
+        return read(() -> targetShards == null
+                ? call.apply(shardFor(shards, todoId))
+                : todoLocks.call(todoId, () -> call.apply(locate(todoId))));
+    }
+
+    /**
+     * Delar upp en grupp på shards och skriver till alla shards samtidigt.
+     */
+    private <E> void writeGroups(Collection<E> items, Function<E, UUID> getId,
+                                 GroupWrite<E> write) throws Exception {
+        List<UUID> todoIds = items.stream().map(getId).collect(Collectors.toList());
+        read(() -> {
+            if (targetShards == null) {
+                return writeGrouped(items, getId, write);
+            }
+            return todoLocks.call(todoIds, () -> writeGrouped(items, getId, write));
+        });
+    }
+
+    private <E> Void writeGrouped(Collection<E> items, Function<E, UUID> getId,
+                                  GroupWrite<E> write) throws Exception {
+        Map<ITodoRepository, List<E>> groups = new LinkedHashMap<>();
+        for (E item : items) {
+            groups.computeIfAbsent(locate(getId.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        fanOut(new ArrayList<>(groups.keySet()), shard -> {
+            write.apply(shard, groups.get(shard));
+            return null;
+        });
+        return null;
+    }
+
+    /**
+     * Shardens där todon ligger just nu: under en omfördelning på det gamla stället
+     * om den inte flyttats än, annars (och för nya todos) i sin nya shard.
+     */
+    private ITodoRepository locate(UUID todoId) throws Exception {
+        ITodoRepository current = shardFor(shards, todoId);
+        List<ITodoRepository> target = targetShards;
+        if (target == null) {
+            return current;
+        }
+        ITodoRepository next = shardFor(target, todoId);
+        return next == current || findOrNull(current, todoId) == null ? next : current;
+    }
+
+    /**
+     * Alla shards som kan innehålla todos: under en omfördelning både de gamla och de nya.
+     */
+    private List<ITodoRepository> allShards() {
+        List<ITodoRepository> target = targetShards;
+        if (target == null) {
+            return shards;
+        }
+        List<ITodoRepository> all = new ArrayList<>(shards);
+        all.addAll(target);
+        return distinct(all);
+    }
+
+    /**
+     * Slår ihop resultaten från flera shards. Under en omfördelning kan en todo
+     * finnas på två ställen om en flytt avbröts - då gäller den på det gamla stället.
+     */
+    private List<Todo> merge(List<ITodoRepository> from, List<List<Todo>> results) {
+        List<Todo> merged = new ArrayList<>();
+        if (targetShards == null) {
+            results.forEach(merged::addAll);
+            return merged;
+        }
+
+        Map<UUID, Todo> byId = new LinkedHashMap<>();
+        for (int i = 0; i < from.size(); i++) {
+            ITodoRepository shard = from.get(i);
+            for (Todo todo : results.get(i)) {
+                if (!byId.containsKey(todo.getId()) || shardFor(shards, todo.getId()) == shard) {
+                    byId.put(todo.getId(), todo);
+                }
+            }
+        }
+        merged.addAll(byId.values());
+        return merged;
+    }
+
+    /**
+     * Anropar alla shards samtidigt och väntar på svaren, i samma ordning som shards.
+     * Misslyckas någon väntar vi ändå in de andra innan felet kastas vidare.
+     */
+    private <T> List<T> fanOut(List<ITodoRepository> targets, ShardCall<T> call) throws Exception {
+        if (targets.size() == 1) {
+            return Collections.singletonList(call.apply(targets.get(0)));
+        }
+
+        List<Future<T>> futures = new ArrayList<>(targets.size());
+        for (ITodoRepository shard : targets) {
+            futures.add(fanOutPool.submit(() -> call.apply(shard)));
+        }
+        List<T> results = new ArrayList<>(targets.size());
+        Exception failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException exception) {
+                Throwable cause = exception.getCause();
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                Exception shardFailure = cause instanceof Exception e ? e : exception;
+                if (failure == null) {
+                    failure = shardFailure;
+                } else {
+                    failure.addSuppressed(shardFailure);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    private <T> T read(Callable<T> action) throws Exception {
+        layoutLock.readLock().lock();
+        try {
+            checkNotClosed();
+            return action.call();
+        } finally {
+            layoutLock.readLock().unlock();
+        }
+    }
+
+    private void checkNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("The repository has been closed");
+        }
+    }
+
+    /**
+     * Läser en todo, eller null om den inte finns. Repositoryn signalerar det på
+     * olika sätt: FileTodoRepository med NoSuchFileException, de andra med
+     * NoSuchElementException.
+     */
+    private static Todo findOrNull(ITodoRepository shard, UUID todoId) throws Exception {
+        try {
+            return shard.findById(todoId);
+        } catch (NoSuchElementException | NoSuchFileException missing) {
+            return null;
+        }
+    }
+
+    private static ITodoRepository shardFor(List<ITodoRepository> shards, UUID todoId) {
+        return shards.get(shardIndex(todoId, shards.size()));
+    }
+
+    /**
+     * Numret på sharden (0 till shardCount - 1) för en todo, med "jump consistent hash".
+     *
+     * Tänk dig att todon börjar i shard 0 och att antalet shards ökas ett i taget.
+     * Vid varje ökning till b + 1 shards hoppar todon till den nya sharden med
+     * sannolikheten 1/(b + 1). Algoritmen räknar direkt ut var nästa hopp sker med
+     * hjälp av en slumpgenerator som startas med todons ID, så det blir bara
+     * ungefär ln(shardCount) varv.
+     */
+    static int shardIndex(UUID todoId, int shardCount) {
+        long key = todoId.getMostSignificantBits() ^ todoId.getLeastSignificantBits();
+        long bucket = -1;
+        long jump = 0;
+        while (jump < shardCount) {
+            bucket = jump;
+            key = key * 2862933555777941757L + 1;
+            jump = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+
+    private static List<ITodoRepository> distinct(List<ITodoRepository> shards) {
+        // Repositoryn jämförs med ==, samma objekt kan finnas på flera platser
+        List<ITodoRepository> distinct = new ArrayList<>();
+        for (ITodoRepository shard : shards) {
+            if (distinct.stream().noneMatch(existing -> existing == shard)) {
+                distinct.add(shard);
+            }
+        }
+        return distinct;
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T apply(ITodoRepository shard) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface GroupWrite<E> {
+        void apply(ITodoRepository shard, List<E> group) throws Exception;
+    }
+}
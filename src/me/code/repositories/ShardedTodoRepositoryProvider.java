@@ -0,0 +1,177 @@
+package me.code.repositories;
+
+import me.code.config.TodoConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Provider för ShardedTodoRepository, "todo.repository=sharded".
+ *
+ *   todo.data.dir           Mappen med filen shards.properties (standard ".")
+ *   todo.shard.count        Antal shards (standard 16)
+ *   todo.shard.repository   Sorts repository i varje shard (standard "file")
+ *   todo.shard.dirs         Mappar att fördela shards på, med komma emellan, t.ex.
+ *                           en per disk. Shard i hamnar i mapp i % antal mappar.
+ *                           Standard är todo.data.dir.
+ *   todo.shard.threads      Trådar som anropar shards samtidigt (standard todo.shard.count)
+ *
+ * Varje shard är en egen mapp "shard-007" med egna inställningar, där bara
+ * todo.data.dir är ändrad. En JDBC-shard får alltså en egen databas i sin mapp.
+ *
+ * Antalet shards sparas i shards.properties. Ändras todo.shard.count startar
+ * programmet som vanligt och flyttar todos till den nya uppdelningen i en
+ * bakgrundstråd (se ShardedTodoRepository). Avbryts flytten fortsätter den
+ * nästa gång programmet startar. Mapparna i todo.shard.dirs får inte ändras
+ * utan att shard-mapparna flyttas dit för hand.
+ */
+public class ShardedTodoRepositoryProvider implements ITodoRepositoryProvider {
+
+    public static final String LAYOUT_FILE = "shards.properties";
+
+    private static final int DEFAULT_SHARD_COUNT = 16;
+
+    @Override
+    public String getName() {
+        return "sharded";
+    }
+
+    @Override
+    public ITodoRepository open(TodoConfig config) throws Exception {
+        File root = config.getFile("todo.data.dir", new File("."));
+        int count = config.getInt("todo.shard.count", DEFAULT_SHARD_COUNT);
+        if (count < 1) {
+            throw new IllegalArgumentException("todo.shard.count must be at least 1");
+        }
+        ITodoRepositoryProvider shardProvider = getShardProvider(config);
+        List<File> directories = getDirectories(config, root);
+
+        Path layoutFile = root.toPath().resolve(LAYOUT_FILE);
+        Properties layout = readLayout(layoutFile);
+        int current = Integer.parseInt(layout.getProperty("count", Integer.toString(count)));
+        // Avbröts en omfördelning slutförs den först, en ny ändring görs nästa gång
+        int target = Integer.parseInt(layout.getProperty("target", Integer.toString(count)));
+
+        Map<Integer, ITodoRepository> opened = new HashMap<>();
+        ShardedTodoRepository repository;
+        try {
+            repository = new ShardedTodoRepository(openShards(shardProvider, config, directories, current, opened),
+                    config.getInt("todo.shard.threads", Math.max(current, target)));
+            if (target != current) {
+                writeLayout(layoutFile, current, target);
+                repository.beginResharding(openShards(shardProvider, config, directories, target, opened));
+            } else if (!layout.containsKey("count")) {
+                writeLayout(layoutFile, current, null);
+            }
+        } catch (Exception exception) {
+            for (ITodoRepository shard : opened.values()) {
+                shard.close();
+            }
+            throw exception;
+        }
+
+        if (repository.isResharding()) {
+            startResharding(repository, layoutFile, current, target);
+        }
+        return repository;
+    }
+
+    /**
+     * Med write-behind samlas skrivningarna till saveAll, som skrivs i alla shards samtidigt.
+     */
+    @Override
+    public boolean isWriteBehindRecommended() {
+        return true;
+    }
+
+    private static ITodoRepositoryProvider getShardProvider(TodoConfig config) {
+        ITodoRepositoryProvider provider = ITodoRepositoryProvider.find(config.getString("todo.shard.repository", "file"));
+        if (provider instanceof ShardedTodoRepositoryProvider) {
+            throw new IllegalArgumentException("todo.shard.repository cannot be sharded");
+        }
+        return provider;
+    }
+
+    private static List<File> getDirectories(TodoConfig config, File root) {
+        String dirs = config.getString("todo.shard.dirs", "");
+        List<File> directories = new ArrayList<>();
+        for (String dir : dirs.split(",")) {
+            if (!dir.isBlank()) {
+                directories.add(new File(dir.trim()));
+            }
+        }
+        return directories.isEmpty() ? List.of(root) : directories;
+    }
+
+    /**
+     * Öppnar shards 0 till count - 1. En shard som redan öppnats återanvänds,
+     * så att samma mapp aldrig öppnas två gånger.
+     */
+    private static List<ITodoRepository> openShards(ITodoRepositoryProvider provider, TodoConfig config,
+                                                    List<File> directories, int count,
+                                                    Map<Integer, ITodoRepository> opened) throws Exception {
+        List<ITodoRepository> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ITodoRepository shard = opened.get(i);
+            if (shard == null) {
+                File directory = new File(directories.get(i % directories.size()), String.format("shard-%03d", i));
+                shard = provider.open(config.with("todo.data.dir", directory.getPath()));
+                opened.put(i, shard);
+            }
+            shards.add(shard);
+        }
+        return shards;
+    }
+
+    private static void startResharding(ShardedTodoRepository repository, Path layoutFile, int from, int to) {
+        Thread thread = new Thread(() -> {
+            try {
+                System.err.println("Resharding todos from " + from + " to " + to + " shards");
+                long start = System.nanoTime();
+                repository.finishResharding();
+                writeLayout(layoutFile, to, null);
+                System.err.printf(Locale.ROOT, "Resharding finished in %.1f s%n", (System.nanoTime() - start) / 1e9);
+            } catch (Exception exception) {
+                // Layoutfilen säger fortfarande att flytten pågår, så den fortsätter vid nästa start
+                System.err.println("Resharding stopped, it continues on the next start: " + exception.getMessage());
+            }
+        }, "todo-reshard");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static Properties readLayout(Path layoutFile) throws IOException {
+        Properties layout = new Properties();
+        if (Files.isRegularFile(layoutFile)) {
+            try (Reader reader = Files.newBufferedReader(layoutFile, StandardCharsets.UTF_8)) {
+                layout.load(reader);
+            }
+        }
+        return layout;
+    }
+
+    /**
+     * Skriver layoutfilen atomiskt, så att den aldrig är halvskriven efter en krasch.
+     */
+    private static void writeLayout(Path layoutFile, int count, Integer target) throws IOException {
+        Properties layout = new Properties();
+        layout.setProperty("count", Integer.toString(count));
+        if (target != null) {
+            layout.setProperty("target", Integer.toString(target));
+        }
+
+        Files.createDirectories(layoutFile.toAbsolutePath().getParent());
+        Path temporary = layoutFile.resolveSibling(LAYOUT_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            layout.store(writer, "Managed by ShardedTodoRepositoryProvider, change todo.shard.count instead");
+        }
+        Files.move(temporary, layoutFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,391 @@
+package me.code.repositories;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Översätter en Todo till och från ett kompakt binärt format.
+ *
+ * Det gamla textformatet (en rad per fält) är lätt att läsa för en människa,
+ * men ett UUID tar 36 tecken som text och 16 bytes binärt, och varje läsning
+ * måste tolka strängar med Integer.parseInt, Long.parseLong och valueOf.
+ *
+ * Binärt format, version 2:
+ *
+ *   [2 bytes magic "TB"][1 byte formatversion]
+ *   [16 bytes UUID][varint todons version][1 byte status (ordinal)][varint prioritet][8 bytes deadline]
+ *   [varint längd][titel i UTF-8][varint längd][kategori i UTF-8]
+ *
+ * Version 1 saknade todons version (se Todo.getVersion). Sådana todos, liksom
+ * todos i textformatet, läses som version 1 - de har ju sparats en gång.
+ *
+ * En "varint" sparar små tal i få bytes: 7 bitar per byte, och den höga biten
+ * säger om det kommer fler bytes. Prioritet 1-5 tar alltså bara en byte.
+ * Versionsbyten gör att vi kan ändra formatet senare och ändå läsa gamla filer.
+ *
+ * Avkodningen läser fälten direkt ur en ByteBuffer. Den enda data som skapas
+ * per todo är själva Todo-objektet och dess titel och kategori - inga
+ * mellanliggande strängar eller rader, oavsett om formatet är binärt eller text.
+ */
+public final class TodoCodec {
+
+    public static final int VERSION = 2;
+    private static final int VERSION_WITHOUT_TODO_VERSION = 1;
+
+    // Todos från format som saknar versionsnummer räknas som sparade en gång
+    private static final long UNVERSIONED_TODO_VERSION = 1;
+
+    private static final byte MAGIC_FIRST = 'T';
+    private static final byte MAGIC_SECOND = 'B';
+    private static final int HEADER_LENGTH = 3;
+
+    // Statusnamnen som bytes, så att textformatet kan jämföras utan att skapa strängar
+    private static final byte[][] STATUS_NAMES = new byte[TodoStatus.values().length][];
+
+    static {
+        for (TodoStatus status : TodoStatus.values()) {
+            STATUS_NAMES[status.ordinal()] = status.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    // Återanvänds för att kopiera strängar ur buffertar som inte har en byte-array (direkta buffertar)
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[256]);
+
+    private TodoCodec() {
+    }
+
+    /**
+     * Kodar en todo till bytes i det binära formatet.
+     */
+    public static byte[] encode(Todo todo) {
+        byte[] title = todo.getTitle().getBytes(StandardCharsets.UTF_8);
+        byte[] category = todo.getCategory().getBytes(StandardCharsets.UTF_8);
+        int priority = zigZag(todo.getPriority());
+
+        int size = HEADER_LENGTH + 16 + varLongLength(todo.getVersion()) + 1 + varIntLength(priority) + 8
+                + varIntLength(title.length) + title.length
+                + varIntLength(category.length) + category.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC_FIRST).put(MAGIC_SECOND).put((byte) VERSION);
+        buffer.putLong(todo.getId().getMostSignificantBits());
+        buffer.putLong(todo.getId().getLeastSignificantBits());
+        putVarLong(buffer, todo.getVersion());
+        buffer.put((byte) todo.getStatus().ordinal());
+        putVarInt(buffer, priority);
+        buffer.putLong(todo.getDeadline().getTime());
+        putVarInt(buffer, title.length);
+        buffer.put(title);
+        putVarInt(buffer, category.length);
+        buffer.put(category);
+        return buffer.array();
+    }
+
+    /**
+     * Avkodar en todo från det binära formatet.
+     *
+     * @throws IOException Om datan är trasig eller har en version vi inte känner till
+     */
+    public static Todo decode(byte[] data) throws IOException {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Avkodar en todo från det binära formatet, från buffertens position till dess limit.
+     *
+     * @throws IOException Om datan är trasig eller har en version vi inte känner till
+     */
+    public static Todo decode(ByteBuffer buffer) throws IOException {
+        if (!isBinary(buffer)) {
+            throw new IOException("Not a binary todo");
+        }
+        byte format = checkFormat(buffer);
+
+        try {
+            buffer.position(buffer.position() + HEADER_LENGTH);
+            UUID id = new UUID(buffer.getLong(), buffer.getLong());
+            long version = format == VERSION_WITHOUT_TODO_VERSION ? UNVERSIONED_TODO_VERSION : getVarLong(buffer);
+            TodoStatus status = TodoStatus.values()[buffer.get()];
+            int priority = unZigZag(getVarInt(buffer));
+            Date deadline = new Date(buffer.getLong());
+            String title = getString(buffer);
+            String category = getString(buffer);
+            Todo todo = new Todo(id, title, deadline, category, priority, status);
+            todo.setVersion(version);
+            return todo;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException exception) {
+            throw new IOException("Corrupt binary todo", exception);
+        }
+    }
+
+    /**
+     * Läser bara todons version, utan att avkoda resten. Används för att
+     * jämföra versioner innan en skrivning, vilket då blir nästan gratis.
+     * Bufferten lämnas orörd.
+     *
+     * @throws IOException Om datan är trasig eller har en version vi inte känner till
+     */
+    public static long decodeVersion(ByteBuffer buffer) throws IOException {
+        if (!isBinary(buffer)) {
+            return UNVERSIONED_TODO_VERSION;  // Textformatet
+        }
+        if (checkFormat(buffer) == VERSION_WITHOUT_TODO_VERSION) {
+            return UNVERSIONED_TODO_VERSION;
+        }
+
+        try {
+            return getVarLong(buffer.duplicate().position(buffer.position() + HEADER_LENGTH + 16));
+        } catch (BufferUnderflowException | IllegalArgumentException exception) {
+            throw new IOException("Corrupt binary todo", exception);
+        }
+    }
+
+    private static byte checkFormat(ByteBuffer buffer) throws IOException {
+        byte format = buffer.get(buffer.position() + 2);
+        if (format != VERSION && format != VERSION_WITHOUT_TODO_VERSION) {
+            throw new IOException("Unsupported todo format version " + format);
+        }
+        return format;
+    }
+
+    /**
+     * Avkodar en todo oavsett om den är sparad i det binära formatet eller i
+     * det gamla textformatet.
+     *
+     * @param todoId ID för todon (textformatet räknar med att vi redan vet det)
+     */
+    public static Todo decodeAny(UUID todoId, byte[] data) throws IOException {
+        return decodeAny(todoId, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Som decodeAny(UUID, byte[]), men läser från buffertens position till dess limit.
+     */
+    public static Todo decodeAny(UUID todoId, ByteBuffer buffer) throws IOException {
+        return isBinary(buffer) ? decode(buffer) : decodeText(todoId, buffer);
+    }
+
+    /**
+     * Sant om datan börjar som det binära formatet. Textfilerna börjar alltid
+     * med ett UUID (0-9, a-f), så de kan aldrig förväxlas.
+     */
+    public static boolean isBinary(byte[] data) {
+        return isBinary(ByteBuffer.wrap(data));
+    }
+
+    private static boolean isBinary(ByteBuffer buffer) {
+        int position = buffer.position();
+        return buffer.remaining() >= HEADER_LENGTH
+                && buffer.get(position) == MAGIC_FIRST && buffer.get(position + 1) == MAGIC_SECOND;
+    }
+
+    /**
+     * Läser det gamla textformatet: en rad per fält (id, title, category, status, priority, deadline).
+     */
+    public static Todo decodeText(UUID todoId, byte[] data) throws IOException {
+        return decodeText(todoId, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Läser det gamla textformatet direkt ur bufferten.
+     *
+     * Istället för att läsa rader som strängar och sedan tolka dem med
+     * valueOf/parseInt/parseLong letar vi upp radslut och tolkar siffrorna
+     * och statusnamnet byte för byte. Bara titel och kategori blir strängar.
+     */
+    public static Todo decodeText(UUID todoId, ByteBuffer buffer) throws IOException {
+        try {
+            skipLine(buffer);  // Hoppa över första raden (ID, vi har det redan)
+            String title = getLine(buffer);
+            String category = getLine(buffer);
+            TodoStatus status = getStatusLine(buffer);
+            int priority = Math.toIntExact(getNumberLine(buffer));
+            Date deadline = new Date(getNumberLine(buffer));
+
+            Todo todo = new Todo(todoId, title, deadline, category, priority, status);
+            todo.setVersion(UNVERSIONED_TODO_VERSION);
+            return todo;
+        } catch (IllegalArgumentException | ArithmeticException exception) {
+            throw new IOException("Corrupt todo text file for " + todoId, exception);
+        }
+    }
+
+    /**
+     * Längden på raden som börjar vid buffertens position (utan radbrytning).
+     */
+    private static int lineLength(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        int end = start;
+        while (end < buffer.limit() && buffer.get(end) != '\n') {
+            end++;
+        }
+        if (end == start && end == buffer.limit()) {
+            throw new IOException("Unexpected end of todo text file");
+        }
+        int length = end - start;
+        return length > 0 && buffer.get(end - 1) == '\r' ? length - 1 : length;
+    }
+
+    /**
+     * Flyttar positionen förbi raden och dess radbrytning.
+     */
+    private static void endLine(ByteBuffer buffer, int length) {
+        int position = buffer.position() + length;
+        while (position < buffer.limit() && buffer.get(position) != '\n') {
+            position++;  // Ett eventuellt \r
+        }
+        buffer.position(Math.min(buffer.limit(), position + 1));
+    }
+
+    private static void skipLine(ByteBuffer buffer) throws IOException {
+        endLine(buffer, lineLength(buffer));
+    }
+
+    private static String getLine(ByteBuffer buffer) throws IOException {
+        int length = lineLength(buffer);
+        String value = getString(buffer, length);
+        endLine(buffer, 0);
+        return value;
+    }
+
+    private static TodoStatus getStatusLine(ByteBuffer buffer) throws IOException {
+        int length = lineLength(buffer);
+        int start = buffer.position();
+        for (TodoStatus status : TodoStatus.values()) {
+            byte[] name = STATUS_NAMES[status.ordinal()];
+            if (name.length == length && buffer.slice(start, length).equals(ByteBuffer.wrap(name))) {
+                endLine(buffer, length);
+                return status;
+            }
+        }
+        throw new IllegalArgumentException("Unknown status in todo text file");
+    }
+
+    private static long getNumberLine(ByteBuffer buffer) throws IOException {
+        int length = lineLength(buffer);
+        int position = buffer.position();
+        int end = position + length;
+        boolean negative = length > 0 && buffer.get(position) == '-';
+        if (negative) {
+            position++;
+        }
+        if (position == end) {
+            throw new NumberFormatException("Empty number in todo text file");
+        }
+
+        long value = 0;
+        for (; position < end; position++) {
+            int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid number in todo text file");
+            }
+            value = Math.addExact(Math.multiplyExact(value, 10), digit);
+        }
+        endLine(buffer, length);
+        return negative ? -value : value;
+    }
+
+    private static String getString(ByteBuffer buffer) throws IOException {
+        int length = getVarInt(buffer);
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Corrupt string length " + length);
+        }
+        return getString(buffer, length);
+    }
+
+    /**
+     * Läser length bytes UTF-8 från buffertens position och flyttar positionen förbi dem.
+     */
+    private static String getString(ByteBuffer buffer, int length) {
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] scratch = SCRATCH.get();
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+                SCRATCH.set(scratch);
+            }
+            buffer.get(scratch, 0, length);
+            value = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Zigzag gör så att små negativa tal också blir små positiva (0, -1, 1, -2 ... blir 0, 1, 2, 3 ...).
+     */
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varIntLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static int varLongLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long");
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Varint is too long");
+    }
+}
@@ -0,0 +1,44 @@
+package me.code.repositories;
+
+import java.util.UUID;
+
+/**
+ * Kastas av ITodoRepository.saveIfVersionMatches när todon har ändrats av
+ * någon annan sedan den lästes - den sparade versionen är inte den som
+ * anroparen förväntade sig.
+ *
+ * Det är inget "riktigt" fel: den som får exceptionet kan läsa todon på nytt,
+ * göra om sin ändring på den färska versionen och försöka spara igen.
+ */
+public class TodoVersionConflictException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    private final UUID todoId;
+    private final long expectedVersion;
+    private final long actualVersion;
+
+    /**
+     * @param todoId ID för todon som inte kunde sparas
+     * @param expectedVersion Versionen som anroparen trodde var sparad
+     * @param actualVersion Versionen som faktiskt var sparad (0 om todon inte finns)
+     */
+    public TodoVersionConflictException(UUID todoId, long expectedVersion, long actualVersion) {
+        super("Todo with id " + todoId + " has version " + actualVersion + ", expected " + expectedVersion);
+        this.todoId = todoId;
+        this.expectedVersion = expectedVersion;
+        this.actualVersion = actualVersion;
+    }
+
+    public UUID getTodoId() {
+        return todoId;
+    }
+
+    public long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    public long getActualVersion() {
+        return actualVersion;
+    }
+}
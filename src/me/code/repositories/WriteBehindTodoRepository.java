@@ -0,0 +1,528 @@
+package me.code.repositories;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.services.TodoQuery;
+import me.code.utility.StripedLock;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Ett repository som lägger sig "framför" ett annat repository och skriver
+ * ändringar i bakgrunden (write-behind).
+ *
+ * Detta är ett exempel på Decorator-mönstret: klassen implementerar samma
+ * interface som det den omsluter, så resten av applikationen märker ingen skillnad.
+ *
+ * När någon sparar eller raderar en todo lägger vi bara ändringen i en kö i minnet
+ * och returnerar direkt. En bakgrundstråd skriver sedan ändringarna i omgångar
+ * (batchar) till det underliggande repositoryt med saveAll och deleteAll. Sparas
+ * samma todo flera gånger innan den hunnit skrivas behöver bara den senaste
+ * versionen skrivas.
+ *
+ * Kön töms när den innehåller maxDirtyCount ändringar eller när den äldsta
+ * ändringen har väntat maxLatencyMillis, beroende på vad som händer först.
+ *
+ * Observera: ändringar som ligger i kön försvinner om JVM:en kraschar.
+ * Därför måste close() anropas vid avslut, t.ex. från en shutdown hook.
+ * Den som inte har råd att förlora en ändring kan spara med Durability.FSYNC,
+ * då töms kön direkt och anropet väntar tills allt ligger säkert på disk.
+ */
+public class WriteBehindTodoRepository implements ITodoRepository {
+
+    public static final int DEFAULT_MAX_DIRTY_COUNT = 1000;
+    public static final long DEFAULT_MAX_LATENCY_MILLIS = 1000;
+
+    private final ITodoRepository delegate;
+    private final int maxDirtyCount;
+    private final long maxLatencyMillis;
+
+    // Ändringar som väntar på att skrivas. En null-todo betyder att den ska raderas.
+    private final LinkedHashMap<UUID, PendingWrite> pending = new LinkedHashMap<>();
+
+    // Ändringar som just nu skrivs av bakgrundstråden
+    private Map<UUID, PendingWrite> flushing = Collections.emptyMap();
+
+    // Skyddar kön (pending/flushing) och används för att väcka bakgrundstråden
+    private final Object lock = new Object();
+
+    // Ser till att bara en tömning pågår åt gången, så att ordningen bevaras
+    private final Object flushLock = new Object();
+
+    // Lås per todo för updateStatus, som både läser och skriver
+    private final StripedLock todoLocks = new StripedLock(64);
+
+    private final Thread flusher;
+    private long oldestPendingMillis;
+    private Exception lastFlushError;
+    private boolean closed;
+
+    /**
+     * Skapar ett write-behind-repository med standardgränser.
+     *
+     * @param delegate Repositoryt som ändringarna till slut ska skrivas till
+     */
+    public WriteBehindTodoRepository(ITodoRepository delegate) {
+        this(delegate, DEFAULT_MAX_DIRTY_COUNT, DEFAULT_MAX_LATENCY_MILLIS);
+    }
+
+    /**
+     * Skapar ett write-behind-repository och startar bakgrundstråden.
+     *
+     * @param delegate Repositoryt som ändringarna till slut ska skrivas till
+     * @param maxDirtyCount Max antal väntande ändringar innan kön töms
+     * @param maxLatencyMillis Max tid en ändring får vänta innan den skrivs
+     */
+    public WriteBehindTodoRepository(ITodoRepository delegate, int maxDirtyCount, long maxLatencyMillis) {
+        this.delegate = delegate;
+        this.maxDirtyCount = maxDirtyCount;
+        this.maxLatencyMillis = maxLatencyMillis;
+
+        this.flusher = new Thread(this::runFlusher, "todo-write-behind");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Hittar en todo - i första hand bland de väntande ändringarna i minnet.
+     */
+    @Override
+    public Todo findById(UUID todoId) throws Exception {
+        PendingWrite write;
+        synchronized (lock) {
+            write = pending.get(todoId);
+            if (write == null) {
+                write = flushing.get(todoId);
+            }
+        }
+
+        if (write == null) {
+            return delegate.findById(todoId);
+        }
+        if (write.todo() == null) {
+            throw new NoSuchElementException("Todo with id " + todoId + " does not exist");
+        }
+        return new Todo(write.todo());
+    }
+
+    /**
+     * Hämtar alla todos. Vi tömmer kön först så att resultatet blir komplett.
+     */
+    @Override
+    public List<Todo> findAll() throws Exception {
+        flush();
+        return delegate.findAll();
+    }
+
+    /**
+     * Streamar alla todos. Vi tömmer kön först så att resultatet blir komplett.
+     */
+    @Override
+    public Stream<Todo> streamAll() throws Exception {
+        flush();
+        return delegate.streamAll();
+    }
+
+    /**
+     * Räknar alla todos. Vi tömmer kön först så att antalet blir rätt.
+     */
+    @Override
+    public long count() throws Exception {
+        flush();
+        return delegate.count();
+    }
+
+    @Override
+    public boolean supportsQueries() {
+        return delegate.supportsQueries();
+    }
+
+    /**
+     * Frågar repositoryt under oss. Vi tömmer kön först så att väntande ändringar kommer med.
+     */
+    @Override
+    public List<Todo> findMatching(TodoQuery query) throws Exception {
+        flush();
+        return delegate.findMatching(query);
+    }
+
+    /**
+     * Lägger en kopia av todon i kön. Finns det redan en väntande version ersätts den.
+     */
+    @Override
+    public void save(Todo todo) throws Exception {
+        save(todo, null);
+    }
+
+    /**
+     * Lägger en kopia av todon i kön. Med Durability.FSYNC töms kön direkt.
+     *
+     * Versionen sätts på todon direkt, som i alla repositoryn: den räknas upp
+     * från todons version eller den väntande ändringens, om den är högre. Har
+     * någon annan process sparat todon under tiden får den en högre version när
+     * den skrivs, och nästa villkorliga sparning ger då en konflikt.
+     */
+    @Override
+    public void save(Todo todo, Durability durability) throws Exception {
+        Todo copy = new Todo(todo);
+        enqueue(todo.getId(), new PendingWrite(copy, durability));
+        todo.setVersion(copy.getVersion());
+    }
+
+    /**
+     * Lägger kopior av alla todos i kön på en gång.
+     */
+    @Override
+    public void saveAll(Collection<Todo> todos) throws Exception {
+        saveAll(todos, null);
+    }
+
+    /**
+     * Lägger kopior av alla todos i kön på en gång. Med Durability.FSYNC töms kön direkt.
+     */
+    @Override
+    public void saveAll(Collection<Todo> todos, Durability durability) throws Exception {
+        Map<UUID, PendingWrite> writes = new LinkedHashMap<>();
+        for (Todo todo : todos) {
+            writes.put(todo.getId(), new PendingWrite(new Todo(todo), durability));
+        }
+        enqueue(writes, durability);
+        for (Todo todo : todos) {
+            todo.setVersion(writes.get(todo.getId()).todo().getVersion());
+        }
+    }
+
+    /**
+     * Villkorlig sparning kan inte vänta i kön - anroparen måste få veta direkt
+     * om versionen stämde, och bara det underliggande repositoryt vet om någon
+     * annan (t.ex. en annan process) har sparat todon. Den skrivs därför direkt
+     * med delegate.saveIfVersionMatches.
+     *
+     * Ligger todon i kön måste den ändringen skrivas först, så då tömmer vi kön.
+     * Andra todos i kön påverkar inte jämförelsen och får vänta kvar.
+     *
+     * En ändring i kön har redan den version den får när den skrivs, så en
+     * todo som hämtats ur kön kan sparas villkorligt direkt efter tömningen.
+     */
+    @Override
+    public void saveIfVersionMatches(Todo todo) throws Exception {
+        UUID todoId = todo.getId();
+        todoLocks.call(todoId, () -> {
+            boolean queued;
+            synchronized (lock) {
+                queued = pending.containsKey(todoId) || flushing.containsKey(todoId);
+            }
+            if (queued) {
+                flush();
+            }
+            delegate.saveIfVersionMatches(todo);
+            return null;
+        });
+    }
+
+    /**
+     * Lägger en radering i kön.
+     */
+    @Override
+    public void delete(UUID todoId) throws Exception {
+        delete(todoId, null);
+    }
+
+    /**
+     * Lägger en radering i kön. Med Durability.FSYNC töms kön direkt.
+     */
+    @Override
+    public void delete(UUID todoId, Durability durability) throws Exception {
+        enqueue(todoId, new PendingWrite(null, durability));
+    }
+
+    /**
+     * Lägger alla raderingar i kön på en gång.
+     */
+    @Override
+    public void deleteAll(Collection<UUID> todoIds) throws Exception {
+        deleteAll(todoIds, null);
+    }
+
+    /**
+     * Lägger alla raderingar i kön på en gång. Med Durability.FSYNC töms kön direkt.
+     */
+    @Override
+    public void deleteAll(Collection<UUID> todoIds, Durability durability) throws Exception {
+        Map<UUID, PendingWrite> writes = new LinkedHashMap<>();
+        for (UUID todoId : todoIds) {
+            writes.put(todoId, new PendingWrite(null, durability));
+        }
+        enqueue(writes, durability);
+    }
+
+    /**
+     * Ändrar status under todons lås. Utan låset kunde två trådar läsa samma
+     * väntande version och den ena ändringen skulle försvinna.
+     */
+    @Override
+    public Todo updateStatus(UUID todoId, TodoStatus status) throws Exception {
+        return todoLocks.call(todoId, () -> ITodoRepository.super.updateStatus(todoId, status));
+    }
+
+    /**
+     * Tömmer kön och låter det underliggande repositoryt göra hela ändringen.
+     * Alla todolås hålls under tiden, så att ingen updateStatus hinner emellan.
+     */
+    @Override
+    public List<Todo> updateStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        return todoLocks.callAll(() -> {
+            flush();
+            return delegate.updateStatusWhere(predicate, status);
+        });
+    }
+
+    /**
+     * Skriver alla väntande ändringar till det underliggande repositoryt direkt.
+     *
+     * @throws Exception Om skrivningen misslyckas, eller om en tidigare
+     *                   bakgrundsskrivning har misslyckats
+     */
+    public void flush() throws Exception {
+        synchronized (flushLock) {
+            writeBatch(drain());
+        }
+        throwLastFlushError();
+    }
+
+    /**
+     * Stoppar bakgrundstråden, skriver allt som väntar och stänger det
+     * underliggande repositoryt. Kan anropas flera gånger.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+
+        try {
+            flusher.join();
+            flush();
+        } catch (IOException exception) {
+            throw exception;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing pending todos");
+        } catch (Exception exception) {
+            throw new IOException("Writing pending todos failed: " + exception.getMessage(), exception);
+        } finally {
+            delegate.close();
+        }
+    }
+
+    private void enqueue(UUID todoId, PendingWrite write) throws Exception {
+        enqueue(Map.of(todoId, write), write.durability());
+    }
+
+    private void enqueue(Map<UUID, PendingWrite> writes, Durability durability) throws Exception {
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("Repository is closed");
+            }
+
+            for (Map.Entry<UUID, PendingWrite> write : writes.entrySet()) {
+                UUID todoId = write.getKey();
+
+                // Kön är full - vänta tills bakgrundstråden hunnit ikapp
+                while (pending.size() >= maxDirtyCount && !pending.containsKey(todoId)) {
+                    lock.notifyAll();
+                    lock.wait();
+                }
+
+                if (pending.isEmpty()) {
+                    oldestPendingMillis = System.currentTimeMillis();
+                }
+                Todo todo = write.getValue().todo();
+                if (todo != null) {
+                    todo.setVersion(Math.max(todo.getVersion(), queuedVersion(todoId)) + 1);
+                }
+                pending.remove(todoId);  // Så att den hamnar sist i ordningen
+                pending.put(todoId, write.getValue());
+            }
+
+            if (pending.size() >= maxDirtyCount) {
+                lock.notifyAll();
+            }
+        }
+
+        if (durability == Durability.FSYNC) {
+            flush();
+        } else {
+            throwLastFlushError();
+        }
+    }
+
+    /**
+     * Bakgrundstrådens loop: vänta tills någon gräns nås, töm sedan kön.
+     */
+    private void runFlusher() {
+        while (true) {
+            synchronized (lock) {
+                try {
+                    while (!closed && !isFlushDue()) {
+                        if (pending.isEmpty()) {
+                            lock.wait();
+                        } else {
+                            long waitMillis = oldestPendingMillis + maxLatencyMillis - System.currentTimeMillis();
+                            lock.wait(Math.max(1, waitMillis));
+                        }
+                    }
+                } catch (InterruptedException exception) {
+                    return;
+                }
+
+                if (closed) {
+                    return;  // close() tömmer det sista själv
+                }
+            }
+
+            boolean failed = false;
+            synchronized (flushLock) {
+                try {
+                    writeBatch(drain());
+                } catch (Exception ignored) {
+                    // Felet är sparat i lastFlushError och ändringarna ligger kvar i kön
+                    failed = true;
+                }
+            }
+
+            if (failed) {
+                // Vänta en stund innan nästa försök så att vi inte försöker i en tight loop
+                synchronized (lock) {
+                    try {
+                        lock.wait(maxLatencyMillis);
+                    } catch (InterruptedException exception) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Versionen som den väntande ändringen av todon får, eller 0 om ingen
+     * väntar. Anropas med lock.
+     */
+    private long queuedVersion(UUID todoId) {
+        PendingWrite write = pending.get(todoId);
+        if (write == null) {
+            write = flushing.get(todoId);
+        }
+        return write == null || write.todo() == null ? 0 : write.todo().getVersion();
+    }
+
+    private boolean isFlushDue() {
+        return !pending.isEmpty() && (pending.size() >= maxDirtyCount
+                || System.currentTimeMillis() - oldestPendingMillis >= maxLatencyMillis);
+    }
+
+    /**
+     * Flyttar alla väntande ändringar till "flushing" så att läsningar fortfarande
+     * hittar dem medan de skrivs.
+     */
+    private Map<UUID, PendingWrite> drain() {
+        synchronized (lock) {
+            Map<UUID, PendingWrite> batch = new LinkedHashMap<>(pending);
+            pending.clear();
+            flushing = batch;
+            lock.notifyAll();  // Väck skrivare som väntade på plats i kön
+            return batch;
+        }
+    }
+
+    /**
+     * Skriver en batch till det underliggande repositoryt.
+     *
+     * Ändringarna delas upp efter durability, och varje grupp skrivs med ett
+     * enda saveAll och ett enda deleteAll. Varje todo förekommer bara en gång
+     * i batchen, så ordningen mellan grupperna spelar ingen roll.
+     *
+     * Todos i kön har redan sin nya version. Repositoryt under oss räknar upp
+     * versionen själv, så det får kopior med versionen före.
+     *
+     * Om något går fel lägger vi tillbaka de ändringar som inte hunnit skrivas
+     * (och som inte redan ersatts av nyare) så att de skrivs vid nästa försök.
+     */
+    private void writeBatch(Map<UUID, PendingWrite> batch) throws Exception {
+        Map<Durability, List<Todo>> saves = new HashMap<>();
+        Map<Durability, List<UUID>> deletes = new HashMap<>();
+        for (Map.Entry<UUID, PendingWrite> entry : batch.entrySet()) {
+            PendingWrite write = entry.getValue();
+            if (write.todo() == null) {
+                deletes.computeIfAbsent(write.durability(), ignored -> new ArrayList<>()).add(entry.getKey());
+            } else {
+                Todo copy = new Todo(write.todo());
+                copy.setVersion(copy.getVersion() - 1);
+                saves.computeIfAbsent(write.durability(), ignored -> new ArrayList<>()).add(copy);
+            }
+        }
+
+        try {
+            for (Map.Entry<Durability, List<Todo>> group : saves.entrySet()) {
+                if (group.getKey() == null) {
+                    delegate.saveAll(group.getValue());
+                } else {
+                    delegate.saveAll(group.getValue(), group.getKey());
+                }
+                for (Todo todo : group.getValue()) {
+                    batch.remove(todo.getId());
+                }
+            }
+            for (Map.Entry<Durability, List<UUID>> group : deletes.entrySet()) {
+                if (group.getKey() == null) {
+                    delegate.deleteAll(group.getValue());
+                } else {
+                    delegate.deleteAll(group.getValue(), group.getKey());
+                }
+                for (UUID todoId : group.getValue()) {
+                    batch.remove(todoId);
+                }
+            }
+
+            synchronized (lock) {
+                flushing = Collections.emptyMap();
+                lastFlushError = null;
+            }
+        } catch (Exception exception) {
+            synchronized (lock) {
+                for (Map.Entry<UUID, PendingWrite> entry : batch.entrySet()) {
+                    pending.putIfAbsent(entry.getKey(), entry.getValue());
+                }
+                if (!pending.isEmpty()) {
+                    oldestPendingMillis = System.currentTimeMillis();
+                }
+                flushing = Collections.emptyMap();
+                lastFlushError = exception;
+            }
+            throw exception;
+        }
+    }
+
+    private void throwLastFlushError() throws IOException {
+        synchronized (lock) {
+            if (lastFlushError != null) {
+                throw new IOException("Writing pending todos failed: " + lastFlushError.getMessage(), lastFlushError);
+            }
+        }
+    }
+
+    /**
+     * En väntande ändring. Är todo null betyder det att todon ska raderas.
+     * Är durability null används det underliggande repositoryts standardval.
+     */
+    private record PendingWrite(Todo todo, Durability durability) {
+    }
+}
@@ -0,0 +1,78 @@
+package me.code.repositories.cache;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Räknare för hur bra en cache fungerar.
+ *
+ * LongAdder är en räknare som klarar att många trådar ökar den samtidigt.
+ */
+public class CacheStats {
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    public void recordHit() {
+        hits.increment();
+    }
+
+    public void recordMiss() {
+        misses.increment();
+    }
+
+    public void recordEviction() {
+        evictions.increment();
+    }
+
+    public void recordRejection() {
+        rejections.increment();
+    }
+
+    /**
+     * Antal uppslagningar som hittades i cachen.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Antal uppslagningar som fick läsas från det underliggande repositoryt.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Antal poster som kastats ut för att göra plats åt nya.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Antal poster som policyn vägrade släppa in i cachen.
+     */
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Andel av uppslagningarna som blev träffar (0.0 - 1.0).
+     */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() +
+                ", misses=" + getMisses() +
+                ", evictions=" + getEvictions() +
+                ", rejections=" + getRejections() +
+                ", hitRate=" + String.format("%.2f", getHitRate());
+    }
+}
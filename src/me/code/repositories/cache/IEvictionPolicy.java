@@ -0,0 +1,65 @@
+package me.code.repositories.cache;
+
+import java.util.UUID;
+
+/**
+ * Interface för hur en cache väljer vad som ska kastas ut när den blir full.
+ *
+ * Cachen berättar för policyn vad som händer (uppslagningar, träffar, nya och
+ * borttagna poster) och frågar sedan policyn vilken post som ska bort när det
+ * inte finns plats. Genom att byta policy kan vi byta strategi (t.ex. LRU eller
+ * TinyLFU) utan att ändra själva cachen - samma idé som med ITodoRepository!
+ *
+ * Metoderna anropas alltid med cachens lås taget, så en policy behöver inte
+ * vara trådsäker på egen hand.
+ */
+public interface IEvictionPolicy {
+
+    /**
+     * Anropas vid varje uppslagning, oavsett om det blev träff eller inte.
+     *
+     * @param key Nyckeln som slogs upp
+     */
+    void recordLookup(UUID key);
+
+    /**
+     * Anropas när en uppslagning hittade posten i cachen.
+     *
+     * @param key Nyckeln som träffades
+     */
+    void recordHit(UUID key);
+
+    /**
+     * Anropas när en ny post har lagts in i cachen.
+     *
+     * @param key Nyckeln som lades in
+     */
+    void recordInsert(UUID key);
+
+    /**
+     * Anropas när en post har tagits bort ur cachen (utkastad eller invaliderad).
+     *
+     * @param key Nyckeln som togs bort
+     */
+    void recordRemoval(UUID key);
+
+    /**
+     * Väljer vilken post som ska kastas ut härnäst.
+     *
+     * @return Nyckeln som ska kastas ut, eller null om policyn inte känner till några poster
+     */
+    UUID selectVictim();
+
+    /**
+     * Avgör om en ny post är värd att släppa in om det betyder att offret kastas ut.
+     *
+     * Standardbeteendet är att alltid släppa in nya poster.
+     *
+     * @param candidate Nyckeln som vill in i cachen
+     * @param victim Nyckeln som skulle kastas ut
+     * @return true om kandidaten ska släppas in
+     */
+    default boolean admit(UUID candidate, UUID victim) {
+        return true;
+    }
+}
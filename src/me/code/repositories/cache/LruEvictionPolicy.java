@@ -0,0 +1,42 @@
+package me.code.repositories.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+
+/**
+ * Least Recently Used - kastar ut den post som varit oanvänd längst.
+ *
+ * Vi använder en LinkedHashMap med "access order", vilket betyder att en post
+ * flyttas sist i ordningen varje gång den används. Den första posten är då
+ * alltid den som använts för längst tid sedan.
+ */
+public class LruEvictionPolicy implements IEvictionPolicy {
+
+    private final LinkedHashMap<UUID, Boolean> order = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void recordLookup(UUID key) {
+    }
+
+    @Override
+    public void recordHit(UUID key) {
+        order.get(key);  // get() flyttar posten sist i access order
+    }
+
+    @Override
+    public void recordInsert(UUID key) {
+        order.put(key, Boolean.TRUE);
+    }
+
+    @Override
+    public void recordRemoval(UUID key) {
+        order.remove(key);
+    }
+
+    @Override
+    public UUID selectVictim() {
+        Iterator<UUID> iterator = order.keySet().iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+}
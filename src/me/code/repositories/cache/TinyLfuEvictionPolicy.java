@@ -0,0 +1,87 @@
+package me.code.repositories.cache;
+
+import java.util.UUID;
+
+/**
+ * TinyLFU - en LRU-cache med ett "frekvensfilter" framför.
+ *
+ * Vi räknar ungefär hur ofta varje nyckel slås upp med en Count-Min Sketch
+ * (en liten tabell med räknare som tar fast minne oavsett antal nycklar).
+ * När en ny post bara får plats om LRU-offret kastas ut jämför vi hur ofta de
+ * två har efterfrågats - den nya posten släpps bara in om den är populärare.
+ *
+ * Det gör cachen tålig mot t.ex. en engångsgenomsökning av alla todos, som
+ * annars skulle trycka ut alla "heta" todos ur en vanlig LRU-cache.
+ *
+ * För att gamla mönster inte ska leva kvar för evigt halveras alla räknare
+ * när tillräckligt många uppslagningar har registrerats (aging).
+ */
+public class TinyLfuEvictionPolicy extends LruEvictionPolicy {
+
+    // Count-Min Sketch med fyra rader, räknarna slutar växa vid 15
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final int[][] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param expectedEntries Ungefär hur många poster cachen förväntas rymma
+     */
+    public TinyLfuEvictionPolicy(int expectedEntries) {
+        int width = Integer.highestOneBit(Math.max(16, expectedEntries) - 1) << 1;
+        this.table = new int[DEPTH][width];
+        this.mask = width - 1;
+        this.sampleSize = 10 * width;
+    }
+
+    @Override
+    public void recordLookup(UUID key) {
+        int hash = key.hashCode();
+        for (int row = 0; row < DEPTH; row++) {
+            int index = indexOf(hash, row);
+            if (table[row][index] < MAX_COUNT) {
+                table[row][index]++;
+            }
+        }
+
+        if (++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    @Override
+    public boolean admit(UUID candidate, UUID victim) {
+        return frequency(candidate) > frequency(victim);
+    }
+
+    /**
+     * Uppskattad frekvens är den minsta räknaren, eftersom kollisioner bara
+     * kan göra en räknare för stor - aldrig för liten.
+     */
+    int frequency(UUID key) {
+        int hash = key.hashCode();
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = Math.min(frequency, table[row][indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int[] row : table) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] >>>= 1;
+            }
+        }
+        additions /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,313 @@
+package me.code.repositories.journal;
+
+import me.code.metrics.IoCounters;
+import me.code.models.Todo;
+import me.code.repositories.TodoCodec;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * En write-ahead journal (WAL): en fil där varje ändring skrivs innan den
+ * genomförs "på riktigt".
+ *
+ * Om programmet kraschar mitt i en skrivning kan vi vid nästa start läsa
+ * journalen och göra om (replay) ändringarna. Poster som bara hann skrivas
+ * till hälften känns igen på att checksumman inte stämmer och kastas.
+ *
+ * Varje post ser ut så här:
+ *
+ *   [int längd][int CRC32][byte typ (PUT/DEL)][data]
+ *
+ * där data är todon kodad med TodoCodec (PUT) eller dess UUID och den
+ * version som raderades (DEL).
+ *
+ * En journal tillhör en enda process åt gången: filen låses när den öppnas,
+ * så att flera processer som delar mapp skriver i var sin journal.
+ *
+ * Att vänta på disken (fsync) är dyrt. Därför använder vi "group commit":
+ * om flera trådar vill synka samtidigt gör en av dem en enda fsync som
+ * täcker allas poster, medan de andra väntar på den.
+ */
+public class WriteAheadJournal implements AutoCloseable {
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final List<Entry> recoveredEntries;
+
+    // Antal poster som skrivits till journalen respektive som är synkade till disk.
+    // Räknarna fortsätter uppåt även när journalen töms, så att de går att jämföra.
+    private volatile long appendedCount;
+    private long durableCount;
+
+    // Skyddar durableCount/syncing och används för att väcka trådar som väntar på en fsync
+    private final Object syncLock = new Object();
+    private boolean syncing;
+
+    /**
+     * Öppnar (eller skapar) journalen om ingen annan använder den, och läser in
+     * de poster som är hela. En trasig svans - en post som inte hann skrivas
+     * klart - klipps bort.
+     *
+     * @param file Journalfilen
+     * @return Journalen, eller null om en annan process (eller ett annat
+     *         repository i samma JVM) redan har den öppen
+     * @throws IOException Om filen inte går att öppna
+     */
+    public static WriteAheadJournal tryOpen(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException exception) {
+                lock = null;  // Låst av någon annan i samma JVM
+            }
+            if (lock == null) {
+                channel.close();
+                return null;
+            }
+            return new WriteAheadJournal(channel, lock);
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+    }
+
+    private WriteAheadJournal(FileChannel channel, FileLock lock) throws IOException {
+        this.channel = channel;
+        this.lock = lock;
+        this.recoveredEntries = new ArrayList<>();
+        long validBytes = readEntries(recoveredEntries);
+        if (validBytes < channel.size()) {
+            channel.truncate(validBytes);
+            channel.force(false);
+        }
+        channel.position(validBytes);
+    }
+
+    /**
+     * Posterna som fanns i journalen när den öppnades, i den ordning de skrevs.
+     * De kan ha genomförts redan, så de måste gå att göra om flera gånger.
+     */
+    public List<Entry> getRecoveredEntries() {
+        return recoveredEntries;
+    }
+
+    /**
+     * Skriver flera poster på en gång, med ett enda anrop till filen. Poster
+     * med todo == null betyder radering av versionen entry.version() - en nyare
+     * version ska inte raderas om posten görs om. Posterna är inte säkra på disk
+     * förrän sync anropats.
+     *
+     * Kraschar programmet mitt i skrivningen kan de första posterna finnas kvar
+     * utan de sista. Varje post gäller bara sin egen todo, så det gör inget.
+     *
+     * @return Den sista postens nummer, att skicka till sync
+     */
+    public synchronized long appendAll(List<Entry> entries) throws IOException {
+        List<ByteBuffer> records = new ArrayList<>(entries.size());
+        int size = 0;
+        for (Entry entry : entries) {
+            ByteBuffer record = entry.todo() == null
+                    ? encodeRecord(OP_DELETE, encodeDelete(entry.todoId(), entry.version()))
+                    : encodeRecord(OP_PUT, TodoCodec.encode(entry.todo()));
+            records.add(record);
+            size += record.remaining();
+        }
+
+        ByteBuffer batch = ByteBuffer.allocate(size);
+        for (ByteBuffer record : records) {
+            batch.put(record);
+        }
+        write(batch.flip());
+        appendedCount += entries.size();  // Först när posterna är skrivna, så att en fsync som ser numret täcker dem
+        return appendedCount;
+    }
+
+    /**
+     * Väntar tills posten (och alla före den) är skriven till disk.
+     *
+     * Pågår redan en fsync väntar vi på den, och om den inte räckte gör vi en
+     * egen som då tar med alla poster som hunnit skrivas under tiden.
+     * Den tråd som gör en fsync kallas ledare, de andra följer med gratis.
+     *
+     * @param sequence Numret som appendAll returnerade för posten
+     */
+    public void sync(long sequence) throws IOException {
+        while (true) {
+            long target;
+            synchronized (syncLock) {
+                while (syncing && durableCount < sequence) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException exception) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for journal sync", exception);
+                    }
+                }
+                if (durableCount >= sequence) {
+                    return;
+                }
+
+                // Vi blir ledare och synkar allt som är skrivet hittills
+                syncing = true;
+                target = appendedCount;
+            }
+
+            // Inga lås under fsync - andra trådar kan fortsätta skriva poster
+            // under tiden, och de tas med i nästa fsync
+            boolean synced = false;
+            try {
+                channel.force(false);
+                synced = true;
+            } finally {
+                synchronized (syncLock) {
+                    syncing = false;
+                    if (synced) {
+                        durableCount = Math.max(durableCount, target);
+                    }
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Journalens storlek i bytes.
+     */
+    public synchronized long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * Tömmer journalen. Får bara anropas när alla poster är genomförda och
+     * resultatet är säkert på disk (en "checkpoint").
+     */
+    public synchronized void reset() throws IOException {
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(false);
+        synchronized (syncLock) {
+            durableCount = appendedCount;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            lock.release();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        IoCounters.recordWritten(buffer.remaining());
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer encodeRecord(byte op, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(op);
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + 1 + payload.length);
+        record.putInt(1 + payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(op);
+        record.put(payload);
+        return record.flip();
+    }
+
+    private static byte[] encodeDelete(UUID todoId, long version) {
+        ByteBuffer payload = ByteBuffer.allocate(24);
+        payload.putLong(todoId.getMostSignificantBits()).putLong(todoId.getLeastSignificantBits());
+        payload.putLong(version);
+        return payload.array();
+    }
+
+    /**
+     * Läser alla hela poster från början av filen.
+     *
+     * @return Antal bytes som innehåller hela poster
+     */
+    private long readEntries(List<Entry> entries) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+
+        while (position + RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            channel.read(header, position);
+            header.flip();
+            int length = header.getInt();
+            int expectedCrc = header.getInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES || position + RECORD_HEADER_BYTES + length > size) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(length);
+            while (body.hasRemaining() && channel.read(body, position + RECORD_HEADER_BYTES + body.position()) > 0) {
+                // Läs tills hela posten är inläst
+            }
+            CRC32 crc = new CRC32();
+            crc.update(body.array());
+            if (body.hasRemaining() || (int) crc.getValue() != expectedCrc) {
+                break;
+            }
+
+            Entry entry = decodeEntry(body.array());
+            if (entry == null) {
+                break;
+            }
+            entries.add(entry);
+            position += RECORD_HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private static Entry decodeEntry(byte[] body) {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        byte op = buffer.get();
+        try {
+            if (op == OP_PUT) {
+                Todo todo = TodoCodec.decode(buffer);
+                return new Entry(todo.getId(), todo, todo.getVersion());
+            }
+            if (op == OP_DELETE && (buffer.remaining() == 16 || buffer.remaining() == 24)) {
+                UUID todoId = new UUID(buffer.getLong(), buffer.getLong());
+                // Äldre poster saknar version och raderar oavsett version
+                long version = buffer.hasRemaining() ? buffer.getLong() : Long.MAX_VALUE;
+                return new Entry(todoId, null, version);
+            }
+        } catch (IOException ignored) {
+            // Trasig post - behandlas som slutet på journalen
+        }
+        return null;
+    }
+
+    /**
+     * En post i journalen. Är todo null betyder det att todon ska raderas.
+     * version är den sparade versionen, eller den som raderades.
+     */
+    public record Entry(UUID todoId, Todo todo, long version) {
+    }
+}
@@ -0,0 +1,100 @@
+package me.code.services;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Protokollet mellan SocketCommandService och TodoClient.
+ *
+ * En anslutning kan skicka hur många frågor som helst, en i taget. Varje
+ * fråga är ett kommando med argument, precis som en rad i ett skript till
+ * TerminalCommandService.runBatch, men redan uppdelat i ord:
+ *
+ *   fråga: int antal ord, sedan varje ord som writeUTF
+ *          t.ex. [2]["complete-todo"]["123e4567-..."]
+ *   svar:  byte status (OK eller FAILED), int antal byte, sedan kommandots
+ *          utskrifter som UTF-8
+ *
+ * En fråga utan ord är en "ping" som bara svarar OK, så att en klient kan
+ * kontrollera att servern lever.
+ *
+ * Alla tal skrivs med DataOutputStream, dvs. big-endian.
+ */
+public final class CommandProtocol {
+
+    public static final byte OK = 0;
+    public static final byte FAILED = 1;
+
+    // Gränser som skyddar servern mot trasiga eller fientliga klienter
+    private static final int MAX_WORDS = 1024;
+    private static final int MAX_OUTPUT_BYTES = 256 * 1024 * 1024;
+
+    private CommandProtocol() {
+    }
+
+    /**
+     * Svaret på en fråga.
+     *
+     * @param ok Om kommandot lyckades
+     * @param output Kommandots utskrifter
+     */
+    public record Response(boolean ok, String output) {
+    }
+
+    public static void writeRequest(DataOutputStream out, List<String> words) throws IOException {
+        out.writeInt(words.size());
+        for (String word : words) {
+            out.writeUTF(word);
+        }
+        out.flush();
+    }
+
+    /**
+     * Läser nästa fråga.
+     *
+     * @return Frågans ord, eller null om klienten stängde anslutningen
+     */
+    public static List<String> readRequest(DataInputStream in) throws IOException {
+        int count;
+        try {
+            count = in.readInt();
+        } catch (EOFException ignored) {
+            return null;
+        }
+        if (count < 0 || count > MAX_WORDS) {
+            throw new IOException("Invalid request with " + count + " words");
+        }
+
+        List<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            words.add(in.readUTF());
+        }
+        return words;
+    }
+
+    public static void writeResponse(DataOutputStream out, boolean ok, byte[] output) throws IOException {
+        out.writeByte(ok ? OK : FAILED);
+        out.writeInt(output.length);
+        out.write(output);
+        out.flush();
+    }
+
+    public static Response readResponse(DataInputStream in) throws IOException {
+        byte status = in.readByte();
+        int length = in.readInt();
+        if ((status != OK && status != FAILED) || length < 0 || length > MAX_OUTPUT_BYTES) {
+            throw new IOException("Invalid response");
+        }
+
+        byte[] output = in.readNBytes(length);
+        if (output.length < length) {
+            throw new EOFException("The response ended early");
+        }
+        return new Response(status == OK, new String(output, StandardCharsets.UTF_8));
+    }
+}
@@ -3,8 +3,16 @@ package me.code.services;
 import me.code.models.Todo;
 import me.code.models.TodoStatus;
 import me.code.repositories.ITodoRepository;
+import me.code.repositories.TodoVersionConflictException;
+import me.code.services.indexes.AttributeIndex;
+import me.code.services.indexes.FullTextIndex;
+import me.code.services.indexes.ITodoIndex;
+import me.code.utility.StripedLock;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -16,12 +24,47 @@ import java.util.stream.Stream;
  * Vi följer "Single Responsibility Principle" - denna klass har ett enda ansvar:
  * att hantera todo-relaterad affärslogik. Den vet inget om FIL-hantering
  * (det sköter repository) eller UI (det sköter commands).
+ *
+ * Servicen kan användas från flera trådar samtidigt. Varje ändring av en todo
+ * (läs, ändra, spara och uppdatera indexen) görs under ett lås som hör till
+ * todons ID, se StripedLock. Två trådar som ändrar samma todo får vänta på
+ * varandra så att ingen ändring försvinner, medan ändringar av olika todos
+ * kan göras parallellt.
+ *
+ * Andra processer (t.ex. en annan terminal mot samma mapp) ser inte våra lås.
+ * Där skyddar istället todons version: ändringar sparas med saveIfVersionMatches,
+ * och har någon annan hunnit före läser vi todon på nytt och försöker igen.
+ *
+ * Observera att indexen bara följer ändringar som görs genom den här servicen.
+ * Andra processers ändringar syns i getTodos (repositoryt läser om dem), men
+ * inte i searchTodos och findTodos förrän servicen skapas på nytt. Ska flera
+ * program dela samma todos länge, låt dem gå via daemonen (SocketCommandService)
+ * så att det bara finns en process och en uppsättning index.
  */
 public class DefaultTodoService implements ITodoService {
 
     // Dependency - vi är beroende av ett repository för att spara/hämta data
     private final ITodoRepository todoRepository;
 
+    // Index som gör filtrering på status, kategori, prioritet och deadline snabb
+    private final AttributeIndex attributeIndex = new AttributeIndex();
+
+    // Inverterat index för fritextsökning i titlar och kategorier
+    private final FullTextIndex fullTextIndex = new FullTextIndex();
+
+    // Alla index som ska hållas uppdaterade när todos ändras
+    private final List<ITodoIndex> indexes = List.of(attributeIndex, fullTextIndex);
+
+    // Indexen byggs första gången de behövs, därefter uppdateras de löpande
+    private boolean indexesLoaded;
+
+    // Ett lås per "rand" av todo-ID:n, så att olika todos kan ändras samtidigt
+    private static final int LOCK_STRIPES = 64;
+    private final StripedLock todoLocks = new StripedLock(LOCK_STRIPES);
+
+    // Hur många gånger en ändring görs om när någon annan hann ändra todon först
+    private static final int MAX_CONFLICT_ATTEMPTS = 10;
+
     /**
      * Konstruktor med Dependency Injection.
      *
@@ -44,7 +87,25 @@ public class DefaultTodoService implements ITodoService {
      */
     @Override
     public void createTodo(Todo todo) throws Exception {
-        todoRepository.save(todo);
+        todoLocks.call(todo.getId(), () -> {
+            todoRepository.save(todo);
+            updateIndexes(todo);
+            return null;
+        });
+    }
+
+    /**
+     * Skapar flera todos under låsen för alla deras ID:n, och låter
+     * repositoryt spara dem som en grupp.
+     */
+    @Override
+    public void createTodos(Collection<Todo> todos) throws Exception {
+        List<UUID> ids = todos.stream().map(Todo::getId).toList();
+        todoLocks.call(ids, () -> {
+            todoRepository.saveAll(todos);
+            updateIndexes(todos);
+            return null;
+        });
     }
 
     /**
@@ -55,28 +116,111 @@ public class DefaultTodoService implements ITodoService {
      */
     @Override
     public Todo deleteTodoById(UUID id) throws Exception {
-        Todo todo = todoRepository.findById(id);
-        todoRepository.delete(id);
-        return todo;
+        return todoLocks.call(id, () -> {
+            Todo todo = todoRepository.findById(id);
+            todoRepository.delete(id);
+            removeFromIndexes(id);
+            return todo;
+        });
+    }
+
+    /**
+     * Raderar flera todos under låsen för alla deras ID:n. Alla todos hämtas
+     * först (så att vi kan returnera dem), sedan raderas de i ett enda anrop.
+     */
+    @Override
+    public List<Todo> deleteTodosById(Collection<UUID> ids) throws Exception {
+        return todoLocks.call(ids, () -> {
+            List<Todo> todos = new ArrayList<>(ids.size());
+            for (UUID id : new LinkedHashSet<>(ids)) {
+                todos.add(todoRepository.findById(id));
+            }
+            todoRepository.deleteAll(ids);
+            removeFromIndexes(ids);
+            return todos;
+        });
     }
 
     /**
      * Uppdaterar statusen på en befintlig todo.
      *
-     * Vi hämtar todon, ändrar dess status och sparar den igen.
-     * Detta är ett exempel på "read-modify-write"-mönstret.
+     * Vi låter repository sköta uppdateringen. Standardbeteendet är
+     * "read-modify-write"-mönstret (hämta, ändra status, spara), men ett
+     * repository kan ändra statusen direkt på plats om det stödjer det.
+     * Allt görs under todons lås, så två samtidiga uppdateringar kan inte
+     * skriva över varandra.
      *
      * @return Den uppdaterade todon, eller null om den inte hittades
      */
     @Override
     public Todo updateTodoStatusById(UUID todoId, TodoStatus status) throws Exception {
-        Todo todo = getTodoById(todoId);
-        if (todo == null) {
-            return null;  // Todon fanns inte
-        } else {
-            todo.setStatus(status);      // Uppdatera status
-            todoRepository.save(todo);   // Spara tillbaka
+        return todoLocks.call(todoId, () -> {
+            Todo todo = retryOnConflict(() -> todoRepository.updateStatus(todoId, status));
+            if (todo != null) {
+                updateIndexes(todo);
+            }
+            return todo;
+        });
+    }
+
+    /**
+     * Ändrar status på alla todos som matchar. Vi vet inte i förväg vilka todos
+     * som berörs, så alla lås hålls medan repositoryt gör ändringen.
+     */
+    @Override
+    public List<Todo> updateTodoStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        return todoLocks.callAll(() -> {
+            List<Todo> changed = retryOnConflict(() -> todoRepository.updateStatusWhere(predicate, status));
+            updateIndexes(changed);
+            return changed;
+        });
+    }
+
+    /**
+     * Gör en valfri ändring av en todo, t.ex. todo -> todo.setPriority(todo.getPriority() + 1).
+     *
+     * Hela "read-modify-write" görs under todons lås. Utan låset kunde två
+     * trådar läsa samma gamla todo, ändra var sin kopia och spara - och den
+     * som sparar sist skriver då över den andras ändring.
+     *
+     * Todon sparas bara om versionen är oförändrad sedan vi läste den. Har en
+     * annan process hunnit ändra den körs update igen på den nya versionen,
+     * så update ska bara ändra todon och inte ha några andra sidoeffekter.
+     *
+     * @return Den uppdaterade todon, eller null om den inte hittades
+     */
+    @Override
+    public Todo updateTodoById(UUID todoId, Consumer<Todo> update) throws Exception {
+        return todoLocks.call(todoId, () -> {
+            Todo todo = retryOnConflict(() -> {
+                Todo current = todoRepository.findById(todoId);
+                if (current != null) {
+                    update.accept(current);
+                    todoRepository.saveIfVersionMatches(current);
+                }
+                return current;
+            });
+            if (todo != null) {
+                updateIndexes(todo);
+            }
             return todo;
+        });
+    }
+
+    /**
+     * Kör action och gör om den om todon hann ändras av någon annan
+     * (TodoVersionConflictException). Varje försök läser todon på nytt.
+     * Efter MAX_CONFLICT_ATTEMPTS försök ger vi upp och kastar konflikten vidare.
+     */
+    private static <T> T retryOnConflict(Callable<T> action) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return action.call();
+            } catch (TodoVersionConflictException conflict) {
+                if (attempt >= MAX_CONFLICT_ATTEMPTS) {
+                    throw conflict;
+                }
+            }
         }
     }
 
@@ -93,34 +237,150 @@ public class DefaultTodoService implements ITodoService {
     /**
      * Hämtar alla todos som en Stream.
      *
-     * Vi konverterar listan från repository till en Stream för att
-     * ge användaren möjlighet att använda Stream API:et (filter, map, etc).
+     * Vi låter repository streama todos allt eftersom de behövs, istället för
+     * att först bygga en lista med alla. Användaren kan sedan använda
+     * Stream API:et (filter, map, etc) och ska stänga streamen efteråt.
      */
     @Override
     public Stream<Todo> getTodos() throws Exception {
-        return todoRepository.findAll().stream();
+        return todoRepository.streamAll();
     }
 
     /**
-     * Söker efter todos vars titel innehåller söktermen.
+     * Räknar alla todos.
      *
-     * Detta är ett exempel på hur bra Stream API:et är!
-     * Vi kedjar ihop operationer:
-     * 1. Hämta alla todos
-     * 2. Filtrera ut de som innehåller söktermen (case-insensitive)
-     * 3. Sortera alfabetiskt
+     * Direkt delegering till repository, som ofta kan räkna utan att läsa in todos.
+     */
+    @Override
+    public long countTodos() throws Exception {
+        return todoRepository.count();
+    }
+
+    /**
+     * Söker efter todos vars titel innehåller söktermen.
      *
-     * Allt på ett funktionellt och läsbart sätt!
+     * Istället för att gå igenom alla todos och göra om varje titel till gemener
+     * frågar vi fritextindexet, som redan har titlarna normaliserade. Bara
+     * träffarna sorteras alfabetiskt (case-insensitive).
      *
      * @param query Söktermen (case-insensitive)
      * @return Stream med matchande todos, sorterade alfabetiskt
      */
     @Override
     public Stream<Todo> searchTodos(String query) throws Exception {
-        return getTodos()
-                // Filtrera: behåll bara todos vars titel innehåller söktermen
-                .filter((todo) -> todo.getTitle().toLowerCase().contains(query.toLowerCase()))
-                // Sortera alfabetiskt (case-insensitive)
-                .sorted((a, b) -> a.getTitle().compareToIgnoreCase(b.getTitle()));
+        List<Todo> matches;
+        synchronized (indexes) {
+            ensureIndexesLoaded();
+            matches = fullTextIndex.findByTitleSubstring(query);
+        }
+
+        matches.sort((a, b) -> a.getTitle().compareToIgnoreCase(b.getTitle()));
+        return matches.stream();
+    }
+
+    /**
+     * Rankad sökning med sidindelning.
+     *
+     * Varje ord i söktermen ska matcha början av ett ord i titeln eller kategorin.
+     * Fritextindexet plockar bara ut den efterfrågade sidan, så vi behöver aldrig
+     * sortera alla träffar.
+     *
+     * @param query Ett eller flera sökord
+     * @param offset Hur många träffar som ska hoppas över
+     * @param limit Max antal träffar
+     * @return Stream med bästa träffen först
+     */
+    @Override
+    public Stream<Todo> searchTodos(String query, int offset, int limit) throws Exception {
+        synchronized (indexes) {
+            ensureIndexesLoaded();
+            return fullTextIndex.search(query, offset, limit).stream();
+        }
+    }
+
+    /**
+     * Hittar todos som matchar en fråga med hjälp av indexen.
+     *
+     * Istället för att gå igenom alla todos slår vi upp i indexen, så frågan
+     * behöver bara titta på de todos som kan tänkas matcha. Kan repositoryt
+     * besvara frågan själv (t.ex. en databas med egna index) låter vi det göra
+     * det istället, så slipper vi hålla alla todos i minnet.
+     *
+     * @param query Villkor och sortering
+     * @return Stream med matchande todos i efterfrågad ordning
+     */
+    @Override
+    public Stream<Todo> findTodos(TodoQuery query) throws Exception {
+        if (todoRepository.supportsQueries()) {
+            return todoRepository.findMatching(query).stream();
+        }
+        synchronized (indexes) {
+            ensureIndexesLoaded();
+            return attributeIndex.query(query).stream();
+        }
+    }
+
+    /**
+     * Bygger alla index från repositoryt om det inte redan är gjort.
+     * Måste anropas med låset på 'indexes'.
+     */
+    private void ensureIndexesLoaded() throws Exception {
+        if (indexesLoaded) {
+            return;
+        }
+
+        try (Stream<Todo> todos = todoRepository.streamAll()) {
+            todos.forEach(todo -> {
+                for (ITodoIndex index : indexes) {
+                    index.put(todo);
+                }
+            });
+        }
+        indexesLoaded = true;
+    }
+
+    /**
+     * Uppdaterar indexen efter att en todo har sparats. Är indexen inte byggda
+     * än behövs inget - de läser in allt från repositoryt när de väl byggs.
+     */
+    private void updateIndexes(Todo todo) {
+        synchronized (indexes) {
+            if (indexesLoaded) {
+                for (ITodoIndex index : indexes) {
+                    index.put(todo);
+                }
+            }
+        }
+    }
+
+    /**
+     * Uppdaterar indexen efter att flera todos har sparats, med en enda låsning.
+     */
+    private void updateIndexes(Collection<Todo> todos) {
+        synchronized (indexes) {
+            if (indexesLoaded) {
+                for (Todo todo : todos) {
+                    for (ITodoIndex index : indexes) {
+                        index.put(todo);
+                    }
+                }
+            }
+        }
+    }
+
+    private void removeFromIndexes(UUID todoId) {
+        removeFromIndexes(List.of(todoId));
+    }
+
+    private void removeFromIndexes(Collection<UUID> todoIds) {
+        synchronized (indexes) {
+            if (indexesLoaded) {
+                for (UUID todoId : todoIds) {
+                    for (ITodoIndex index : indexes) {
+                        index.remove(todoId);
+                    }
+                }
+            }
+        }
     }
 }
@@ -25,9 +25,10 @@ public interface ICommandService {
      * Kör ett kommando baserat på användarens input.
      *
      * Metoden letar igenom alla registrerade kommandon och kör det som
-     * matchar inputen.
+     * matchar inputen. Det som står efter namnet skickas till kommandot som
+     * argument, t.ex. "complete-todo <id>".
      *
-     * @param commandInput Namnet på kommandot användaren vill köra
+     * @param commandInput Namnet på kommandot användaren vill köra, med eventuella argument
      */
     void executeCommand(String commandInput);
 
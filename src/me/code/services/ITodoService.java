@@ -3,7 +3,11 @@ package me.code.services;
 import me.code.models.Todo;
 import me.code.models.TodoStatus;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
@@ -26,6 +30,17 @@ public interface ITodoService {
      */
     void createTodo(Todo todo) throws Exception;
 
+    /**
+     * Skapar och sparar flera todos på en gång, t.ex. vid en import.
+     *
+     * Repositoryt får alla todos i ett enda anrop och kan spara dem som en
+     * grupp, och indexen uppdateras en gång för hela gruppen.
+     *
+     * @param todos De nya todos som ska skapas
+     * @throws Exception Om något går fel vid sparning
+     */
+    void createTodos(Collection<Todo> todos) throws Exception;
+
     /**
      * Raderar en todo och returnerar den raderade todon.
      *
@@ -37,6 +52,17 @@ public interface ITodoService {
      */
     Todo deleteTodoById(UUID id) throws Exception;
 
+    /**
+     * Raderar flera todos på en gång och returnerar de raderade todos.
+     *
+     * Alla todos hämtas innan något raderas, så saknas någon av dem raderas ingenting.
+     *
+     * @param ids ID för todos som ska raderas
+     * @return De raderade todos
+     * @throws Exception Om någon av todos inte finns eller om något går fel
+     */
+    List<Todo> deleteTodosById(Collection<UUID> ids) throws Exception;
+
     /**
      * Uppdaterar statusen på en todo (t.ex. från PENDING till IN_PROGRESS).
      *
@@ -47,6 +73,34 @@ public interface ITodoService {
      */
     Todo updateTodoStatusById(UUID todoId, TodoStatus status) throws Exception;
 
+    /**
+     * Ger alla todos som matchar predicate en ny status, t.ex.
+     * updateTodoStatusWhere(todo -> todo.getCategory().equals("sport"), TodoStatus.COMPLETED).
+     *
+     * Todos som redan har statusen räknas inte som ändrade.
+     *
+     * @param predicate Vilka todos som ska ändras
+     * @param status Ny status
+     * @return De todos som ändrades
+     * @throws Exception Om något går fel vid uppdatering
+     */
+    List<Todo> updateTodoStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception;
+
+    /**
+     * Ändrar en todo med valfri kod och sparar den, t.ex.
+     * updateTodoById(id, todo -> todo.setPriority(5)).
+     *
+     * Läsningen, ändringen och sparningen sker som en enhet - en annan tråd
+     * kan inte ändra samma todo mitt emellan. Hinner en annan process före
+     * körs update igen på den nya versionen av todon.
+     *
+     * @param todoId ID för todon som ska uppdateras
+     * @param update Koden som ändrar todon
+     * @return Den uppdaterade todon (eller null om den inte hittades)
+     * @throws Exception Om något går fel vid uppdatering
+     */
+    Todo updateTodoById(UUID todoId, Consumer<Todo> update) throws Exception;
+
     /**
      * Hämtar en specifik todo baserat på ID.
      *
@@ -62,11 +116,22 @@ public interface ITodoService {
      * Vi använder Stream istället för List eftersom det ger oss möjlighet att
      * kedja ihop operationer som filter, map, sorted etc. på ett effektivt sätt!
      *
+     * Todos läses in allt eftersom streamen konsumeras. Streamen kan hålla
+     * filer öppna och ska därför stängas, t.ex. med try-with-resources.
+     *
      * @return En Stream med alla todos
      * @throws Exception Om något går fel vid hämtning
      */
     Stream<Todo> getTodos() throws Exception;
 
+    /**
+     * Räknar hur många todos som finns.
+     *
+     * @return Antalet todos
+     * @throws Exception Om något går fel vid hämtning
+     */
+    long countTodos() throws Exception;
+
     /**
      * Söker efter todos vars titel innehåller söktermen.
      *
@@ -78,4 +143,30 @@ public interface ITodoService {
      * @throws Exception Om något går fel vid sökning
      */
     Stream<Todo> searchTodos(String query) throws Exception;
+
+    /**
+     * Rankad sökning där varje sökord ska matcha början av ett ord i titeln
+     * eller kategorin. Resultatet delas upp i sidor med offset och limit.
+     *
+     * Sökningen hanterar svenska tecken (å, ä, ö) och är case-insensitive.
+     *
+     * @param query Ett eller flera sökord
+     * @param offset Hur många träffar som ska hoppas över (t.ex. sida * sidstorlek)
+     * @param limit Max antal träffar som ska returneras
+     * @return En Stream med de bästa träffarna först
+     * @throws Exception Om något går fel vid sökning
+     */
+    Stream<Todo> searchTodos(String query, int offset, int limit) throws Exception;
+
+    /**
+     * Hittar todos som matchar flera villkor, t.ex. status, kategori och deadline.
+     *
+     * Exempel: alla IN_PROGRESS i kategorin "sport" med deadline före ett datum,
+     * sorterade på prioritet.
+     *
+     * @param query Villkor och sortering (se TodoQuery)
+     * @return En Stream med matchande todos i efterfrågad ordning
+     * @throws Exception Om något går fel vid hämtning
+     */
+    Stream<Todo> findTodos(TodoQuery query) throws Exception;
 }
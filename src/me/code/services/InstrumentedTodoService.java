@@ -0,0 +1,187 @@
+package me.code.services;
+
+import me.code.metrics.MetricsRegistry;
+import me.code.metrics.OperationMetrics;
+import me.code.metrics.ServiceCallEvent;
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/**
+ * Decorator som mäter varje anrop till en ITodoService, på samma sätt som
+ * InstrumentedTodoRepository gör för repositoryt. Namnen blir "service.createTodo" osv.
+ *
+ * För metoderna som returnerar en Stream mäts bara tiden det tar att skapa
+ * den: kommandona stänger inte alltid sina streams, och DefaultTodoService har
+ * redan gjort det mesta av jobbet (t.ex. slagit upp i indexen) när den returnerar.
+ *
+ * Pågår en JFR-inspelning blir långsamma anrop också en ServiceCallEvent, med
+ * todo-ID, sökfrågan eller den nya statusen och antal todos som anropet rörde.
+ */
+public class InstrumentedTodoService implements ITodoService {
+
+    private final ITodoService delegate;
+    private final MetricsRegistry registry;
+
+    private final OperationMetrics createTodo;
+    private final OperationMetrics createTodos;
+    private final OperationMetrics deleteTodoById;
+    private final OperationMetrics deleteTodosById;
+    private final OperationMetrics updateTodoStatusById;
+    private final OperationMetrics updateTodoStatusWhere;
+    private final OperationMetrics updateTodoById;
+    private final OperationMetrics getTodoById;
+    private final OperationMetrics getTodos;
+    private final OperationMetrics countTodos;
+    private final OperationMetrics searchTodos;
+    private final OperationMetrics findTodos;
+
+    /**
+     * @param delegate Servicen som ska mätas
+     * @param registry Var mätvärdena ska hamna
+     */
+    public InstrumentedTodoService(ITodoService delegate, MetricsRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+        this.createTodo = registry.operation("service.createTodo");
+        this.createTodos = registry.operation("service.createTodos");
+        this.deleteTodoById = registry.operation("service.deleteTodoById");
+        this.deleteTodosById = registry.operation("service.deleteTodosById");
+        this.updateTodoStatusById = registry.operation("service.updateTodoStatusById");
+        this.updateTodoStatusWhere = registry.operation("service.updateTodoStatusWhere");
+        this.updateTodoById = registry.operation("service.updateTodoById");
+        this.getTodoById = registry.operation("service.getTodoById");
+        this.getTodos = registry.operation("service.getTodos");
+        this.countTodos = registry.operation("service.countTodos");
+        this.searchTodos = registry.operation("service.searchTodos");
+        this.findTodos = registry.operation("service.findTodos");
+    }
+
+    @Override
+    public void createTodo(Todo todo) throws Exception {
+        measure(createTodo, todo.getId(), null, null, () -> {
+            delegate.createTodo(todo);
+            return null;
+        }, result -> 1);
+    }
+
+    @Override
+    public void createTodos(Collection<Todo> todos) throws Exception {
+        measure(createTodos, null, null, null, () -> {
+            delegate.createTodos(todos);
+            return null;
+        }, result -> todos.size());
+    }
+
+    @Override
+    public Todo deleteTodoById(UUID id) throws Exception {
+        return measure(deleteTodoById, id, null, null, () -> delegate.deleteTodoById(id), InstrumentedTodoService::one);
+    }
+
+    @Override
+    public List<Todo> deleteTodosById(Collection<UUID> ids) throws Exception {
+        return measure(deleteTodosById, null, null, null, () -> delegate.deleteTodosById(ids), List::size);
+    }
+
+    @Override
+    public Todo updateTodoStatusById(UUID todoId, TodoStatus status) throws Exception {
+        return measure(updateTodoStatusById, todoId, null, status,
+                () -> delegate.updateTodoStatusById(todoId, status), InstrumentedTodoService::one);
+    }
+
+    @Override
+    public List<Todo> updateTodoStatusWhere(Predicate<Todo> predicate, TodoStatus status) throws Exception {
+        return measure(updateTodoStatusWhere, null, null, status,
+                () -> delegate.updateTodoStatusWhere(predicate, status), List::size);
+    }
+
+    @Override
+    public Todo updateTodoById(UUID todoId, Consumer<Todo> update) throws Exception {
+        return measure(updateTodoById, todoId, null, null, () -> delegate.updateTodoById(todoId, update),
+                InstrumentedTodoService::one);
+    }
+
+    @Override
+    public Todo getTodoById(UUID id) throws Exception {
+        return measure(getTodoById, id, null, null, () -> delegate.getTodoById(id), InstrumentedTodoService::one);
+    }
+
+    @Override
+    public Stream<Todo> getTodos() throws Exception {
+        return measure(getTodos, null, null, null, delegate::getTodos, todos -> 0);
+    }
+
+    @Override
+    public long countTodos() throws Exception {
+        return measure(countTodos, null, null, null, delegate::countTodos, count -> 0);
+    }
+
+    @Override
+    public Stream<Todo> searchTodos(String query) throws Exception {
+        return measure(searchTodos, null, query, null, () -> delegate.searchTodos(query), todos -> 0);
+    }
+
+    @Override
+    public Stream<Todo> searchTodos(String query, int offset, int limit) throws Exception {
+        return measure(searchTodos, null, query, null, () -> delegate.searchTodos(query, offset, limit), todos -> 0);
+    }
+
+    @Override
+    public Stream<Todo> findTodos(TodoQuery query) throws Exception {
+        return measure(findTodos, null, null, null, () -> delegate.findTodos(query), todos -> 0);
+    }
+
+    private static int one(Todo todo) {
+        return todo != null ? 1 : 0;
+    }
+
+    /**
+     * Anropar call och registrerar anropet i mätvärdena och som en ServiceCallEvent.
+     *
+     * @param todoId Todon som anropet gäller, eller null
+     * @param query Sökfrågan, eller null
+     * @param status Den nya statusen, eller null
+     * @param todos Räknar ut hur många todos anropet rörde från resultatet,
+     *              används bara om händelsen ska sparas
+     */
+    private <T> T measure(OperationMetrics operation, UUID todoId, String query, TodoStatus status,
+                          Callable<T> call, ToIntFunction<? super T> todos) throws Exception {
+        ServiceCallEvent event = new ServiceCallEvent();
+        boolean measured = registry.isEnabled();
+        if (!measured && !event.isEnabled()) {
+            return call.call();
+        }
+
+        event.begin();
+        long start = System.nanoTime();
+        T result = null;
+        boolean failed = true;
+        try {
+            result = call.call();
+            failed = false;
+            return result;
+        } finally {
+            if (measured) {
+                operation.record(System.nanoTime() - start, failed);
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = operation.getName();
+                event.todoId = todoId != null ? todoId.toString() : null;
+                event.query = query;
+                event.status = status != null ? status.name() : null;
+                event.todos = failed ? 0 : todos.applyAsInt(result);
+                event.failed = failed;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package me.code.services;
+
+import me.code.commands.Command;
+import me.code.utility.CommandHelper;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service som kör kommandon åt andra processer via en Unix domain socket.
+ *
+ * Varje gång Main startar letar den upp kommandona, läser in alla todos och
+ * bygger indexen från början. För ett skript som kör ett kommando i taget tar
+ * det mycket längre tid än själva kommandot. Istället kan Main startas en gång
+ * som "daemon":
+ *
+ *   java me.code.Main --daemon [socket]
+ *
+ * och sedan köras med den lilla klienten TodoClient, som bara skickar kommandot
+ * och skriver ut svaret:
+ *
+ *   java me.code.TodoClient complete-todo 123e4567-e89b-12d3-a456-426614174000
+ *
+ * Repositoryt, cachen och indexen ligger då kvar i minnet mellan kommandona.
+ * Se CommandProtocol för hur frågor och svar ser ut.
+ *
+ * Kommandona körs precis som i TerminalCommandService.runBatch: alla värden
+ * måste finnas som argument, och kommandots utskrifter skickas tillbaka till
+ * klienten. Varje klient får en egen tråd, så flera kommandon kan köras
+ * samtidigt - ITodoService klarar redan av det.
+ *
+ * Socketen är en fil (standard ".todos.sock" i mappen där programmet körs), och
+ * bara ägaren får läsa och skriva den. Det är det enda skyddet, så vi använder
+ * inte TCP där vilken process som helst på datorn kan ansluta.
+ */
+public class SocketCommandService implements ICommandService, AutoCloseable {
+
+    public static final String DEFAULT_SOCKET = ".todos.sock";
+
+    private final List<Command> commands = new ArrayList<>();
+    private final Path socket;
+    private final Set<SocketChannel> clients = ConcurrentHashMap.newKeySet();
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "todo-daemon-client");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile ServerSocketChannel server;
+    private volatile boolean closed;
+
+    /**
+     * @param socket Filen som socketen ska ligga i
+     */
+    public SocketCommandService(Path socket) {
+        this.socket = socket;
+    }
+
+    @Override
+    public void registerCommand(Command command) {
+        commands.add(command);
+    }
+
+    /**
+     * Kör ett kommando i den här processen och skriver utskrifterna till System.out.
+     */
+    @Override
+    public void executeCommand(String commandInput) {
+        List<String> words = CommandHelper.splitArguments(commandInput);
+        if (!words.isEmpty()) {
+            execute(words, System.out);
+        }
+    }
+
+    /**
+     * Tar emot klienter tills close anropas. Blockerar under tiden.
+     *
+     * @throws IllegalStateException Om en annan daemon redan lyssnar på socketen
+     */
+    public void serve() throws IOException {
+        removeStaleSocket();
+
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            restrictToOwner();
+            this.server = server;
+            if (closed) {
+                return;
+            }
+            System.err.println("Listening on " + socket.toAbsolutePath());
+
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = server.accept();
+                } catch (ClosedChannelException exception) {
+                    return;  // close() anropades
+                }
+                clients.add(client);
+                workers.execute(() -> serveClient(client));
+            }
+        } finally {
+            server.close();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /**
+     * Slutar ta emot klienter och stänger alla anslutningar. Kommandon som
+     * redan körs får köra klart, men deras svar kommer inte fram.
+     *
+     * Vi väntar (högst 10 sekunder) på att de kommandona blir klara, så att
+     * repositoryt inte stängs medan de fortfarande använder det.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        ServerSocketChannel server = this.server;
+        if (server != null) {
+            server.close();
+        }
+        for (SocketChannel client : clients) {
+            client.close();
+        }
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.err.println("Commands still running after 10 seconds, closing anyway");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serveClient(SocketChannel client) {
+        try (client;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)))) {
+            List<String> words;
+            while ((words = CommandProtocol.readRequest(in)) != null) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                boolean ok = words.isEmpty()  // En "ping"
+                        || execute(words, new PrintStream(output, true, StandardCharsets.UTF_8));
+                CommandProtocol.writeResponse(out, ok, output.toByteArray());
+            }
+        } catch (IOException exception) {
+            // Klienten försvann eller skickade något trasigt, det påverkar inte de andra
+            if (!closed) {
+                System.err.println("Client connection failed: " + exception.getMessage());
+            }
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    /**
+     * Kör kommandot som orden beskriver.
+     *
+     * @return true om kommandot lyckades
+     */
+    private boolean execute(List<String> words, PrintStream out) {
+        Command command = findCommand(words.get(0));
+        if (command == null) {
+            out.println("The command '" + words.get(0) + "' does not exist.");
+            return false;
+        }
+
+        try {
+            return CommandHelper.runWithoutPrompts(command, words.subList(1, words.size()), out);
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            out.println("Something went wrong!");
+            return false;
+        }
+    }
+
+    private Command findCommand(String name) {
+        for (Command command : commands) {
+            if (command.getName().equalsIgnoreCase(name)) {
+                return command;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Tar bort en socketfil som ligger kvar efter en daemon som inte avslutades
+     * ordentligt. Svarar någon på socketen lever den daemonen fortfarande.
+     */
+    private void removeStaleSocket() throws IOException {
+        if (!Files.exists(socket)) {
+            return;
+        }
+        SocketChannel probe;
+        try {
+            probe = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+        } catch (IOException notListening) {
+            Files.delete(socket);
+            return;
+        }
+        probe.close();
+        throw new IllegalStateException("A daemon is already listening on " + socket.toAbsolutePath());
+    }
+
+    private void restrictToOwner() throws IOException {
+        try {
+            Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+        } catch (UnsupportedOperationException ignored) {
+            // Windows har inga POSIX-rättigheter, där ärver filen mappens rättigheter
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package me.code.services;
 
 import me.code.commands.*;
+import me.code.utility.CommandHelper;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Scanner;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.*;
 
 /**
  * Service som hanterar kommandon via terminalen.
@@ -14,12 +15,22 @@ import java.util.Scanner;
  *
  * Vi använder Command-mönstret vilket gör det lätt att lägga till nya
  * kommandon - du registrerar bara ett nytt Command-objekt!
+ *
+ * Kommandon kan också köras utan användare med runBatch, t.ex. från en fil:
+ *
+ *   java me.code.Main --batch kommandon.txt
+ *
+ * Då startar JVM:en, läser in alla todos och bygger indexen en enda gång för
+ * hela skriptet, istället för en gång per kommando.
  */
 public class TerminalCommandService implements ICommandService {
 
     // Lista med alla registrerade kommandon
     private final List<Command> commands = new ArrayList<>();
 
+    // Terminalen, delas av alla kommandon (se CommandContext)
+    private final Scanner input = new Scanner(System.in);
+
     /**
      * Startar applikationen och visar huvudmenyn.
      *
@@ -42,16 +53,13 @@ public class TerminalCommandService implements ICommandService {
 
         System.out.println("exit - Exit the application");
 
-        // Skapa en Scanner för att läsa användarinput
-        Scanner scanner = new Scanner(System.in);
-
         // Huvudloopen - körs tills användaren skriver "exit"
         while (true) {
             System.out.print("Enter command: ");
-            String commandInput = scanner.nextLine();
+            String commandInput = input.nextLine();
 
             // Kolla om användaren vill avsluta
-            if (commandInput.equalsIgnoreCase("exit")) {
+            if (commandInput.trim().equalsIgnoreCase("exit")) {
                 return;  // Avsluta loopen och därmed programmet
             }
 
@@ -80,25 +88,151 @@ public class TerminalCommandService implements ICommandService {
     /**
      * Kör ett kommando baserat på användarens input.
      *
-     * Vi loopar igenom alla registrerade kommandon och kollar om namnet matchar.
-     * När vi hittar rätt kommando kör vi det och returnerar.
-     * Om inget kommando matchar visar vi ett felmeddelande.
+     * Första ordet är kommandots namn och resten är argument, t.ex.
+     * "complete-todo 123e4567-e89b-12d3-a456-426614174000". Värden som inte
+     * skrevs som argument frågar kommandot efter (se CommandContext).
      *
      * Sökningen är case-insensitive (du kan skriva "LIST-TODOS" eller "list-todos").
      *
-     * @param commandInput Namnet på kommandot användaren vill köra
+     * @param commandInput Kommandot användaren vill köra, med eventuella argument
      */
     @Override
     public void executeCommand(String commandInput) {
+        List<String> words = CommandHelper.splitArguments(commandInput);
+        if (words.isEmpty()) {
+            return;
+        }
+
+        Command command = findCommand(words.get(0));
+        if (command == null) {
+            System.out.println("The command does not exist, try again!");
+            return;
+        }
+
+        command.run(new CommandContext(words.subList(1, words.size()), input));
+    }
+
+    /**
+     * Kör alla kommandon i ett skript, ett kommando per rad, utan att fråga
+     * användaren om något. Varje kommando måste därför ha alla sina värden
+     * som argument:
+     *
+     *   # Tomma rader och rader som börjar med # hoppas över
+     *   create-todo "Handla mat" Hem 3 2025-01-31
+     *   complete-todo 123e4567-e89b-12d3-a456-426614174000
+     *   exit
+     *
+     * Ett kommando som saknar argument, har argument över, inte finns eller
+     * misslyckas räknas som misslyckat, men skriptet fortsätter med nästa rad.
+     * "exit" avslutar skriptet direkt.
+     *
+     * Kommandonas utskrifter går till System.out som vanligt. Tiden för varje
+     * kommando och en sammanfattning per kommando skrivs till System.err, så
+     * att de inte blandas ihop med resultatet om man t.ex. sparar det i en fil.
+     *
+     * @param script Skriptet att läsa kommandon från
+     * @return Antal kommandon som misslyckades
+     */
+    public int runBatch(BufferedReader script) throws IOException {
+        Map<String, CommandTiming> timings = new TreeMap<>();
+        long batchStart = System.nanoTime();
+        int lineNumber = 0;
+        int failures = 0;
+
+        String line;
+        while ((line = script.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            if (trimmed.equalsIgnoreCase("exit")) {
+                break;
+            }
+
+            long start = System.nanoTime();
+            String name = trimmed.split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+            boolean ok = runBatchCommand(line, lineNumber);
+            long elapsed = System.nanoTime() - start;
+
+            timings.computeIfAbsent(name, key -> new CommandTiming()).add(elapsed, ok);
+            if (!ok) {
+                failures++;
+            }
+            System.err.printf(Locale.ROOT, "[%d] %-6s %-14s %10.3f ms%n", lineNumber, ok ? "ok" : "FAILED",
+                    name, elapsed / 1e6);
+        }
+
+        printSummary(timings, System.nanoTime() - batchStart);
+        return failures;
+    }
+
+    /**
+     * Kör en rad i ett skript.
+     *
+     * @return true om kommandot lyckades
+     */
+    private boolean runBatchCommand(String line, int lineNumber) {
+        try {
+            List<String> words = CommandHelper.splitArguments(line);
+            Command command = findCommand(words.get(0));
+            if (command == null) {
+                System.out.println("Line " + lineNumber + ": the command '" + words.get(0) + "' does not exist.");
+                return false;
+            }
+            return CommandHelper.runWithoutPrompts(command, words.subList(1, words.size()), System.out);
+        } catch (IllegalArgumentException exception) {
+            // T.ex. ett citattecken som aldrig avslutas
+            System.out.println("Line " + lineNumber + ": " + exception.getMessage());
+            return false;
+        } catch (Exception exception) {
+            exception.printStackTrace();
+            return false;
+        }
+    }
+
+    private void printSummary(Map<String, CommandTiming> timings, long elapsedNanos) {
+        int count = 0;
+        int failed = 0;
+        System.err.println();
+        System.err.println("command         count  failed   total ms     avg ms     max ms");
+        for (Map.Entry<String, CommandTiming> entry : timings.entrySet()) {
+            CommandTiming timing = entry.getValue();
+            count += timing.count;
+            failed += timing.failed;
+            System.err.printf(Locale.ROOT, "%-14s %6d %7d %10.1f %10.3f %10.3f%n", entry.getKey(), timing.count,
+                    timing.failed, timing.totalNanos / 1e6, timing.totalNanos / 1e6 / timing.count,
+                    timing.maxNanos / 1e6);
+        }
+        System.err.printf(Locale.ROOT, "Ran %d command(s), %d failed, in %.1f ms.%n", count, failed, elapsedNanos / 1e6);
+    }
+
+    private Command findCommand(String name) {
         // Sök efter kommandot i listan
         for (Command command : commands) {
-            if (command.getName().equalsIgnoreCase(commandInput)) {
-                command.execute();  // Kör kommandot!
-                return;              // Avsluta metoden när vi hittat och kört kommandot
+            if (command.getName().equalsIgnoreCase(name)) {
+                return command;
             }
         }
+        return null;
+    }
 
-        // Om vi kommer hit hittades inget matchande kommando
-        System.out.println("The command does not exist, try again!");
+    /**
+     * Summerad tid för alla körningar av ett visst kommando i ett skript.
+     */
+    private static class CommandTiming {
+        private int count;
+        private int failed;
+        private long totalNanos;
+        private long maxNanos;
+
+        private void add(long nanos, boolean ok) {
+            count++;
+            if (!ok) {
+                failed++;
+            }
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
     }
 }
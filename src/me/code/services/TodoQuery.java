@@ -0,0 +1,142 @@
+package me.code.services;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Beskriver en sökning efter todos med flera villkor, t.ex.
+ * "alla IN_PROGRESS i kategorin sport med deadline före 1 mars, sorterade på prioritet".
+ *
+ * Alla villkor är valfria - ett villkor som inte satts (null) matchar allt.
+ * Metoderna returnerar 'this' så att villkoren kan kedjas ihop:
+ *
+ *   new TodoQuery().withStatus(TodoStatus.IN_PROGRESS).withCategory("sport").orderBy(TodoQuery.Order.PRIORITY)
+ */
+public class TodoQuery {
+
+    /**
+     * Hur resultatet ska sorteras.
+     */
+    public enum Order {
+        NONE,       // Ingen särskild ordning
+        PRIORITY,   // Högst prioritet först
+        DEADLINE    // Tidigast deadline först
+    }
+
+    private TodoStatus status;
+    private String category;
+    private Date dueBefore;
+    private Integer minPriority;
+    private Order order = Order.NONE;
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     * Bara todos med denna status.
+     */
+    public TodoQuery withStatus(TodoStatus status) {
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * Bara todos i denna kategori (case-insensitive).
+     */
+    public TodoQuery withCategory(String category) {
+        this.category = category;
+        return this;
+    }
+
+    /**
+     * Bara todos vars deadline är före (inte lika med) detta datum.
+     */
+    public TodoQuery dueBefore(Date dueBefore) {
+        this.dueBefore = dueBefore;
+        return this;
+    }
+
+    /**
+     * Bara todos med minst denna prioritet.
+     */
+    public TodoQuery withMinPriority(int minPriority) {
+        this.minPriority = minPriority;
+        return this;
+    }
+
+    /**
+     * Hur resultatet ska sorteras.
+     */
+    public TodoQuery orderBy(Order order) {
+        this.order = order;
+        return this;
+    }
+
+    /**
+     * Max antal todos i resultatet.
+     */
+    public TodoQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Om en todo uppfyller alla villkor. Sortering och limit påverkar inte svaret.
+     *
+     * Kan användas som Predicate, t.ex. todoService.updateTodoStatusWhere(query::matches, status).
+     */
+    public boolean matches(Todo todo) {
+        if (status != null && todo.getStatus() != status) {
+            return false;
+        }
+        if (category != null && !todo.getCategory().toLowerCase(Locale.ROOT).equals(category.toLowerCase(Locale.ROOT))) {
+            return false;
+        }
+        if (minPriority != null && todo.getPriority() < minPriority) {
+            return false;
+        }
+        return dueBefore == null || todo.getDeadline().before(dueBefore);
+    }
+
+    /**
+     * Jämförelsen som ger resultatet i efterfrågad ordning, eller null för Order.NONE.
+     *
+     * PRIORITY sorterar på högst prioritet först och sedan tidigast deadline,
+     * DEADLINE tvärtom.
+     */
+    public Comparator<Todo> getComparator() {
+        Comparator<Todo> byPriority = Comparator.comparingInt(Todo::getPriority).reversed();
+        Comparator<Todo> byDeadline = Comparator.comparing(Todo::getDeadline);
+        return switch (order) {
+            case PRIORITY -> byPriority.thenComparing(byDeadline);
+            case DEADLINE -> byDeadline.thenComparing(byPriority);
+            case NONE -> null;
+        };
+    }
+
+    public TodoStatus getStatus() {
+        return status;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public Date getDueBefore() {
+        return dueBefore;
+    }
+
+    public Integer getMinPriority() {
+        return minPriority;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+}
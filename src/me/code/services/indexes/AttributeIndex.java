@@ -0,0 +1,173 @@
+package me.code.services.indexes;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.services.TodoQuery;
+
+import java.util.*;
+
+/**
+ * Index över todons fält: status, kategori, prioritet och deadline.
+ *
+ * Istället för att gå igenom alla todos för att hitta t.ex. alla IN_PROGRESS
+ * slår vi upp en färdig mängd med ID:n:
+ *
+ * - Status: en EnumMap med en mängd per status (snabbt och kompakt för enums)
+ * - Kategori: en HashMap från kategori (gemener) till mängd
+ * - Prioritet och deadline: TreeMap, som håller nycklarna sorterade så att vi
+ *   kan gå igenom t.ex. "alla med deadline före X" i ordning utan att sortera
+ *
+ * Indexet sparar också en kopia av varje todo så att frågor kan besvaras helt
+ * från minnet, utan att läsa från repositoryt.
+ */
+public class AttributeIndex implements ITodoIndex {
+
+    private final Map<UUID, Todo> todos = new HashMap<>();
+    private final EnumMap<TodoStatus, Set<UUID>> byStatus = new EnumMap<>(TodoStatus.class);
+    private final Map<String, Set<UUID>> byCategory = new HashMap<>();
+    private final TreeMap<Integer, Set<UUID>> byPriority = new TreeMap<>();
+    private final TreeMap<Long, Set<UUID>> byDeadline = new TreeMap<>();
+
+    @Override
+    public void put(Todo todo) {
+        remove(todo.getId());
+
+        Todo copy = new Todo(todo);
+        UUID id = copy.getId();
+        todos.put(id, copy);
+        addTo(byStatus, copy.getStatus(), id);
+        addTo(byCategory, categoryKey(copy.getCategory()), id);
+        addTo(byPriority, copy.getPriority(), id);
+        addTo(byDeadline, copy.getDeadline().getTime(), id);
+    }
+
+    @Override
+    public void remove(UUID todoId) {
+        Todo previous = todos.remove(todoId);
+        if (previous == null) {
+            return;
+        }
+
+        removeFrom(byStatus, previous.getStatus(), todoId);
+        removeFrom(byCategory, categoryKey(previous.getCategory()), todoId);
+        removeFrom(byPriority, previous.getPriority(), todoId);
+        removeFrom(byDeadline, previous.getDeadline().getTime(), todoId);
+    }
+
+    @Override
+    public void clear() {
+        todos.clear();
+        byStatus.clear();
+        byCategory.clear();
+        byPriority.clear();
+        byDeadline.clear();
+    }
+
+    /**
+     * Antal todos i indexet.
+     */
+    public int size() {
+        return todos.size();
+    }
+
+    /**
+     * Besvarar en fråga med hjälp av indexen.
+     *
+     * Vi börjar från det minsta urvalet vi kan få fram direkt (status- eller
+     * kategorimängden) och kontrollerar bara de övriga villkoren på de todos som
+     * finns där. Finns inget sådant villkor går vi igenom prioritets- eller
+     * deadline-indexet i sorterad ordning och kan sluta så fort vi har nog många.
+     *
+     * @param query Frågan som ska besvaras
+     * @return Kopior av de todos som matchar, i efterfrågad ordning
+     */
+    public List<Todo> query(TodoQuery query) {
+        Comparator<Todo> comparator = query.getComparator();
+
+        Set<UUID> smallest = null;
+        if (query.getStatus() != null) {
+            smallest = byStatus.getOrDefault(query.getStatus(), Collections.emptySet());
+        }
+        if (query.getCategory() != null) {
+            Set<UUID> category = byCategory.getOrDefault(categoryKey(query.getCategory()), Collections.emptySet());
+            if (smallest == null || category.size() < smallest.size()) {
+                smallest = category;
+            }
+        }
+
+        if (smallest != null) {
+            return collect(List.of(smallest), query, comparator);
+        }
+
+        // Prioritetshinkarna ger rätt ordning bara om frågan ska sorteras på prioritet (eller inte alls),
+        // annars sorteras bara inom varje hink och limit kapar bort fel todos
+        TodoQuery.Order order = query.getOrder();
+        boolean byPriorityOrder = order == TodoQuery.Order.PRIORITY
+                || (order == TodoQuery.Order.NONE && query.getMinPriority() != null && query.getDueBefore() == null);
+        if (byPriorityOrder) {
+            NavigableMap<Integer, Set<UUID>> priorities = byPriority.descendingMap();
+            if (query.getMinPriority() != null) {
+                priorities = priorities.headMap(query.getMinPriority(), true);
+            }
+            return collect(priorities.values(), query, comparator);
+        }
+
+        if (query.getDueBefore() != null || query.getOrder() == TodoQuery.Order.DEADLINE) {
+            NavigableMap<Long, Set<UUID>> deadlines = byDeadline;
+            if (query.getDueBefore() != null) {
+                deadlines = deadlines.headMap(query.getDueBefore().getTime(), false);
+            }
+            return collect(deadlines.values(), query, comparator);
+        }
+
+        return collect(List.of(todos.keySet()), query, comparator);
+    }
+
+    /**
+     * Går igenom urvalet hink för hink och plockar ut de todos som matchar.
+     *
+     * Hinkarna kommer redan i rätt ordning (eller så finns det bara en), så vi
+     * behöver bara sortera inom varje hink och kan sluta när limit är nådd.
+     */
+    private List<Todo> collect(Collection<Set<UUID>> buckets, TodoQuery query, Comparator<Todo> comparator) {
+        List<Todo> result = new ArrayList<>();
+        for (Set<UUID> bucket : buckets) {
+            List<Todo> matches = new ArrayList<>();
+            for (UUID id : bucket) {
+                Todo todo = todos.get(id);
+                if (query.matches(todo)) {
+                    matches.add(todo);
+                }
+            }
+
+            if (comparator != null) {
+                matches.sort(comparator);
+            }
+            for (Todo todo : matches) {
+                if (result.size() >= query.getLimit()) {
+                    return result;
+                }
+                result.add(new Todo(todo));
+            }
+        }
+        return result;
+    }
+
+    private static String categoryKey(String category) {
+        return category.toLowerCase(Locale.ROOT);
+    }
+
+    private static <K> void addTo(Map<K, Set<UUID>> index, K key, UUID id) {
+        index.computeIfAbsent(key, ignored -> new HashSet<>()).add(id);
+    }
+
+    private static <K> void removeFrom(Map<K, Set<UUID>> index, K key, UUID id) {
+        Set<UUID> ids = index.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+}
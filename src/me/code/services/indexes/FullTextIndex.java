@@ -0,0 +1,249 @@
+package me.code.services.indexes;
+
+import me.code.models.Todo;
+
+import java.util.*;
+
+/**
+ * Inverterat index för fritextsökning i titlar (och kategorier).
+ *
+ * Ett inverterat index fungerar som registret i en bok: för varje ord sparar vi
+ * en lista med vilka dokument (todos) ordet förekommer i, en så kallad
+ * "posting list". Varje todo får ett internt dokument-ID (ett heltal) så att
+ * listorna kan sparas som sorterade int-arrayer.
+ *
+ * Vi har två sorters index:
+ * - Titelord och kategoriord i TreeMaps, så att prefixsökning ("trä" hittar
+ *   "träna") blir en intervallsökning i den sorterade mappen
+ * - Trigram (alla delsträngar på tre tecken) av titeln, så att vi kan besvara
+ *   "titeln innehåller X" utan att titta på varje todo
+ *
+ * När en todo ändras eller raderas markeras dess gamla dokument-ID som dött
+ * istället för att tas bort ur alla listor. När det finns fler döda än levande
+ * dokument byggs indexet om från början.
+ */
+public class FullTextIndex implements ITodoIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    // Poäng per träff, exakta titelord väger tyngst
+    private static final int SCORE_TITLE_EXACT = 3;
+    private static final int SCORE_TITLE_PREFIX = 2;
+    private static final int SCORE_CATEGORY = 1;
+
+    private final Map<UUID, Integer> docIds = new HashMap<>();
+    private final List<Todo> documents = new ArrayList<>();
+    private final List<String> normalizedTitles = new ArrayList<>();
+    private final BitSet liveDocuments = new BitSet();
+
+    private final TreeMap<String, IntList> titleTerms = new TreeMap<>();
+    private final TreeMap<String, IntList> categoryTerms = new TreeMap<>();
+    private final Map<String, IntList> titleGrams = new HashMap<>();
+
+    @Override
+    public void put(Todo todo) {
+        remove(todo.getId());
+
+        Todo copy = new Todo(todo);
+        int docId = documents.size();
+        documents.add(copy);
+        String normalizedTitle = Tokenizer.normalize(copy.getTitle());
+        normalizedTitles.add(normalizedTitle);
+        liveDocuments.set(docId);
+        docIds.put(copy.getId(), docId);
+
+        for (String token : new HashSet<>(Tokenizer.tokenize(copy.getTitle()))) {
+            addPosting(titleTerms, token, docId);
+        }
+        for (String token : new HashSet<>(Tokenizer.tokenize(copy.getCategory()))) {
+            addPosting(categoryTerms, token, docId);
+        }
+        for (int i = 0; i + GRAM_LENGTH <= normalizedTitle.length(); i++) {
+            addPosting(titleGrams, normalizedTitle.substring(i, i + GRAM_LENGTH), docId);
+        }
+    }
+
+    @Override
+    public void remove(UUID todoId) {
+        Integer docId = docIds.remove(todoId);
+        if (docId == null) {
+            return;
+        }
+
+        liveDocuments.clear(docId);
+        documents.set(docId, null);
+        normalizedTitles.set(docId, null);
+
+        if (documents.size() > 1024 && liveDocuments.cardinality() * 2 < documents.size()) {
+            rebuild();
+        }
+    }
+
+    @Override
+    public void clear() {
+        docIds.clear();
+        documents.clear();
+        normalizedTitles.clear();
+        liveDocuments.clear();
+        titleTerms.clear();
+        categoryTerms.clear();
+        titleGrams.clear();
+    }
+
+    /**
+     * Hittar alla todos vars titel innehåller söktermen (case-insensitive).
+     *
+     * För söktermer med minst tre tecken tar vi snittet av posting-listorna för
+     * termens trigram, och kontrollerar bara de kandidater som blir kvar.
+     * Kortare termer kontrolleras mot de redan normaliserade titlarna.
+     *
+     * @param query Söktermen
+     * @return Kopior av matchande todos, i ingen särskild ordning
+     */
+    public List<Todo> findByTitleSubstring(String query) {
+        String normalizedQuery = Tokenizer.normalize(query);
+        List<Todo> result = new ArrayList<>();
+
+        if (normalizedQuery.length() < GRAM_LENGTH) {
+            for (int docId = liveDocuments.nextSetBit(0); docId >= 0; docId = liveDocuments.nextSetBit(docId + 1)) {
+                if (normalizedTitles.get(docId).contains(normalizedQuery)) {
+                    result.add(new Todo(documents.get(docId)));
+                }
+            }
+            return result;
+        }
+
+        IntList candidates = null;
+        for (int i = 0; i + GRAM_LENGTH <= normalizedQuery.length(); i++) {
+            IntList postings = titleGrams.get(normalizedQuery.substring(i, i + GRAM_LENGTH));
+            if (postings == null) {
+                return result;
+            }
+            candidates = candidates == null ? postings : IntList.intersect(candidates, postings);
+        }
+
+        for (int i = 0; i < candidates.size(); i++) {
+            int docId = candidates.get(i);
+            if (liveDocuments.get(docId) && normalizedTitles.get(docId).contains(normalizedQuery)) {
+                result.add(new Todo(documents.get(docId)));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Rankad sökning där varje ord i söktermen måste matcha början av ett ord
+     * i titeln eller kategorin.
+     *
+     * Träffar på hela titelord ger mest poäng, sedan prefix av titelord och sist
+     * kategoriord. Vi sorterar inte alla träffar - en prioritetskö håller bara de
+     * offset + limit bästa, vilket räcker för att plocka ut en sida.
+     *
+     * @param query Söktermen, ett eller flera ord
+     * @param offset Hur många av de bästa träffarna som ska hoppas över
+     * @param limit Max antal todos att returnera
+     * @return Kopior av todos på den efterfrågade sidan, bästa träffen först
+     */
+    public List<Todo> search(String query, int offset, int limit) {
+        List<String> tokens = Tokenizer.tokenize(query);
+        if (tokens.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Poäng per dokument, bara dokument som matchar alla ord finns kvar
+        Map<Integer, Integer> scores = null;
+        for (String token : new LinkedHashSet<>(tokens)) {
+            Map<Integer, Integer> tokenScores = scoreToken(token);
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                Map<Integer, Integer> combined = new HashMap<>();
+                for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+                    Integer score = tokenScores.get(entry.getKey());
+                    if (score != null) {
+                        combined.put(entry.getKey(), entry.getValue() + score);
+                    }
+                }
+                scores = combined;
+            }
+            if (scores.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+
+        // Sämsta träffen ligger först i kön så att den kan kastas när kön är full
+        Comparator<Map.Entry<Integer, Integer>> ranking = Comparator
+                .comparing((Map.Entry<Integer, Integer> entry) -> entry.getValue())
+                .thenComparing((a, b) -> String.CASE_INSENSITIVE_ORDER.compare(
+                        documents.get(b.getKey()).getTitle(), documents.get(a.getKey()).getTitle()));
+        int keep = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        PriorityQueue<Map.Entry<Integer, Integer>> best = new PriorityQueue<>(ranking);
+        for (Map.Entry<Integer, Integer> entry : scores.entrySet()) {
+            best.add(entry);
+            if (best.size() > keep) {
+                best.poll();
+            }
+        }
+
+        List<Todo> page = new ArrayList<>();
+        while (!best.isEmpty()) {
+            page.add(new Todo(documents.get(best.poll().getKey())));
+        }
+        Collections.reverse(page);
+        return offset >= page.size() ? new ArrayList<>() : new ArrayList<>(page.subList(offset, page.size()));
+    }
+
+    /**
+     * Räknar ut poäng för ett enda sökord i alla dokument där det matchar.
+     */
+    private Map<Integer, Integer> scoreToken(String token) {
+        Map<Integer, Integer> scores = new HashMap<>();
+        for (Map.Entry<String, IntList> term : prefixRange(titleTerms, token).entrySet()) {
+            int score = term.getKey().equals(token) ? SCORE_TITLE_EXACT : SCORE_TITLE_PREFIX;
+            addScores(scores, term.getValue(), score);
+        }
+        for (IntList postings : prefixRange(categoryTerms, token).values()) {
+            addScores(scores, postings, SCORE_CATEGORY);
+        }
+        return scores;
+    }
+
+    private void addScores(Map<Integer, Integer> scores, IntList postings, int score) {
+        for (int i = 0; i < postings.size(); i++) {
+            int docId = postings.get(i);
+            if (liveDocuments.get(docId)) {
+                scores.merge(docId, score, Math::max);
+            }
+        }
+    }
+
+    /**
+     * Alla termer som börjar med prefixet - ett intervall i den sorterade mappen.
+     */
+    private static SortedMap<String, IntList> prefixRange(TreeMap<String, IntList> terms, String prefix) {
+        return terms.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    private static void addPosting(Map<String, IntList> index, String key, int docId) {
+        IntList postings = index.computeIfAbsent(key, ignored -> new IntList());
+        if (postings.size() == 0 || postings.last() != docId) {
+            postings.add(docId);
+        }
+    }
+
+    /**
+     * Bygger om indexet med bara de levande dokumenten, så att döda
+     * dokument-ID:n inte tar plats i posting-listorna längre.
+     */
+    private void rebuild() {
+        List<Todo> live = new ArrayList<>();
+        for (int docId = liveDocuments.nextSetBit(0); docId >= 0; docId = liveDocuments.nextSetBit(docId + 1)) {
+            live.add(documents.get(docId));
+        }
+
+        clear();
+        for (Todo todo : live) {
+            put(todo);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package me.code.services.indexes;
+
+import me.code.models.Todo;
+
+import java.util.UUID;
+
+/**
+ * Interface för ett index som hålls uppdaterat vid sidan av repositoryt.
+ *
+ * Ett index är en extra datastruktur som gör vissa frågor snabba, på samma sätt
+ * som registret längst bak i en bok. Servicen anropar put/remove varje gång en
+ * todo skapas, ändras eller raderas, så att indexet alltid stämmer.
+ */
+public interface ITodoIndex {
+
+    /**
+     * Lägger till en todo, eller ersätter den tidigare versionen om den redan finns.
+     *
+     * @param todo Todon som ska indexeras
+     */
+    void put(Todo todo);
+
+    /**
+     * Tar bort en todo ur indexet.
+     *
+     * @param todoId ID för todon som ska tas bort
+     */
+    void remove(UUID todoId);
+
+    /**
+     * Tömmer hela indexet.
+     */
+    void clear();
+}
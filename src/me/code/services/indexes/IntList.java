@@ -0,0 +1,58 @@
+package me.code.services.indexes;
+
+import java.util.Arrays;
+
+/**
+ * En växande lista med int-värden utan boxing (ingen Integer per element).
+ *
+ * Används som "posting list" i FullTextIndex: en sorterad lista med dokument-ID:n.
+ * Eftersom nya dokument alltid får ett högre ID än tidigare blir listan sorterad
+ * av sig själv när vi bara lägger till i slutet.
+ */
+class IntList {
+
+    private int[] values = new int[4];
+    private int size;
+
+    void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int last() {
+        return values[size - 1];
+    }
+
+    /**
+     * Snittet av två sorterade listor, räknat genom att gå igenom båda samtidigt.
+     */
+    static IntList intersect(IntList a, IntList b) {
+        IntList result = new IntList();
+        int i = 0;
+        int j = 0;
+        while (i < a.size && j < b.size) {
+            int x = a.values[i];
+            int y = b.values[j];
+            if (x == y) {
+                result.add(x);
+                i++;
+                j++;
+            } else if (x < y) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,53 @@
+package me.code.services.indexes;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Delar upp text i sökbara ord (tokens).
+ *
+ * Texten normaliseras till Unicode NFC så att t.ex. ett "å" som skrivits som
+ * "a" + ringaccent blir samma tecken som ett vanligt "å". Sedan gör vi om allt
+ * till gemener med svensk locale och delar på allt som inte är bokstäver eller
+ * siffror. Å, ä och ö räknas som egna bokstäver och görs aldrig om till a och o,
+ * eftersom "år" och "ar" är olika ord på svenska.
+ */
+public final class Tokenizer {
+
+    public static final Locale SWEDISH = Locale.forLanguageTag("sv-SE");
+
+    private Tokenizer() {
+    }
+
+    /**
+     * Normaliserar en text till NFC och gemener.
+     */
+    public static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFC).toLowerCase(SWEDISH);
+    }
+
+    /**
+     * Delar upp en text i normaliserade ord.
+     */
+    public static List<String> tokenize(String text) {
+        String normalized = normalize(text);
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i < normalized.length(); i++) {
+            if (Character.isLetterOrDigit(normalized.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            tokens.add(normalized.substring(start));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,194 @@
+package me.code.services.transfer;
+
+import me.code.models.Todo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * CSV (kommaseparerade värden) enligt RFC 4180, t.ex. från ett kalkylark.
+ *
+ * Första raden innehåller kolumnnamnen (se TodoRecord.FIELDS), i valfri ordning
+ * och oberoende av stora och små bokstäver. Okända kolumner hoppas över.
+ * Ett värde som innehåller kommatecken, citattecken eller radbrytningar
+ * omges av citattecken, och citattecken i värdet skrivs dubbelt ("").
+ */
+public class CsvTodoFormat implements ITodoFormat {
+
+    // Kolumner som måste finnas, id och status får saknas
+    private static final List<String> REQUIRED_COLUMNS = List.of(
+            TodoRecord.TITLE, TodoRecord.CATEGORY, TodoRecord.PRIORITY, TodoRecord.DEADLINE);
+
+    @Override
+    public String getName() {
+        return "csv";
+    }
+
+    @Override
+    public String getExtension() {
+        return ".csv";
+    }
+
+    @Override
+    public ITodoRecordReader openReader(BufferedReader reader) throws IOException {
+        return new CsvRecordReader(reader);
+    }
+
+    @Override
+    public void appendHeader(StringBuilder output) {
+        output.append(String.join(",", TodoRecord.FIELDS)).append('\n');
+    }
+
+    @Override
+    public void append(StringBuilder output, Todo todo) {
+        output.append(todo.getId()).append(',');
+        appendValue(output, todo.getTitle());
+        output.append(',');
+        appendValue(output, todo.getCategory());
+        output.append(',').append(todo.getPriority());
+        output.append(',').append(TodoRecord.formatDeadline(todo.getDeadline()));
+        output.append(',').append(todo.getStatus().getDisplayName()).append('\n');
+    }
+
+    private static void appendValue(StringBuilder output, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            output.append(value);
+            return;
+        }
+
+        output.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                output.append('"');
+            }
+            output.append(c);
+        }
+        output.append('"');
+    }
+
+    /**
+     * Läser CSV tecken för tecken, så att ett värde inom citattecken kan
+     * innehålla både kommatecken och radbrytningar.
+     */
+    private static class CsvRecordReader implements ITodoRecordReader {
+
+        private final BufferedReader reader;
+        private final List<String> columns;
+        private long line = 1;
+
+        // Ett tecken som lästs för långt och ska läsas igen (-2 = inget)
+        private int pushedBack = -2;
+
+        private CsvRecordReader(BufferedReader reader) throws IOException {
+            this.reader = reader;
+
+            List<String> header = readRow();
+            columns = new ArrayList<>();
+            if (header == null) {
+                return;  // Tom fil, inga poster
+            }
+            for (String column : header) {
+                columns.add(column.replace("\uFEFF", "").trim().toLowerCase(Locale.ROOT));
+            }
+            for (String column : REQUIRED_COLUMNS) {
+                if (!columns.contains(column)) {
+                    throw new IOException("CSV header is missing column '" + column + "'");
+                }
+            }
+        }
+
+        @Override
+        public TodoRecord next() throws IOException {
+            while (true) {
+                long start = line;
+                List<String> row = readRow();
+                if (row == null) {
+                    return null;
+                }
+                if (row.size() == 1 && row.get(0).isBlank()) {
+                    continue;  // Tom rad
+                }
+                if (row.size() != columns.size()) {
+                    return TodoRecord.invalid(start, "Expected " + columns.size() + " values but found " + row.size());
+                }
+
+                Map<String, String> fields = new HashMap<>();
+                for (int i = 0; i < row.size(); i++) {
+                    fields.put(columns.get(i), row.get(i));
+                }
+                return new TodoRecord(start, fields, null);
+            }
+        }
+
+        /**
+         * Läser en rad med värden, eller null om filen är slut.
+         */
+        private List<String> readRow() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+
+            List<String> values = new ArrayList<>();
+            StringBuilder value = new StringBuilder();
+            boolean quoted = false;
+            long quoteStart = line;
+            while (true) {
+                if (quoted) {
+                    if (c == -1) {
+                        throw new IOException("Unterminated quoted value starting on line " + quoteStart);
+                    }
+                    if (c == '"') {
+                        int next = read();
+                        if (next == '"') {
+                            value.append('"');
+                        } else {
+                            quoted = false;
+                            pushedBack = next;
+                        }
+                    } else {
+                        if (c == '\n') {
+                            line++;
+                        }
+                        value.append((char) c);
+                    }
+                } else if (c == -1 || c == '\n') {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    values.add(value.toString());
+                    return values;
+                } else if (c == ',') {
+                    values.add(value.toString());
+                    value.setLength(0);
+                } else if (c == '"' && value.length() == 0) {
+                    quoted = true;
+                    quoteStart = line;
+                } else if (c != '\r') {
+                    value.append((char) c);
+                }
+                c = read();
+            }
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != -2) {
+                int c = pushedBack;
+                pushedBack = -2;
+                return c;
+            }
+            return reader.read();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package me.code.services.transfer;
+
+import me.code.models.Todo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Ett filformat som todos kan importeras från och exporteras till.
+ *
+ * Läsningen sker post för post (se ITodoRecordReader), så att en stor fil
+ * aldrig behöver ligga i minnet på en gång. Skrivningen lägger till text i en
+ * StringBuilder, så att många todos kan formateras innan något skrivs till filen.
+ */
+public interface ITodoFormat {
+
+    /**
+     * Formatets namn, t.ex. "csv".
+     */
+    String getName();
+
+    /**
+     * Filändelsen som formatet känns igen på, t.ex. ".csv".
+     */
+    String getExtension();
+
+    /**
+     * Börjar läsa poster från en fil i formatet.
+     *
+     * @throws IOException Om filen inte går att läsa, eller inte alls är i formatet
+     */
+    ITodoRecordReader openReader(BufferedReader reader) throws IOException;
+
+    /**
+     * Lägger till det som ska stå först i filen (t.ex. kolumnnamnen), om något.
+     */
+    void appendHeader(StringBuilder output);
+
+    /**
+     * Lägger till en todo, inklusive radbrytning.
+     */
+    void append(StringBuilder output, Todo todo);
+
+    /**
+     * Alla format som finns.
+     */
+    static List<ITodoFormat> all() {
+        return List.of(new CsvTodoFormat(), new JsonLinesTodoFormat());
+    }
+
+    /**
+     * Väljer format efter filens ändelse, t.ex. "todos.csv" eller "todos.jsonl".
+     *
+     * @throws IllegalArgumentException Om ändelsen inte hör till något format
+     */
+    static ITodoFormat forFileName(String fileName) {
+        String name = fileName.toLowerCase(Locale.ROOT);
+        for (ITodoFormat format : all()) {
+            if (name.endsWith(format.getExtension())) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown file format: " + fileName + " (expected .csv or .jsonl)");
+    }
+}
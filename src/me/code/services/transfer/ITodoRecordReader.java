@@ -0,0 +1,19 @@
+package me.code.services.transfer;
+
+import java.io.IOException;
+
+/**
+ * Läser en post i taget från en fil, se ITodoFormat.openReader.
+ */
+public interface ITodoRecordReader {
+
+    /**
+     * Läser nästa post. En post som inte går att tolka (t.ex. en trasig
+     * JSON-rad) ger en TodoRecord med ett fel, så att resten av filen
+     * fortfarande kan läsas.
+     *
+     * @return Nästa post, eller null när filen är slut
+     * @throws IOException Om filen inte går att läsa vidare
+     */
+    TodoRecord next() throws IOException;
+}
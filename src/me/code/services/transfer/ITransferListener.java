@@ -0,0 +1,28 @@
+package me.code.services.transfer;
+
+/**
+ * Får reda på hur en import eller export går medan den pågår, t.ex. för att
+ * visa en förloppsindikator. Metoderna anropas alltid från samma tråd som
+ * startade importen eller exporten, en gång per bit (chunk) av poster.
+ */
+public interface ITransferListener {
+
+    /**
+     * En lyssnare som inte gör något.
+     */
+    ITransferListener NONE = new ITransferListener() {
+    };
+
+    /**
+     * @param processed Antal poster som hanterats hittills
+     * @param failed Hur många av dem som inte kunde importeras
+     */
+    default void onProgress(long processed, long failed) {
+    }
+
+    /**
+     * En post kunde inte importeras. Importen fortsätter med nästa post.
+     */
+    default void onError(TransferError error) {
+    }
+}
@@ -0,0 +1,244 @@
+package me.code.services.transfer;
+
+import me.code.models.Todo;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JSON Lines: ett JSON-objekt per rad, t.ex.
+ *
+ *   {"id":"...","title":"Handla","category":"Hem","priority":3,"deadline":"2025-01-31","status":"pending"}
+ *
+ * Formatet passar bra för strömmande import och export, eftersom varje rad kan
+ * läsas för sig - en trasig rad påverkar inte resten av filen. Objekten får
+ * bara innehålla enkla värden (text, tal, true/false och null), inga nästlade
+ * objekt eller listor. Okända fält hoppas över.
+ */
+public class JsonLinesTodoFormat implements ITodoFormat {
+
+    @Override
+    public String getName() {
+        return "jsonl";
+    }
+
+    @Override
+    public String getExtension() {
+        return ".jsonl";
+    }
+
+    @Override
+    public ITodoRecordReader openReader(BufferedReader reader) {
+        return new JsonLinesRecordReader(reader);
+    }
+
+    @Override
+    public void appendHeader(StringBuilder output) {
+        // JSON Lines har ingen rubrikrad
+    }
+
+    @Override
+    public void append(StringBuilder output, Todo todo) {
+        output.append("{\"").append(TodoRecord.ID).append("\":\"").append(todo.getId()).append('"');
+        output.append(",\"").append(TodoRecord.TITLE).append("\":");
+        appendString(output, todo.getTitle());
+        output.append(",\"").append(TodoRecord.CATEGORY).append("\":");
+        appendString(output, todo.getCategory());
+        output.append(",\"").append(TodoRecord.PRIORITY).append("\":").append(todo.getPriority());
+        output.append(",\"").append(TodoRecord.DEADLINE).append("\":\"")
+                .append(TodoRecord.formatDeadline(todo.getDeadline())).append('"');
+        output.append(",\"").append(TodoRecord.STATUS).append("\":\"")
+                .append(todo.getStatus().getDisplayName()).append("\"}\n");
+    }
+
+    private static void appendString(StringBuilder output, String value) {
+        output.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> output.append("\\\"");
+                case '\\' -> output.append("\\\\");
+                case '\n' -> output.append("\\n");
+                case '\r' -> output.append("\\r");
+                case '\t' -> output.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        output.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        output.append(c);
+                    }
+                }
+            }
+        }
+        output.append('"');
+    }
+
+    private static class JsonLinesRecordReader implements ITodoRecordReader {
+
+        private final BufferedReader reader;
+        private long line;
+
+        private JsonLinesRecordReader(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public TodoRecord next() throws IOException {
+            while (true) {
+                String text = reader.readLine();
+                if (text == null) {
+                    return null;
+                }
+                line++;
+                if (text.isBlank()) {
+                    continue;
+                }
+
+                try {
+                    return new TodoRecord(line, new ObjectParser(text).parse(), null);
+                } catch (IllegalArgumentException exception) {
+                    return TodoRecord.invalid(line, exception.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tolkar ett platt JSON-objekt till en map där alla värden är text.
+     * Tal behålls som de står, och null betyder att fältet saknas.
+     */
+    private static class ObjectParser {
+
+        private final String text;
+        private int position;
+
+        private ObjectParser(String text) {
+            this.text = text;
+        }
+
+        private Map<String, String> parse() {
+            Map<String, String> fields = new HashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                while (true) {
+                    String name = readString();
+                    expect(':');
+                    String value = readValue();
+                    if (value != null) {
+                        fields.put(name, value);
+                    }
+
+                    char c = next();
+                    if (c == '}') {
+                        break;
+                    }
+                    if (c != ',') {
+                        throw error("Expected ',' or '}'");
+                    }
+                }
+            }
+            if (peek() != 0) {
+                throw error("Unexpected text after the object");
+            }
+            return fields;
+        }
+
+        private String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("Nested objects and arrays are not supported");
+            }
+
+            int start = position;
+            while (position < text.length() && ",}] \t".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.equals("null")) {
+                return null;
+            }
+            if (literal.equals("true") || literal.equals("false") || literal.matches("-?\\d+(\\.\\d+)?([eE][+-]?\\d+)?")) {
+                return literal;
+            }
+            throw error("Invalid value '" + literal + "'");
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+
+                if (position >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case '"', '\\', '/' -> value.append(escaped);
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'u' -> {
+                        if (position + 4 > text.length()) {
+                            throw error("Invalid unicode escape");
+                        }
+                        try {
+                            value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException exception) {
+                            throw error("Invalid unicode escape");
+                        }
+                        position += 4;
+                    }
+                    default -> throw error("Invalid escape '\\" + escaped + "'");
+                }
+            }
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+        }
+
+        /**
+         * Nästa tecken som inte är blanksteg, utan att gå förbi det. 0 = slut på raden.
+         */
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+
+        private char next() {
+            char c = peek();
+            if (c != 0) {
+                position++;
+            }
+            return c;
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid JSON at column " + (position + 1) + ": " + message);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package me.code.services.transfer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kör stegen i en import eller export på egna trådar, med begränsade köer
+ * (BlockingQueue med fast kapacitet) mellan stegen.
+ *
+ * Är ett senare steg långsammare än ett tidigare blir kön mellan dem full,
+ * och då får det tidigare steget vänta ("backpressure"). Så läser vi aldrig
+ * in mer av filen än vad köerna rymmer, hur stor filen än är.
+ *
+ * Misslyckas ett steg ska de andra sluta, även om de står och väntar på en
+ * kö. Därför väntar put och take bara en kort stund i taget och kontrollerar
+ * däremellan om något steg har misslyckats - då kastas det felet vidare.
+ */
+final class Pipeline implements AutoCloseable {
+
+    private static final long POLL_MILLIS = 50;
+
+    private final List<Thread> threads = new ArrayList<>();
+    private Exception failure;
+
+    /**
+     * Startar ett steg på en egen tråd.
+     */
+    void start(String name, Stage stage) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (Exception exception) {
+                fail(exception);
+            }
+        }, name);
+        thread.setDaemon(true);
+        threads.add(thread);
+        thread.start();
+    }
+
+    /**
+     * Lägger element i kön, och väntar så länge kön är full.
+     */
+    <T> void put(BlockingQueue<T> queue, T element) throws Exception {
+        while (!queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            checkFailure();
+        }
+    }
+
+    /**
+     * Tar nästa element ur kön, och väntar så länge kön är tom.
+     */
+    <T> T take(BlockingQueue<T> queue) throws Exception {
+        while (true) {
+            T element = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (element != null) {
+                return element;
+            }
+            checkFailure();
+        }
+    }
+
+    /**
+     * Stoppar alla steg som fortfarande kör och väntar tills de har slutat.
+     *
+     * Avbryts väntan sätter vi tillbaka trådens avbrottsflagga och kastar ett
+     * unchecked exception, så att close inte behöver deklarera InterruptedException
+     * (det vill try-with-resources inte ha).
+     */
+    @Override
+    public void close() {
+        fail(new CancellationException("Pipeline was closed"));
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while stopping the pipeline", exception);
+            }
+        }
+    }
+
+    /**
+     * Sparar det första felet. Senare fel är oftast följder av det första.
+     */
+    private synchronized void fail(Exception exception) {
+        if (failure == null) {
+            failure = exception;
+        }
+    }
+
+    private synchronized void checkFailure() throws Exception {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    interface Stage {
+        void run() throws Exception;
+    }
+}
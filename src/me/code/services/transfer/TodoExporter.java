@@ -0,0 +1,124 @@
+package me.code.services.transfer;
+
+import me.code.models.Todo;
+import me.code.services.ITodoService;
+
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.Stream;
+
+/**
+ * Exporterar alla todos till en fil, som en pipeline i tre steg:
+ *
+ *   läs (ITodoService.getTodos) -> formatera till text -> skriv till filen
+ *
+ * på samma sätt som TodoImporter. Todos läses från en Stream, så de behöver
+ * aldrig ligga i minnet alla på en gång - bara de bitar som ryms i köerna.
+ * Skrivningen sker på tråden som anropade exportTo.
+ */
+public class TodoExporter {
+
+    // Markerar att ett steg är klart (jämförs med ==)
+    private static final List<Todo> END_OF_TODOS = new ArrayList<>();
+    private static final FormattedChunk END_OF_TEXT = new FormattedChunk("", 0);
+
+    private final ITodoService todoService;
+    private final int chunkSize;
+    private final int queueChunks;
+
+    /**
+     * Skapar en exportör med standardstorlek på bitar och köer.
+     */
+    public TodoExporter(ITodoService todoService) {
+        this(todoService, TodoImporter.DEFAULT_CHUNK_SIZE, TodoImporter.DEFAULT_QUEUE_CHUNKS);
+    }
+
+    /**
+     * @param todoService Servicen som todos läses från
+     * @param chunkSize Antal todos per bit
+     * @param queueChunks Hur många bitar som får vänta mellan två steg
+     */
+    public TodoExporter(ITodoService todoService, int chunkSize, int queueChunks) {
+        this.todoService = todoService;
+        this.chunkSize = chunkSize;
+        this.queueChunks = queueChunks;
+    }
+
+    /**
+     * Exporterar till en fil. Formatet väljs efter filens ändelse (se ITodoFormat.forFileName).
+     * Finns filen redan skrivs den över.
+     */
+    public TransferResult exportTo(Path file, ITransferListener listener) throws Exception {
+        ITodoFormat format = ITodoFormat.forFileName(file.getFileName().toString());
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            return exportTo(writer, format, listener);
+        }
+    }
+
+    /**
+     * Exporterar alla todos till en Writer. Writern töms (flush) men stängs inte.
+     */
+    public TransferResult exportTo(Writer output, ITodoFormat format, ITransferListener listener) throws Exception {
+        long start = System.nanoTime();
+        BlockingQueue<List<Todo>> todos = new ArrayBlockingQueue<>(queueChunks);
+        BlockingQueue<FormattedChunk> formatted = new ArrayBlockingQueue<>(queueChunks);
+
+        try (Pipeline pipeline = new Pipeline()) {
+            pipeline.start("todo-export-read", () -> {
+                try (Stream<Todo> stream = todoService.getTodos()) {
+                    Iterator<Todo> iterator = stream.iterator();
+                    List<Todo> chunk = new ArrayList<>(chunkSize);
+                    while (iterator.hasNext()) {
+                        chunk.add(iterator.next());
+                        if (chunk.size() == chunkSize) {
+                            pipeline.put(todos, chunk);
+                            chunk = new ArrayList<>(chunkSize);
+                        }
+                    }
+                    if (!chunk.isEmpty()) {
+                        pipeline.put(todos, chunk);
+                    }
+                }
+                pipeline.put(todos, END_OF_TODOS);
+            });
+
+            pipeline.start("todo-export-format", () -> {
+                for (List<Todo> chunk = pipeline.take(todos); chunk != END_OF_TODOS; chunk = pipeline.take(todos)) {
+                    StringBuilder text = new StringBuilder(chunk.size() * 128);
+                    for (Todo todo : chunk) {
+                        format.append(text, todo);
+                    }
+                    pipeline.put(formatted, new FormattedChunk(text.toString(), chunk.size()));
+                }
+                pipeline.put(formatted, END_OF_TEXT);
+            });
+
+            StringBuilder header = new StringBuilder();
+            format.appendHeader(header);
+            output.write(header.toString());
+
+            long exported = 0;
+            for (FormattedChunk chunk = pipeline.take(formatted); chunk != END_OF_TEXT; chunk = pipeline.take(formatted)) {
+                output.write(chunk.text());
+                exported += chunk.count();
+                listener.onProgress(exported, 0);
+            }
+            output.flush();
+            return new TransferResult(exported, exported, 0, List.of(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * En formaterad bit: texten och hur många todos den innehåller.
+     */
+    private record FormattedChunk(String text, int count) {
+    }
+}
@@ -0,0 +1,154 @@
+package me.code.services.transfer;
+
+import me.code.models.Todo;
+import me.code.services.ITodoService;
+
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Importerar todos från en fil i bitar (chunks) via ITodoService.createTodos.
+ *
+ * Importen är en pipeline med tre steg som körs samtidigt på var sin tråd:
+ *
+ *   tolka (läs filen till poster) -> kontrollera (poster till todos) -> spara
+ *
+ * Mellan stegen finns köer som rymmer några bitar var (se Pipeline), så
+ * medan en bit sparas kan nästa bit kontrolleras och filen läsas vidare.
+ * Sparandet sker på tråden som anropade importFrom, och lyssnaren anropas
+ * också därifrån.
+ *
+ * Ogiltiga poster hoppas över och rapporteras till lyssnaren, resten av filen
+ * importeras ändå. Bara de första MAX_REPORTED_ERRORS felen sparas i resultatet,
+ * så att en helt felaktig fil inte fyller minnet med felmeddelanden.
+ *
+ * En todo med ett ID som redan finns skrivs över, så en import som avbrutits
+ * kan göras om från början.
+ */
+public class TodoImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    public static final int DEFAULT_QUEUE_CHUNKS = 4;
+    public static final int MAX_REPORTED_ERRORS = 100;
+
+    // Bufferten för filen - stor nog att läsa många poster per systemanrop
+    private static final int READ_BUFFER_CHARS = 64 * 1024;
+
+    // Markerar att ett steg är klart (jämförs med ==)
+    private static final List<TodoRecord> END_OF_RECORDS = new ArrayList<>();
+    private static final ValidatedChunk END_OF_CHUNKS = new ValidatedChunk(List.of(), List.of());
+
+    private final ITodoService todoService;
+    private final int chunkSize;
+    private final int queueChunks;
+
+    /**
+     * Skapar en importör med standardstorlek på bitar och köer.
+     */
+    public TodoImporter(ITodoService todoService) {
+        this(todoService, DEFAULT_CHUNK_SIZE, DEFAULT_QUEUE_CHUNKS);
+    }
+
+    /**
+     * @param todoService Servicen som todos sparas genom
+     * @param chunkSize Antal poster per bit, dvs. per anrop till createTodos
+     * @param queueChunks Hur många bitar som får vänta mellan två steg
+     */
+    public TodoImporter(ITodoService todoService, int chunkSize, int queueChunks) {
+        this.todoService = todoService;
+        this.chunkSize = chunkSize;
+        this.queueChunks = queueChunks;
+    }
+
+    /**
+     * Importerar en fil. Formatet väljs efter filens ändelse (se ITodoFormat.forFileName).
+     */
+    public TransferResult importFrom(Path file, ITransferListener listener) throws Exception {
+        ITodoFormat format = ITodoFormat.forFileName(file.getFileName().toString());
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader, format, listener);
+        }
+    }
+
+    /**
+     * Importerar todos från en Reader. Readern stängs inte.
+     *
+     * @throws Exception Om filen inte går att läsa eller en bit inte går att spara.
+     *                   Bitarna före den har då redan sparats.
+     */
+    public TransferResult importFrom(Reader input, ITodoFormat format, ITransferListener listener) throws Exception {
+        long start = System.nanoTime();
+        BufferedReader reader = input instanceof BufferedReader buffered
+                ? buffered
+                : new BufferedReader(input, READ_BUFFER_CHARS);
+        BlockingQueue<List<TodoRecord>> records = new ArrayBlockingQueue<>(queueChunks);
+        BlockingQueue<ValidatedChunk> validated = new ArrayBlockingQueue<>(queueChunks);
+
+        try (Pipeline pipeline = new Pipeline()) {
+            pipeline.start("todo-import-parse", () -> {
+                ITodoRecordReader recordReader = format.openReader(reader);
+                List<TodoRecord> chunk = new ArrayList<>(chunkSize);
+                for (TodoRecord record = recordReader.next(); record != null; record = recordReader.next()) {
+                    chunk.add(record);
+                    if (chunk.size() == chunkSize) {
+                        pipeline.put(records, chunk);
+                        chunk = new ArrayList<>(chunkSize);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    pipeline.put(records, chunk);
+                }
+                pipeline.put(records, END_OF_RECORDS);
+            });
+
+            pipeline.start("todo-import-validate", () -> {
+                for (List<TodoRecord> chunk = pipeline.take(records); chunk != END_OF_RECORDS; chunk = pipeline.take(records)) {
+                    List<Todo> todos = new ArrayList<>(chunk.size());
+                    List<TransferError> errors = new ArrayList<>();
+                    for (TodoRecord record : chunk) {
+                        try {
+                            todos.add(record.toTodo());
+                        } catch (IllegalArgumentException exception) {
+                            errors.add(new TransferError(record.line(), exception.getMessage()));
+                        }
+                    }
+                    pipeline.put(validated, new ValidatedChunk(todos, errors));
+                }
+                pipeline.put(validated, END_OF_CHUNKS);
+            });
+
+            long imported = 0;
+            long failed = 0;
+            List<TransferError> reported = new ArrayList<>();
+            for (ValidatedChunk chunk = pipeline.take(validated); chunk != END_OF_CHUNKS; chunk = pipeline.take(validated)) {
+                if (!chunk.todos().isEmpty()) {
+                    todoService.createTodos(chunk.todos());
+                }
+                imported += chunk.todos().size();
+
+                for (TransferError error : chunk.errors()) {
+                    failed++;
+                    if (reported.size() < MAX_REPORTED_ERRORS) {
+                        reported.add(error);
+                    }
+                    listener.onError(error);
+                }
+                listener.onProgress(imported + failed, failed);
+            }
+            return new TransferResult(imported + failed, imported, failed, reported, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * En kontrollerad bit: de giltiga todos och felen för de ogiltiga posterna.
+     */
+    private record ValidatedChunk(List<Todo> todos, List<TransferError> errors) {
+    }
+}
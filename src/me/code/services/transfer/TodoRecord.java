@@ -0,0 +1,114 @@
+package me.code.services.transfer;
+
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * En inläst post från en importfil: fälten som text, innan de kontrollerats.
+ *
+ * Fälten heter som i FIELDS. id och status får saknas (då skapas ett nytt ID
+ * och todon blir PENDING), de andra måste finnas. toTodo kontrollerar fälten
+ * och skapar todon.
+ *
+ * @param line Raden i filen där posten börjar, för felmeddelanden
+ * @param fields Fältens värden, med fältnamnet som nyckel
+ * @param error Varför posten inte kunde läsas, eller null om den kunde det
+ */
+public record TodoRecord(long line, Map<String, String> fields, String error) {
+
+    public static final String ID = "id";
+    public static final String TITLE = "title";
+    public static final String CATEGORY = "category";
+    public static final String PRIORITY = "priority";
+    public static final String DEADLINE = "deadline";
+    public static final String STATUS = "status";
+
+    /**
+     * Alla fält i den ordning de skrivs vid export.
+     */
+    public static final List<String> FIELDS = List.of(ID, TITLE, CATEGORY, PRIORITY, DEADLINE, STATUS);
+
+    /**
+     * En post som inte gick att läsa.
+     */
+    public static TodoRecord invalid(long line, String error) {
+        return new TodoRecord(line, Map.of(), error);
+    }
+
+    /**
+     * Kontrollerar fälten och skapar todon.
+     *
+     * @throws IllegalArgumentException Om posten inte gick att läsa eller ett fält är ogiltigt
+     */
+    public Todo toTodo() {
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+
+        String title = required(TITLE);
+        String category = required(CATEGORY);
+
+        String priorityString = required(PRIORITY);
+        int priority;
+        try {
+            priority = Integer.parseInt(priorityString);
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Invalid priority '" + priorityString + "', expected a number");
+        }
+
+        Date deadline = parseDeadline(required(DEADLINE));
+
+        TodoStatus status = TodoStatus.PENDING;
+        String statusString = optional(STATUS);
+        if (statusString != null) {
+            status = TodoStatus.fromDisplayName(statusString);
+            if (status == null) {
+                throw new IllegalArgumentException("Invalid status '" + statusString + "', expected pending, in-progress or completed");
+            }
+        }
+
+        UUID id;
+        String idString = optional(ID);
+        try {
+            id = idString == null ? UUID.randomUUID() : UUID.fromString(idString);
+        } catch (IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Invalid id '" + idString + "', expected a UUID");
+        }
+
+        return new Todo(id, title, deadline, category, priority, status);
+    }
+
+    /**
+     * Formaterar en deadline som år-månad-dag, som i resten av applikationen.
+     */
+    public static String formatDeadline(Date deadline) {
+        return Todo.formatDate(deadline);
+    }
+
+    private static Date parseDeadline(String deadline) {
+        try {
+            return Todo.parseDate(deadline);
+        } catch (DateTimeParseException exception) {
+            throw new IllegalArgumentException("Invalid deadline '" + deadline + "', expected year-month-day");
+        }
+    }
+
+    private String required(String field) {
+        String value = optional(field);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing value for '" + field + "'");
+        }
+        return value;
+    }
+
+    private String optional(String field) {
+        String value = fields.get(field);
+        return value == null || value.isBlank() ? null : value.trim();
+    }
+}
@@ -0,0 +1,15 @@
+package me.code.services.transfer;
+
+/**
+ * En post som inte kunde importeras.
+ *
+ * @param line Raden i filen där posten börjar
+ * @param message Vad som var fel
+ */
+public record TransferError(long line, String message) {
+
+    @Override
+    public String toString() {
+        return "Line " + line + ": " + message;
+    }
+}
@@ -0,0 +1,23 @@
+package me.code.services.transfer;
+
+import java.util.List;
+
+/**
+ * Resultatet av en import eller export.
+ *
+ * @param processed Antal poster som lästes
+ * @param succeeded Antal poster som importerades eller exporterades
+ * @param failed Antal poster som inte kunde importeras
+ * @param errors De första felen (högst TodoImporter.MAX_REPORTED_ERRORS), resten räknas bara
+ * @param elapsedNanos Hur lång tid det tog
+ */
+public record TransferResult(long processed, long succeeded, long failed, List<TransferError> errors,
+                             long elapsedNanos) {
+
+    /**
+     * Hur många poster per sekund som hanterades.
+     */
+    public double recordsPerSecond() {
+        return elapsedNanos == 0 ? 0 : processed * 1_000_000_000.0 / elapsedNanos;
+    }
+}
@@ -1,22 +1,148 @@
 package me.code.utility;
 
-import java.util.InputMismatchException;
-import java.util.Scanner;
+import me.code.commands.Command;
+import me.code.commands.CommandContext;
+import me.code.models.Todo;
+import me.code.models.TodoStatus;
+import me.code.services.TodoQuery;
+
+import java.io.PrintStream;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 public class CommandHelper {
 
-    public static UUID queryTodoId() {
-        Scanner scanner = new Scanner(System.in);
-        System.out.print("Enter ID of todo: ");
+    public static UUID queryTodoId(CommandContext context) {
+        String id = context.prompt("Enter ID of todo: ");
 
         try {
-            String id = scanner.nextLine();
-            return UUID.fromString(id);
+            return UUID.fromString(id.trim());
         } catch (IllegalArgumentException exception) {
-            System.out.println("The id must be a valid UUID.");
+            context.fail("The id must be a valid UUID.");
             return null;
         }
     }
 
+    /**
+     * Frågar efter status, kategori och deadline och bygger en TodoQuery av svaren.
+     * Ett tomt svar betyder att fältet inte filtrerar något.
+     */
+    public static TodoQuery queryTodoFilter(CommandContext context) {
+        TodoQuery query = new TodoQuery();
+
+        while (true) {
+            String statusString = context.prompt("Enter a status (pending, in-progress, completed): ");
+            if (statusString.isBlank()) {
+                break;
+            }
+
+            TodoStatus status = TodoStatus.fromDisplayName(statusString.trim());
+            if (status != null) {
+                query.withStatus(status);
+                break;
+            }
+            context.invalidInput("Invalid status, try again.");
+        }
+
+        String category = context.prompt("Enter a category: ");
+        if (!category.isBlank()) {
+            query.withCategory(category.trim());
+        }
+
+        while (true) {
+            String deadlineString = context.prompt("Enter a date the deadline must be before (year-month-day): ");
+            if (deadlineString.isBlank()) {
+                break;
+            }
+
+            try {
+                query.dueBefore(Todo.parseDate(deadlineString));
+                break;
+            } catch (DateTimeParseException ignored) {
+                context.invalidInput("Invalid date format, try again.");
+            }
+        }
+
+        return query;
+    }
+
+    /**
+     * Kör ett kommando utan att fråga användaren om något, t.ex. i ett skript
+     * eller åt en klient till SocketCommandService. Alla värden måste därför
+     * finnas bland argumenten.
+     *
+     * @param out Dit kommandots utskrifter (och felmeddelanden) ska skrivas
+     * @return true om kommandot lyckades, false om det misslyckades, saknade
+     *         argument eller fick argument som det aldrig läste
+     */
+    public static boolean runWithoutPrompts(Command command, List<String> arguments, PrintStream out) {
+        CommandContext context = new CommandContext(arguments, null, out);
+        try {
+            command.run(context);
+        } catch (IllegalArgumentException exception) {
+            // Saknade eller ogiltiga argument, se CommandContext
+            out.println(exception.getMessage());
+            return false;
+        }
+
+        if (!context.getUnusedArguments().isEmpty()) {
+            out.println("Unused arguments: " + context.getUnusedArguments());
+            return false;
+        }
+        return !context.hasFailed();
+    }
+
+    /**
+     * Delar upp en kommandorad i ord, t.ex. för "create-todo "Handla mat" Hem 3 2025-01-31":
+     *
+     *   [create-todo, Handla mat, Hem, 3, 2025-01-31]
+     *
+     * Ord skiljs åt med mellanslag. Inom citattecken räknas mellanslag som en
+     * del av ordet, "" blir ett tomt ord och \" respektive \\ skriver ett
+     * citattecken respektive ett bakstreck.
+     *
+     * @throws IllegalArgumentException Om ett citattecken aldrig avslutas
+     */
+    public static List<String> splitArguments(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean inWord = false;
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length() && (line.charAt(i + 1) == '"' || line.charAt(i + 1) == '\\')) {
+                    word.append(line.charAt(++i));
+                } else {
+                    word.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                inWord = true;
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    word.append(c);
+                }
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote in: " + line);
+        }
+        if (inWord) {
+            words.add(word.toString());
+        }
+        return words;
+    }
 }
@@ -0,0 +1,122 @@
+package me.code.utility;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * En samling lås där varje UUID hör till ett av låsen ("striped locking").
+ *
+ * Ett enda lås för alla todos skulle göra att två trådar som ändrar helt olika
+ * todos ändå måste vänta på varandra. Ett lås per todo skulle kräva en map som
+ * växer med antalet todos. Istället har vi ett fast antal lås och väljer lås
+ * med hjälp av UUID:ts hashkod: samma todo får alltid samma lås, och olika
+ * todos får oftast olika lås och kan då ändras samtidigt.
+ *
+ * Låsen är återinträdande (reentrant), så en tråd som redan håller låset för en
+ * todo kan ta det igen, t.ex. när en metod under låset anropar en annan.
+ *
+ * Behöver man flera lås samtidigt (t.ex. för en hel grupp todos) tas de alltid
+ * i stigande ordning. Två trådar som vill ha delvis samma lås kan då aldrig
+ * hålla varsitt lås och vänta på varandras ("deadlock").
+ */
+public class StripedLock {
+
+    private final ReentrantLock[] locks;
+
+    /**
+     * @param stripes Ungefär hur många lås som ska finnas (avrundas uppåt till en tvåpotens)
+     */
+    public StripedLock(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[Math.max(1, Math.min(size, 1 << 16))];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Låset som hör till ett visst ID.
+     */
+    public ReentrantLock get(UUID id) {
+        return locks[indexOf(id)];
+    }
+
+    /**
+     * Numret (0 till antal lås - 1) på låset som hör till ett visst ID. Kan
+     * användas för att välja motsvarande lås på annat håll, t.ex. i en fil.
+     */
+    public int indexOf(UUID id) {
+        int hash = id.hashCode();
+        hash ^= hash >>> 16;  // Blanda in de höga bitarna, vi använder bara de låga
+        return hash & (locks.length - 1);
+    }
+
+    /**
+     * Kör action medan låset för ID:t hålls, och släpper låset efteråt
+     * även om action kastar ett exception.
+     *
+     * @return Det som action returnerar
+     */
+    public <T> T call(UUID id, Callable<T> action) throws Exception {
+        ReentrantLock lock = get(id);
+        lock.lock();
+        try {
+            return action.call();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Numren på låsen för en grupp ID:n, sorterade och utan dubbletter.
+     */
+    public int[] indexesOf(Collection<UUID> ids) {
+        return ids.stream().mapToInt(this::indexOf).sorted().distinct().toArray();
+    }
+
+    /**
+     * Kör action medan låsen med de givna numren hålls. Låsen tas i stigande
+     * ordning och släpps i omvänd ordning efteråt.
+     *
+     * @param indexes Låsens nummer, t.ex. från indexesOf
+     * @return Det som action returnerar
+     */
+    public <T> T call(int[] indexes, Callable<T> action) throws Exception {
+        int[] sorted = indexes.clone();
+        Arrays.sort(sorted);
+        int locked = 0;
+        try {
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[i - 1]) {
+                    locks[sorted[i]].lock();
+                    sorted[locked++] = sorted[i];
+                }
+            }
+            return action.call();
+        } finally {
+            while (locked > 0) {
+                locks[sorted[--locked]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Kör action medan låsen för alla ID:n i gruppen hålls.
+     */
+    public <T> T call(Collection<UUID> ids, Callable<T> action) throws Exception {
+        return call(indexesOf(ids), action);
+    }
+
+    /**
+     * Kör action medan alla lås hålls, dvs. ingen annan kan ändra någon todo
+     * under tiden. Används när man inte vet i förväg vilka todos som berörs.
+     */
+    public <T> T callAll(Callable<T> action) throws Exception {
+        int[] all = new int[locks.length];
+        Arrays.setAll(all, i -> i);
+        return call(all, action);
+    }
+}
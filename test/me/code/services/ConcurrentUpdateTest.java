@@ -0,0 +1,177 @@
+package me.code.services;
+
+import me.code.models.Todo;
+import me.code.repositories.CachingTodoRepository;
+import me.code.repositories.FileTodoRepository;
+import me.code.repositories.ITodoRepository;
+import me.code.repositories.LogTodoRepository;
+import me.code.repositories.WriteBehindTodoRepository;
+import me.code.repositories.cache.LruEvictionPolicy;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Många trådar räknar upp prioriteten på några få todos med updateTodoById.
+ * Går någon uppräkning förlorad stämmer inte summan efteråt.
+ *
+ * Inom en service är det todoLocks som håller isär trådarna. Två stackar
+ * (t.ex. två processer) mot samma mapp ser inte varandras lås, så där är det
+ * saveIfVersionMatches och retryOnConflict som ska fånga krockarna.
+ */
+class ConcurrentUpdateTest {
+
+    private static final int THREADS = 4;
+    private static final int UPDATES_PER_THREAD = 100;
+    private static final int TODOS = 3;
+    private static final int CACHE_SIZE = 100;
+    private static final long EXPECTED_SUM = (long) THREADS * UPDATES_PER_THREAD;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void fileRepositoryKeepsEveryIncrement() throws Exception {
+        List<UUID> ids = createCounters(new FileTodoRepository(directory));
+        try (ITodoRepository repository = new FileTodoRepository(directory)) {
+            incrementConcurrently(List.of(new DefaultTodoService(repository)), ids);
+        }
+        assertEquals(EXPECTED_SUM, sumPriorities(new FileTodoRepository(directory), ids));
+    }
+
+    @Test
+    void writeBehindStackKeepsEveryIncrement() throws Exception {
+        List<UUID> ids = createCounters(new FileTodoRepository(directory));
+        try (ITodoRepository repository = openWriteBehindStack()) {
+            incrementConcurrently(List.of(new DefaultTodoService(repository)), ids);
+        }
+        assertEquals(EXPECTED_SUM, sumPriorities(new FileTodoRepository(directory), ids));
+    }
+
+    @Test
+    void writeBehindStacksSharingDirectoryKeepEveryIncrement() throws Exception {
+        List<UUID> ids = createCounters(new FileTodoRepository(directory));
+        try (ITodoRepository first = openWriteBehindStack(); ITodoRepository second = openWriteBehindStack()) {
+            incrementConcurrently(List.of(new DefaultTodoService(first), new DefaultTodoService(second)), ids);
+        }
+        assertEquals(EXPECTED_SUM, sumPriorities(new FileTodoRepository(directory), ids));
+    }
+
+    @Test
+    void logRepositoryKeepsEveryIncrement() throws Exception {
+        List<UUID> ids = createCounters(new LogTodoRepository(directory));
+        try (ITodoRepository repository = new LogTodoRepository(directory)) {
+            incrementConcurrently(List.of(new DefaultTodoService(repository)), ids);
+        }
+        assertEquals(EXPECTED_SUM, sumPriorities(new LogTodoRepository(directory), ids));
+    }
+
+    /**
+     * Den andra stacken hinner ändra todon mellan första stackens läsning och
+     * sparning. Sparningen ska då ge en konflikt och göras om på den nya
+     * versionen, istället för att skriva över ändringen.
+     */
+    @Test
+    void conflictFromOtherStackIsRetried() throws Exception {
+        try (ITodoRepository first = openWriteBehindStack(); ITodoRepository second = openWriteBehindStack()) {
+            ITodoService firstService = new DefaultTodoService(first);
+            ITodoService secondService = new DefaultTodoService(second);
+            Todo todo = new Todo("Shared", new Date(), "test", 0);
+            try (ITodoRepository repository = new FileTodoRepository(directory)) {
+                repository.save(todo);  // Direkt till mappen, inte via första stackens kö
+            }
+
+            AtomicInteger attempts = new AtomicInteger();
+            firstService.updateTodoById(todo.getId(), current -> {
+                if (attempts.incrementAndGet() == 1) {
+                    try {
+                        secondService.updateTodoById(todo.getId(), other -> other.setPriority(other.getPriority() + 1));
+                    } catch (Exception exception) {
+                        throw new IllegalStateException(exception);
+                    }
+                }
+                current.setPriority(current.getPriority() + 1);
+            });
+
+            assertEquals(2, attempts.get());
+            assertEquals(2, secondService.getTodoById(todo.getId()).getPriority());
+        }
+    }
+
+    private ITodoRepository openWriteBehindStack() {
+        return new CachingTodoRepository(new WriteBehindTodoRepository(new FileTodoRepository(directory)),
+                new LruEvictionPolicy(), CACHE_SIZE);
+    }
+
+    /**
+     * Skapar TODOS todos med prioritet 0 direkt i repositoryt och stänger det,
+     * så att alla stackar som öppnas efteråt ser dem.
+     *
+     * @return ID:n för de skapade todosen
+     */
+    private static List<UUID> createCounters(ITodoRepository repository) throws Exception {
+        List<UUID> ids = new ArrayList<>();
+        try (repository) {
+            for (int i = 0; i < TODOS; i++) {
+                Todo todo = new Todo("Counter " + i, new Date(), "test", 0);
+                repository.save(todo);
+                ids.add(todo.getId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Låter THREADS trådar, fördelade på services, räkna upp todosen.
+     */
+    private static void incrementConcurrently(List<ITodoService> services, List<UUID> ids) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                ITodoService service = services.get(thread % services.size());
+                int offset = thread;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                        UUID id = ids.get((i + offset) % ids.size());
+                        service.updateTodoById(id, todo -> todo.setPriority(todo.getPriority() + 1));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();  // Kastar vidare ett fel från tråden, t.ex. en konflikt som inte gick igenom
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+    }
+
+    /**
+     * Summan av prioriteterna, läst från ett nytt repository som sedan stängs.
+     * De gamla är då stängda och deras write-behind-köer alltså tömda.
+     */
+    private static long sumPriorities(ITodoRepository repository, List<UUID> ids) throws Exception {
+        try (repository) {
+            long sum = 0;
+            for (UUID id : ids) {
+                sum += repository.findById(id).getPriority();
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package me.code.services.indexes;
+
+import me.code.models.Todo;
+import me.code.services.TodoQuery;
+import org.junit.jupiter.api.Test;
+
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Frågor som kombinerar ett villkor på ett fält med sortering på ett annat.
+ * Då måste indexet gå igenom hinkarna för sorteringsfältet, annars kommer
+ * todos i fel ordning och limit kapar bort fel todos.
+ */
+class AttributeIndexTest {
+
+    private final Todo late = new Todo("Late", new GregorianCalendar(2065, 0, 1).getTime(), "work", 5);
+    private final Todo early = new Todo("Early", new GregorianCalendar(2001, 0, 1).getTime(), "work", 2);
+
+    @Test
+    void minPriorityOrderedByDeadlineReturnsEarliestDeadline() {
+        AttributeIndex index = indexOf(late, early);
+
+        List<Todo> result = index.query(new TodoQuery()
+                .withMinPriority(1)
+                .orderBy(TodoQuery.Order.DEADLINE)
+                .limit(1));
+
+        assertEquals(List.of(early.getId()), ids(result));
+    }
+
+    @Test
+    void minPriorityOrderedByPriorityReturnsHighestPriority() {
+        AttributeIndex index = indexOf(early, late);
+
+        List<Todo> result = index.query(new TodoQuery()
+                .withMinPriority(1)
+                .orderBy(TodoQuery.Order.PRIORITY)
+                .limit(1));
+
+        assertEquals(List.of(late.getId()), ids(result));
+    }
+
+    private static AttributeIndex indexOf(Todo... todos) {
+        AttributeIndex index = new AttributeIndex();
+        for (Todo todo : todos) {
+            index.put(todo);
+        }
+        return index;
+    }
+
+    private static List<UUID> ids(List<Todo> todos) {
+        return todos.stream().map(Todo::getId).toList();
+    }
+}